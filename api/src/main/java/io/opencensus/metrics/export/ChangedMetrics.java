@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.metrics.export;
+
+import com.google.auto.value.AutoValue;
+import io.opencensus.common.ExperimentalApi;
+import io.opencensus.internal.Utils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The {@link Metric}s returned by {@link MetricProducer#getMetricsChangedSince}: the {@link
+ * TimeSeries} that changed since a cursor, the ones that were removed since, and the cursor to
+ * pass to the next call.
+ *
+ * <p>A caller that keeps the last value of each {@code TimeSeries} applies a {@code
+ * ChangedMetrics} by first dropping the removed series, then replacing the changed ones. A series
+ * can be both removed and changed if it was removed and then recorded to again. If {@link
+ * #isComplete()} is {@code true}, {@link #getMetrics()} has all the series, and the caller drops
+ * the series it kept that are not among them instead.
+ *
+ * @since 0.17
+ */
+@ExperimentalApi
+@Immutable
+@AutoValue
+public abstract class ChangedMetrics {
+
+  ChangedMetrics() {}
+
+  /**
+   * Creates a {@link ChangedMetrics}.
+   *
+   * @param metrics the {@link Metric}s of the series that changed.
+   * @param removedMetrics the {@link Metric}s of the series that were removed, with their last
+   *     value.
+   * @param cursor the cursor to pass to the next call.
+   * @param complete whether {@code metrics} has all the series.
+   * @return a {@code ChangedMetrics}.
+   * @since 0.17
+   */
+  public static ChangedMetrics create(
+      List<Metric> metrics, List<Metric> removedMetrics, long cursor, boolean complete) {
+    Utils.checkListElementNotNull(Utils.checkNotNull(metrics, "metrics"), "metric");
+    Utils.checkListElementNotNull(
+        Utils.checkNotNull(removedMetrics, "removedMetrics"), "removedMetric");
+    Utils.checkArgument(cursor >= 0, "Cursor must not be negative.");
+    return new AutoValue_ChangedMetrics(
+        Collections.unmodifiableList(new ArrayList<Metric>(metrics)),
+        Collections.unmodifiableList(new ArrayList<Metric>(removedMetrics)),
+        cursor,
+        complete);
+  }
+
+  /**
+   * Returns the {@link Metric}s of the series that changed since the cursor, or of all the series
+   * if {@link #isComplete()}.
+   *
+   * @return the {@code Metric}s of the series that changed.
+   * @since 0.17
+   */
+  public abstract List<Metric> getMetrics();
+
+  /**
+   * Returns the {@link Metric}s of the series that were removed since the cursor, with the last
+   * value they were exported with. Empty if {@link #isComplete()}.
+   *
+   * <p>They may include series that were created and removed between two calls, and that the
+   * caller therefore never saw.
+   *
+   * @return the {@code Metric}s of the series that were removed.
+   * @since 0.17
+   */
+  public abstract List<Metric> getRemovedMetrics();
+
+  /**
+   * Returns the cursor to pass to the next call to get the series that change after this one.
+   *
+   * @return the cursor to pass to the next call.
+   * @since 0.17
+   */
+  public abstract long getCursor();
+
+  /**
+   * Returns whether {@link #getMetrics()} has all the series, rather than the ones that changed
+   * since the cursor. This is the case for the cursor zero, and whenever the producer can no
+   * longer tell which series were removed since the cursor.
+   *
+   * @return whether {@code getMetrics()} has all the series.
+   * @since 0.17
+   */
+  public abstract boolean isComplete();
+}
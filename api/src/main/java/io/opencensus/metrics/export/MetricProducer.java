@@ -17,7 +17,10 @@
 package io.opencensus.metrics.export;
 
 import io.opencensus.common.ExperimentalApi;
+import io.opencensus.internal.Utils;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 
 /**
  * A {@link Metric} producer that can be registered for exporting using {@link
@@ -37,4 +40,25 @@ public abstract class MetricProducer {
    * @since 0.17
    */
   public abstract Collection<Metric> getMetrics();
+
+  /**
+   * Returns the {@link Metric}s of the series that changed since the call that returned the given
+   * cursor, and of the series that were removed since, so that exporters that keep the last value
+   * of each series only pay for the series that changed.
+   *
+   * <p>The default implementation returns all the metrics of {@link #getMetrics()} as complete,
+   * with the cursor zero.
+   *
+   * @param cursor the cursor returned by an earlier call, or zero to get all the series.
+   * @return the changed and removed metrics, and the cursor for the next call.
+   * @since 0.17
+   */
+  public ChangedMetrics getMetricsChangedSince(long cursor) {
+    Utils.checkArgument(cursor >= 0, "Cursor must not be negative.");
+    return ChangedMetrics.create(
+        new ArrayList<Metric>(getMetrics()),
+        Collections.<Metric>emptyList(),
+        /* cursor= */ 0,
+        /* complete= */ true);
+  }
 }
@@ -19,18 +19,23 @@ package io.opencensus.stats;
 import com.google.auto.value.AutoValue;
 import io.opencensus.common.Function;
 import io.opencensus.internal.Utils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import javax.annotation.concurrent.Immutable;
 
 /**
  * {@link Aggregation} is the process of combining a certain set of {@code MeasureValue}s for a
  * given {@code Measure} into an {@link AggregationData}.
  *
- * <p>{@link Aggregation} currently supports 4 types of basic aggregation:
+ * <p>{@link Aggregation} currently supports 6 types of basic aggregation:
  *
  * <ul>
  *   <li>Sum
  *   <li>Count
  *   <li>Distribution
+ *   <li>ExponentialDistribution
+ *   <li>Percentiles
  *   <li>LastValue
  * </ul>
  *
@@ -203,6 +208,213 @@ public abstract class Aggregation {
     }
   }
 
+  /**
+   * Calculate distribution stats on aggregated {@code MeasureValue}s, with a histogram of
+   * exponentially growing buckets that adapts to the recorded values.
+   *
+   * <p>At scale {@code s}, the histogram buckets are {@code [base^i, base^(i+1))} for integers
+   * {@code i}, with {@code base = 2^(2^-s)}. Each bucket is about {@code 2^(2^-s) - 1} wide
+   * relative to its lower bound, e.g. 4.4% at scale 4. Recording starts at the maximum scale and
+   * halves the resolution (decreases the scale) whenever the recorded values span more than the
+   * maximum number of buckets. Values that are less than or equal to zero are counted in the first
+   * bucket of the exported histogram.
+   *
+   * <p>The bucket boundaries are not part of the {@code Aggregation}. They are reported with each
+   * point of the exported {@link io.opencensus.metrics.export.Metric}s. In {@link ViewData}, the
+   * bucket counts of the {@link AggregationData.DistributionData} correspond to those boundaries.
+   *
+   * @since 0.17
+   */
+  @Immutable
+  @AutoValue
+  public abstract static class ExponentialDistribution extends Aggregation {
+
+    /**
+     * The maximum supported scale. Buckets are 0.000066% wide at this scale.
+     *
+     * @since 0.17
+     */
+    public static final int MAX_SCALE = 20;
+
+    /**
+     * The minimum supported scale. Every positive double falls into one of 3 buckets at this
+     * scale.
+     *
+     * @since 0.17
+     */
+    public static final int MIN_SCALE = -10;
+
+    private static final int DEFAULT_MAX_BUCKETS = 160;
+
+    private static final ExponentialDistribution DEFAULT =
+        new AutoValue_Aggregation_ExponentialDistribution(MAX_SCALE, DEFAULT_MAX_BUCKETS);
+
+    ExponentialDistribution() {}
+
+    /**
+     * Construct an {@code ExponentialDistribution} that starts at the highest scale and keeps up
+     * to 160 buckets.
+     *
+     * @return an {@code ExponentialDistribution}.
+     * @since 0.17
+     */
+    public static ExponentialDistribution create() {
+      return DEFAULT;
+    }
+
+    /**
+     * Construct an {@code ExponentialDistribution}.
+     *
+     * @param maxScale the scale that recording starts at, between {@link #MIN_SCALE} and {@link
+     *     #MAX_SCALE}.
+     * @param maxBuckets the maximum number of buckets for positive values. Must be at least 3.
+     * @return an {@code ExponentialDistribution}.
+     * @throws IllegalArgumentException if {@code maxScale} or {@code maxBuckets} is out of range.
+     * @since 0.17
+     */
+    public static ExponentialDistribution create(int maxScale, int maxBuckets) {
+      Utils.checkArgument(
+          maxScale >= MIN_SCALE && maxScale <= MAX_SCALE,
+          "maxScale should be between " + MIN_SCALE + " and " + MAX_SCALE + ".");
+      Utils.checkArgument(maxBuckets >= 3, "maxBuckets should be at least 3.");
+      return new AutoValue_Aggregation_ExponentialDistribution(maxScale, maxBuckets);
+    }
+
+    /**
+     * Returns the scale that recording starts at.
+     *
+     * @return the maximum scale.
+     * @since 0.17
+     */
+    public abstract int getMaxScale();
+
+    /**
+     * Returns the maximum number of buckets for positive values.
+     *
+     * @return the maximum number of buckets.
+     * @since 0.17
+     */
+    public abstract int getMaxBuckets();
+
+    @Override
+    public final <T> T match(
+        Function<? super Sum, T> p0,
+        Function<? super Count, T> p1,
+        Function<? super Distribution, T> p2,
+        Function<? super LastValue, T> p3,
+        Function<? super Aggregation, T> defaultFunction) {
+      return defaultFunction.apply(this);
+    }
+  }
+
+  /**
+   * Calculate percentiles of aggregated {@code MeasureValue}s with a mergeable quantile sketch.
+   *
+   * <p>The sketch keeps one counter per bucket {@code (gamma^(i-1), gamma^i]}, with {@code gamma =
+   * (1 + a) / (1 - a)} for the relative accuracy {@code a}, so every reported percentile is within
+   * {@code a} of the true value relative to it. When the recorded values span more than the
+   * maximum number of buckets, the lowest buckets are merged, which keeps the high percentiles
+   * accurate. This aggregation is meant for non-negative values such as latencies and sizes:
+   * values that are less than or equal to zero are reported as zero in the percentiles.
+   *
+   * <p>The percentiles are reported as {@link io.opencensus.metrics.export.Summary} points of the
+   * exported {@link io.opencensus.metrics.export.Metric}s. In {@link ViewData}, they are
+   * represented by an {@link AggregationData.DistributionData} without bucket counts.
+   *
+   * @since 0.17
+   */
+  @Immutable
+  @AutoValue
+  public abstract static class Percentiles extends Aggregation {
+
+    /**
+     * The minimum supported relative accuracy.
+     *
+     * @since 0.17
+     */
+    public static final double MIN_RELATIVE_ACCURACY = 1e-6;
+
+    private static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    private static final int DEFAULT_MAX_BUCKETS = 2048;
+
+    Percentiles() {}
+
+    /**
+     * Construct a {@code Percentiles} with a relative accuracy of 1% and up to 2048 buckets.
+     *
+     * @param percentiles the percentiles to report, each in the interval (0.0, 100.0].
+     * @return a {@code Percentiles}.
+     * @throws IllegalArgumentException if a percentile is out of range.
+     * @since 0.17
+     */
+    public static Percentiles create(List<Double> percentiles) {
+      return create(percentiles, DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BUCKETS);
+    }
+
+    /**
+     * Construct a {@code Percentiles}.
+     *
+     * @param percentiles the percentiles to report, each in the interval (0.0, 100.0].
+     * @param relativeAccuracy the relative accuracy of the reported values, at least {@link
+     *     #MIN_RELATIVE_ACCURACY} and less than 1.0.
+     * @param maxBuckets the maximum number of buckets of the sketch. Must be positive.
+     * @return a {@code Percentiles}.
+     * @throws IllegalArgumentException if a parameter is out of range.
+     * @since 0.17
+     */
+    public static Percentiles create(
+        List<Double> percentiles, double relativeAccuracy, int maxBuckets) {
+      Utils.checkNotNull(percentiles, "percentiles");
+      List<Double> percentilesCopy =
+          Collections.unmodifiableList(new ArrayList<Double>(percentiles));
+      for (Double percentile : percentilesCopy) {
+        Utils.checkNotNull(percentile, "percentile");
+        Utils.checkArgument(
+            percentile > 0 && percentile <= 100.0,
+            "percentile must be in the interval (0.0, 100.0].");
+      }
+      Utils.checkArgument(
+          relativeAccuracy >= MIN_RELATIVE_ACCURACY && relativeAccuracy < 1.0,
+          "relativeAccuracy must be in the interval [" + MIN_RELATIVE_ACCURACY + ", 1.0).");
+      Utils.checkArgument(maxBuckets > 0, "maxBuckets should be positive.");
+      return new AutoValue_Aggregation_Percentiles(percentilesCopy, relativeAccuracy, maxBuckets);
+    }
+
+    /**
+     * Returns the percentiles to report.
+     *
+     * @return the percentiles to report.
+     * @since 0.17
+     */
+    public abstract List<Double> getPercentiles();
+
+    /**
+     * Returns the relative accuracy of the reported values.
+     *
+     * @return the relative accuracy.
+     * @since 0.17
+     */
+    public abstract double getRelativeAccuracy();
+
+    /**
+     * Returns the maximum number of buckets of the sketch.
+     *
+     * @return the maximum number of buckets.
+     * @since 0.17
+     */
+    public abstract int getMaxBuckets();
+
+    @Override
+    public final <T> T match(
+        Function<? super Sum, T> p0,
+        Function<? super Count, T> p1,
+        Function<? super Distribution, T> p2,
+        Function<? super LastValue, T> p3,
+        Function<? super Aggregation, T> defaultFunction) {
+      return defaultFunction.apply(this);
+    }
+  }
+
   /**
    * Calculate the last value of aggregated {@code MeasureValue}s.
    *
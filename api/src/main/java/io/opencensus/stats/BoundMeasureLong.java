@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.stats;
+
+import io.opencensus.stats.Measure.MeasureLong;
+import io.opencensus.tags.TagContext;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A {@link MeasureLong} bound to a {@link TagContext}, for recording values of the same measure
+ * with the same tags many times.
+ *
+ * <p>Obtained from {@link StatsRecorder#bind(MeasureLong, TagContext)}. Implementations resolve
+ * the views of the measure and the tags once, so that {@link #record(long)} is cheaper than
+ * recording a {@link MeasureMap}. A bound measure stays valid when views are registered after it
+ * was bound.
+ *
+ * @since 0.17
+ */
+@ThreadSafe
+public abstract class BoundMeasureLong {
+
+  /**
+   * Records a value of the bound measure with the bound tags.
+   *
+   * @param value the value to record.
+   * @since 0.17
+   */
+  public abstract void record(long value);
+}
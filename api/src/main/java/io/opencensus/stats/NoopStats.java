@@ -169,6 +169,16 @@ final class NoopStats {
       }
     }
 
+    @Override
+    public void unregisterView(View.Name viewName) {
+      Utils.checkNotNull(viewName, "viewName");
+      synchronized (registeredViews) {
+        if (registeredViews.remove(viewName) != null) {
+          exportedViews = null;
+        }
+      }
+    }
+
     @Override
     @javax.annotation.Nullable
     @SuppressWarnings("deprecation")
@@ -16,6 +16,11 @@
 
 package io.opencensus.stats;
 
+import io.opencensus.internal.Utils;
+import io.opencensus.stats.Measure.MeasureDouble;
+import io.opencensus.stats.Measure.MeasureLong;
+import io.opencensus.tags.TagContext;
+
 /**
  * Provides methods to record stats against tags.
  *
@@ -31,4 +36,46 @@ public abstract class StatsRecorder {
    * @since 0.8
    */
   public abstract MeasureMap newMeasureMap();
+
+  /**
+   * Returns a {@link BoundMeasureDouble} that records values of the given measure with the given
+   * tags.
+   *
+   * @param measure the measure to record.
+   * @param tags the tags associated with the measurements.
+   * @return a {@code BoundMeasureDouble}.
+   * @since 0.17
+   */
+  public BoundMeasureDouble bind(final MeasureDouble measure, final TagContext tags) {
+    // Provides a default implementation to avoid breaking other existing sub-classes.
+    Utils.checkNotNull(measure, "measure");
+    Utils.checkNotNull(tags, "tags");
+    return new BoundMeasureDouble() {
+      @Override
+      public void record(double value) {
+        newMeasureMap().put(measure, value).record(tags);
+      }
+    };
+  }
+
+  /**
+   * Returns a {@link BoundMeasureLong} that records values of the given measure with the given
+   * tags.
+   *
+   * @param measure the measure to record.
+   * @param tags the tags associated with the measurements.
+   * @return a {@code BoundMeasureLong}.
+   * @since 0.17
+   */
+  public BoundMeasureLong bind(final MeasureLong measure, final TagContext tags) {
+    // Provides a default implementation to avoid breaking other existing sub-classes.
+    Utils.checkNotNull(measure, "measure");
+    Utils.checkNotNull(tags, "tags");
+    return new BoundMeasureLong() {
+      @Override
+      public void record(long value) {
+        newMeasureMap().put(measure, value).record(tags);
+      }
+    };
+  }
 }
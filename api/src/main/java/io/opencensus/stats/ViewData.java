@@ -323,6 +323,12 @@ public abstract class ViewData {
                   aggregationData);
               return null;
             }
+            if (arg instanceof Aggregation.ExponentialDistribution
+                || arg instanceof Aggregation.Percentiles) {
+              throwIfAggregationMismatch(
+                  aggregationData instanceof DistributionData, aggregation, aggregationData);
+              return null;
+            }
             throw new AssertionError();
           }
         });
@@ -16,6 +16,7 @@
 
 package io.opencensus.stats;
 
+import io.opencensus.internal.Utils;
 import java.util.Set;
 import javax.annotation.Nullable;
 
@@ -35,6 +36,22 @@ public abstract class ViewManager {
    */
   public abstract void registerView(View view);
 
+  /**
+   * Unregisters the {@link View} with the given name. Stats are no longer collected for the view,
+   * its data is discarded, and it is no longer returned by {@link #getView(View.Name)} or {@link
+   * #getAllExportedViews()}. A view with the same name can be registered again afterwards, and
+   * starts without data.
+   *
+   * <p>Does nothing if no view with the given name is registered.
+   *
+   * @param viewName the name of the {@code View} to be unregistered.
+   * @since 0.17
+   */
+  public void unregisterView(View.Name viewName) {
+    // Provides a default implementation to avoid breaking other existing sub-classes.
+    Utils.checkNotNull(viewName, "viewName");
+  }
+
   /**
    * Returns the current stats data, {@link ViewData}, associated with the given view name.
    *
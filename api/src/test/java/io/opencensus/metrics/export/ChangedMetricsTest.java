@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.metrics.export;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.common.Timestamp;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.export.MetricDescriptor.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ChangedMetrics}. */
+@RunWith(JUnit4.class)
+public class ChangedMetricsTest {
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+
+  private static final MetricDescriptor METRIC_DESCRIPTOR =
+      MetricDescriptor.create(
+          "metric",
+          "Metric description.",
+          "1",
+          Type.CUMULATIVE_INT64,
+          Collections.singletonList(LabelKey.create("key", "some key")));
+  private static final Metric METRIC_1 =
+      Metric.createWithOneTimeSeries(
+          METRIC_DESCRIPTOR,
+          TimeSeries.createWithOnePoint(
+              Collections.singletonList(LabelValue.create("value1")),
+              Point.create(Value.longValue(1), Timestamp.fromMillis(2000)),
+              Timestamp.fromMillis(1000)));
+  private static final Metric METRIC_2 =
+      Metric.createWithOneTimeSeries(
+          METRIC_DESCRIPTOR,
+          TimeSeries.createWithOnePoint(
+              Collections.singletonList(LabelValue.create("value2")),
+              Point.create(Value.longValue(2), Timestamp.fromMillis(2000)),
+              Timestamp.fromMillis(1000)));
+
+  @Test
+  public void testGet() {
+    ChangedMetrics changedMetrics =
+        ChangedMetrics.create(
+            Collections.singletonList(METRIC_1),
+            Collections.singletonList(METRIC_2),
+            /* cursor= */ 3,
+            /* complete= */ false);
+    assertThat(changedMetrics.getMetrics()).containsExactly(METRIC_1);
+    assertThat(changedMetrics.getRemovedMetrics()).containsExactly(METRIC_2);
+    assertThat(changedMetrics.getCursor()).isEqualTo(3);
+    assertThat(changedMetrics.isComplete()).isFalse();
+  }
+
+  @Test
+  public void create_WithNullMetric() {
+    thrown.expect(NullPointerException.class);
+    thrown.expectMessage("metric");
+    ChangedMetrics.create(Arrays.asList(METRIC_1, null), Collections.<Metric>emptyList(), 0, true);
+  }
+
+  @Test
+  public void create_WithNullRemovedMetrics() {
+    thrown.expect(NullPointerException.class);
+    thrown.expectMessage("removedMetrics");
+    ChangedMetrics.create(Collections.<Metric>emptyList(), null, 0, true);
+  }
+
+  @Test
+  public void create_WithNegativeCursor() {
+    thrown.expect(IllegalArgumentException.class);
+    ChangedMetrics.create(
+        Collections.<Metric>emptyList(), Collections.<Metric>emptyList(), /* cursor= */ -1, true);
+  }
+
+  @Test
+  public void immutableMetrics() {
+    List<Metric> metrics = new ArrayList<Metric>();
+    metrics.add(METRIC_1);
+    ChangedMetrics changedMetrics =
+        ChangedMetrics.create(metrics, Collections.<Metric>emptyList(), 0, true);
+    metrics.add(METRIC_2);
+    assertThat(changedMetrics.getMetrics()).containsExactly(METRIC_1);
+  }
+
+  @Test
+  public void metricProducer_DefaultGetMetricsChangedSince() {
+    MetricProducer metricProducer =
+        new MetricProducer() {
+          @Override
+          public Collection<Metric> getMetrics() {
+            return Arrays.asList(METRIC_1, METRIC_2);
+          }
+        };
+    ChangedMetrics changedMetrics = metricProducer.getMetricsChangedSince(5);
+    assertThat(changedMetrics.getMetrics()).containsExactly(METRIC_1, METRIC_2).inOrder();
+    assertThat(changedMetrics.getRemovedMetrics()).isEmpty();
+    assertThat(changedMetrics.getCursor()).isEqualTo(0);
+    assertThat(changedMetrics.isComplete()).isTrue();
+  }
+}
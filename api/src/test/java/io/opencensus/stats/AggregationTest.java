@@ -22,8 +22,10 @@ import com.google.common.testing.EqualsTester;
 import io.opencensus.common.Functions;
 import io.opencensus.stats.Aggregation.Count;
 import io.opencensus.stats.Aggregation.Distribution;
+import io.opencensus.stats.Aggregation.ExponentialDistribution;
 import io.opencensus.stats.Aggregation.LastValue;
 import io.opencensus.stats.Aggregation.Mean;
+import io.opencensus.stats.Aggregation.Percentiles;
 import io.opencensus.stats.Aggregation.Sum;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -54,6 +56,93 @@ public class AggregationTest {
     Distribution.create(null);
   }
 
+  @Test
+  public void testCreateExponentialDistribution() {
+    ExponentialDistribution distribution = ExponentialDistribution.create(4, 20);
+    assertThat(distribution.getMaxScale()).isEqualTo(4);
+    assertThat(distribution.getMaxBuckets()).isEqualTo(20);
+    assertThat(ExponentialDistribution.create().getMaxScale())
+        .isEqualTo(ExponentialDistribution.MAX_SCALE);
+    assertThat(ExponentialDistribution.create().getMaxBuckets()).isEqualTo(160);
+  }
+
+  @Test
+  public void testExponentialDistribution_ScaleTooHigh() {
+    thrown.expect(IllegalArgumentException.class);
+    ExponentialDistribution.create(ExponentialDistribution.MAX_SCALE + 1, 20);
+  }
+
+  @Test
+  public void testExponentialDistribution_ScaleTooLow() {
+    thrown.expect(IllegalArgumentException.class);
+    ExponentialDistribution.create(ExponentialDistribution.MIN_SCALE - 1, 20);
+  }
+
+  @Test
+  public void testExponentialDistribution_TooFewBuckets() {
+    thrown.expect(IllegalArgumentException.class);
+    ExponentialDistribution.create(0, 2);
+  }
+
+  @Test
+  public void testCreatePercentiles() {
+    Percentiles percentiles = Percentiles.create(Arrays.asList(50.0, 99.0), 0.02, 100);
+    assertThat(percentiles.getPercentiles()).containsExactly(50.0, 99.0).inOrder();
+    assertThat(percentiles.getRelativeAccuracy()).isWithin(0.0).of(0.02);
+    assertThat(percentiles.getMaxBuckets()).isEqualTo(100);
+    Percentiles defaultPercentiles = Percentiles.create(Arrays.asList(50.0));
+    assertThat(defaultPercentiles.getRelativeAccuracy()).isWithin(0.0).of(0.01);
+    assertThat(defaultPercentiles.getMaxBuckets()).isEqualTo(2048);
+  }
+
+  @Test
+  public void testPercentiles_PercentilesAreCopied() {
+    List<Double> list = new ArrayList<Double>(Arrays.asList(50.0));
+    Percentiles percentiles = Percentiles.create(list);
+    list.add(99.0);
+    assertThat(percentiles.getPercentiles()).containsExactly(50.0);
+  }
+
+  @Test
+  public void testPercentiles_DisallowNullPercentile() {
+    thrown.expect(NullPointerException.class);
+    thrown.expectMessage("percentile");
+    Percentiles.create(Arrays.asList(50.0, null));
+  }
+
+  @Test
+  public void testPercentiles_DisallowZeroPercentile() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("percentile must be in the interval (0.0, 100.0].");
+    Percentiles.create(Arrays.asList(0.0));
+  }
+
+  @Test
+  public void testPercentiles_DisallowTooHighPercentile() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("percentile must be in the interval (0.0, 100.0].");
+    Percentiles.create(Arrays.asList(100.5));
+  }
+
+  @Test
+  public void testPercentiles_DisallowTooLowRelativeAccuracy() {
+    thrown.expect(IllegalArgumentException.class);
+    Percentiles.create(Arrays.asList(50.0), Percentiles.MIN_RELATIVE_ACCURACY / 2, 100);
+  }
+
+  @Test
+  public void testPercentiles_DisallowRelativeAccuracyOfOne() {
+    thrown.expect(IllegalArgumentException.class);
+    Percentiles.create(Arrays.asList(50.0), 1.0, 100);
+  }
+
+  @Test
+  public void testPercentiles_DisallowNoBuckets() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("maxBuckets should be positive.");
+    Percentiles.create(Arrays.asList(50.0), 0.01, 0);
+  }
+
   @Test
   public void testEquals() {
     new EqualsTester()
@@ -67,6 +156,14 @@ public class AggregationTest {
             Distribution.create(BucketBoundaries.create(Arrays.asList(0.0, 1.0, 5.0))))
         .addEqualityGroup(Mean.create(), Mean.create())
         .addEqualityGroup(LastValue.create(), LastValue.create())
+        .addEqualityGroup(ExponentialDistribution.create(), ExponentialDistribution.create(20, 160))
+        .addEqualityGroup(ExponentialDistribution.create(4, 160))
+        .addEqualityGroup(ExponentialDistribution.create(4, 20))
+        .addEqualityGroup(
+            Percentiles.create(Arrays.asList(50.0, 99.0)),
+            Percentiles.create(Arrays.asList(50.0, 99.0), 0.01, 2048))
+        .addEqualityGroup(Percentiles.create(Arrays.asList(99.0, 50.0)))
+        .addEqualityGroup(Percentiles.create(Arrays.asList(50.0, 99.0), 0.02, 2048))
         .testEquals();
   }
 
@@ -78,7 +175,9 @@ public class AggregationTest {
             Count.create(),
             Mean.create(),
             Distribution.create(BucketBoundaries.create(Arrays.asList(-10.0, 1.0, 5.0))),
-            LastValue.create());
+            LastValue.create(),
+            ExponentialDistribution.create(),
+            Percentiles.create(Arrays.asList(50.0)));
 
     List<String> actual = new ArrayList<String>();
     for (Aggregation aggregation : aggregations) {
@@ -92,6 +191,8 @@ public class AggregationTest {
     }
 
     assertThat(actual)
-        .isEqualTo(Arrays.asList("SUM", "COUNT", "UNKNOWN", "DISTRIBUTION", "LASTVALUE"));
+        .isEqualTo(
+            Arrays.asList(
+                "SUM", "COUNT", "UNKNOWN", "DISTRIBUTION", "LASTVALUE", "UNKNOWN", "UNKNOWN"));
   }
 }
@@ -123,6 +123,20 @@ public final class NoopStatsTest {
     NoopStats.getNoopStatsRecorder().newMeasureMap().put(MEASURE, 6).record();
   }
 
+  // The NoopStatsRecorder should do nothing, so this test just checks that recording a bound
+  // measure doesn't throw an exception.
+  @Test
+  public void noopStatsRecorder_RecordBoundMeasure() {
+    NoopStats.getNoopStatsRecorder().bind(MEASURE, tagContext).record(7);
+  }
+
+  @Test
+  public void noopStatsRecorder_Bind_DisallowNullTagContext() {
+    thrown.expect(NullPointerException.class);
+    thrown.expectMessage("tags");
+    NoopStats.getNoopStatsRecorder().bind(MEASURE, null);
+  }
+
   @Test
   public void noopStatsRecorder_Record_DisallowNullTagContext() {
     MeasureMap measureMap = NoopStats.getNoopStatsRecorder().newMeasureMap();
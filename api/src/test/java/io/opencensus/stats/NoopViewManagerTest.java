@@ -132,6 +132,42 @@ public final class NoopViewManagerTest {
     viewManager.getView(null);
   }
 
+  @Test
+  public void noopViewManager_UnregisterView() {
+    ViewManager viewManager = NoopStats.newNoopViewManager();
+    View view =
+        View.create(
+            VIEW_NAME, VIEW_DESCRIPTION, MEASURE, AGGREGATION, Arrays.asList(KEY), CUMULATIVE);
+    viewManager.registerView(view);
+    assertThat(viewManager.getAllExportedViews()).containsExactly(view);
+    viewManager.unregisterView(VIEW_NAME);
+    assertThat(viewManager.getView(VIEW_NAME)).isNull();
+    assertThat(viewManager.getAllExportedViews()).isEmpty();
+    // Unregistering a view that is not registered does nothing.
+    viewManager.unregisterView(VIEW_NAME);
+  }
+
+  @Test
+  public void noopViewManager_UnregisterView_AllowRegisteringDifferentViewWithSameName() {
+    ViewManager viewManager = NoopStats.newNoopViewManager();
+    viewManager.registerView(
+        View.create(
+            VIEW_NAME, VIEW_DESCRIPTION, MEASURE, AGGREGATION, Arrays.asList(KEY), CUMULATIVE));
+    viewManager.unregisterView(VIEW_NAME);
+    View view =
+        View.create(
+            VIEW_NAME, "another description", MEASURE, AGGREGATION, Arrays.asList(KEY), CUMULATIVE);
+    viewManager.registerView(view);
+    assertThat(viewManager.getView(VIEW_NAME).getView()).isEqualTo(view);
+  }
+
+  @Test
+  public void noopViewManager_UnregisterView_DisallowNull() {
+    ViewManager viewManager = NoopStats.newNoopViewManager();
+    thrown.expect(NullPointerException.class);
+    viewManager.unregisterView(null);
+  }
+
   @Test
   public void getAllExportedViews() {
     ViewManager viewManager = NoopStats.newNoopViewManager();
@@ -27,8 +27,10 @@ import io.opencensus.common.Functions;
 import io.opencensus.common.Timestamp;
 import io.opencensus.stats.Aggregation.Count;
 import io.opencensus.stats.Aggregation.Distribution;
+import io.opencensus.stats.Aggregation.ExponentialDistribution;
 import io.opencensus.stats.Aggregation.LastValue;
 import io.opencensus.stats.Aggregation.Mean;
+import io.opencensus.stats.Aggregation.Percentiles;
 import io.opencensus.stats.Aggregation.Sum;
 import io.opencensus.stats.AggregationData.CountData;
 import io.opencensus.stats.AggregationData.DistributionData;
@@ -223,6 +225,20 @@ public final class ViewDataTest {
         createView(DISTRIBUTION), ImmutableMap.of(Arrays.asList(V10, V20), CountData.create(100)));
   }
 
+  @Test
+  public void preventAggregationAndAggregationDataMismatch_ExponentialDistribution_Count() {
+    aggregationAndAggregationDataMismatch(
+        createView(ExponentialDistribution.create()),
+        ImmutableMap.of(Arrays.asList(V10, V20), CountData.create(100)));
+  }
+
+  @Test
+  public void preventAggregationAndAggregationDataMismatch_Percentiles_Count() {
+    aggregationAndAggregationDataMismatch(
+        createView(Percentiles.create(Arrays.asList(50.0))),
+        ImmutableMap.of(Arrays.asList(V10, V20), CountData.create(100)));
+  }
+
   @Test
   public void preventAggregationAndAggregationDataMismatch_LastValueDouble_LastValueLong() {
     aggregationAndAggregationDataMismatch(
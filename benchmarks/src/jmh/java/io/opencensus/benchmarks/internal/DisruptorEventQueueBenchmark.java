@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.benchmarks.internal;
+
+import io.opencensus.impl.internal.DisruptorEventQueue;
+import io.opencensus.impl.internal.DisruptorEventQueue.WaitStrategyType;
+import io.opencensus.implcore.internal.EventQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/** Benchmarks for the buffer sizes and wait strategies of {@link DisruptorEventQueue}. */
+public class DisruptorEventQueueBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Data {
+    private DisruptorEventQueue queue;
+    private final AtomicLong processed = new AtomicLong();
+    private final EventQueue.Entry entry =
+        new EventQueue.Entry() {
+          @Override
+          public void process() {
+            processed.incrementAndGet();
+          }
+        };
+
+    @Param({"1024", "8192", "65536"})
+    int bufferSize;
+
+    @Param({"BLOCKING", "SLEEPING", "YIELDING", "BUSY_SPIN", "PHASED_BACKOFF"})
+    WaitStrategyType waitStrategy;
+
+    @Setup
+    public void setup() {
+      queue =
+          DisruptorEventQueue.create("OpenCensus.Disruptor.Benchmark", bufferSize, waitStrategy);
+    }
+
+    @TearDown
+    public void doTearDown() {
+      queue.shutdown();
+    }
+  }
+
+  /**
+   * This benchmark attempts to measure the enqueue throughput of several producers, including the
+   * time they block when the ring buffer is full.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @Threads(4)
+  public void enqueue(Data data) {
+    data.queue.enqueue(data.entry);
+  }
+
+  /**
+   * This benchmark attempts to measure the latency between enqueueing an entry on an idle queue and
+   * the consumer thread processing it, which is dominated by the wake-up of the consumer.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public long enqueueAndWaitForProcessing(Data data) {
+    long target = data.processed.get() + 1;
+    data.queue.enqueue(data.entry);
+    long processed;
+    while ((processed = data.processed.get()) < target) {
+      Thread.yield();
+    }
+    return processed;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.benchmarks.internal;
+
+import io.opencensus.impl.internal.EventQueues.DisruptorEventQueueFactory;
+import io.opencensus.impl.internal.EventQueues.MpscArrayEventQueueFactory;
+import io.opencensus.implcore.internal.EventQueue;
+import io.opencensus.implcore.internal.SimpleEventQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Benchmarks comparing the enqueue throughput and latency of the {@link EventQueue}
+ * implementations under 1, 8 and 64 producers.
+ */
+public class EventQueueBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Data {
+    private EventQueue queue;
+    private final AtomicLong processed = new AtomicLong();
+    private final EventQueue.Entry entry =
+        new EventQueue.Entry() {
+          @Override
+          public void process() {
+            processed.incrementAndGet();
+          }
+        };
+
+    @Param({"disruptor", "mpsc", "simple"})
+    String implementation;
+
+    @Setup
+    public void setup() {
+      if ("disruptor".equals(implementation)) {
+        queue =
+            new DisruptorEventQueueFactory()
+                .create(
+                    "OpenCensus.EventQueue.Benchmark", "io.opencensus.benchmark.disruptor", true);
+      } else if ("mpsc".equals(implementation)) {
+        queue =
+            new MpscArrayEventQueueFactory()
+                .create(
+                    "OpenCensus.EventQueue.Benchmark", "io.opencensus.benchmark.disruptor", true);
+      } else {
+        queue = new SimpleEventQueue();
+      }
+    }
+
+    @TearDown
+    public void doTearDown() {
+      queue.shutdown();
+    }
+  }
+
+  /** This benchmark attempts to measure the enqueue throughput and latency of one producer. */
+  @Benchmark
+  @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @Threads(1)
+  public void enqueue1Producer(Data data) {
+    data.queue.enqueue(data.entry);
+  }
+
+  /**
+   * This benchmark attempts to measure the enqueue throughput and latency of 8 producers, including
+   * the time they wait when the queue is full.
+   */
+  @Benchmark
+  @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @Threads(8)
+  public void enqueue8Producers(Data data) {
+    data.queue.enqueue(data.entry);
+  }
+
+  /**
+   * This benchmark attempts to measure the enqueue throughput and latency of 64 producers, which is
+   * more than the cores of most machines, including the time they wait when the queue is full.
+   */
+  @Benchmark
+  @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @Threads(64)
+  public void enqueue64Producers(Data data) {
+    data.queue.enqueue(data.entry);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.benchmarks.stats;
+
+import io.opencensus.implcore.common.MillisClock;
+import io.opencensus.implcore.internal.SimpleEventQueue;
+import io.opencensus.implcore.stats.StatsComponentImplBase;
+import io.opencensus.stats.Aggregation.Distribution;
+import io.opencensus.stats.BoundMeasureDouble;
+import io.opencensus.stats.BucketBoundaries;
+import io.opencensus.stats.Measure.MeasureDouble;
+import io.opencensus.stats.StatsComponent;
+import io.opencensus.stats.View;
+import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagValue;
+import io.opencensus.tags.Tags;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks for recording to a {@link Distribution} view, whose cost grows with the number of
+ * bucket boundaries.
+ */
+public class RecordDistributionBenchmark {
+
+  private static final TagKey KEY = TagKey.create("MyKey");
+  private static final TagValue VALUE = TagValue.create("MyValue");
+  // A power of two, to cycle through the values with a mask.
+  private static final int NUM_VALUES = 1024;
+
+  @State(Scope.Thread)
+  public static class Data {
+
+    private BoundMeasureDouble boundMeasure;
+    private final double[] values = new double[NUM_VALUES];
+    private int next = 0;
+
+    @Param({"10", "50", "200"})
+    int numBoundaries;
+
+    @Setup
+    public void setup() {
+      StatsComponent statsComponent =
+          new StatsComponentImplBase(new SimpleEventQueue(), MillisClock.getInstance());
+      List<Double> boundaries = new ArrayList<Double>();
+      for (int i = 0; i < numBoundaries; i++) {
+        boundaries.add((double) i);
+      }
+      MeasureDouble measure = MeasureDouble.create("MyMeasure", "description", "1");
+      statsComponent
+          .getViewManager()
+          .registerView(
+              View.create(
+                  View.Name.create("MyView"),
+                  "description",
+                  measure,
+                  Distribution.create(BucketBoundaries.create(boundaries)),
+                  Collections.singletonList(KEY)));
+      boundMeasure =
+          statsComponent
+              .getStatsRecorder()
+              .bind(measure, Tags.getTagger().emptyBuilder().put(KEY, VALUE).build());
+      // Values spread over all the buckets, so that the scan of the boundaries is not predictable.
+      Random random = new Random(1234);
+      for (int i = 0; i < NUM_VALUES; i++) {
+        values[i] = random.nextDouble() * (numBoundaries + 1) - 0.5;
+      }
+    }
+  }
+
+  /** This benchmark attempts to measure the cost of recording a value to a distribution view. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public void recordDistribution(Data data) {
+    data.boundMeasure.record(data.values[data.next++ & (NUM_VALUES - 1)]);
+  }
+}
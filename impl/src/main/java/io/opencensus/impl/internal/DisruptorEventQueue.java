@@ -16,14 +16,27 @@
 
 package io.opencensus.impl.internal;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
 import com.lmax.disruptor.EventFactory;
 import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.PhasedBackoffWaitStrategy;
 import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
+import io.opencensus.common.ToLongFunction;
 import io.opencensus.implcore.internal.DaemonThreadFactory;
 import io.opencensus.implcore.internal.EventQueue;
+import io.opencensus.implcore.internal.EventQueueMetrics;
+import io.opencensus.implcore.internal.OverflowPolicy;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -35,8 +48,9 @@ import javax.annotation.concurrent.ThreadSafe;
  * intended for use by instrumentation methods to ensure that they do not block foreground
  * activities. To customize the action taken on reading the queue, derive a new class from {@link
  * EventQueue.Entry} and pass it to the {@link #enqueue(Entry)} method. The {@link Entry#process()}
- * method of your class will be called and executed in a background thread. This class is a
- * Singleton.
+ * method of your class will be called and executed in a background thread. Each component creates
+ * queues of its own through {@link EventQueues}, and other callers can share the one returned by
+ * {@link #getInstance()}.
  *
  * <p>Example Usage: Given a class as follows:
  *
@@ -85,20 +99,50 @@ import javax.annotation.concurrent.ThreadSafe;
  *   }
  * }
  * </pre>
+ *
+ * <p>The size of the ring buffer and the strategy the consumer thread uses to wait for new events
+ * can be passed to {@link #create(String, int, WaitStrategyType)}. Queues created without them,
+ * including the singleton, read them from the {@code io.opencensus.disruptor.bufferSize} and
+ * {@code io.opencensus.disruptor.waitStrategy} system properties, and otherwise use 8192 slots and
+ * {@link WaitStrategyType#SLEEPING}.
+ *
+ * <p>By default, {@link #enqueue(Entry)} blocks while the ring buffer is full. Queues can instead
+ * drop entries under load, see {@link OverflowPolicy}; the policy of queues created with {@link
+ * #create(String)} is read from the {@code io.opencensus.disruptor.overflowPolicy} system property.
+ * The shared singleton may carry events of any component, so it always blocks. Dropping policies
+ * must only be used by components whose entries are independent of each other, such as stats
+ * records; see {@link EventQueues#createLosslessWithProperties}.
+ *
+ * <p>{@link EventQueues} chooses between this and the other queue implementations.
+ *
+ * <p>Each queue exports its occupancy, dropped entries, time spent blocked in {@link
+ * #enqueue(Entry)}, and sampled processing counts and latencies as {@link EventQueueMetrics},
+ * with the thread prefix as the name of the queue, until it is shut down.
  */
 @ThreadSafe
 public final class DisruptorEventQueue implements EventQueue {
 
   private static final Logger logger = Logger.getLogger(DisruptorEventQueue.class.getName());
 
-  // Number of events that can be enqueued at any one time. If more than this are enqueued,
-  // then subsequent attempts to enqueue new entries will block.
-  // TODO(aveitch): consider making this a parameter to the constructor, so the queue can be
-  // configured to a size appropriate to the system (smaller/less busy systems will not need as
-  // large a queue.
-  private static final int DISRUPTOR_BUFFER_SIZE = 8192;
-  // The single instance of the class.
-  private static final DisruptorEventQueue eventQueue = create();
+  // System property suffix for the name of the WaitStrategyType used by the consumer thread. The
+  // other properties are shared with the other queue implementations, see EventQueues.
+  static final String WAIT_STRATEGY_PROPERTY = ".waitStrategy";
+
+  private static final WaitStrategyType DEFAULT_WAIT_STRATEGY = WaitStrategyType.SLEEPING;
+
+  // With OverflowPolicy.SHED, entries start being dropped once less than this fraction of the ring
+  // buffer is free.
+  private static final int SHED_THRESHOLD_DIVISOR = 4;
+
+  // PhasedBackoffWaitStrategy spins, then yields for up to these durations before it blocks.
+  private static final long PHASED_BACKOFF_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+  private static final long PHASED_BACKOFF_YIELD_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private static final WaitStrategyType DISRUPTOR_WAIT_STRATEGY =
+      EventQueues.getEnumProperty(
+          EventQueues.PROPERTY_PREFIX + WAIT_STRATEGY_PROPERTY,
+          WaitStrategyType.class,
+          DEFAULT_WAIT_STRATEGY);
 
   // The event queue is built on this {@link Disruptor}.
   private final Disruptor<DisruptorEvent> disruptor;
@@ -107,46 +151,243 @@ public final class DisruptorEventQueue implements EventQueue {
 
   private volatile DisruptorEnqueuer enqueuer;
 
-  // Creates a new EventQueue. Private to prevent creation of non-singleton instance.
+  private final EventQueueMetrics metrics;
+
+  // Creates a new EventQueue. Private, queues are created by the create methods.
   private DisruptorEventQueue(
       Disruptor<DisruptorEvent> disruptor,
       RingBuffer<DisruptorEvent> ringBuffer,
-      DisruptorEnqueuer enqueuer) {
+      DisruptorEnqueuer enqueuer,
+      EventQueueMetrics metrics) {
     this.disruptor = disruptor;
     this.ringBuffer = ringBuffer;
     this.enqueuer = enqueuer;
+    this.metrics = metrics;
+  }
+
+  /**
+   * The strategies that the consumer thread can use to wait for new events. They trade the latency
+   * between an enqueue and the processing of the entry against the CPU used by an idle consumer.
+   */
+  public enum WaitStrategyType {
+    /** Waits on a lock and condition. Lowest CPU use, highest wake-up latency. */
+    BLOCKING,
+    /** Spins, then yields, then sleeps briefly. This is the default. */
+    SLEEPING,
+    /** Spins, then yields. Low latency, but keeps a core busy while idle. */
+    YIELDING,
+    /** Spins. Lowest latency, but keeps a core busy while idle; only for dedicated cores. */
+    BUSY_SPIN,
+    /** Spins, then yields for a short time, then blocks like {@link #BLOCKING}. */
+    PHASED_BACKOFF
+  }
+
+  /**
+   * Creates a new {@link DisruptorEventQueue} with its own ring buffer and consumer thread.
+   * Separate instances are for components that need a consumer thread of their own, such as the
+   * trace and stats components and the shards of the stats pipeline; other callers can use the
+   * shared {@link #getInstance()}.
+   *
+   * <p>The buffer size, wait strategy and overflow policy are read from the system properties
+   * described in the class documentation, so these queues may drop entries and must not be used
+   * for span events.
+   *
+   * @param threadPrefix the name prefix of the consumer thread.
+   * @return a new {@code DisruptorEventQueue}.
+   */
+  public static DisruptorEventQueue create(String threadPrefix) {
+    return create(
+        threadPrefix,
+        EventQueues.BUFFER_SIZE,
+        DISRUPTOR_WAIT_STRATEGY,
+        EventQueues.OVERFLOW_POLICY);
   }
 
-  // Creates a new EventQueue. Private to prevent creation of non-singleton instance.
-  private static DisruptorEventQueue create() {
+  /**
+   * Creates a new {@link DisruptorEventQueue} with its own ring buffer and consumer thread,
+   * configured by the system properties with the given prefix. For example, with the prefix
+   * {@code io.opencensus.stats.disruptor}, the buffer size is read from {@code
+   * io.opencensus.stats.disruptor.bufferSize}. Properties that are not set fall back to the {@code
+   * io.opencensus.disruptor} ones described in the class documentation.
+   *
+   * <p>Components should use {@link EventQueues#createWithProperties}, which also lets the queue
+   * implementation be chosen.
+   *
+   * @param threadPrefix the name prefix of the consumer thread.
+   * @param propertyPrefix the prefix of the system properties of this queue.
+   * @return a new {@code DisruptorEventQueue}.
+   */
+  public static DisruptorEventQueue createWithProperties(
+      String threadPrefix, String propertyPrefix) {
+    return createWithProperties(threadPrefix, propertyPrefix, true);
+  }
+
+  /**
+   * Creates a new {@link DisruptorEventQueue} like {@link #createWithProperties(String, String)},
+   * that ignores the overflow policy properties and blocks when it is full unless {@code
+   * mayDropEntries} is {@code true}.
+   *
+   * @param threadPrefix the name prefix of the consumer thread.
+   * @param propertyPrefix the prefix of the system properties of this queue.
+   * @param mayDropEntries whether the overflow policy properties apply to this queue.
+   * @return a new {@code DisruptorEventQueue}.
+   */
+  public static DisruptorEventQueue createWithProperties(
+      String threadPrefix, String propertyPrefix, boolean mayDropEntries) {
+    return create(
+        threadPrefix,
+        EventQueues.getBufferSizeProperty(propertyPrefix, EventQueues.BUFFER_SIZE),
+        EventQueues.getEnumProperty(
+            propertyPrefix + WAIT_STRATEGY_PROPERTY,
+            WaitStrategyType.class,
+            DISRUPTOR_WAIT_STRATEGY),
+        EventQueues.getOverflowPolicyProperty(propertyPrefix, mayDropEntries));
+  }
+
+  /**
+   * Creates a new {@link DisruptorEventQueue} with its own ring buffer and consumer thread, using
+   * the given buffer size and wait strategy.
+   *
+   * @param threadPrefix the name prefix of the consumer thread.
+   * @param bufferSize the number of events that can be enqueued at any one time. Must be a power
+   *     of two.
+   * @param waitStrategyType the strategy that the consumer thread uses to wait for new events.
+   * @return a new {@code DisruptorEventQueue}.
+   * @throws IllegalArgumentException if {@code bufferSize} is not a positive power of two.
+   */
+  public static DisruptorEventQueue create(
+      String threadPrefix, int bufferSize, WaitStrategyType waitStrategyType) {
+    return create(threadPrefix, bufferSize, waitStrategyType, OverflowPolicy.BLOCK);
+  }
+
+  /**
+   * Creates a new {@link DisruptorEventQueue} with its own ring buffer and consumer thread, using
+   * the given buffer size, wait strategy and overflow policy.
+   *
+   * @param threadPrefix the name prefix of the consumer thread.
+   * @param bufferSize the number of events that can be enqueued at any one time. Must be a power
+   *     of two.
+   * @param waitStrategyType the strategy that the consumer thread uses to wait for new events.
+   * @param overflowPolicy what to do when the ring buffer is full.
+   * @return a new {@code DisruptorEventQueue}.
+   * @throws IllegalArgumentException if {@code bufferSize} is not a positive power of two.
+   */
+  public static DisruptorEventQueue create(
+      String threadPrefix,
+      int bufferSize,
+      WaitStrategyType waitStrategyType,
+      OverflowPolicy overflowPolicy) {
+    checkArgument(
+        EventQueues.isPowerOfTwo(bufferSize), "bufferSize should be a positive power of two.");
+    checkNotNull(waitStrategyType, "waitStrategyType");
+    checkNotNull(overflowPolicy, "overflowPolicy");
     // Create new Disruptor for processing. Note that Disruptor creates a single thread per
     // consumer (see https://github.com/LMAX-Exchange/disruptor/issues/121 for details);
     // this ensures that the event handler can take unsynchronized actions whenever possible.
     Disruptor<DisruptorEvent> disruptor =
         new Disruptor<>(
             DisruptorEventFactory.INSTANCE,
-            DISRUPTOR_BUFFER_SIZE,
-            new DaemonThreadFactory("OpenCensus.Disruptor"),
+            bufferSize,
+            new DaemonThreadFactory(threadPrefix),
             ProducerType.MULTI,
-            new SleepingWaitStrategy());
-    disruptor.handleEventsWith(new DisruptorEventHandler[] {DisruptorEventHandler.INSTANCE});
+            createWaitStrategy(waitStrategyType));
+    RingBuffer<DisruptorEvent> ringBuffer = disruptor.getRingBuffer();
+    EventQueueMetrics metrics =
+        EventQueueMetrics.create(threadPrefix, ringBuffer, OccupancyFunction.INSTANCE);
+    disruptor.handleEventsWith(new DisruptorEventHandler[] {new DisruptorEventHandler(metrics)});
     disruptor.start();
-    final RingBuffer<DisruptorEvent> ringBuffer = disruptor.getRingBuffer();
+    return new DisruptorEventQueue(
+        disruptor, ringBuffer, createEnqueuer(ringBuffer, overflowPolicy, metrics), metrics);
+  }
 
-    DisruptorEnqueuer enqueuer =
-        new DisruptorEnqueuer() {
+  private static DisruptorEnqueuer createEnqueuer(
+      final RingBuffer<DisruptorEvent> ringBuffer,
+      OverflowPolicy overflowPolicy,
+      final EventQueueMetrics metrics) {
+    switch (overflowPolicy) {
+      case BLOCK:
+        return new DisruptorEnqueuer() {
+          @Override
+          public void enqueue(Entry entry) {
+            long sequence;
+            if (ringBuffer.hasAvailableCapacity(1)) {
+              sequence = ringBuffer.next();
+            } else {
+              // Only time the slow path, the check is approximate with concurrent producers.
+              long startNanos = System.nanoTime();
+              sequence = ringBuffer.next();
+              metrics.recordBlockedTime(System.nanoTime() - startNanos);
+            }
+            publish(ringBuffer, sequence, entry);
+          }
+        };
+      case DROP_NEWEST:
+        return new DisruptorEnqueuer() {
+          @Override
+          public void enqueue(Entry entry) {
+            long sequence;
+            try {
+              sequence = ringBuffer.tryNext();
+            } catch (InsufficientCapacityException e) {
+              metrics.recordDroppedEvent();
+              return;
+            }
+            publish(ringBuffer, sequence, entry);
+          }
+        };
+      case SHED:
+        final int shedThreshold = Math.max(ringBuffer.getBufferSize() / SHED_THRESHOLD_DIVISOR, 1);
+        return new DisruptorEnqueuer() {
           @Override
           public void enqueue(Entry entry) {
-            long sequence = ringBuffer.next();
+            long remainingCapacity = ringBuffer.remainingCapacity();
+            if (remainingCapacity < shedThreshold
+                && ThreadLocalRandom.current().nextInt(shedThreshold) >= remainingCapacity) {
+              metrics.recordDroppedEvent();
+              return;
+            }
+            long sequence;
             try {
-              DisruptorEvent event = ringBuffer.get(sequence);
-              event.setEntry(entry);
-            } finally {
-              ringBuffer.publish(sequence);
+              sequence = ringBuffer.tryNext();
+            } catch (InsufficientCapacityException e) {
+              metrics.recordDroppedEvent();
+              return;
             }
+            publish(ringBuffer, sequence, entry);
           }
         };
-    return new DisruptorEventQueue(disruptor, ringBuffer, enqueuer);
+    }
+    throw new AssertionError("Unknown overflow policy: " + overflowPolicy);
+  }
+
+  private static void publish(RingBuffer<DisruptorEvent> ringBuffer, long sequence, Entry entry) {
+    try {
+      DisruptorEvent event = ringBuffer.get(sequence);
+      if (EventQueueMetrics.isSampled(sequence)) {
+        event.enqueueNanos = System.nanoTime();
+      }
+      event.setEntry(entry);
+    } finally {
+      ringBuffer.publish(sequence);
+    }
+  }
+
+  private static com.lmax.disruptor.WaitStrategy createWaitStrategy(
+      WaitStrategyType waitStrategyType) {
+    switch (waitStrategyType) {
+      case BLOCKING:
+        return new BlockingWaitStrategy();
+      case SLEEPING:
+        return new SleepingWaitStrategy();
+      case YIELDING:
+        return new YieldingWaitStrategy();
+      case BUSY_SPIN:
+        return new BusySpinWaitStrategy();
+      case PHASED_BACKOFF:
+        return PhasedBackoffWaitStrategy.withLock(
+            PHASED_BACKOFF_SPIN_NANOS, PHASED_BACKOFF_YIELD_NANOS, TimeUnit.NANOSECONDS);
+    }
+    throw new AssertionError("Unknown wait strategy: " + waitStrategyType);
   }
 
   /**
@@ -155,7 +396,18 @@ public final class DisruptorEventQueue implements EventQueue {
    * @return the singleton {@code EventQueue} instance.
    */
   public static DisruptorEventQueue getInstance() {
-    return eventQueue;
+    return SingletonHolder.INSTANCE;
+  }
+
+  // Creates the singleton on first use, so that its consumer thread is only started if some
+  // component shares it.
+  private static final class SingletonHolder {
+    private static final DisruptorEventQueue INSTANCE =
+        create(
+            "OpenCensus.Disruptor",
+            EventQueues.BUFFER_SIZE,
+            DISRUPTOR_WAIT_STRATEGY,
+            OverflowPolicy.BLOCK);
   }
 
   /**
@@ -168,9 +420,20 @@ public final class DisruptorEventQueue implements EventQueue {
     enqueuer.enqueue(entry);
   }
 
+  /**
+   * Returns the number of entries that were dropped because of the {@link OverflowPolicy} of this
+   * queue.
+   *
+   * @return the number of dropped entries.
+   */
+  public long getDroppedEvents() {
+    return metrics.getDroppedEvents();
+  }
+
   /** Shuts down the underlying disruptor. */
   @Override
   public void shutdown() {
+    metrics.close();
     enqueuer =
         new DisruptorEnqueuer() {
           final AtomicBoolean logged = new AtomicBoolean(false);
@@ -186,6 +449,16 @@ public final class DisruptorEventQueue implements EventQueue {
     disruptor.shutdown();
   }
 
+  // Returns the number of entries in a ring buffer that were not processed yet.
+  private enum OccupancyFunction implements ToLongFunction<RingBuffer<DisruptorEvent>> {
+    INSTANCE;
+
+    @Override
+    public long applyAsLong(RingBuffer<DisruptorEvent> ringBuffer) {
+      return ringBuffer.getBufferSize() - ringBuffer.remainingCapacity();
+    }
+  }
+
   // Allows this event queue to safely shutdown by not enqueuing events on the ring buffer
   private abstract static class DisruptorEnqueuer {
 
@@ -199,6 +472,10 @@ public final class DisruptorEventQueue implements EventQueue {
     // intuitively this variable must be volatile.
     @Nullable private volatile Entry entry = null;
 
+    // The time of the enqueue of a sampled entry, see EventQueueMetrics.isSampled. Published
+    // together with the entry.
+    private long enqueueNanos;
+
     // Sets the EventQueueEntry associated with this DisruptorEvent.
     void setEntry(@Nullable Entry entry) {
       this.entry = entry;
@@ -223,15 +500,22 @@ public final class DisruptorEventQueue implements EventQueue {
 
   /**
    * Every event that gets added to {@link EventQueue} will get processed here. Just calls the
-   * underlying process() method.
+   * underlying process() method, and records the metrics of sampled entries.
    */
-  private enum DisruptorEventHandler implements EventHandler<DisruptorEvent> {
-    INSTANCE;
+  private static final class DisruptorEventHandler implements EventHandler<DisruptorEvent> {
+    private final EventQueueMetrics metrics;
+
+    private DisruptorEventHandler(EventQueueMetrics metrics) {
+      this.metrics = metrics;
+    }
 
     @Override
     public void onEvent(DisruptorEvent event, long sequence, boolean endOfBatch) {
       Entry entry = event.getEntry();
       if (entry != null) {
+        if (EventQueueMetrics.isSampled(sequence)) {
+          metrics.recordSampledEvent(entry, System.nanoTime() - event.enqueueNanos);
+        }
         entry.process();
       }
       // Remove the reference to the previous entry to allow the memory to be gc'ed.
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.impl.internal;
+
+import io.opencensus.implcore.internal.BatchingEventQueue;
+import io.opencensus.implcore.internal.EventQueue;
+import io.opencensus.implcore.internal.EventQueueFactory;
+import io.opencensus.implcore.internal.MpscArrayEventQueue;
+import io.opencensus.implcore.internal.OverflowPolicy;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Creates the {@link EventQueue}s of the components, using the implementation chosen by the {@code
+ * io.opencensus.eventQueue.implementation} system property:
+ *
+ * <ul>
+ *   <li>{@code disruptor}, the default: a {@link DisruptorEventQueue}.
+ *   <li>{@code mpsc}: a {@link MpscArrayEventQueue}, which does not need the Disruptor library.
+ *   <li>the name of a class that implements {@link EventQueueFactory}.
+ * </ul>
+ *
+ * <p>All implementations read the buffer size and overflow policy of a queue from the {@code
+ * bufferSize} and {@code overflowPolicy} properties with the prefix of the queue, falling back to
+ * the {@code io.opencensus.disruptor} ones. The prefixes, such as {@code
+ * io.opencensus.stats.disruptor}, are named after the original implementation, but apply to every
+ * implementation. {@link MpscArrayEventQueue} drops entries with any policy other than {@link
+ * OverflowPolicy#BLOCK}. If the {@code batchSize} property is greater than one, the entries of each
+ * thread are enqueued in batches of that size by a {@link BatchingEventQueue}, or after waiting for
+ * the {@code batchDelayMillis} property, 10 milliseconds by default.
+ *
+ * <p>The overflow policy and batching only apply to the queues created by {@link
+ * #createWithProperties(String, String)}, such as the stats queues. The queues created by {@link
+ * #createLosslessWithProperties}, such as the trace queue, always block when they are full and
+ * process the entries of different threads in the order they were enqueued in.
+ */
+public final class EventQueues {
+
+  private static final Logger logger = Logger.getLogger(EventQueues.class.getName());
+
+  // System property with the name of the queue implementation, or of an EventQueueFactory class.
+  static final String IMPLEMENTATION_PROPERTY = "io.opencensus.eventQueue.implementation";
+  static final String DISRUPTOR_IMPLEMENTATION = "disruptor";
+  static final String MPSC_IMPLEMENTATION = "mpsc";
+
+  // Prefix of the system properties that configure all queues, unless overridden by the prefix of
+  // a queue.
+  static final String PROPERTY_PREFIX = "io.opencensus.disruptor";
+
+  // System property suffix for the number of events that can be enqueued at any one time. If more
+  // than this are enqueued, then subsequent attempts to enqueue new entries will block. Must be a
+  // power of two.
+  static final String BUFFER_SIZE_PROPERTY = ".bufferSize";
+
+  // System property suffix for the name of the OverflowPolicy used when the queue is full.
+  static final String OVERFLOW_POLICY_PROPERTY = ".overflowPolicy";
+
+  // System property suffixes for the number of entries of a thread that are enqueued together, and
+  // how long they can wait for the batch to fill up.
+  static final String BATCH_SIZE_PROPERTY = ".batchSize";
+  static final String BATCH_DELAY_MILLIS_PROPERTY = ".batchDelayMillis";
+
+  private static final int DEFAULT_BUFFER_SIZE = 8192;
+  private static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.BLOCK;
+  private static final long DEFAULT_BATCH_DELAY_MILLIS = 10;
+
+  static final int BUFFER_SIZE = getBufferSizeProperty(PROPERTY_PREFIX, DEFAULT_BUFFER_SIZE);
+  static final OverflowPolicy OVERFLOW_POLICY =
+      getOverflowPolicyProperty(PROPERTY_PREFIX, DEFAULT_OVERFLOW_POLICY);
+  private static final int BATCH_SIZE =
+      Integer.getInteger(PROPERTY_PREFIX + BATCH_SIZE_PROPERTY, 1);
+  private static final long BATCH_DELAY_MILLIS =
+      Long.getLong(PROPERTY_PREFIX + BATCH_DELAY_MILLIS_PROPERTY, DEFAULT_BATCH_DELAY_MILLIS);
+
+  private static final EventQueueFactory FACTORY =
+      loadFactory(System.getProperty(IMPLEMENTATION_PROPERTY));
+
+  private EventQueues() {}
+
+  /**
+   * Creates a new {@link EventQueue} with its own consumer thread, configured by the system
+   * properties with the given prefix. For example, with the prefix {@code
+   * io.opencensus.stats.disruptor}, the buffer size is read from {@code
+   * io.opencensus.stats.disruptor.bufferSize}. Properties that are not set fall back to the {@code
+   * io.opencensus.disruptor} ones.
+   *
+   * <p>This lets each component size its own queue, so that the load of one component cannot delay
+   * the events of another.
+   *
+   * @param threadPrefix the name prefix of the consumer thread.
+   * @param propertyPrefix the prefix of the system properties of this queue.
+   * @return a new {@code EventQueue}.
+   */
+  public static EventQueue createWithProperties(String threadPrefix, String propertyPrefix) {
+    return createWithProperties(FACTORY, threadPrefix, propertyPrefix, true);
+  }
+
+  /**
+   * Creates a new {@link EventQueue} like {@link #createWithProperties}, but that never drops or
+   * reorders entries: the overflow policy and batching properties are ignored, and the queue blocks
+   * when it is full.
+   *
+   * <p>This is for components whose entries must not be lost independently of each other, such as
+   * the start and end events of a span: the running span store would keep a span whose end event
+   * was dropped forever, and fail to remove a span whose start event was dropped. Batches of
+   * different threads can be processed in any order, so the end event of a span could otherwise
+   * be processed before its start event.
+   *
+   * @param threadPrefix the name prefix of the consumer thread.
+   * @param propertyPrefix the prefix of the system properties of this queue.
+   * @return a new {@code EventQueue}.
+   */
+  public static EventQueue createLosslessWithProperties(
+      String threadPrefix, String propertyPrefix) {
+    return createWithProperties(FACTORY, threadPrefix, propertyPrefix, false);
+  }
+
+  // Visible for testing.
+  static EventQueue createWithProperties(
+      EventQueueFactory factory,
+      String threadPrefix,
+      String propertyPrefix,
+      boolean mayDropEntries) {
+    EventQueue queue = factory.create(threadPrefix, propertyPrefix, mayDropEntries);
+    if (!mayDropEntries) {
+      return queue;
+    }
+    int batchSize = Integer.getInteger(propertyPrefix + BATCH_SIZE_PROPERTY, BATCH_SIZE);
+    if (batchSize <= 1) {
+      return queue;
+    }
+    long batchDelayMillis =
+        Long.getLong(propertyPrefix + BATCH_DELAY_MILLIS_PROPERTY, BATCH_DELAY_MILLIS);
+    return BatchingEventQueue.create(
+        queue,
+        batchSize,
+        batchDelayMillis > 0 ? batchDelayMillis : DEFAULT_BATCH_DELAY_MILLIS,
+        TimeUnit.MILLISECONDS,
+        threadPrefix + ".Flusher");
+  }
+
+  // Returns the factory of the given implementation. Only the chosen implementation is loaded, so
+  // that the Disruptor library is not needed unless it is used.
+  static EventQueueFactory loadFactory(@Nullable String implementation) {
+    if (implementation == null || DISRUPTOR_IMPLEMENTATION.equals(implementation.trim())) {
+      return new DisruptorEventQueueFactory();
+    }
+    if (MPSC_IMPLEMENTATION.equals(implementation.trim())) {
+      return new MpscArrayEventQueueFactory();
+    }
+    try {
+      return Class.forName(implementation.trim(), true, EventQueues.class.getClassLoader())
+          .asSubclass(EventQueueFactory.class)
+          .getConstructor()
+          .newInstance();
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      logger.log(
+          Level.WARNING,
+          "Ignoring "
+              + IMPLEMENTATION_PROPERTY
+              + "="
+              + implementation
+              + ", cannot create the EventQueueFactory.",
+          e);
+      return new DisruptorEventQueueFactory();
+    }
+  }
+
+  // Returns the buffer size property with the given prefix, or the default value if it is not set
+  // or not a power of two.
+  static int getBufferSizeProperty(String propertyPrefix, int defaultValue) {
+    String property = propertyPrefix + BUFFER_SIZE_PROPERTY;
+    int bufferSize = Integer.getInteger(property, defaultValue);
+    if (!isPowerOfTwo(bufferSize)) {
+      logger.log(
+          Level.WARNING, "Ignoring " + property + "=" + bufferSize + ", not a power of two.");
+      return defaultValue;
+    }
+    return bufferSize;
+  }
+
+  static OverflowPolicy getOverflowPolicyProperty(
+      String propertyPrefix, OverflowPolicy defaultValue) {
+    return getEnumProperty(
+        propertyPrefix + OVERFLOW_POLICY_PROPERTY, OverflowPolicy.class, defaultValue);
+  }
+
+  // Returns the overflow policy of a queue with the given prefix, or BLOCK if the queue must not
+  // drop entries.
+  static OverflowPolicy getOverflowPolicyProperty(String propertyPrefix, boolean mayDropEntries) {
+    return mayDropEntries
+        ? getOverflowPolicyProperty(propertyPrefix, OVERFLOW_POLICY)
+        : OverflowPolicy.BLOCK;
+  }
+
+  static <T extends Enum<T>> T getEnumProperty(String property, Class<T> type, T defaultValue) {
+    String name = System.getProperty(property);
+    if (name == null) {
+      return defaultValue;
+    }
+    try {
+      return Enum.valueOf(type, name.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      logger.log(Level.WARNING, "Ignoring " + property + "=" + name + ", unknown value.");
+      return defaultValue;
+    }
+  }
+
+  static boolean isPowerOfTwo(int value) {
+    return value > 0 && (value & (value - 1)) == 0;
+  }
+
+  /** Creates {@link DisruptorEventQueue}s. */
+  public static final class DisruptorEventQueueFactory implements EventQueueFactory {
+
+    @Override
+    public EventQueue create(String threadPrefix, String propertyPrefix, boolean mayDropEntries) {
+      return DisruptorEventQueue.createWithProperties(threadPrefix, propertyPrefix, mayDropEntries);
+    }
+  }
+
+  /** Creates {@link MpscArrayEventQueue}s. */
+  public static final class MpscArrayEventQueueFactory implements EventQueueFactory {
+
+    @Override
+    public EventQueue create(String threadPrefix, String propertyPrefix, boolean mayDropEntries) {
+      return MpscArrayEventQueue.create(
+          threadPrefix,
+          getBufferSizeProperty(propertyPrefix, BUFFER_SIZE),
+          getOverflowPolicyProperty(propertyPrefix, mayDropEntries) != OverflowPolicy.BLOCK);
+    }
+  }
+}
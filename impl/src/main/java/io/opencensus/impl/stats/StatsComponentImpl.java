@@ -16,16 +16,157 @@
 
 package io.opencensus.impl.stats;
 
-import io.opencensus.impl.internal.DisruptorEventQueue;
+import io.opencensus.common.Duration;
+import io.opencensus.impl.internal.EventQueues;
 import io.opencensus.implcore.common.MillisClock;
+import io.opencensus.implcore.internal.EventQueue;
+import io.opencensus.implcore.stats.ExemplarPolicy;
 import io.opencensus.implcore.stats.StatsComponentImplBase;
+import io.opencensus.implcore.stats.StatsConfiguration;
 import io.opencensus.stats.StatsComponent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /** Java 7 and 8 implementation of {@link StatsComponent}. */
 public final class StatsComponentImpl extends StatsComponentImplBase {
 
+  private static final Logger logger = Logger.getLogger(StatsComponentImpl.class.getName());
+
+  // System property for the number of stats shards. Each shard gets its own EventQueue and
+  // consumer thread.
+  static final String SHARDS_PROPERTY = "io.opencensus.stats.shards";
+
+  // Prefix of the system properties that configure the queues of the stats shards, whichever the
+  // queue implementation, see EventQueues.createWithProperties.
+  static final String QUEUE_PROPERTY_PREFIX = "io.opencensus.stats.disruptor";
+
+  // The stats implementation supports at most 64 shards.
+  private static final int MAX_SHARDS = 64;
+
+  // System property that enables recording Count, Sum and LastValue cumulative views on the caller
+  // thread instead of through the queue.
+  static final String DIRECT_RECORDING_PROPERTY = "io.opencensus.stats.directRecording";
+
+  // System property for the maximum number of series of a cumulative view. Unlimited by default.
+  static final String MAX_SERIES_PER_VIEW_PROPERTY = "io.opencensus.stats.maxSeriesPerView";
+
+  // System property for how many milliseconds a series of a cumulative view can go without records
+  // before it is evicted. Series are never evicted by default.
+  static final String SERIES_TTL_MILLIS_PROPERTY = "io.opencensus.stats.seriesTtlMillis";
+
+  // System property for the number of buckets that the window of an interval view is divided into.
+  static final String INTERVAL_BUCKETS_PROPERTY = "io.opencensus.stats.intervalBuckets";
+
+  // System property for how many milliseconds the views and metrics read by an exporter are shared
+  // with the exporters that read them next. Not shared by default.
+  static final String SNAPSHOT_STALENESS_MILLIS_PROPERTY =
+      "io.opencensus.stats.snapshotStalenessMillis";
+
+  // System property for the ExemplarPolicy of distribution views: keepLatest, the default,
+  // reservoirSampling, tracedOnly or rateLimited.
+  static final String EXEMPLAR_POLICY_PROPERTY = "io.opencensus.stats.exemplarPolicy";
+
+  // System property for the minimum number of milliseconds between two exemplars of a bucket with
+  // the rateLimited ExemplarPolicy.
+  static final String EXEMPLAR_MIN_INTERVAL_MILLIS_PROPERTY =
+      "io.opencensus.stats.exemplarMinIntervalMillis";
+
+  private static final long DEFAULT_EXEMPLAR_MIN_INTERVAL_MILLIS = 1000;
+
   /** Public constructor to be used with reflection loading. */
   public StatsComponentImpl() {
-    super(DisruptorEventQueue.getInstance(), MillisClock.getInstance());
+    super(
+        createQueues(getShardsProperty()),
+        MillisClock.getInstance(),
+        createConfiguration());
+  }
+
+  static StatsConfiguration createConfiguration() {
+    return StatsConfiguration.builder()
+        .setDirectRecordingEnabled(Boolean.getBoolean(DIRECT_RECORDING_PROPERTY))
+        .setMaxSeriesPerView(Integer.getInteger(MAX_SERIES_PER_VIEW_PROPERTY, Integer.MAX_VALUE))
+        .setSeriesTtl(getMillisProperty(SERIES_TTL_MILLIS_PROPERTY))
+        .setIntervalBuckets(Integer.getInteger(INTERVAL_BUCKETS_PROPERTY, 4))
+        .setSnapshotStaleness(getMillisProperty(SNAPSHOT_STALENESS_MILLIS_PROPERTY))
+        .setExemplarPolicy(getExemplarPolicyProperty())
+        .build();
+  }
+
+  // Returns the number of shards of the system property, or 1 if it is not set or out of range.
+  static int getShardsProperty() {
+    int numShards = Integer.getInteger(SHARDS_PROPERTY, 1);
+    if (numShards <= 0 || numShards > MAX_SHARDS) {
+      logger.log(
+          Level.WARNING,
+          "Ignoring "
+              + SHARDS_PROPERTY
+              + "="
+              + numShards
+              + ", must be between 1 and "
+              + MAX_SHARDS
+              + ".");
+      return 1;
+    }
+    return numShards;
+  }
+
+  private static ExemplarPolicy getExemplarPolicyProperty() {
+    String property = System.getProperty(EXEMPLAR_POLICY_PROPERTY);
+    String name = property == null ? "keepLatest" : property.trim();
+    if (name.equalsIgnoreCase("keepLatest")) {
+      return ExemplarPolicy.keepLatest();
+    } else if (name.equalsIgnoreCase("reservoirSampling")) {
+      return ExemplarPolicy.reservoirSampling();
+    } else if (name.equalsIgnoreCase("tracedOnly")) {
+      return ExemplarPolicy.tracedOnly();
+    } else if (name.equalsIgnoreCase("rateLimited")) {
+      long minIntervalMillis =
+          Long.getLong(
+              EXEMPLAR_MIN_INTERVAL_MILLIS_PROPERTY, DEFAULT_EXEMPLAR_MIN_INTERVAL_MILLIS);
+      if (minIntervalMillis <= 0) {
+        logger.log(
+            Level.WARNING,
+            "Ignoring "
+                + EXEMPLAR_MIN_INTERVAL_MILLIS_PROPERTY
+                + "="
+                + minIntervalMillis
+                + ", must be positive.");
+        minIntervalMillis = DEFAULT_EXEMPLAR_MIN_INTERVAL_MILLIS;
+      }
+      return ExemplarPolicy.rateLimited(Duration.fromMillis(minIntervalMillis));
+    }
+    logger.log(
+        Level.WARNING, "Ignoring " + EXEMPLAR_POLICY_PROPERTY + "=" + name + ", unknown policy.");
+    return ExemplarPolicy.keepLatest();
+  }
+
+  // Returns the duration in milliseconds of the given system property, or zero if it is not set.
+  private static Duration getMillisProperty(String property) {
+    long millis = Long.getLong(property, 0L);
+    if (millis < 0) {
+      logger.log(Level.WARNING, "Ignoring " + property + "=" + millis + ", must not be negative.");
+      return Duration.create(0, 0);
+    }
+    return Duration.fromMillis(millis);
+  }
+
+  // Stats do not share a queue with the other components, so that a burst of spans cannot delay
+  // stats aggregation.
+  static List<EventQueue> createQueues(int numShards) {
+    if (numShards <= 1) {
+      return Collections.<EventQueue>singletonList(
+          EventQueues.createWithProperties(
+              "OpenCensus.Disruptor.Stats", QUEUE_PROPERTY_PREFIX));
+    }
+    List<EventQueue> queues = new ArrayList<>(numShards);
+    for (int i = 0; i < numShards; i++) {
+      queues.add(
+          EventQueues.createWithProperties(
+              "OpenCensus.Disruptor.Stats" + i, QUEUE_PROPERTY_PREFIX));
+    }
+    return queues;
   }
 }
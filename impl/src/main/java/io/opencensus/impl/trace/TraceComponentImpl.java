@@ -17,7 +17,7 @@
 package io.opencensus.impl.trace;
 
 import io.opencensus.common.Clock;
-import io.opencensus.impl.internal.DisruptorEventQueue;
+import io.opencensus.impl.internal.EventQueues;
 import io.opencensus.impl.trace.internal.ThreadLocalRandomHandler;
 import io.opencensus.implcore.common.MillisClock;
 import io.opencensus.implcore.trace.TraceComponentImplBase;
@@ -29,6 +29,10 @@ import io.opencensus.trace.propagation.PropagationComponent;
 
 /** Java 7 and 8 implementation of the {@link TraceComponent}. */
 public final class TraceComponentImpl extends TraceComponent {
+  // Prefix of the system properties that configure the queue of span events, whichever the queue
+  // implementation, see EventQueues.createWithProperties.
+  private static final String QUEUE_PROPERTY_PREFIX = "io.opencensus.trace.disruptor";
+
   private final TraceComponentImplBase traceComponentImplBase;
 
   /** Public constructor to be used with reflection loading. */
@@ -37,7 +41,10 @@ public final class TraceComponentImpl extends TraceComponent {
         new TraceComponentImplBase(
             MillisClock.getInstance(),
             new ThreadLocalRandomHandler(),
-            DisruptorEventQueue.getInstance());
+            // Span start and end events must not be dropped or reordered.
+            EventQueues.createLosslessWithProperties(
+                "OpenCensus.Disruptor.Trace", QUEUE_PROPERTY_PREFIX),
+            /* supportInProcessStores= */ true);
   }
 
   @Override
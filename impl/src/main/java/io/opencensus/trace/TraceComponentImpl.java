@@ -17,7 +17,7 @@
 package io.opencensus.trace;
 
 import io.opencensus.common.Clock;
-import io.opencensus.impl.internal.DisruptorEventQueue;
+import io.opencensus.impl.internal.EventQueues;
 import io.opencensus.impl.trace.internal.ThreadLocalRandomHandler;
 import io.opencensus.implcore.common.MillisClock;
 import io.opencensus.implcore.trace.TraceComponentImplBase;
@@ -30,6 +30,10 @@ import io.opencensus.trace.propagation.PropagationComponent;
 // compatibility, so that it can be loaded by opencensus-api 0.5.
 @Deprecated
 public final class TraceComponentImpl extends TraceComponent {
+  // Prefix of the system properties that configure the queue of span events, whichever the queue
+  // implementation, see EventQueues.createWithProperties.
+  private static final String QUEUE_PROPERTY_PREFIX = "io.opencensus.trace.disruptor";
+
   private final TraceComponentImplBase traceComponentImplBase;
 
   /** Public constructor to be used with reflection loading. */
@@ -38,7 +42,10 @@ public final class TraceComponentImpl extends TraceComponent {
         new TraceComponentImplBase(
             MillisClock.getInstance(),
             new ThreadLocalRandomHandler(),
-            DisruptorEventQueue.getInstance());
+            // Span start and end events must not be dropped or reordered.
+            EventQueues.createLosslessWithProperties(
+                "OpenCensus.Disruptor.Trace", QUEUE_PROPERTY_PREFIX),
+            /* supportInProcessStores= */ true);
   }
 
   @Override
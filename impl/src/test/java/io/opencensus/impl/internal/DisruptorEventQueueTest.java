@@ -18,7 +18,22 @@ package io.opencensus.impl.internal;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import io.opencensus.impl.internal.DisruptorEventQueue.WaitStrategyType;
+import io.opencensus.implcore.internal.BatchingEventQueue;
 import io.opencensus.implcore.internal.EventQueue;
+import io.opencensus.implcore.internal.EventQueueMetrics;
+import io.opencensus.implcore.internal.OverflowPolicy;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.Metrics;
+import io.opencensus.metrics.export.Metric;
+import io.opencensus.metrics.export.MetricProducer;
+import io.opencensus.metrics.export.TimeSeries;
+import io.opencensus.metrics.export.Value;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -26,6 +41,12 @@ import org.junit.runners.JUnit4;
 /** Unit tests for {@link DisruptorEventQueue}. */
 @RunWith(JUnit4.class)
 public class DisruptorEventQueueTest {
+  private static final String OCCUPANCY = "opencensus.io/event_queue/occupancy";
+  private static final String DROPPED_EVENTS = "opencensus.io/event_queue/dropped_events";
+  private static final String BLOCKED_TIME = "opencensus.io/event_queue/blocked_time";
+  private static final String PROCESSED_EVENTS = "opencensus.io/event_queue/processed_events";
+  private static final String LATENCY = "opencensus.io/event_queue/latency";
+
   // Simple class to use that keeps an incrementing counter. Will fail with an assertion if
   // increment is used from multiple threads, or if the stored value is different from that expected
   // by the caller.
@@ -71,6 +92,24 @@ public class DisruptorEventQueueTest {
     }
   }
 
+  // EventQueueEntry that blocks the consumer thread until it is released.
+  private static class BlockingEvent implements EventQueue.Entry {
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    @Override
+    public void process() {
+      try {
+        latch.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    void release() {
+      latch.countDown();
+    }
+  }
+
   @Test
   public void incrementOnce() {
     Counter counter = new Counter();
@@ -101,4 +140,271 @@ public class DisruptorEventQueueTest {
     }
     counter.check(tenK);
   }
+
+  @Test
+  public void incrementOnSeparateInstance() {
+    DisruptorEventQueue queue = DisruptorEventQueue.create("OpenCensus.Disruptor.Test");
+    try {
+      assertThat(queue).isNotSameAs(DisruptorEventQueue.getInstance());
+      Counter counter = new Counter();
+      queue.enqueue(new IncrementEvent(counter));
+      // Sleep briefly, to allow background operations to complete.
+      try {
+        Thread.sleep(500);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      counter.check(1);
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  @Test
+  public void incrementWithEachWaitStrategy() {
+    for (WaitStrategyType waitStrategyType : WaitStrategyType.values()) {
+      DisruptorEventQueue queue =
+          DisruptorEventQueue.create("OpenCensus.Disruptor.Test", 16, waitStrategyType);
+      try {
+        Counter counter = new Counter();
+        // More entries than slots, so that the producer has to wait for the consumer.
+        for (int i = 0; i < 100; i++) {
+          queue.enqueue(new IncrementEvent(counter));
+        }
+        // Sleep briefly, to allow background operations to complete.
+        try {
+          Thread.sleep(500);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        counter.check(100);
+      } finally {
+        queue.shutdown();
+      }
+    }
+  }
+
+  @Test
+  public void dropNewestWhenFull() {
+    DisruptorEventQueue queue =
+        DisruptorEventQueue.create(
+            "OpenCensus.Disruptor.DropNewest",
+            4,
+            WaitStrategyType.BLOCKING,
+            OverflowPolicy.DROP_NEWEST);
+    BlockingEvent blockingEvent = new BlockingEvent();
+    try {
+      Counter counter = new Counter();
+      queue.enqueue(blockingEvent);
+      // The blocked entry keeps its slot until it is processed, so only three more fit.
+      for (int i = 0; i < 10; i++) {
+        queue.enqueue(new IncrementEvent(counter));
+      }
+      assertThat(queue.getDroppedEvents()).isEqualTo(7);
+      assertThat(getExportedValue(DROPPED_EVENTS, "OpenCensus.Disruptor.DropNewest"))
+          .isEqualTo(Value.longValue(7));
+      blockingEvent.release();
+      // Sleep briefly, to allow background operations to complete.
+      try {
+        Thread.sleep(500);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      counter.check(3);
+    } finally {
+      blockingEvent.release();
+      queue.shutdown();
+    }
+    // The time series is removed on shutdown.
+    assertThat(getExportedValue(DROPPED_EVENTS, "OpenCensus.Disruptor.DropNewest")).isNull();
+  }
+
+  @Test
+  public void shedBeforeFull() {
+    DisruptorEventQueue queue =
+        DisruptorEventQueue.create(
+            "OpenCensus.Disruptor.Shed", 64, WaitStrategyType.BLOCKING, OverflowPolicy.SHED);
+    BlockingEvent blockingEvent = new BlockingEvent();
+    try {
+      Counter counter = new Counter();
+      queue.enqueue(blockingEvent);
+      for (int i = 0; i < 100; i++) {
+        queue.enqueue(new IncrementEvent(counter));
+      }
+      // At most 63 entries fit, and some are dropped before the buffer is full.
+      assertThat(queue.getDroppedEvents()).isGreaterThan(100L - 63);
+      blockingEvent.release();
+      // Sleep briefly, to allow background operations to complete.
+      try {
+        Thread.sleep(500);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      counter.check(100 - (int) queue.getDroppedEvents());
+    } finally {
+      blockingEvent.release();
+      queue.shutdown();
+    }
+  }
+
+  @Test
+  public void blockWhenFull() {
+    DisruptorEventQueue queue =
+        DisruptorEventQueue.create(
+            "OpenCensus.Disruptor.Block", 4, WaitStrategyType.BLOCKING, OverflowPolicy.BLOCK);
+    final BlockingEvent blockingEvent = new BlockingEvent();
+    try {
+      Counter counter = new Counter();
+      queue.enqueue(blockingEvent);
+      for (int i = 0; i < 3; i++) {
+        queue.enqueue(new IncrementEvent(counter));
+      }
+      Thread releaseThread =
+          new Thread() {
+            @Override
+            public void run() {
+              try {
+                Thread.sleep(100);
+              } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+              }
+              blockingEvent.release();
+            }
+          };
+      releaseThread.start();
+      // Blocks until the blocking entry was processed.
+      queue.enqueue(new IncrementEvent(counter));
+      assertThat(queue.getDroppedEvents()).isEqualTo(0);
+      Value blockedTime = getExportedValue(BLOCKED_TIME, "OpenCensus.Disruptor.Block");
+      assertThat(blockedTime).isNotNull();
+      assertThat(blockedTime).isNotEqualTo(Value.longValue(0));
+    } finally {
+      blockingEvent.release();
+      queue.shutdown();
+    }
+  }
+
+  @Test
+  public void exportSampledMetrics() {
+    DisruptorEventQueue queue =
+        DisruptorEventQueue.create(
+            "OpenCensus.Disruptor.Metrics", 1024, WaitStrategyType.BLOCKING, OverflowPolicy.BLOCK);
+    try {
+      Counter counter = new Counter();
+      for (int i = 0; i < 2 * EventQueueMetrics.SAMPLE_INTERVAL; i++) {
+        queue.enqueue(new IncrementEvent(counter));
+      }
+      // Sleep briefly, to allow background operations to complete.
+      try {
+        Thread.sleep(500);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      assertThat(getExportedValue(OCCUPANCY, "OpenCensus.Disruptor.Metrics"))
+          .isEqualTo(Value.longValue(0));
+      assertThat(
+              getExportedValue(PROCESSED_EVENTS, "OpenCensus.Disruptor.Metrics", "IncrementEvent"))
+          .isEqualTo(Value.longValue(2 * EventQueueMetrics.SAMPLE_INTERVAL));
+      // Two entries were sampled, and all latencies are counted in the unbounded bucket.
+      assertThat(getExportedValue(LATENCY, "OpenCensus.Disruptor.Metrics", "+Inf"))
+          .isEqualTo(Value.longValue(2));
+    } finally {
+      queue.shutdown();
+    }
+    assertThat(getExportedValue(OCCUPANCY, "OpenCensus.Disruptor.Metrics")).isNull();
+  }
+
+  @Test
+  public void exportSampledMetrics_CountsBatchedEntriesByType() {
+    BatchingEventQueue queue =
+        BatchingEventQueue.create(
+            DisruptorEventQueue.create(
+                "OpenCensus.Disruptor.BatchMetrics",
+                1024,
+                WaitStrategyType.BLOCKING,
+                OverflowPolicy.BLOCK),
+            4,
+            1,
+            TimeUnit.HOURS,
+            "OpenCensus.Disruptor.BatchMetrics.Flusher");
+    try {
+      Counter counter = new Counter();
+      // One batch in SAMPLE_INTERVAL is sampled, with 4 entries.
+      for (int i = 0; i < 4 * EventQueueMetrics.SAMPLE_INTERVAL; i++) {
+        queue.enqueue(new IncrementEvent(counter));
+      }
+      // Sleep briefly, to allow background operations to complete.
+      try {
+        Thread.sleep(500);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      assertThat(
+              getExportedValue(
+                  PROCESSED_EVENTS, "OpenCensus.Disruptor.BatchMetrics", "IncrementEvent"))
+          .isEqualTo(Value.longValue(4 * EventQueueMetrics.SAMPLE_INTERVAL));
+      assertThat(getExportedValue(PROCESSED_EVENTS, "OpenCensus.Disruptor.BatchMetrics", "Batch"))
+          .isNull();
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  @Nullable
+  private static Value getExportedValue(String metricName, String... labelValues) {
+    List<LabelValue> expectedLabelValues = new ArrayList<>();
+    for (String labelValue : labelValues) {
+      expectedLabelValues.add(LabelValue.create(labelValue));
+    }
+    for (MetricProducer producer :
+        Metrics.getExportComponent().getMetricProducerManager().getAllMetricProducer()) {
+      for (Metric metric : producer.getMetrics()) {
+        if (!metric.getMetricDescriptor().getName().equals(metricName)) {
+          continue;
+        }
+        for (TimeSeries timeSeries : metric.getTimeSeriesList()) {
+          if (timeSeries.getLabelValues().equals(expectedLabelValues)) {
+            return timeSeries.getPoints().get(0).getValue();
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void createWithProperties_IgnoresInvalidValues() {
+    System.setProperty("io.opencensus.test.disruptor.bufferSize", "1000");
+    System.setProperty("io.opencensus.test.disruptor.waitStrategy", "unknown");
+    System.setProperty("io.opencensus.test.disruptor.overflowPolicy", "drop_newest");
+    EventQueue queue;
+    try {
+      queue =
+          DisruptorEventQueue.createWithProperties(
+              "OpenCensus.Disruptor.Properties", "io.opencensus.test.disruptor");
+    } finally {
+      System.clearProperty("io.opencensus.test.disruptor.bufferSize");
+      System.clearProperty("io.opencensus.test.disruptor.waitStrategy");
+      System.clearProperty("io.opencensus.test.disruptor.overflowPolicy");
+    }
+    try {
+      Counter counter = new Counter();
+      queue.enqueue(new IncrementEvent(counter));
+      // Sleep briefly, to allow background operations to complete.
+      try {
+        Thread.sleep(500);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      counter.check(1);
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void create_DisallowBufferSizeNotPowerOfTwo() {
+    DisruptorEventQueue.create(
+        "OpenCensus.Disruptor.Test", 1000, WaitStrategyType.BLOCKING);
+  }
 }
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.impl.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.impl.internal.EventQueues.DisruptorEventQueueFactory;
+import io.opencensus.impl.internal.EventQueues.MpscArrayEventQueueFactory;
+import io.opencensus.implcore.internal.BatchingEventQueue;
+import io.opencensus.implcore.internal.EventQueue;
+import io.opencensus.implcore.internal.EventQueueFactory;
+import io.opencensus.implcore.internal.MpscArrayEventQueue;
+import io.opencensus.implcore.internal.OverflowPolicy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link EventQueues}. */
+@RunWith(JUnit4.class)
+public class EventQueuesTest {
+  private static final String PROPERTY_PREFIX = "io.opencensus.test.eventQueue";
+
+  /** {@link EventQueueFactory} loaded by name in the tests. */
+  public static final class TestEventQueueFactory implements EventQueueFactory {
+    @Override
+    public EventQueue create(String threadPrefix, String propertyPrefix, boolean mayDropEntries) {
+      return new EventQueue() {
+        @Override
+        public void enqueue(Entry entry) {
+          entry.process();
+        }
+
+        @Override
+        public void shutdown() {}
+      };
+    }
+  }
+
+  // EventQueueEntry that counts down a latch when it is processed.
+  private static final class CountDownEvent implements EventQueue.Entry {
+    private final CountDownLatch latch;
+
+    CountDownEvent(CountDownLatch latch) {
+      this.latch = latch;
+    }
+
+    @Override
+    public void process() {
+      latch.countDown();
+    }
+  }
+
+  @Test
+  public void loadFactory_DefaultIsDisruptor() {
+    assertThat(EventQueues.loadFactory(null)).isInstanceOf(DisruptorEventQueueFactory.class);
+    assertThat(EventQueues.loadFactory("disruptor"))
+        .isInstanceOf(DisruptorEventQueueFactory.class);
+  }
+
+  @Test
+  public void loadFactory_Mpsc() {
+    assertThat(EventQueues.loadFactory("mpsc")).isInstanceOf(MpscArrayEventQueueFactory.class);
+  }
+
+  @Test
+  public void loadFactory_ClassName() {
+    assertThat(EventQueues.loadFactory(TestEventQueueFactory.class.getName()))
+        .isInstanceOf(TestEventQueueFactory.class);
+  }
+
+  @Test
+  public void loadFactory_FallsBackToDisruptor() {
+    assertThat(EventQueues.loadFactory("io.opencensus.test.UnknownFactory"))
+        .isInstanceOf(DisruptorEventQueueFactory.class);
+    assertThat(EventQueues.loadFactory(String.class.getName()))
+        .isInstanceOf(DisruptorEventQueueFactory.class);
+  }
+
+  @Test
+  public void createWithProperties_Mpsc() throws InterruptedException {
+    System.setProperty(PROPERTY_PREFIX + ".bufferSize", "16");
+    EventQueue queue;
+    try {
+      queue =
+          EventQueues.createWithProperties(
+              new MpscArrayEventQueueFactory(),
+              "OpenCensus.Mpsc.Properties",
+              PROPERTY_PREFIX,
+              true);
+    } finally {
+      System.clearProperty(PROPERTY_PREFIX + ".bufferSize");
+    }
+    try {
+      assertThat(queue).isInstanceOf(MpscArrayEventQueue.class);
+      CountDownLatch latch = new CountDownLatch(100);
+      for (int i = 0; i < 100; i++) {
+        queue.enqueue(new CountDownEvent(latch));
+      }
+      assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  @Test
+  public void getOverflowPolicyProperty_BlocksIfEntriesMustNotBeDropped() {
+    System.setProperty(PROPERTY_PREFIX + ".overflowPolicy", "drop_newest");
+    try {
+      assertThat(EventQueues.getOverflowPolicyProperty(PROPERTY_PREFIX, true))
+          .isEqualTo(OverflowPolicy.DROP_NEWEST);
+      assertThat(EventQueues.getOverflowPolicyProperty(PROPERTY_PREFIX, false))
+          .isEqualTo(OverflowPolicy.BLOCK);
+    } finally {
+      System.clearProperty(PROPERTY_PREFIX + ".overflowPolicy");
+    }
+  }
+
+  @Test
+  public void createWithProperties_LosslessIgnoresOverflowPolicy() throws InterruptedException {
+    System.setProperty(PROPERTY_PREFIX + ".bufferSize", "16");
+    System.setProperty(PROPERTY_PREFIX + ".overflowPolicy", "drop_newest");
+    EventQueue queue;
+    try {
+      queue =
+          EventQueues.createWithProperties(
+              new DisruptorEventQueueFactory(),
+              "OpenCensus.Disruptor.Lossless",
+              PROPERTY_PREFIX,
+              false);
+    } finally {
+      System.clearProperty(PROPERTY_PREFIX + ".bufferSize");
+      System.clearProperty(PROPERTY_PREFIX + ".overflowPolicy");
+    }
+    try {
+      // Blocks the consumer until the producer has filled the ring buffer several times over.
+      final CountDownLatch release = new CountDownLatch(1);
+      queue.enqueue(
+          new EventQueue.Entry() {
+            @Override
+            public void process() {
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            }
+          });
+      final CountDownLatch latch = new CountDownLatch(64);
+      final EventQueue producerQueue = queue;
+      Thread producer =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  for (int i = 0; i < 64; i++) {
+                    producerQueue.enqueue(new CountDownEvent(latch));
+                  }
+                }
+              });
+      producer.start();
+      Thread.sleep(200);
+      // The producer waits for the consumer instead of dropping entries.
+      assertThat(producer.isAlive()).isTrue();
+      release.countDown();
+      assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+      producer.join();
+      assertThat(((DisruptorEventQueue) queue).getDroppedEvents()).isEqualTo(0L);
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  @Test
+  public void createWithProperties_Batching() throws InterruptedException {
+    System.setProperty(PROPERTY_PREFIX + ".batchSize", "8");
+    EventQueue queue;
+    try {
+      queue =
+          EventQueues.createWithProperties(
+              new DisruptorEventQueueFactory(),
+              "OpenCensus.Disruptor.Batching",
+              PROPERTY_PREFIX,
+              true);
+    } finally {
+      System.clearProperty(PROPERTY_PREFIX + ".batchSize");
+    }
+    try {
+      assertThat(queue).isInstanceOf(BatchingEventQueue.class);
+      CountDownLatch latch = new CountDownLatch(20);
+      for (int i = 0; i < 20; i++) {
+        queue.enqueue(new CountDownEvent(latch));
+      }
+      ((BatchingEventQueue) queue).flush();
+      assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  @Test
+  public void createWithProperties_LosslessIgnoresBatching() {
+    System.setProperty(PROPERTY_PREFIX + ".batchSize", "8");
+    EventQueue queue;
+    try {
+      queue =
+          EventQueues.createWithProperties(
+              new DisruptorEventQueueFactory(),
+              "OpenCensus.Disruptor.LosslessBatching",
+              PROPERTY_PREFIX,
+              false);
+    } finally {
+      System.clearProperty(PROPERTY_PREFIX + ".batchSize");
+    }
+    try {
+      // Batches of different threads are not processed in order, which would let the end event of
+      // a span be processed before its start event.
+      assertThat(queue).isInstanceOf(DisruptorEventQueue.class);
+    } finally {
+      queue.shutdown();
+    }
+  }
+}
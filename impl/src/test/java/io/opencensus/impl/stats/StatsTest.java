@@ -18,10 +18,16 @@ package io.opencensus.impl.stats;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import io.opencensus.common.Duration;
+import io.opencensus.impl.internal.DisruptorEventQueue;
+import io.opencensus.implcore.internal.EventQueue;
+import io.opencensus.implcore.stats.ExemplarPolicy;
 import io.opencensus.implcore.stats.StatsRecorderImpl;
 import io.opencensus.implcore.stats.ViewManagerImpl;
 import io.opencensus.stats.Stats;
 import io.opencensus.stats.StatsComponent;
+import java.util.HashSet;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -38,4 +44,107 @@ public final class StatsTest {
   public void getViewManager() {
     assertThat(Stats.getViewManager()).isInstanceOf(ViewManagerImpl.class);
   }
+
+  @Test
+  public void getShardsProperty() {
+    assertThat(StatsComponentImpl.getShardsProperty()).isEqualTo(1);
+    System.setProperty(StatsComponentImpl.SHARDS_PROPERTY, "8");
+    try {
+      assertThat(StatsComponentImpl.getShardsProperty()).isEqualTo(8);
+    } finally {
+      System.clearProperty(StatsComponentImpl.SHARDS_PROPERTY);
+    }
+  }
+
+  @Test
+  public void getShardsProperty_IgnoresOutOfRangeValues() {
+    for (String value : new String[] {"0", "-4", "65"}) {
+      System.setProperty(StatsComponentImpl.SHARDS_PROPERTY, value);
+      try {
+        assertThat(StatsComponentImpl.getShardsProperty()).isEqualTo(1);
+      } finally {
+        System.clearProperty(StatsComponentImpl.SHARDS_PROPERTY);
+      }
+    }
+  }
+
+  @Test
+  public void createConfiguration_SnapshotStaleness() {
+    assertThat(StatsComponentImpl.createConfiguration().getSnapshotStaleness())
+        .isEqualTo(Duration.create(0, 0));
+    System.setProperty(StatsComponentImpl.SNAPSHOT_STALENESS_MILLIS_PROPERTY, "4500");
+    try {
+      assertThat(StatsComponentImpl.createConfiguration().getSnapshotStaleness())
+          .isEqualTo(Duration.fromMillis(4500));
+    } finally {
+      System.clearProperty(StatsComponentImpl.SNAPSHOT_STALENESS_MILLIS_PROPERTY);
+    }
+  }
+
+  @Test
+  public void createConfiguration_IgnoresNegativeSnapshotStaleness() {
+    System.setProperty(StatsComponentImpl.SNAPSHOT_STALENESS_MILLIS_PROPERTY, "-1");
+    try {
+      assertThat(StatsComponentImpl.createConfiguration().getSnapshotStaleness())
+          .isEqualTo(Duration.create(0, 0));
+    } finally {
+      System.clearProperty(StatsComponentImpl.SNAPSHOT_STALENESS_MILLIS_PROPERTY);
+    }
+  }
+
+  @Test
+  public void createConfiguration_ExemplarPolicy() {
+    assertThat(StatsComponentImpl.createConfiguration().getExemplarPolicy())
+        .isSameAs(ExemplarPolicy.keepLatest());
+    System.setProperty(StatsComponentImpl.EXEMPLAR_POLICY_PROPERTY, "tracedOnly");
+    try {
+      assertThat(StatsComponentImpl.createConfiguration().getExemplarPolicy())
+          .isSameAs(ExemplarPolicy.tracedOnly());
+    } finally {
+      System.clearProperty(StatsComponentImpl.EXEMPLAR_POLICY_PROPERTY);
+    }
+  }
+
+  @Test
+  public void createConfiguration_RateLimitedExemplarPolicy() {
+    System.setProperty(StatsComponentImpl.EXEMPLAR_POLICY_PROPERTY, "rateLimited");
+    System.setProperty(StatsComponentImpl.EXEMPLAR_MIN_INTERVAL_MILLIS_PROPERTY, "0");
+    try {
+      assertThat(StatsComponentImpl.createConfiguration().getExemplarPolicy())
+          .isNotSameAs(ExemplarPolicy.keepLatest());
+    } finally {
+      System.clearProperty(StatsComponentImpl.EXEMPLAR_POLICY_PROPERTY);
+      System.clearProperty(StatsComponentImpl.EXEMPLAR_MIN_INTERVAL_MILLIS_PROPERTY);
+    }
+  }
+
+  @Test
+  public void createConfiguration_IgnoresUnknownExemplarPolicy() {
+    System.setProperty(StatsComponentImpl.EXEMPLAR_POLICY_PROPERTY, "unknown");
+    try {
+      assertThat(StatsComponentImpl.createConfiguration().getExemplarPolicy())
+          .isSameAs(ExemplarPolicy.keepLatest());
+    } finally {
+      System.clearProperty(StatsComponentImpl.EXEMPLAR_POLICY_PROPERTY);
+    }
+  }
+
+  @Test
+  public void createQueues_SingleShardUsesOwnQueue() {
+    List<EventQueue> queues = StatsComponentImpl.createQueues(1);
+    assertThat(queues).hasSize(1);
+    assertThat(queues).doesNotContain(DisruptorEventQueue.getInstance());
+    queues.get(0).shutdown();
+  }
+
+  @Test
+  public void createQueues_OneQueuePerShard() {
+    List<EventQueue> queues = StatsComponentImpl.createQueues(3);
+    assertThat(queues).hasSize(3);
+    assertThat(new HashSet<EventQueue>(queues)).hasSize(3);
+    assertThat(queues).doesNotContain(DisruptorEventQueue.getInstance());
+    for (EventQueue queue : queues) {
+      queue.shutdown();
+    }
+  }
 }
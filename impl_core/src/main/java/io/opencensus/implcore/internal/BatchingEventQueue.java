@@ -0,0 +1,217 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * An {@link EventQueue} that collects the entries of each thread in a small buffer, and enqueues
+ * the whole buffer as one entry of another queue. This amortizes the cost of publishing to the
+ * other queue, such as the contended sequence of a multi-producer ring buffer, over several
+ * entries.
+ *
+ * <p>The buffer of a thread is enqueued when it is full, when {@link #flush()} is called from the
+ * thread, and by a background thread once the entries waited for about the maximum delay. The
+ * entries of one thread are processed in order; entries of different threads may be processed in
+ * a different order than they were enqueued in.
+ */
+@ThreadSafe
+public final class BatchingEventQueue implements EventQueue {
+
+  private final EventQueue delegate;
+  private final int maxBatchSize;
+  private final ScheduledExecutorService flusher;
+
+  // The buffers of all threads, so that the flusher can enqueue them.
+  private final Set<Buffer> buffers =
+      Collections.newSetFromMap(new ConcurrentHashMap<Buffer, Boolean>());
+
+  private final ThreadLocal<Buffer> threadBuffer =
+      new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+          Buffer buffer = new Buffer(Thread.currentThread());
+          buffers.add(buffer);
+          return buffer;
+        }
+      };
+
+  private BatchingEventQueue(
+      EventQueue delegate, int maxBatchSize, long maxDelay, TimeUnit unit, String threadPrefix) {
+    this.delegate = delegate;
+    this.maxBatchSize = maxBatchSize;
+    ScheduledThreadPoolExecutor flusher =
+        new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory(threadPrefix));
+    flusher.scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            flushAll();
+          }
+        },
+        maxDelay,
+        maxDelay,
+        unit);
+    this.flusher = flusher;
+  }
+
+  /**
+   * Creates a new {@code BatchingEventQueue}.
+   *
+   * @param delegate the queue that the batches are enqueued to.
+   * @param maxBatchSize the number of entries of a thread that are enqueued together.
+   * @param maxDelay how long entries can wait in the buffer of a thread, approximately.
+   * @param unit the unit of {@code maxDelay}.
+   * @param threadPrefix the name prefix of the thread that enqueues the buffers of idle threads.
+   * @return a new {@code BatchingEventQueue}.
+   * @throws IllegalArgumentException if {@code maxBatchSize} or {@code maxDelay} is not positive.
+   */
+  public static BatchingEventQueue create(
+      EventQueue delegate, int maxBatchSize, long maxDelay, TimeUnit unit, String threadPrefix) {
+    checkNotNull(delegate, "delegate");
+    checkArgument(maxBatchSize > 0, "maxBatchSize should be positive.");
+    checkArgument(maxDelay > 0, "maxDelay should be positive.");
+    checkNotNull(unit, "unit");
+    checkNotNull(threadPrefix, "threadPrefix");
+    return new BatchingEventQueue(delegate, maxBatchSize, maxDelay, unit, threadPrefix);
+  }
+
+  @Override
+  public void enqueue(Entry entry) {
+    threadBuffer.get().add(entry);
+  }
+
+  /** Enqueues the buffered entries of the current thread. */
+  public void flush() {
+    threadBuffer.get().flush();
+  }
+
+  /** Enqueues the buffered entries of all threads. */
+  public void flushAll() {
+    for (Buffer buffer : buffers) {
+      buffer.flush();
+      if (buffer.isThreadDead()) {
+        // The thread cannot add entries anymore, and its last entries were just enqueued.
+        buffers.remove(buffer);
+      }
+    }
+  }
+
+  /** Enqueues the buffered entries of all threads, and shuts down the other queue. */
+  @Override
+  public void shutdown() {
+    flusher.shutdown();
+    flushAll();
+    delegate.shutdown();
+  }
+
+  // The entries of one thread that were not enqueued yet. It is locked by its thread and by the
+  // flusher, which is uncontended most of the time. Batches are taken from the buffer under its
+  // lock, but enqueued under enqueueLock only, so that a thread can keep adding entries while the
+  // flusher waits for room in the other queue. Taking and enqueueing a batch are done under the
+  // same enqueueLock, so that the batches of one thread stay in order.
+  private final class Buffer {
+    private final WeakReference<Thread> thread;
+    private final Object enqueueLock = new Object();
+
+    @GuardedBy("this")
+    private Entry[] entries = new Entry[maxBatchSize];
+
+    @GuardedBy("this")
+    private int size = 0;
+
+    private Buffer(Thread thread) {
+      this.thread = new WeakReference<Thread>(thread);
+    }
+
+    private void add(Entry entry) {
+      boolean full;
+      synchronized (this) {
+        entries[size++] = entry;
+        full = size == maxBatchSize;
+      }
+      // Only the thread of the buffer adds entries, so the buffer cannot overflow before this.
+      if (full) {
+        flush();
+      }
+    }
+
+    private void flush() {
+      synchronized (enqueueLock) {
+        Batch batch = takeBatch();
+        if (batch != null) {
+          delegate.enqueue(batch);
+        }
+      }
+    }
+
+    @Nullable
+    private synchronized Batch takeBatch() {
+      if (size == 0) {
+        return null;
+      }
+      Batch batch = new Batch(entries, size);
+      entries = new Entry[maxBatchSize];
+      size = 0;
+      return batch;
+    }
+
+    private boolean isThreadDead() {
+      Thread thread = this.thread.get();
+      return thread == null || !thread.isAlive();
+    }
+  }
+
+  // The entries of one thread, processed together. EventQueueMetrics counts them by their own
+  // classes.
+  static final class Batch implements Entry {
+    private final Entry[] entries;
+    private final int size;
+
+    private Batch(Entry[] entries, int size) {
+      this.entries = entries;
+      this.size = size;
+    }
+
+    int size() {
+      return size;
+    }
+
+    Entry get(int index) {
+      return entries[index];
+    }
+
+    @Override
+    public void process() {
+      for (int i = 0; i < size; i++) {
+        entries[i].process();
+      }
+    }
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.internal;
+
+/**
+ * Creates the {@link EventQueue}s of the components. Implementations are chosen at startup, and
+ * must have a public no-argument constructor.
+ */
+public interface EventQueueFactory {
+
+  /**
+   * Creates a new {@link EventQueue} with its own consumer thread, if it has one.
+   *
+   * @param threadPrefix the name prefix of the consumer thread, also the name of the queue in its
+   *     metrics.
+   * @param propertyPrefix the prefix of the system properties that configure the queue, such as
+   *     {@code io.opencensus.stats.disruptor}.
+   * @param mayDropEntries whether the queue may drop entries when it is full, if configured to. If
+   *     {@code false}, the queue must wait for the consumer instead, for components such as trace
+   *     whose entries come in pairs that must not be split.
+   * @return a new {@code EventQueue}.
+   */
+  EventQueue create(String threadPrefix, String propertyPrefix, boolean mayDropEntries);
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.internal;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.opencensus.common.ToLongFunction;
+import io.opencensus.metrics.DerivedLongGauge;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.Metrics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Metrics of an {@link EventQueue}, exported as derived gauges of the {@link
+ * Metrics#getMetricRegistry() MetricRegistry} with the name of the queue as the {@code queue}
+ * label:
+ *
+ * <ul>
+ *   <li>{@code opencensus.io/event_queue/occupancy}: the number of entries waiting in the queue.
+ *   <li>{@code opencensus.io/event_queue/dropped_events}: the number of entries dropped because the
+ *       queue was full.
+ *   <li>{@code opencensus.io/event_queue/blocked_time}: the nanoseconds that producers spent
+ *       waiting for space in the queue.
+ *   <li>{@code opencensus.io/event_queue/processed_events}: the number of processed entries, by
+ *       entry class in the {@code type} label. The entries of the batches of a {@link
+ *       BatchingEventQueue} are counted by their own classes.
+ *   <li>{@code opencensus.io/event_queue/latency}: the number of processed entries whose time
+ *       between enqueue and processing was at most the {@code le} label, in microseconds.
+ * </ul>
+ *
+ * <p>Only one entry in {@link #SAMPLE_INTERVAL} is timed and counted by type, so the processed
+ * counts are estimates and the latency counts are those of the sampled entries. The counts only
+ * grow; the metric registry has no cumulative meters, so they are exported as gauges.
+ */
+@ThreadSafe
+public final class EventQueueMetrics {
+
+  private static final Logger logger = Logger.getLogger(EventQueueMetrics.class.getName());
+
+  /** One entry in this many is sampled. A power of two. */
+  public static final int SAMPLE_INTERVAL = 64;
+
+  // Upper bounds, in microseconds, of the latency buckets. The last bucket is unbounded.
+  private static final long[] LATENCY_BOUNDS_MICROS = {1, 10, 100, 1000, 10000, 100000};
+
+  @VisibleForTesting static final String OCCUPANCY = "opencensus.io/event_queue/occupancy";
+  @VisibleForTesting static final String BLOCKED_TIME = "opencensus.io/event_queue/blocked_time";
+
+  @VisibleForTesting
+  static final String DROPPED_EVENTS = "opencensus.io/event_queue/dropped_events";
+
+  @VisibleForTesting
+  static final String PROCESSED_EVENTS = "opencensus.io/event_queue/processed_events";
+
+  @VisibleForTesting static final String LATENCY = "opencensus.io/event_queue/latency";
+
+  private final String queueName;
+  private final AtomicLong droppedEvents = new AtomicLong();
+  private final AtomicLong blockedNanos = new AtomicLong();
+  private final ConcurrentMap<Class<?>, AtomicLong> processedEvents =
+      new ConcurrentHashMap<Class<?>, AtomicLong>();
+  private final AtomicLongArray latencyCounts =
+      new AtomicLongArray(LATENCY_BOUNDS_MICROS.length + 1);
+  // The gauges only keep weak references, so the buckets are kept here.
+  private final LatencyBucket[] latencyBuckets = new LatencyBucket[latencyCounts.length()];
+
+  // The time series created for this queue, removed on close.
+  @GuardedBy("this")
+  private final List<RegisteredTimeSeries> registeredTimeSeries =
+      new ArrayList<RegisteredTimeSeries>();
+
+  @GuardedBy("this")
+  private boolean closed = false;
+
+  private EventQueueMetrics(String queueName) {
+    this.queueName = queueName;
+    for (int i = 0; i < latencyBuckets.length; i++) {
+      latencyBuckets[i] = new LatencyBucket(latencyCounts, i);
+    }
+  }
+
+  /**
+   * Creates the metrics of a queue that processes entries as soon as they are enqueued, and so has
+   * no occupancy.
+   *
+   * @param queueName the value of the {@code queue} label.
+   * @return the metrics of the queue.
+   */
+  public static EventQueueMetrics create(String queueName) {
+    EventQueueMetrics metrics = new EventQueueMetrics(checkNotNull(queueName, "queueName"));
+    metrics.registerQueueTimeSeries();
+    return metrics;
+  }
+
+  /**
+   * Creates the metrics of a queue, whose occupancy is read with the given function.
+   *
+   * @param queueName the value of the {@code queue} label.
+   * @param queue the queue, only weakly referenced.
+   * @param occupancyFunction returns the number of entries waiting in the queue.
+   * @param <T> the type of the queue.
+   * @return the metrics of the queue.
+   */
+  public static <T> EventQueueMetrics create(
+      String queueName, T queue, ToLongFunction<T> occupancyFunction) {
+    EventQueueMetrics metrics = new EventQueueMetrics(checkNotNull(queueName, "queueName"));
+    metrics.registerTimeSeries(
+        Gauges.occupancy,
+        Collections.singletonList(LabelValue.create(queueName)),
+        queue,
+        occupancyFunction);
+    metrics.registerQueueTimeSeries();
+    return metrics;
+  }
+
+  /**
+   * Returns whether the entry with the given sequence number should be sampled.
+   *
+   * @param sequence the sequence number of the entry in its queue.
+   * @return whether the entry should be sampled.
+   */
+  public static boolean isSampled(long sequence) {
+    return (sequence & (SAMPLE_INTERVAL - 1)) == 0;
+  }
+
+  /** Records that an entry was dropped. */
+  public void recordDroppedEvent() {
+    droppedEvents.incrementAndGet();
+  }
+
+  /**
+   * Records the time a producer waited for space in the queue.
+   *
+   * @param nanos the waiting time in nanoseconds.
+   */
+  public void recordBlockedTime(long nanos) {
+    blockedNanos.addAndGet(nanos);
+  }
+
+  /**
+   * Records the processing of a sampled entry.
+   *
+   * @param entry the entry.
+   * @param latencyNanos the time between the enqueue and the processing of the entry.
+   */
+  public void recordSampledEvent(EventQueue.Entry entry, long latencyNanos) {
+    if (entry instanceof BatchingEventQueue.Batch) {
+      BatchingEventQueue.Batch batch = (BatchingEventQueue.Batch) entry;
+      for (int i = 0; i < batch.size(); i++) {
+        recordProcessedEvent(batch.get(i).getClass());
+      }
+    } else {
+      recordProcessedEvent(entry.getClass());
+    }
+    latencyCounts.incrementAndGet(getLatencyBucket(latencyNanos));
+  }
+
+  private void recordProcessedEvent(Class<?> type) {
+    AtomicLong count = processedEvents.get(type);
+    if (count == null) {
+      count = new AtomicLong();
+      AtomicLong existingCount = processedEvents.putIfAbsent(type, count);
+      if (existingCount == null) {
+        registerTimeSeries(
+            Gauges.processedEvents,
+            Arrays.asList(LabelValue.create(queueName), LabelValue.create(getTypeName(type))),
+            count,
+            AtomicLongFunction.INSTANCE);
+      } else {
+        count = existingCount;
+      }
+    }
+    count.addAndGet(SAMPLE_INTERVAL);
+  }
+
+  /**
+   * Returns the number of dropped entries.
+   *
+   * @return the number of dropped entries.
+   */
+  public long getDroppedEvents() {
+    return droppedEvents.get();
+  }
+
+  /** Removes the time series of this queue. */
+  public synchronized void close() {
+    closed = true;
+    for (RegisteredTimeSeries timeSeries : registeredTimeSeries) {
+      timeSeries.gauge.removeTimeSeries(timeSeries.labelValues);
+    }
+    registeredTimeSeries.clear();
+  }
+
+  private void registerQueueTimeSeries() {
+    List<LabelValue> labelValues = Collections.singletonList(LabelValue.create(queueName));
+    registerTimeSeries(
+        Gauges.droppedEvents, labelValues, droppedEvents, AtomicLongFunction.INSTANCE);
+    registerTimeSeries(Gauges.blockedTime, labelValues, blockedNanos, AtomicLongFunction.INSTANCE);
+    for (int i = 0; i < latencyBuckets.length; i++) {
+      String bound =
+          i < LATENCY_BOUNDS_MICROS.length ? Long.toString(LATENCY_BOUNDS_MICROS[i]) : "+Inf";
+      registerTimeSeries(
+          Gauges.latency,
+          Arrays.asList(LabelValue.create(queueName), LabelValue.create(bound)),
+          latencyBuckets[i],
+          LatencyBucketFunction.INSTANCE);
+    }
+  }
+
+  private synchronized <T> void registerTimeSeries(
+      DerivedLongGauge gauge, List<LabelValue> labelValues, T obj, ToLongFunction<T> function) {
+    if (closed) {
+      return;
+    }
+    try {
+      gauge.createTimeSeries(labelValues, obj, function);
+      registeredTimeSeries.add(new RegisteredTimeSeries(gauge, labelValues));
+    } catch (IllegalArgumentException e) {
+      // Another open queue has the same name, or another entry class the same simple name.
+      logger.log(Level.FINE, "Time series " + labelValues + " of " + queueName + " exists.", e);
+    }
+  }
+
+  private static String getTypeName(Class<?> type) {
+    String name = type.getSimpleName();
+    return name.isEmpty() ? type.getName() : name;
+  }
+
+  private static int getLatencyBucket(long latencyNanos) {
+    long latencyMicros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+    int bucket = 0;
+    while (bucket < LATENCY_BOUNDS_MICROS.length && latencyMicros > LATENCY_BOUNDS_MICROS[bucket]) {
+      bucket++;
+    }
+    return bucket;
+  }
+
+  // The gauges are registered on first use, so that processes without event queue metrics do not
+  // load the metrics component.
+  private static final class Gauges {
+    private static final LabelKey QUEUE =
+        LabelKey.create("queue", "The name of the event queue.");
+    private static final DerivedLongGauge occupancy =
+        Metrics.getMetricRegistry()
+            .addDerivedLongGauge(
+                OCCUPANCY,
+                "Number of entries waiting in an event queue.",
+                "1",
+                Collections.singletonList(QUEUE));
+    private static final DerivedLongGauge droppedEvents =
+        Metrics.getMetricRegistry()
+            .addDerivedLongGauge(
+                DROPPED_EVENTS,
+                "Number of entries dropped by an event queue because it was full.",
+                "1",
+                Collections.singletonList(QUEUE));
+    private static final DerivedLongGauge blockedTime =
+        Metrics.getMetricRegistry()
+            .addDerivedLongGauge(
+                BLOCKED_TIME,
+                "Time that producers spent waiting for space in an event queue.",
+                "ns",
+                Collections.singletonList(QUEUE));
+    private static final DerivedLongGauge processedEvents =
+        Metrics.getMetricRegistry()
+            .addDerivedLongGauge(
+                PROCESSED_EVENTS,
+                "Estimated number of entries processed by an event queue, by entry class.",
+                "1",
+                Arrays.asList(QUEUE, LabelKey.create("type", "The class of the entries.")));
+    private static final DerivedLongGauge latency =
+        Metrics.getMetricRegistry()
+            .addDerivedLongGauge(
+                LATENCY,
+                "Number of sampled entries of an event queue that were processed within a time "
+                    + "of being enqueued.",
+                "1",
+                Arrays.asList(
+                    QUEUE, LabelKey.create("le", "The upper bound of the time, in microseconds.")));
+  }
+
+  private static final class RegisteredTimeSeries {
+    private final DerivedLongGauge gauge;
+    private final List<LabelValue> labelValues;
+
+    private RegisteredTimeSeries(DerivedLongGauge gauge, List<LabelValue> labelValues) {
+      this.gauge = gauge;
+      this.labelValues = labelValues;
+    }
+  }
+
+  // The cumulative count of the sampled entries up to a latency bucket.
+  private static final class LatencyBucket {
+    private final AtomicLongArray counts;
+    private final int index;
+
+    private LatencyBucket(AtomicLongArray counts, int index) {
+      this.counts = counts;
+      this.index = index;
+    }
+  }
+
+  private enum LatencyBucketFunction implements ToLongFunction<LatencyBucket> {
+    INSTANCE;
+
+    @Override
+    public long applyAsLong(LatencyBucket bucket) {
+      long count = 0;
+      for (int i = 0; i <= bucket.index; i++) {
+        count += bucket.counts.get(i);
+      }
+      return count;
+    }
+  }
+
+  private enum AtomicLongFunction implements ToLongFunction<AtomicLong> {
+    INSTANCE;
+
+    @Override
+    public long applyAsLong(AtomicLong value) {
+      return value.get();
+    }
+  }
+}
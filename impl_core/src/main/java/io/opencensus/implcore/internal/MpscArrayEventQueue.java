@@ -0,0 +1,268 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.opencensus.common.ToLongFunction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * An {@link EventQueue} backed by a bounded multi-producer single-consumer array queue, in the
+ * style of the JCTools {@code MpscArrayQueue}, with one consumer thread that parks while the queue
+ * is empty. It has no dependencies, and is an alternative to the Disruptor-based queue.
+ *
+ * <p>Producers claim a slot with a compare-and-set of the producer index and then write the entry
+ * to it; the consumer processes the slots in order, waiting for claimed slots to be written. When
+ * the queue is full, producers either wait for the consumer or drop the entry.
+ *
+ * <p>Like the Disruptor-based queue, it processes the entries that were enqueued before {@link
+ * #shutdown()} and logs the ones that are discarded because they were enqueued after: the first
+ * one at {@code INFO} and the others at {@code FINE}. An entry whose slot is claimed while the
+ * consumer is stopping is either processed by the consumer or discarded that way, never lost
+ * silently.
+ */
+@ThreadSafe
+public final class MpscArrayEventQueue implements EventQueue {
+
+  private static final Logger logger = Logger.getLogger(MpscArrayEventQueue.class.getName());
+
+  // How long a producer waits before checking again whether a full queue has space.
+  private static final long FULL_WAIT_NANOS = 1000;
+
+  // The results of claimSlot that are not indices.
+  private static final long DROPPED = -1;
+  private static final long TERMINATED = -2;
+
+  // Written by a producer to a slot it claimed after the consumer stopped, which the consumer may
+  // still be waiting for.
+  private static final Entry DISCARDED_ENTRY =
+      new Entry() {
+        @Override
+        public void process() {}
+      };
+
+  private final AtomicReferenceArray</*@Nullable*/ Entry> buffer;
+  // The enqueue times of the sampled entries, see EventQueueMetrics.isSampled. Written before the
+  // entry is published to its slot.
+  private final long[] enqueueNanos;
+  private final int mask;
+  private final boolean dropWhenFull;
+  private final AtomicLong producerIndex = new AtomicLong();
+  // Only written by the consumer thread.
+  private final AtomicLong consumerIndex = new AtomicLong();
+  // Whether the consumer is parked or about to park, and must be unparked by the producers.
+  private volatile boolean consumerParked = false;
+  private volatile boolean shutdown = false;
+  // Set by the consumer once it saw the shutdown and no claimed slot. The slots claimed after that
+  // are not processed.
+  private volatile boolean terminated = false;
+  private final AtomicLong discardedAfterShutdown = new AtomicLong();
+  private final EventQueueMetrics metrics;
+  private final Thread consumer;
+
+  private MpscArrayEventQueue(String threadPrefix, int capacity, boolean dropWhenFull) {
+    buffer = new AtomicReferenceArray</*@Nullable*/ Entry>(capacity);
+    enqueueNanos = new long[capacity];
+    mask = capacity - 1;
+    this.dropWhenFull = dropWhenFull;
+    metrics = EventQueueMetrics.create(threadPrefix, this, OccupancyFunction.INSTANCE);
+    consumer =
+        new DaemonThreadFactory(threadPrefix)
+            .newThread(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    consume();
+                  }
+                });
+  }
+
+  /**
+   * Creates a new {@code MpscArrayEventQueue} and starts its consumer thread.
+   *
+   * @param threadPrefix the name prefix of the consumer thread.
+   * @param capacity the number of entries that can be enqueued at any one time. Must be a power of
+   *     two.
+   * @param dropWhenFull whether to drop entries when the queue is full, instead of waiting for the
+   *     consumer.
+   * @return a new {@code MpscArrayEventQueue}.
+   * @throws IllegalArgumentException if {@code capacity} is not a positive power of two.
+   */
+  public static MpscArrayEventQueue create(
+      String threadPrefix, int capacity, boolean dropWhenFull) {
+    checkNotNull(threadPrefix, "threadPrefix");
+    checkArgument(
+        capacity > 0 && (capacity & (capacity - 1)) == 0,
+        "capacity should be a positive power of two.");
+    MpscArrayEventQueue queue = new MpscArrayEventQueue(threadPrefix, capacity, dropWhenFull);
+    queue.consumer.start();
+    return queue;
+  }
+
+  @Override
+  public void enqueue(Entry entry) {
+    if (shutdown) {
+      logDiscardedAfterShutdown();
+      return;
+    }
+    long index = claimSlot();
+    if (index == TERMINATED) {
+      logDiscardedAfterShutdown();
+      return;
+    }
+    if (index < 0) {
+      metrics.recordDroppedEvent();
+      return;
+    }
+    int slot = (int) index & mask;
+    // The claim and this check are ordered against the consumer setting the flag and then reading
+    // the producer index, so either the consumer waits for this slot or this sees the flag.
+    if (terminated) {
+      buffer.lazySet(slot, DISCARDED_ENTRY);
+      logDiscardedAfterShutdown();
+      return;
+    }
+    if (EventQueueMetrics.isSampled(index)) {
+      enqueueNanos[slot] = System.nanoTime();
+    }
+    buffer.lazySet(slot, entry);
+    if (consumerParked) {
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  // Returns the index of a claimed slot, DROPPED if the queue is full and entries are dropped, or
+  // TERMINATED if the queue is full and will not be consumed anymore.
+  private long claimSlot() {
+    long blockedSinceNanos = 0;
+    while (true) {
+      long index = producerIndex.get();
+      if (index - consumerIndex.get() >= buffer.length()) {
+        if (dropWhenFull) {
+          return DROPPED;
+        }
+        if (terminated) {
+          return TERMINATED;
+        }
+        if (blockedSinceNanos == 0) {
+          blockedSinceNanos = System.nanoTime();
+        }
+        LockSupport.parkNanos(FULL_WAIT_NANOS);
+        continue;
+      }
+      if (producerIndex.compareAndSet(index, index + 1)) {
+        if (blockedSinceNanos != 0) {
+          metrics.recordBlockedTime(System.nanoTime() - blockedSinceNanos);
+        }
+        return index;
+      }
+    }
+  }
+
+  // Returns the number of entries that were discarded because the queue was shut down.
+  @VisibleForTesting
+  long getDiscardedAfterShutdown() {
+    return discardedAfterShutdown.get();
+  }
+
+  // Logs an entry that was discarded because the queue was shut down.
+  private void logDiscardedAfterShutdown() {
+    long discarded = discardedAfterShutdown.incrementAndGet();
+    if (discarded == 1) {
+      logger.log(Level.INFO, "Attempted to enqueue entry after queue shutdown, discarding it.");
+    } else if (logger.isLoggable(Level.FINE)) {
+      logger.log(Level.FINE, "Discarded " + discarded + " entries enqueued after queue shutdown.");
+    }
+  }
+
+  /** Processes the entries that were already enqueued, then stops the consumer thread. */
+  @Override
+  public void shutdown() {
+    shutdown = true;
+    metrics.close();
+    LockSupport.unpark(consumer);
+    if (Thread.currentThread() == consumer) {
+      return;
+    }
+    try {
+      consumer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void consume() {
+    long index = consumerIndex.get();
+    while (true) {
+      int slot = (int) index & mask;
+      Entry entry = buffer.get(slot);
+      if (entry == null) {
+        if (producerIndex.get() != index) {
+          // The slot was claimed, but the entry is not written yet.
+          Thread.yield();
+        } else if (terminated) {
+          return;
+        } else if (shutdown) {
+          // Check the producer index once more after setting the flag, see enqueue.
+          terminated = true;
+        } else {
+          park(index);
+        }
+        continue;
+      }
+      if (EventQueueMetrics.isSampled(index)) {
+        metrics.recordSampledEvent(entry, System.nanoTime() - enqueueNanos[slot]);
+      }
+      buffer.lazySet(slot, null);
+      consumerIndex.lazySet(++index);
+      try {
+        entry.process();
+      } catch (RuntimeException e) {
+        logger.log(Level.WARNING, "Exception while processing an event queue entry.", e);
+      }
+    }
+  }
+
+  // Parks the consumer until a producer publishes an entry or the queue is shut down. The flag is
+  // set before checking the producer index again, so that a producer that claims a slot after the
+  // check sees the flag and unparks the consumer.
+  private void park(long index) {
+    consumerParked = true;
+    if (producerIndex.get() == index && !shutdown) {
+      LockSupport.park(this);
+    }
+    consumerParked = false;
+  }
+
+  // Returns the number of entries that were claimed but not processed yet.
+  private enum OccupancyFunction implements ToLongFunction<MpscArrayEventQueue> {
+    INSTANCE;
+
+    @Override
+    public long applyAsLong(MpscArrayEventQueue queue) {
+      return Math.max(queue.producerIndex.get() - queue.consumerIndex.get(), 0);
+    }
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.internal;
+
+/**
+ * What {@link EventQueue#enqueue} does when the queue is full or close to full. Queue
+ * implementations that only support some of the dropping policies treat the others like {@link
+ * #DROP_NEWEST}, as {@link MpscArrayEventQueue} does.
+ *
+ * <p>The dropping policies drop entries independently of each other, so they must not be used by
+ * queues whose entries come in pairs, such as the start and end events of spans.
+ */
+public enum OverflowPolicy {
+  /** Waits for the consumer to free a slot. No entry is lost. This is the default. */
+  BLOCK,
+  /** Drops the entry being enqueued if the queue is full. */
+  DROP_NEWEST,
+  /**
+   * Drops the entry being enqueued with a probability that grows from 0, when a quarter of the
+   * queue is free, to 1, when it is full. This keeps some headroom for bursts and spreads the loss
+   * over many entries instead of dropping everything once the queue is full.
+   */
+  SHED
+}
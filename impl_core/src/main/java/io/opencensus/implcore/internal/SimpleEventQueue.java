@@ -16,17 +16,48 @@
 
 package io.opencensus.implcore.internal;
 
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
 /**
  * An {@link EventQueue} that processes events in the current thread. This class can be used for
  * testing.
+ *
+ * <p>Queues created with a name export the sampled counts of processed entries as {@link
+ * EventQueueMetrics}. Entries are processed when they are enqueued, so the latency is always zero.
  */
 public class SimpleEventQueue implements EventQueue {
 
+  @Nullable private final EventQueueMetrics metrics;
+  private final AtomicLong sequence = new AtomicLong();
+
+  /** Creates a {@code SimpleEventQueue} without metrics. */
+  public SimpleEventQueue() {
+    metrics = null;
+  }
+
+  /**
+   * Creates a {@code SimpleEventQueue} that exports its metrics.
+   *
+   * @param name the name of the queue in its metrics.
+   */
+  public SimpleEventQueue(String name) {
+    metrics = EventQueueMetrics.create(name);
+  }
+
   @Override
   public void enqueue(Entry entry) {
+    EventQueueMetrics metrics = this.metrics;
+    if (metrics != null && EventQueueMetrics.isSampled(sequence.getAndIncrement())) {
+      metrics.recordSampledEvent(entry, 0);
+    }
     entry.process();
   }
 
   @Override
-  public void shutdown() {}
+  public void shutdown() {
+    if (metrics != null) {
+      metrics.close();
+    }
+  }
 }
@@ -26,8 +26,12 @@ import javax.annotation.concurrent.Immutable;
  */
 @Immutable
 public final class TimestampConverter {
+  private static final long NANOS_PER_SECOND = 1000 * 1000 * 1000;
+
   private final Timestamp timestamp;
   private final long nanoTime;
+  // The timestamp in nanoseconds since the epoch.
+  private final long epochNanos;
 
   // Returns a WallTimeConverter initialized to now.
   public static TimestampConverter now(Clock clock) {
@@ -44,8 +48,57 @@ public final class TimestampConverter {
     return timestamp.addNanos(nanoTime - this.nanoTime);
   }
 
+  /**
+   * Converts a {@link System#nanoTime() nanoTime} value to nanoseconds since the epoch, without
+   * allocating a {@link Timestamp}.
+   *
+   * @param nanoTime value to convert.
+   * @return the nanoseconds since the epoch of {@code nanoTime}.
+   */
+  public long convertNanoTimeToEpochNanos(long nanoTime) {
+    return epochNanos + (nanoTime - this.nanoTime);
+  }
+
+  /**
+   * Returns the {@link System#nanoTime() nanoTime} at which this converter was initialized.
+   *
+   * @return the {@code nanoTime} at which this converter was initialized.
+   */
+  public long getNanoTime() {
+    return nanoTime;
+  }
+
+  /**
+   * Returns the nanoseconds since the epoch of the given {@link Timestamp}. Valid until the year
+   * 2262.
+   *
+   * @param timestamp the {@code Timestamp}.
+   * @return the nanoseconds since the epoch of {@code timestamp}.
+   */
+  public static long toEpochNanos(Timestamp timestamp) {
+    return timestamp.getSeconds() * NANOS_PER_SECOND + timestamp.getNanos();
+  }
+
+  /**
+   * Returns the {@link Timestamp} of the given nanoseconds since the epoch.
+   *
+   * @param epochNanos the nanoseconds since the epoch.
+   * @return the {@code Timestamp} of {@code epochNanos}.
+   */
+  public static Timestamp fromEpochNanos(long epochNanos) {
+    long seconds = epochNanos / NANOS_PER_SECOND;
+    int nanos = (int) (epochNanos % NANOS_PER_SECOND);
+    if (nanos < 0) {
+      // Timestamp nanos are never negative, even before the epoch.
+      seconds--;
+      nanos += NANOS_PER_SECOND;
+    }
+    return Timestamp.create(seconds, nanos);
+  }
+
   private TimestampConverter(Timestamp timestamp, long nanoTime) {
     this.timestamp = timestamp;
     this.nanoTime = nanoTime;
+    this.epochNanos = toEpochNanos(timestamp);
   }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import io.opencensus.stats.BoundMeasureDouble;
+import io.opencensus.stats.BoundMeasureLong;
+import io.opencensus.stats.Measure;
+import io.opencensus.stats.Measure.MeasureDouble;
+import io.opencensus.stats.Measure.MeasureLong;
+import io.opencensus.tags.TagContext;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A {@link Measure} bound to a {@link TagContext}, which implements {@link BoundMeasureDouble} and
+ * {@link BoundMeasureLong}.
+ *
+ * <p>The views of the measure and the projection of the tags are resolved on the first record, and
+ * again on the first record after a view is registered or unregistered. Other records neither
+ * project the tags nor look up the views of the measure or the series of direct views.
+ */
+@ThreadSafe
+final class BoundMeasureImpl {
+
+  private final StatsManager statsManager;
+  private final Measure measure;
+  private final TagContext tags;
+
+  @javax.annotation.Nullable private volatile MeasureToViewMap.Binding binding;
+
+  private BoundMeasureImpl(StatsManager statsManager, Measure measure, TagContext tags) {
+    this.statsManager = statsManager;
+    this.measure = measure;
+    this.tags = tags;
+  }
+
+  static BoundMeasureDouble createDouble(
+      StatsManager statsManager, MeasureDouble measure, TagContext tags) {
+    final BoundMeasureImpl boundMeasure = new BoundMeasureImpl(statsManager, measure, tags);
+    return new BoundMeasureDouble() {
+      @Override
+      public void record(double value) {
+        boundMeasure.record(value);
+      }
+    };
+  }
+
+  static BoundMeasureLong createLong(
+      StatsManager statsManager, MeasureLong measure, TagContext tags) {
+    final BoundMeasureImpl boundMeasure = new BoundMeasureImpl(statsManager, measure, tags);
+    return new BoundMeasureLong() {
+      @Override
+      public void record(long value) {
+        boundMeasure.recordLong(value);
+      }
+    };
+  }
+
+  private void record(double value) {
+    MeasureToViewMap.Binding current = statsManager.bind(binding, measure, tags);
+    // Threads that race to replace the binding make equivalent bindings.
+    binding = current;
+    statsManager.record(current, value);
+  }
+
+  private void recordLong(long value) {
+    MeasureToViewMap.Binding current = statsManager.bind(binding, measure, tags);
+    binding = current;
+    statsManager.recordLong(current, value);
+  }
+}
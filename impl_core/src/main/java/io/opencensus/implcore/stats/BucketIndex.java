@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import com.google.common.collect.MapMaker;
+import io.opencensus.stats.BucketBoundaries;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The boundaries of a {@link BucketBoundaries} as an unboxed array, to find the bucket of a value
+ * with a binary search instead of scanning the boxed boundaries.
+ *
+ * <p>The index of a {@code BucketBoundaries} is built once and shared by all the {@code
+ * MutableDistribution}s that use it.
+ */
+@Immutable
+final class BucketIndex {
+
+  // Keyed by identity, since all the aggregations of a view share its BucketBoundaries. Entries
+  // are dropped with their BucketBoundaries.
+  private static final ConcurrentMap<BucketBoundaries, BucketIndex> cache =
+      new MapMaker().weakKeys().makeMap();
+
+  private final double[] boundaries;
+
+  private BucketIndex(double[] boundaries) {
+    this.boundaries = boundaries;
+  }
+
+  /**
+   * Returns the shared {@code BucketIndex} of the given {@code BucketBoundaries}.
+   *
+   * @param bucketBoundaries the bucket boundaries.
+   * @return the {@code BucketIndex} of {@code bucketBoundaries}.
+   */
+  static BucketIndex of(BucketBoundaries bucketBoundaries) {
+    BucketIndex index = cache.get(bucketBoundaries);
+    if (index == null) {
+      // Threads that race to build the index build equivalent ones.
+      index = create(bucketBoundaries.getBoundaries());
+      cache.put(bucketBoundaries, index);
+    }
+    return index;
+  }
+
+  // Visible for testing.
+  static BucketIndex create(List<Double> boundaries) {
+    double[] array = new double[boundaries.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = boundaries.get(i);
+    }
+    return new BucketIndex(array);
+  }
+
+  /** Returns the number of buckets, one more than the number of boundaries. */
+  int getBucketCount() {
+    return boundaries.length + 1;
+  }
+
+  /**
+   * Returns the index of the bucket of the given value: the number of boundaries that are not
+   * greater than the value. NaN goes to the last bucket.
+   *
+   * @param value the value.
+   * @return the index of the bucket of {@code value}, in {@code [0, getBucketCount())}.
+   */
+  int getBucket(double value) {
+    double[] boundaries = this.boundaries;
+    int length = boundaries.length;
+    if (length == 0) {
+      return 0;
+    }
+    // The loop only depends on the number of boundaries, and the selects compile to conditional
+    // moves, so that the search does not stall on mispredicted branches.
+    int base = 0;
+    while (length > 1) {
+      int half = length >>> 1;
+      base = value < boundaries[base + half] ? base : base + half;
+      length -= half;
+    }
+    return value < boundaries[base] ? base : base + 1;
+  }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.opencensus.common.Timestamp;
+import io.opencensus.metrics.export.Point;
+import io.opencensus.metrics.export.Value;
+import io.opencensus.stats.Aggregation;
+import io.opencensus.stats.AggregationData;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Thread-safe version of {@link Aggregation} for the aggregations that can be updated on the
+ * recording thread without going through the {@code EventQueue}.
+ */
+@ThreadSafe
+abstract class DirectAggregation {
+
+  private DirectAggregation() {}
+
+  /**
+   * Put a new value into the DirectAggregation. May be called concurrently from any thread.
+   *
+   * @param value new value to be added to population
+   */
+  abstract void add(double value);
+
+  /**
+   * Put a new value of a {@code MeasureLong} into the DirectAggregation. The aggregations of long
+   * sums and last values keep it exact; the others add it as a double.
+   *
+   * @param value new value to be added to population
+   */
+  void addLong(long value) {
+    add((double) value);
+  }
+
+  abstract AggregationData toAggregationData();
+
+  abstract Point toPoint(Timestamp timestamp);
+
+  // Reset to the empty state.
+  abstract void clear();
+
+  /** Calculate count on aggregated {@code MeasureValue}s. */
+  static final class DirectCount extends DirectAggregation {
+
+    private final StripedCells counts = new StripedCells();
+
+    private DirectCount() {}
+
+    /**
+     * Construct a {@code DirectCount}.
+     *
+     * @return an empty {@code DirectCount}.
+     */
+    static DirectCount create() {
+      return new DirectCount();
+    }
+
+    @Override
+    void add(double value) {
+      counts.addLong(1L);
+    }
+
+    @Override
+    AggregationData toAggregationData() {
+      return AggregationData.CountData.create(getCount());
+    }
+
+    @Override
+    Point toPoint(Timestamp timestamp) {
+      return Point.create(Value.longValue(getCount()), timestamp);
+    }
+
+    @Override
+    void clear() {
+      counts.clear();
+    }
+
+    long getCount() {
+      return counts.sumLong();
+    }
+  }
+
+  /** Calculate sum of doubles on aggregated {@code MeasureValue}s. */
+  static final class DirectSumDouble extends DirectAggregation {
+
+    private final StripedCells sums = new StripedCells();
+
+    private DirectSumDouble() {}
+
+    /**
+     * Construct a {@code DirectSumDouble}.
+     *
+     * @return an empty {@code DirectSumDouble}.
+     */
+    static DirectSumDouble create() {
+      return new DirectSumDouble();
+    }
+
+    @Override
+    void add(double value) {
+      sums.addDouble(value);
+    }
+
+    @Override
+    AggregationData toAggregationData() {
+      return AggregationData.SumDataDouble.create(getSum());
+    }
+
+    @Override
+    Point toPoint(Timestamp timestamp) {
+      return Point.create(Value.doubleValue(getSum()), timestamp);
+    }
+
+    @Override
+    void clear() {
+      sums.clear();
+    }
+
+    @VisibleForTesting
+    double getSum() {
+      return sums.sumDouble();
+    }
+  }
+
+  /** Calculate sum of longs on aggregated {@code MeasureValue}s, with exact long arithmetic. */
+  static final class DirectSumLong extends DirectAggregation {
+
+    private final StripedCells sums = new StripedCells();
+
+    private DirectSumLong() {}
+
+    /**
+     * Construct a {@code DirectSumLong}.
+     *
+     * @return an empty {@code DirectSumLong}.
+     */
+    static DirectSumLong create() {
+      return new DirectSumLong();
+    }
+
+    @Override
+    void add(double value) {
+      sums.addLong(Math.round(value));
+    }
+
+    @Override
+    void addLong(long value) {
+      sums.addLong(value);
+    }
+
+    @Override
+    AggregationData toAggregationData() {
+      return AggregationData.SumDataLong.create(getSum());
+    }
+
+    @Override
+    Point toPoint(Timestamp timestamp) {
+      return Point.create(Value.longValue(getSum()), timestamp);
+    }
+
+    @Override
+    void clear() {
+      sums.clear();
+    }
+
+    @VisibleForTesting
+    long getSum() {
+      return sums.sumLong();
+    }
+  }
+
+  /** Calculate double last value on aggregated {@code MeasureValue}s. */
+  static final class DirectLastValueDouble extends DirectAggregation {
+
+    // The raw bits of the last value. Initial value that will get reset as soon as first value is
+    // added. The last write wins, so no striping is needed.
+    private final AtomicLong lastValueBits = new AtomicLong(Double.doubleToRawLongBits(Double.NaN));
+
+    private DirectLastValueDouble() {}
+
+    /**
+     * Construct a {@code DirectLastValueDouble}.
+     *
+     * @return an empty {@code DirectLastValueDouble}.
+     */
+    static DirectLastValueDouble create() {
+      return new DirectLastValueDouble();
+    }
+
+    @Override
+    void add(double value) {
+      lastValueBits.set(Double.doubleToRawLongBits(value));
+    }
+
+    @Override
+    AggregationData toAggregationData() {
+      return AggregationData.LastValueDataDouble.create(getLastValue());
+    }
+
+    @Override
+    Point toPoint(Timestamp timestamp) {
+      return Point.create(Value.doubleValue(getLastValue()), timestamp);
+    }
+
+    @Override
+    void clear() {
+      lastValueBits.set(Double.doubleToRawLongBits(Double.NaN));
+    }
+
+    @VisibleForTesting
+    double getLastValue() {
+      return Double.longBitsToDouble(lastValueBits.get());
+    }
+  }
+
+  /** Calculate last long value on aggregated {@code MeasureValue}s, without rounding. */
+  static final class DirectLastValueLong extends DirectAggregation {
+
+    // Reported as 0 until the first value is added. The last write wins, so no striping is needed.
+    private final AtomicLong lastValue = new AtomicLong();
+
+    private DirectLastValueLong() {}
+
+    /**
+     * Construct a {@code DirectLastValueLong}.
+     *
+     * @return an empty {@code DirectLastValueLong}.
+     */
+    static DirectLastValueLong create() {
+      return new DirectLastValueLong();
+    }
+
+    @Override
+    void add(double value) {
+      lastValue.set(Math.round(value));
+    }
+
+    @Override
+    void addLong(long value) {
+      lastValue.set(value);
+    }
+
+    @Override
+    AggregationData toAggregationData() {
+      return AggregationData.LastValueDataLong.create(getLastValue());
+    }
+
+    @Override
+    Point toPoint(Timestamp timestamp) {
+      return Point.create(Value.longValue(getLastValue()), timestamp);
+    }
+
+    @Override
+    void clear() {
+      lastValue.set(0L);
+    }
+
+    @VisibleForTesting
+    long getLastValue() {
+      return lastValue.get();
+    }
+  }
+
+  /*
+   * A sum that is spread over several cells under contention, similar to
+   * java.util.concurrent.atomic.LongAdder, which is not available on Java 6 or Android. Updates go
+   * to a single base cell until a compare-and-set on it fails; after that each thread updates the
+   * cell picked by its thread id. Cells are padded to a cache line to avoid false sharing.
+   *
+   * The cells hold either longs or the raw bits of doubles; a StripedCells instance must only be
+   * used with one of the two.
+   */
+  @VisibleForTesting
+  static final class StripedCells {
+
+    // Number of longs per cell (64 bytes).
+    private static final int PADDING = 8;
+    private static final int NUM_CELLS = numCells(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLong base = new AtomicLong();
+    @Nullable private volatile AtomicLongArray cells;
+
+    void addLong(long value) {
+      AtomicLongArray cells = this.cells;
+      if (cells == null) {
+        long current = base.get();
+        if (base.compareAndSet(current, current + value)) {
+          return;
+        }
+        cells = inflate();
+      }
+      int index = cellIndex();
+      long current;
+      do {
+        current = cells.get(index);
+      } while (!cells.compareAndSet(index, current, current + value));
+    }
+
+    void addDouble(double value) {
+      AtomicLongArray cells = this.cells;
+      if (cells == null) {
+        long current = base.get();
+        if (base.compareAndSet(current, addToBits(current, value))) {
+          return;
+        }
+        cells = inflate();
+      }
+      int index = cellIndex();
+      long current;
+      do {
+        current = cells.get(index);
+      } while (!cells.compareAndSet(index, current, addToBits(current, value)));
+    }
+
+    long sumLong() {
+      long sum = base.get();
+      AtomicLongArray cells = this.cells;
+      if (cells != null) {
+        for (int i = 0; i < cells.length(); i += PADDING) {
+          sum += cells.get(i);
+        }
+      }
+      return sum;
+    }
+
+    double sumDouble() {
+      double sum = Double.longBitsToDouble(base.get());
+      AtomicLongArray cells = this.cells;
+      if (cells != null) {
+        for (int i = 0; i < cells.length(); i += PADDING) {
+          sum += Double.longBitsToDouble(cells.get(i));
+        }
+      }
+      return sum;
+    }
+
+    // Not atomic with respect to concurrent updates, which may or may not be cleared.
+    void clear() {
+      base.set(0L);
+      AtomicLongArray cells = this.cells;
+      if (cells != null) {
+        for (int i = 0; i < cells.length(); i += PADDING) {
+          cells.set(i, 0L);
+        }
+      }
+    }
+
+    private synchronized AtomicLongArray inflate() {
+      AtomicLongArray cells = this.cells;
+      if (cells == null) {
+        // All-zero bits are both 0L and 0.0, so new cells are empty for either use.
+        this.cells = cells = new AtomicLongArray(NUM_CELLS * PADDING);
+      }
+      return cells;
+    }
+
+    private static int cellIndex() {
+      // Fibonacci hashing spreads consecutive thread ids over the cells.
+      long hash = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+      return ((int) (hash >>> 32) & (NUM_CELLS - 1)) * PADDING;
+    }
+
+    private static long addToBits(long bits, double value) {
+      return Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + value);
+    }
+
+    // Returns the smallest power of two that is >= the number of processors, at most 64.
+    private static int numCells(int processors) {
+      int cells = 1;
+      while (cells < processors && cells < 64) {
+        cells <<= 1;
+      }
+      return cells;
+    }
+  }
+}
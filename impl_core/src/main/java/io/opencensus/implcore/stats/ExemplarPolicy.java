@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.opencensus.common.Duration;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Decides which of the values recorded with attachments become the exemplars of a {@code
+ * Distribution} view.
+ *
+ * <p>Each histogram bucket keeps at most one exemplar, in a slot that is reused by the values the
+ * policy keeps. The {@code Exemplar}s themselves are only created when the view is exported. The
+ * attachments of a record are still copied once when it is recorded, because the record is
+ * aggregated later and the caller may reuse its {@code MeasureMap}.
+ */
+@Immutable
+public abstract class ExemplarPolicy {
+
+  private static final ExemplarPolicy KEEP_LATEST =
+      new ExemplarPolicy() {
+        @Override
+        ExemplarReservoir newReservoir(int numBuckets) {
+          return new ExemplarReservoir.KeepLatest(numBuckets);
+        }
+      };
+
+  private static final ExemplarPolicy RESERVOIR_SAMPLING =
+      new ExemplarPolicy() {
+        @Override
+        ExemplarReservoir newReservoir(int numBuckets) {
+          return new ExemplarReservoir.Sampled(numBuckets);
+        }
+      };
+
+  private static final ExemplarPolicy TRACED_ONLY =
+      new ExemplarPolicy() {
+        @Override
+        ExemplarReservoir newReservoir(int numBuckets) {
+          return new ExemplarReservoir.TracedOnly(numBuckets);
+        }
+      };
+
+  ExemplarPolicy() {}
+
+  /**
+   * Returns the policy that keeps the latest value of each bucket. This is the default.
+   *
+   * @return the policy that keeps the latest value of each bucket.
+   */
+  public static ExemplarPolicy keepLatest() {
+    return KEEP_LATEST;
+  }
+
+  /**
+   * Returns the policy that keeps, for each bucket, a value chosen uniformly at random among all
+   * the values recorded with attachments in that bucket since the start of the view.
+   *
+   * @return the reservoir sampling policy.
+   */
+  public static ExemplarPolicy reservoirSampling() {
+    return RESERVOIR_SAMPLING;
+  }
+
+  /**
+   * Returns the policy that keeps the latest value of each bucket among the values recorded with a
+   * {@code "TraceId"} attachment, as put by {@code ExemplarUtils.putSpanContextAttachments}. Values
+   * recorded with other attachments are ignored.
+   *
+   * @return the policy that only keeps values linked to a trace.
+   */
+  public static ExemplarPolicy tracedOnly() {
+    return TRACED_ONLY;
+  }
+
+  /**
+   * Returns the policy that keeps the latest value of each bucket, but replaces the exemplar of a
+   * bucket at most once per {@code minInterval}.
+   *
+   * @param minInterval the minimum time between two exemplars of a bucket, must be positive.
+   * @return the rate limited policy.
+   */
+  public static ExemplarPolicy rateLimited(Duration minInterval) {
+    checkNotNull(minInterval, "minInterval");
+    final long minIntervalNanos = toNanos(minInterval);
+    checkArgument(minIntervalNanos > 0, "minInterval must be positive.");
+    return new ExemplarPolicy() {
+      @Override
+      ExemplarReservoir newReservoir(int numBuckets) {
+        return new ExemplarReservoir.RateLimited(numBuckets, minIntervalNanos);
+      }
+    };
+  }
+
+  /**
+   * Creates the empty {@link ExemplarReservoir} of a distribution.
+   *
+   * @param numBuckets the number of histogram buckets of the distribution.
+   * @return an empty {@code ExemplarReservoir}.
+   */
+  abstract ExemplarReservoir newReservoir(int numBuckets);
+
+  private static long toNanos(Duration duration) {
+    return duration.getSeconds() * 1000000000L + duration.getNanos();
+  }
+}
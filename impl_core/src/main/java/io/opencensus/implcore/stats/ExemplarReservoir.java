@@ -0,0 +1,301 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import io.opencensus.implcore.internal.TimestampConverter;
+import io.opencensus.stats.AggregationData.DistributionData.Exemplar;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The exemplars of the histogram buckets of a {@code MutableDistribution}, one at most per bucket,
+ * chosen according to an {@link ExemplarPolicy}.
+ *
+ * <p>Like the {@code MutableDistribution} that owns it, this class is not thread-safe.
+ */
+abstract class ExemplarReservoir {
+
+  // The slot of a bucket is created when its first exemplar is kept, and then reused.
+  private final /*@Nullable*/ Slot[] slots;
+
+  private ExemplarReservoir(int numBuckets) {
+    this.slots = new Slot[numBuckets];
+  }
+
+  /**
+   * Offers a value recorded with attachments as the exemplar of its bucket.
+   *
+   * @param bucket the bucket of the value.
+   * @param value the recorded value.
+   * @param timestampNanos the time of the record, in nanoseconds since the epoch.
+   * @param attachments the non-empty attachments of the record.
+   */
+  final void offer(int bucket, double value, long timestampNanos, Map<String, String> attachments) {
+    if (shouldKeep(bucket, slots[bucket], timestampNanos, attachments)) {
+      getSlot(bucket).set(value, timestampNanos, attachments);
+    }
+  }
+
+  /**
+   * Combines the exemplars of a newer reservoir of the same policy into this one.
+   *
+   * @param other the newer reservoir.
+   */
+  final void combine(ExemplarReservoir other) {
+    /*@Nullable*/ Slot[] otherSlots = other.slots;
+    for (int i = 0; i < otherSlots.length; i++) {
+      Slot otherSlot = otherSlots[i];
+      if (otherSlot != null && shouldKeepCombined(i, slots[i], other, otherSlot)) {
+        getSlot(i).set(otherSlot);
+      }
+    }
+  }
+
+  // Returns the exemplar of each bucket, or null for the buckets without exemplar.
+  /*@Nullable*/ Exemplar[] getExemplars() {
+    /*@Nullable*/ Exemplar[] exemplars = new Exemplar[slots.length];
+    for (int i = 0; i < slots.length; i++) {
+      Slot slot = slots[i];
+      if (slot != null) {
+        exemplars[i] = slot.toExemplar();
+      }
+    }
+    return exemplars;
+  }
+
+  // Returns the exemplars in the order of their buckets.
+  List<Exemplar> getExemplarList() {
+    List<Exemplar> exemplars = new ArrayList<Exemplar>();
+    for (Slot slot : slots) {
+      if (slot != null) {
+        exemplars.add(slot.toExemplar());
+      }
+    }
+    return exemplars;
+  }
+
+  @javax.annotation.Nullable
+  Slot getSlotIfPresent(int bucket) {
+    return slots[bucket];
+  }
+
+  // Returns whether the given record replaces the current exemplar of its bucket, if any.
+  abstract boolean shouldKeep(
+      int bucket,
+      @javax.annotation.Nullable Slot current,
+      long timestampNanos,
+      Map<String, String> attachments);
+
+  // Returns whether the exemplar of a bucket of a newer reservoir replaces the current one, if any.
+  abstract boolean shouldKeepCombined(
+      int bucket, @javax.annotation.Nullable Slot current, ExemplarReservoir other, Slot otherSlot);
+
+  private Slot getSlot(int bucket) {
+    Slot slot = slots[bucket];
+    if (slot == null) {
+      slot = slots[bucket] = new Slot();
+    }
+    return slot;
+  }
+
+  // The exemplar of a bucket. The Exemplar, and its Timestamp, are only created on export.
+  static final class Slot {
+    private double value;
+    private long timestampNanos;
+    private Map<String, String> attachments = Collections.<String, String>emptyMap();
+
+    private void set(double value, long timestampNanos, Map<String, String> attachments) {
+      this.value = value;
+      this.timestampNanos = timestampNanos;
+      this.attachments = attachments;
+    }
+
+    private void set(Slot other) {
+      set(other.value, other.timestampNanos, other.attachments);
+    }
+
+    double getValue() {
+      return value;
+    }
+
+    long getTimestampNanos() {
+      return timestampNanos;
+    }
+
+    Map<String, String> getAttachments() {
+      return attachments;
+    }
+
+    private Exemplar toExemplar() {
+      return Exemplar.create(
+          value, TimestampConverter.fromEpochNanos(timestampNanos), attachments);
+    }
+  }
+
+  // Keeps the latest exemplar of each bucket.
+  static final class KeepLatest extends ExemplarReservoir {
+
+    KeepLatest(int numBuckets) {
+      super(numBuckets);
+    }
+
+    @Override
+    boolean shouldKeep(
+        int bucket,
+        @javax.annotation.Nullable Slot current,
+        long timestampNanos,
+        Map<String, String> attachments) {
+      return true;
+    }
+
+    @Override
+    boolean shouldKeepCombined(
+        int bucket,
+        @javax.annotation.Nullable Slot current,
+        ExemplarReservoir other,
+        Slot otherSlot) {
+      // Reservoirs are combined in time order, so the exemplar of the other one is newer.
+      return true;
+    }
+  }
+
+  // Keeps the latest exemplar of each bucket among the records linked to a trace.
+  static final class TracedOnly extends ExemplarReservoir {
+
+    // The key of the trace id attachment of ExemplarUtils, which impl_core does not depend on.
+    private static final String ATTACHMENT_KEY_TRACE_ID = "TraceId";
+
+    TracedOnly(int numBuckets) {
+      super(numBuckets);
+    }
+
+    @Override
+    boolean shouldKeep(
+        int bucket,
+        @javax.annotation.Nullable Slot current,
+        long timestampNanos,
+        Map<String, String> attachments) {
+      return attachments.containsKey(ATTACHMENT_KEY_TRACE_ID);
+    }
+
+    @Override
+    boolean shouldKeepCombined(
+        int bucket,
+        @javax.annotation.Nullable Slot current,
+        ExemplarReservoir other,
+        Slot otherSlot) {
+      // The exemplars of the other reservoir have already been filtered.
+      return true;
+    }
+  }
+
+  // Keeps the latest exemplar of each bucket, replacing it at most once per interval.
+  static final class RateLimited extends ExemplarReservoir {
+
+    private final long minIntervalNanos;
+
+    RateLimited(int numBuckets, long minIntervalNanos) {
+      super(numBuckets);
+      this.minIntervalNanos = minIntervalNanos;
+    }
+
+    @Override
+    boolean shouldKeep(
+        int bucket,
+        @javax.annotation.Nullable Slot current,
+        long timestampNanos,
+        Map<String, String> attachments) {
+      return current == null || timestampNanos - current.timestampNanos >= minIntervalNanos;
+    }
+
+    @Override
+    boolean shouldKeepCombined(
+        int bucket,
+        @javax.annotation.Nullable Slot current,
+        ExemplarReservoir other,
+        Slot otherSlot) {
+      return current == null
+          || otherSlot.timestampNanos - current.timestampNanos >= minIntervalNanos;
+    }
+  }
+
+  // Keeps a uniformly random exemplar of each bucket, with a reservoir of size one: the n-th value
+  // offered to a bucket replaces its exemplar with probability 1/n.
+  static final class Sampled extends ExemplarReservoir {
+
+    // Seeds the generator of each reservoir with a different value.
+    private static final AtomicLong seeds = new AtomicLong(System.nanoTime());
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    // The number of values offered to each bucket, including the ones that were not kept.
+    private final long[] offered;
+    // The state of a xorshift generator, which is cheaper than a java.util.Random and needs no
+    // synchronization.
+    private long state;
+
+    Sampled(int numBuckets) {
+      super(numBuckets);
+      this.offered = new long[numBuckets];
+      long seed = mix(seeds.addAndGet(GOLDEN_GAMMA));
+      // The state of a xorshift generator must not be zero.
+      this.state = seed == 0 ? GOLDEN_GAMMA : seed;
+    }
+
+    @Override
+    boolean shouldKeep(
+        int bucket,
+        @javax.annotation.Nullable Slot current,
+        long timestampNanos,
+        Map<String, String> attachments) {
+      long count = ++offered[bucket];
+      return count == 1 || nextLong(count) == 0;
+    }
+
+    @Override
+    boolean shouldKeepCombined(
+        int bucket,
+        @javax.annotation.Nullable Slot current,
+        ExemplarReservoir other,
+        Slot otherSlot) {
+      // The exemplar of each side is uniform within its side, so taking the other one with a
+      // probability proportional to its count keeps the result uniform over both.
+      long otherCount = other instanceof Sampled ? ((Sampled) other).offered[bucket] : 1;
+      long count = offered[bucket];
+      offered[bucket] = count + otherCount;
+      return current == null || nextLong(count + otherCount) < otherCount;
+    }
+
+    // Returns a pseudo-random value in [0, bound).
+    private long nextLong(long bound) {
+      long x = state;
+      x ^= x << 13;
+      x ^= x >>> 7;
+      x ^= x << 17;
+      state = x;
+      return (x >>> 1) % bound;
+    }
+
+    private static long mix(long z) {
+      z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+      z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+      return z ^ (z >>> 31);
+    }
+  }
+}
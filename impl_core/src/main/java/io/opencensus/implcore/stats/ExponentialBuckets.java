@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+/**
+ * Bucket math for {@link io.opencensus.stats.Aggregation.ExponentialDistribution}.
+ *
+ * <p>At scale {@code s}, bucket {@code i} is {@code [base^i, base^(i+1))} with {@code base =
+ * 2^(2^-s)}. Bucket indices are computed in constant time from the bits of the value: for scales
+ * {@code <= 0} the index only depends on the binary exponent; for positive scales the mantissa
+ * picks one of the {@code 2^s} sub-buckets of the exponent's octave.
+ */
+final class ExponentialBuckets {
+
+  private static final long SIGNIFICAND_MASK = 0x000FFFFFFFFFFFFFL;
+  private static final long ONE_BITS = Double.doubleToRawLongBits(1.0);
+  private static final double LOG2_E = 1.0 / Math.log(2.0);
+  // Subnormals are multiplied by 2^SUBNORMAL_SHIFT to get a normal double with the same mantissa.
+  private static final int SUBNORMAL_SHIFT = 64;
+
+  /**
+   * Returns the index of the bucket of the given value.
+   *
+   * <p>For positive scales, values within a few ulps of a bucket boundary may be counted in the
+   * neighboring bucket, because the sub-bucket is derived from a logarithm. Powers of two are
+   * always exact.
+   *
+   * @param value a positive value. Infinity is counted with {@link Double#MAX_VALUE}.
+   * @param scale the scale, between {@code MIN_SCALE} and {@code MAX_SCALE}.
+   * @return the bucket index.
+   */
+  static int getIndex(double value, int scale) {
+    int exponent = Math.getExponent(value);
+    if (exponent > Double.MAX_EXPONENT) {
+      value = Double.MAX_VALUE;
+      exponent = Double.MAX_EXPONENT;
+    } else if (exponent < Double.MIN_EXPONENT) {
+      // Subnormal: normalize it so that the mantissa bits are meaningful.
+      value = Math.scalb(value, SUBNORMAL_SHIFT);
+      exponent = Math.getExponent(value) - SUBNORMAL_SHIFT;
+    }
+    if (scale <= 0) {
+      return exponent >> -scale;
+    }
+    long significandBits = Double.doubleToRawLongBits(value) & SIGNIFICAND_MASK;
+    if (significandBits == 0) {
+      return exponent << scale;
+    }
+    // The significand is in (1, 2), so its base-2 logarithm is in (0, 1).
+    double significand = Double.longBitsToDouble(significandBits | ONE_BITS);
+    int subBucket = (int) (Math.log(significand) * Math.scalb(LOG2_E, scale));
+    return (exponent << scale) + Math.min(subBucket, (1 << scale) - 1);
+  }
+
+  /**
+   * Returns the lower bound of the bucket with the given index. The bound is at least {@link
+   * Double#MIN_VALUE}, even for the lowest bucket at the lowest scales.
+   *
+   * @param index the bucket index.
+   * @param scale the scale, between {@code MIN_SCALE} and {@code MAX_SCALE}.
+   * @return the lower bound of the bucket.
+   */
+  static double getLowerBound(int index, int scale) {
+    double lowerBound;
+    if (scale <= 0) {
+      lowerBound = Math.scalb(1.0, index << -scale);
+    } else {
+      int exponent = index >> scale;
+      int subBucket = index & ((1 << scale) - 1);
+      lowerBound = Math.scalb(Math.pow(2.0, Math.scalb((double) subBucket, -scale)), exponent);
+    }
+    return Math.max(lowerBound, Double.MIN_VALUE);
+  }
+
+  private ExponentialBuckets() {}
+}
@@ -22,10 +22,15 @@ import io.opencensus.stats.MeasureMap;
 import io.opencensus.tags.TagContext;
 import io.opencensus.tags.unsafe.ContextUtils;
 
-/** Implementation of {@link MeasureMap}. */
+/**
+ * Implementation of {@link MeasureMap}.
+ *
+ * <p>The measurements are kept in primitive arrays that never leave the recording thread: {@link
+ * #record(TagContext)} copies them into a reused event of the {@link StatsManager}.
+ */
 final class MeasureMapImpl extends MeasureMap {
   private final StatsManager statsManager;
-  private final MeasureMapInternal.Builder builder = MeasureMapInternal.builder();
+  private final MeasureMapInternal measurements = new MeasureMapInternal();
 
   static MeasureMapImpl create(StatsManager statsManager) {
     return new MeasureMapImpl(statsManager);
@@ -37,19 +42,19 @@ final class MeasureMapImpl extends MeasureMap {
 
   @Override
   public MeasureMapImpl put(MeasureDouble measure, double value) {
-    builder.put(measure, value);
+    measurements.put(measure, value);
     return this;
   }
 
   @Override
   public MeasureMapImpl put(MeasureLong measure, long value) {
-    builder.put(measure, value);
+    measurements.put(measure, value);
     return this;
   }
 
   @Override
   public MeasureMap putAttachment(String key, String value) {
-    builder.putAttachment(key, value);
+    measurements.putAttachment(key, value);
     return this;
   }
 
@@ -61,6 +66,6 @@ final class MeasureMapImpl extends MeasureMap {
 
   @Override
   public void record(TagContext tags) {
-    statsManager.record(tags, builder.build());
+    statsManager.record(tags, measurements);
   }
 }
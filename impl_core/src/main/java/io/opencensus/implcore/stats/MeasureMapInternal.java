@@ -16,26 +16,109 @@
 
 package io.opencensus.implcore.stats;
 
+import io.opencensus.implcore.internal.CheckerFrameworkUtils;
 import io.opencensus.stats.Measure;
 import io.opencensus.stats.Measure.MeasureDouble;
 import io.opencensus.stats.Measure.MeasureLong;
 import io.opencensus.stats.Measurement;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
+/*>>>
+import org.checkerframework.checker.nullness.qual.Nullable;
+*/
+
 // TODO(songya): consider combining MeasureMapImpl and this class.
-/** A map from {@link Measure}'s to measured values. */
+/**
+ * A map from {@link Measure}'s to measured values.
+ *
+ * <p>The measures and values are kept in arrays that grow on demand and are reused after {@link
+ * #clear()}, so that a {@code MeasureMapInternal} can be refilled for every record without
+ * allocating. Instances are not thread-safe.
+ */
 final class MeasureMapInternal {
 
+  private static final int INITIAL_CAPACITY = 4;
+
+  // The measures, and their values in the same order. The value of a MeasureDouble is stored as the
+  // raw long bits of the double, so that the values of MeasureLongs stay exact.
+  private /*@Nullable*/ Measure[] measures = new Measure[INITIAL_CAPACITY];
+  private long[] values = new long[INITIAL_CAPACITY];
+  private int size = 0;
+
+  // Allocated with the first attachment.
+  @javax.annotation.Nullable private Map<String, String> attachments;
+
+  MeasureMapInternal() {}
+
   /** Returns a {@link Builder} for the {@link MeasureMapInternal} class. */
   static Builder builder() {
     return new Builder();
   }
 
+  /**
+   * Associates the {@link MeasureDouble} with the given value. Subsequent updates to the same
+   * {@link MeasureDouble} will overwrite the previous value.
+   *
+   * @param measure the {@link MeasureDouble}
+   * @param value the value to be associated with {@code measure}
+   */
+  void put(MeasureDouble measure, double value) {
+    putBits(measure, Double.doubleToRawLongBits(value));
+  }
+
+  /**
+   * Associates the {@link MeasureLong} with the given value. Subsequent updates to the same {@link
+   * MeasureLong} will overwrite the previous value.
+   *
+   * @param measure the {@link MeasureLong}
+   * @param value the value to be associated with {@code measure}
+   */
+  void put(MeasureLong measure, long value) {
+    putBits(measure, value);
+  }
+
+  void putAttachment(String key, String value) {
+    Map<String, String> attachments = this.attachments;
+    if (attachments == null) {
+      attachments = this.attachments = new HashMap<String, String>();
+    }
+    attachments.put(key, value);
+  }
+
+  // Returns the number of measures in this map.
+  int size() {
+    return size;
+  }
+
+  // Returns the measure at the given index, in [0, size()).
+  Measure getMeasure(int index) {
+    return CheckerFrameworkUtils.castNonNull(measures[index]);
+  }
+
+  // Returns the value of the measure at the given index, converted to a double.
+  double getValue(int index) {
+    return measures[index] instanceof MeasureLong
+        ? (double) values[index]
+        : Double.longBitsToDouble(values[index]);
+  }
+
+  // Returns the exact value of the measure at the given index, which must be a MeasureLong.
+  long getLongValue(int index) {
+    return values[index];
+  }
+
+  // Returns the contextual information associated with an example value. The map is immutable if
+  // this MeasureMapInternal was built or copied, which is always the case for recorded stats.
+  Map<String, String> getAttachments() {
+    Map<String, String> attachments = this.attachments;
+    return attachments == null ? Collections.<String, String>emptyMap() : attachments;
+  }
+
   /**
    * Returns an {@link Iterator} over the measure/value mappings in this {@link MeasureMapInternal}.
    * The {@code Iterator} does not support {@link Iterator#remove()}.
@@ -44,17 +127,62 @@ final class MeasureMapInternal {
     return new MeasureMapInternalIterator();
   }
 
-  // Returns the contextual information associated with an example value.
-  Map<String, String> getAttachments() {
-    return attachments;
+  /**
+   * Replaces the contents of this map with the contents of the given map. The arrays of this map
+   * are reused if they are large enough; the attachments, if any, are copied into an immutable map,
+   * since recorded attachments may be kept by exemplars.
+   *
+   * @param other the map to copy.
+   */
+  void copyFrom(MeasureMapInternal other) {
+    if (measures.length < other.size) {
+      measures = new Measure[other.measures.length];
+      values = new long[other.values.length];
+    } else if (other.size < size) {
+      // Do not keep the measures of the previous content alive.
+      Arrays.fill(measures, other.size, size, null);
+    }
+    System.arraycopy(other.measures, 0, measures, 0, other.size);
+    System.arraycopy(other.values, 0, values, 0, other.size);
+    size = other.size;
+    Map<String, String> otherAttachments = other.attachments;
+    attachments =
+        otherAttachments == null
+            ? null
+            : Collections.unmodifiableMap(new HashMap<String, String>(otherAttachments));
+  }
+
+  /** Removes all the measures and attachments, keeping the arrays for reuse. */
+  void clear() {
+    Arrays.fill(measures, 0, size, null);
+    size = 0;
+    attachments = null;
   }
 
-  private final ArrayList<Measurement> measurements;
-  private final Map<String, String> attachments;
+  private void putBits(Measure measure, long value) {
+    // Note: this makes adding measurements quadratic but is fastest for the sizes of
+    // MeasureMapInternals that we should see.
+    for (int i = 0; i < size; i++) {
+      if (measures[i] == measure) {
+        values[i] = value;
+        return;
+      }
+    }
+    if (size == measures.length) {
+      measures = Arrays.copyOf(measures, size * 2);
+      values = Arrays.copyOf(values, size * 2);
+    }
+    measures[size] = measure;
+    values[size] = value;
+    size++;
+  }
 
-  private MeasureMapInternal(ArrayList<Measurement> measurements, Map<String, String> attachments) {
-    this.measurements = measurements;
-    this.attachments = Collections.unmodifiableMap(new HashMap<String, String>(attachments));
+  private Measurement getMeasurement(int index) {
+    Measure measure = getMeasure(index);
+    return measure instanceof MeasureLong
+        ? Measurement.MeasurementLong.create((MeasureLong) measure, values[index])
+        : Measurement.MeasurementDouble.create(
+            (MeasureDouble) measure, Double.longBitsToDouble(values[index]));
   }
 
   /** Builder for the {@link MeasureMapInternal} class. */
@@ -68,7 +196,7 @@ final class MeasureMapInternal {
      * @return this
      */
     Builder put(MeasureDouble measure, double value) {
-      measurements.add(Measurement.MeasurementDouble.create(measure, value));
+      measureMap.put(measure, value);
       return this;
     }
 
@@ -81,33 +209,23 @@ final class MeasureMapInternal {
      * @return this
      */
     Builder put(MeasureLong measure, long value) {
-      measurements.add(Measurement.MeasurementLong.create(measure, value));
+      measureMap.put(measure, value);
       return this;
     }
 
     Builder putAttachment(String key, String value) {
-      this.attachments.put(key, value);
+      measureMap.putAttachment(key, value);
       return this;
     }
 
     /** Constructs a {@link MeasureMapInternal} from the current measurements. */
     MeasureMapInternal build() {
-      // Note: this makes adding measurements quadratic but is fastest for the sizes of
-      // MeasureMapInternals that we should see. We may want to go to a strategy of sort/eliminate
-      // for larger MeasureMapInternals.
-      for (int i = measurements.size() - 1; i >= 0; i--) {
-        for (int j = i - 1; j >= 0; j--) {
-          if (measurements.get(i).getMeasure() == measurements.get(j).getMeasure()) {
-            measurements.remove(j);
-            j--;
-          }
-        }
-      }
-      return new MeasureMapInternal(measurements, attachments);
+      MeasureMapInternal copy = new MeasureMapInternal();
+      copy.copyFrom(measureMap);
+      return copy;
     }
 
-    private final ArrayList<Measurement> measurements = new ArrayList<Measurement>();
-    private final Map<String, String> attachments = new HashMap<String, String>();
+    private final MeasureMapInternal measureMap = new MeasureMapInternal();
 
     private Builder() {}
   }
@@ -121,10 +239,10 @@ final class MeasureMapInternal {
 
     @Override
     public Measurement next() {
-      if (position >= measurements.size()) {
+      if (position >= length) {
         throw new NoSuchElementException();
       }
-      return measurements.get(position++);
+      return getMeasurement(position++);
     }
 
     @Override
@@ -132,7 +250,7 @@ final class MeasureMapInternal {
       throw new UnsupportedOperationException();
     }
 
-    private final int length = measurements.size();
+    private final int length = size;
     private int position = 0;
   }
 }
@@ -16,27 +16,41 @@
 
 package io.opencensus.implcore.stats;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import io.opencensus.common.Clock;
 import io.opencensus.common.Timestamp;
+import io.opencensus.implcore.internal.CheckerFrameworkUtils;
 import io.opencensus.implcore.internal.CurrentState.State;
+import io.opencensus.implcore.stats.MutableViewData.BoundSeries;
+import io.opencensus.implcore.stats.MutableViewData.DirectMutableViewData;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.export.ChangedMetrics;
 import io.opencensus.metrics.export.Metric;
+import io.opencensus.metrics.export.MetricDescriptor;
+import io.opencensus.metrics.export.MetricDescriptor.Type;
+import io.opencensus.metrics.export.Point;
+import io.opencensus.metrics.export.TimeSeries;
+import io.opencensus.metrics.export.Value;
 import io.opencensus.stats.Measure;
-import io.opencensus.stats.Measurement;
+import io.opencensus.stats.Measure.MeasureLong;
 import io.opencensus.stats.View;
 import io.opencensus.stats.ViewData;
 import io.opencensus.tags.TagContext;
+import io.opencensus.tags.TagValue;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import javax.annotation.concurrent.GuardedBy;
 
@@ -44,18 +58,41 @@ import javax.annotation.concurrent.GuardedBy;
 import org.checkerframework.checker.nullness.qual.Nullable;
 */
 
-/** A class that stores a singleton map from {@code MeasureName}s to {@link MutableViewData}s. */
+/**
+ * A class that stores a singleton map from {@code MeasureName}s to {@link MutableViewData}s.
+ *
+ * <p>The map is partitioned into shards by measure name. Each shard has its own lock, and all the
+ * {@code MutableViewData}s of a measure live in exactly one shard, so recording to different
+ * shards (typically from different queue consumers) does not contend.
+ *
+ * <p>When direct recording is enabled, the views that support it are updated on the recording
+ * thread by {@link #recordDirect}, using a copy-on-write snapshot of the registered views, and are
+ * skipped when the shard records from the queue.
+ *
+ * <p>A bound measure resolves a {@link Binding} once: its tags are projected at bind time, and the
+ * series of its direct views are looked up on first use. The binding is replaced when a view is
+ * registered or unregistered, and a series when it is evicted or cleared.
+ *
+ * <p>An unregistered view is removed from the shard, so that the queue events that are still
+ * pending skip it, and its data is cleared. Records with a binding made before the view was
+ * unregistered may still reach the cleared {@code MutableViewData}, which is no longer read.
+ *
+ * <p>{@link #getMetrics} also reports, per view, how many records went to the overflow series and
+ * how many idle series were evicted, as configured by {@link StatsConfiguration}. The {@code
+ * TimeSeries} of each series is cached until the series is recorded to again, and {@link
+ * #getMetricsChangedSince} only returns the series whose {@code TimeSeries} was rebuilt after a
+ * cursor, and the series evicted since, so that exports cost in proportion to the series that
+ * changed. When stats are cleared or a view is unregistered, the next export returns all the series
+ * to every cursor instead.
+ *
+ * <p>Readers only hold the lock of a shard to find its {@code MutableViewData}s, and each of those
+ * only holds it to swap its recording buffers, so that building {@code ViewData}s and {@code
+ * Metric}s does not block recording. Interval views are the exception: they are read under the lock
+ * of their shard.
+ */
 @SuppressWarnings("deprecation")
 final class MeasureToViewMap {
 
-  /*
-   * A synchronized singleton map that stores the one-to-many mapping from Measures
-   * to MutableViewDatas.
-   */
-  @GuardedBy("this")
-  private final Multimap<String, MutableViewData> mutableMap =
-      HashMultimap.<String, MutableViewData>create();
-
   @GuardedBy("this")
   private final Map<View.Name, View> registeredViews = new HashMap<View.Name, View>();
 
@@ -63,15 +100,120 @@ final class MeasureToViewMap {
   @GuardedBy("this")
   private final Map<String, Measure> registeredMeasures = Maps.newHashMap();
 
+  // The maximum number of shards, so that callers can track a set of shards in a long.
+  static final int MAX_SHARDS = 64;
+
+  private static final MutableViewData[] NO_VIEWS = new MutableViewData[0];
+  private static final DirectMutableViewData[] NO_DIRECT_VIEWS = new DirectMutableViewData[0];
+
+  private static final List<LabelKey> VIEW_LABEL_KEYS =
+      Collections.singletonList(LabelKey.create("view", "The name of the view."));
+
+  @VisibleForTesting
+  static final MetricDescriptor OVERFLOW_RECORDS_METRIC_DESCRIPTOR =
+      MetricDescriptor.create(
+          "opencensus.io/stats/view/overflow_records",
+          "Number of records aggregated in the overflow series of a view because the view had "
+              + "the maximum number of series.",
+          "1",
+          Type.CUMULATIVE_INT64,
+          VIEW_LABEL_KEYS);
+
+  @VisibleForTesting
+  static final MetricDescriptor EVICTED_SERIES_METRIC_DESCRIPTOR =
+      MetricDescriptor.create(
+          "opencensus.io/stats/view/evicted_series",
+          "Number of idle series evicted from a view.",
+          "1",
+          Type.CUMULATIVE_INT64,
+          VIEW_LABEL_KEYS);
+
+  private final Shard[] shards;
+
+  private final StatsConfiguration configuration;
+
+  // Immutable snapshot of how to record each registered measure. It is replaced under the lock of
+  // this MeasureToViewMap whenever a view is registered or unregistered, and read without any lock.
+  private volatile Map<String, RecordingInfo> recordingInfos =
+      Collections.<String, RecordingInfo>emptyMap();
+
+  // Per-thread buffer for the projected tags of recordDirect.
+  private final ThreadLocal</*@Nullable*/ TagValue[]> directBuffer =
+      new ThreadLocal</*@Nullable*/ TagValue[]>();
+
+  // Serializes exports, so that the versions of the cached TimeSeries increase in the order in
+  // which each shard is read.
+  private final Object exportLock = new Object();
+
+  // The version of the last export, which is the cursor returned by getMetricsChangedSince.
+  @GuardedBy("exportLock")
+  private long exportVersion = 0;
+
+  // The exports since a version older than this one return all the series.
+  @GuardedBy("exportLock")
+  private long resetVersion = 0;
+
+  // Set when series were removed without being recorded as removed, so that the next export
+  // resets the cursors.
+  private volatile boolean seriesReset = false;
+
   // Cached set of exported views. It must be set to null whenever a view is registered or
   // unregistered.
   @javax.annotation.Nullable private volatile Set<View> exportedViews;
 
+  MeasureToViewMap() {
+    this(1);
+  }
+
+  MeasureToViewMap(int numShards) {
+    this(numShards, StatsConfiguration.getDefault());
+  }
+
+  MeasureToViewMap(int numShards, StatsConfiguration configuration) {
+    checkArgument(numShards > 0, "Number of shards must be positive.");
+    checkArgument(numShards <= MAX_SHARDS, "Number of shards must be at most " + MAX_SHARDS + ".");
+    this.configuration = configuration;
+    shards = new Shard[numShards];
+    for (int i = 0; i < numShards; i++) {
+      shards[i] = new Shard();
+    }
+  }
+
+  int getNumShards() {
+    return shards.length;
+  }
+
+  boolean isDirectRecordingEnabled() {
+    return configuration.isDirectRecordingEnabled();
+  }
+
+  // Returns the index of the shard that owns all views of the measure with the given name.
+  int getShardIndex(String measureName) {
+    return shards.length == 1 ? 0 : (measureName.hashCode() & Integer.MAX_VALUE) % shards.length;
+  }
+
   /** Returns a {@link ViewData} corresponding to the given {@link View.Name}. */
   @javax.annotation.Nullable
-  synchronized ViewData getView(View.Name viewName, Clock clock, State state) {
-    MutableViewData view = getMutableViewData(viewName);
-    return view == null ? null : view.toViewData(clock.now(), state);
+  ViewData getView(View.Name viewName, Clock clock, State state) {
+    View view;
+    synchronized (this) {
+      view = registeredViews.get(viewName);
+    }
+    if (view == null) {
+      return null;
+    }
+    Shard shard = shards[getShardIndex(view.getMeasure().getName())];
+    MutableViewData mutableViewData;
+    synchronized (shard) {
+      // The view may have been unregistered, or replaced by another view with the same name, since
+      // it was looked up.
+      mutableViewData = shard.findMutableViewData(view);
+    }
+    if (mutableViewData == null) {
+      return null;
+    }
+    // Read without the lock of the shard, so that recording can go on.
+    return mutableViewData.toViewData(clock.now(), state);
   }
 
   Set<View> getExportedViews() {
@@ -119,76 +261,503 @@ final class MeasureToViewMap {
       registeredMeasures.put(measure.getName(), measure);
     }
     Timestamp now = clock.now();
-    mutableMap.put(view.getMeasure().getName(), MutableViewData.create(view, now));
+    int shardIndex = getShardIndex(measure.getName());
+    RecordingInfo info = recordingInfos.get(measure.getName());
+    if (info == null) {
+      info = RecordingInfo.create(measure, shardIndex);
+    }
+    // Existing slots never change, so the views that are already registered can keep theirs.
+    TagProjection projection = info.projection.withColumns(view.getColumns());
+    int[] columnSlots = projection.getSlots(view.getColumns());
+    MutableViewData mutableViewData;
+    RecordingInfo newInfo;
+    if (configuration.isDirectRecordingEnabled() && RecordUtils.isDirectRecordingSupported(view)) {
+      DirectMutableViewData directViewData =
+          MutableViewData.createDirect(view, now, columnSlots, configuration);
+      mutableViewData = directViewData;
+      newInfo = info.withDirectView(projection, directViewData);
+    } else {
+      mutableViewData =
+          MutableViewData.create(view, now, columnSlots, configuration, shards[shardIndex]);
+      newInfo = info.withQueuedView(projection, mutableViewData);
+    }
+    Shard shard = shards[shardIndex];
+    synchronized (shard) {
+      shard.registeredMeasures.put(measure.getName(), measure);
+      shard.projections.put(measure.getName(), projection);
+      shard.mutableMap.put(measure.getName(), mutableViewData);
+    }
+    Map<String, RecordingInfo> newRecordingInfos =
+        new HashMap<String, RecordingInfo>(recordingInfos);
+    newRecordingInfos.put(measure.getName(), newInfo);
+    recordingInfos = Collections.unmodifiableMap(newRecordingInfos);
   }
 
-  @javax.annotation.Nullable
-  private synchronized MutableViewData getMutableViewData(View.Name viewName) {
-    View view = registeredViews.get(viewName);
+  /**
+   * Disable stats collection for the {@link View} with the given name, and discard its data. The
+   * measure of the view is unregistered with its last view.
+   */
+  synchronized void unregisterView(View.Name viewName) {
+    View view = registeredViews.remove(viewName);
     if (view == null) {
-      return null;
+      return;
+    }
+    exportedViews = null;
+    String measureName = view.getMeasure().getName();
+    Shard shard = shards[getShardIndex(measureName)];
+    MutableViewData mutableViewData;
+    boolean lastView;
+    synchronized (shard) {
+      mutableViewData = shard.getMutableViewData(view);
+      shard.mutableMap.remove(measureName, mutableViewData);
+      lastView = !shard.mutableMap.containsKey(measureName);
+      if (lastView) {
+        shard.registeredMeasures.remove(measureName);
+        shard.projections.remove(measureName);
+      }
+    }
+    Map<String, RecordingInfo> newRecordingInfos =
+        new HashMap<String, RecordingInfo>(recordingInfos);
+    if (lastView) {
+      registeredMeasures.remove(measureName);
+      newRecordingInfos.remove(measureName);
+    } else {
+      RecordingInfo info = CheckerFrameworkUtils.castNonNull(recordingInfos.get(measureName));
+      newRecordingInfos.put(measureName, info.withoutView(mutableViewData));
+    }
+    // Invalidates the bindings that still record to the view.
+    recordingInfos = Collections.unmodifiableMap(newRecordingInfos);
+    // Free the series now, instead of when the last binding and queue event let go of the view.
+    mutableViewData.clearStats();
+    seriesReset = true;
+  }
+
+  /**
+   * Records the measurement at the given index to the views of its measure that are recorded
+   * directly. The values of {@code MeasureLong}s are recorded as longs.
+   *
+   * @return the index of the shard that still has to record the measurement from the queue, or
+   *     {@code -1} if all the views of the measure were recorded.
+   */
+  int recordDirect(TagContext tags, MeasureMapInternal stats, int index) {
+    Measure measure = stats.getMeasure(index);
+    RecordingInfo info = recordingInfos.get(measure.getName());
+    if (info == null) {
+      // Let the shard decide whether the measure is registered by the time it records.
+      return getShardIndex(measure.getName());
+    }
+    if (!info.measure.equals(measure)) {
+      // unregistered measures will be ignored.
+      return -1;
+    }
+    if (info.directViews.length > 0) {
+      /*@Nullable*/ TagValue[] buffer = info.projection.ensureCapacity(directBuffer.get());
+      directBuffer.set(buffer);
+      /*@Nullable*/ TagValue[] projectedTags = info.projection.project(tags, buffer);
+      if (measure instanceof MeasureLong) {
+        long value = stats.getLongValue(index);
+        for (DirectMutableViewData viewData : info.directViews) {
+          viewData.recordDirectLong(projectedTags, value);
+        }
+      } else {
+        double value = stats.getValue(index);
+        for (DirectMutableViewData viewData : info.directViews) {
+          viewData.recordDirect(projectedTags, value);
+        }
+      }
+    }
+    return info.hasQueuedViews() ? info.shardIndex : -1;
+  }
+
+  /**
+   * Resolves the views of the given measure and projects the given tags for them, for a bound
+   * measure. The returned {@link Binding} has to be replaced once it is no longer {@link
+   * #isCurrent current}.
+   */
+  Binding bind(Measure measure, TagContext tags) {
+    Map<String, RecordingInfo> infos = recordingInfos;
+    RecordingInfo info = infos.get(measure.getName());
+    if (info == null || !info.measure.equals(measure)) {
+      // unregistered measures will be ignored, until a view is registered.
+      return new Binding(infos, 0, new TagValue[0], NO_DIRECT_VIEWS, NO_VIEWS);
+    }
+    /*@Nullable*/ TagValue[] projectedTags =
+        info.projection.project(tags, info.projection.ensureCapacity(null));
+    return new Binding(infos, info.shardIndex, projectedTags, info.directViews, info.queuedViews);
+  }
+
+  // Returns whether no view was registered or unregistered since the given Binding was made.
+  boolean isCurrent(Binding binding) {
+    return binding.recordingInfos == recordingInfos;
+  }
+
+  /**
+   * Records the given value of a bound measure to its views that are recorded directly.
+   *
+   * @return the index of the shard that still has to record the value from the queue, or {@code
+   *     -1} if all the views of the measure were recorded.
+   */
+  int recordDirect(Binding binding, double value) {
+    for (int i = 0; i < binding.directViews.length; i++) {
+      BoundSeries series = binding.directSeries[i];
+      if (series == null || !series.record(value)) {
+        // The series did not exist yet, or was evicted: record with a lookup, then resolve it.
+        DirectMutableViewData viewData = binding.directViews[i];
+        viewData.recordDirect(binding.projectedTags, value);
+        binding.directSeries[i] = viewData.bindSeries(binding.projectedTags);
+      }
     }
-    Collection<MutableViewData> views = mutableMap.get(view.getMeasure().getName());
-    for (MutableViewData viewData : views) {
-      if (viewData.getView().getName().equals(viewName)) {
-        return viewData;
+    return binding.queuedViews.length > 0 ? binding.shardIndex : -1;
+  }
+
+  /**
+   * Records the given value of a bound {@code MeasureLong} to its views that are recorded
+   * directly, keeping the long aggregations exact.
+   *
+   * @see #recordDirect(Binding, double)
+   */
+  int recordDirectLong(Binding binding, long value) {
+    for (int i = 0; i < binding.directViews.length; i++) {
+      BoundSeries series = binding.directSeries[i];
+      if (series == null || !series.recordLong(value)) {
+        DirectMutableViewData viewData = binding.directViews[i];
+        viewData.recordDirectLong(binding.projectedTags, value);
+        binding.directSeries[i] = viewData.bindSeries(binding.projectedTags);
+      }
+    }
+    return binding.queuedViews.length > 0 ? binding.shardIndex : -1;
+  }
+
+  // Records the given value of a bound measure to its views that are recorded from the queue.
+  void record(Binding binding, double value, long timestampNanos) {
+    Map<String, String> attachments = Collections.<String, String>emptyMap();
+    synchronized (shards[binding.shardIndex]) {
+      for (MutableViewData viewData : binding.queuedViews) {
+        viewData.record(binding.projectedTags, value, timestampNanos, attachments);
       }
     }
-    throw new AssertionError(
-        "Internal error: Not recording stats for view: \""
-            + viewName
-            + "\" registeredViews="
-            + registeredViews
-            + ", mutableMap="
-            + mutableMap);
   }
 
-  // Records stats with a set of tags.
-  synchronized void record(TagContext tags, MeasureMapInternal stats, Timestamp timestamp) {
-    Iterator<Measurement> iterator = stats.iterator();
-    Map<String, String> attachments = stats.getAttachments();
-    while (iterator.hasNext()) {
-      Measurement measurement = iterator.next();
-      Measure measure = measurement.getMeasure();
-      if (!measure.equals(registeredMeasures.get(measure.getName()))) {
-        // unregistered measures will be ignored.
-        continue;
+  // Records the given value of a bound MeasureLong to its views that are recorded from the queue.
+  void recordLong(Binding binding, long value, long timestampNanos) {
+    Map<String, String> attachments = Collections.<String, String>emptyMap();
+    synchronized (shards[binding.shardIndex]) {
+      for (MutableViewData viewData : binding.queuedViews) {
+        viewData.recordLong(binding.projectedTags, value, timestampNanos, attachments);
       }
-      Collection<MutableViewData> viewDataCollection = mutableMap.get(measure.getName());
-      for (MutableViewData viewData : viewDataCollection) {
-        viewData.record(
-            tags, RecordUtils.getDoubleValueFromMeasurement(measurement), timestamp, attachments);
+    }
+  }
+
+  // Records stats with a set of tags, at the given time in nanoseconds since the epoch. Only the
+  // measurements of the measures owned by the given shard are recorded.
+  void record(int shardIndex, TagContext tags, MeasureMapInternal stats, long timestampNanos) {
+    Shard shard = shards[shardIndex];
+    synchronized (shard) {
+      Map<String, String> attachments = stats.getAttachments();
+      for (int i = 0; i < stats.size(); i++) {
+        Measure measure = stats.getMeasure(i);
+        if (getShardIndex(measure.getName()) != shardIndex) {
+          // This measurement is recorded by the owning shard.
+          continue;
+        }
+        if (!measure.equals(shard.registeredMeasures.get(measure.getName()))) {
+          // unregistered measures will be ignored.
+          continue;
+        }
+        Collection<MutableViewData> viewDataCollection = shard.mutableMap.get(measure.getName());
+        // Project the tags once for all the views of the measure, on first use.
+        /*@Nullable*/ TagValue[] projectedTags = null;
+        for (MutableViewData viewData : viewDataCollection) {
+          if (viewData.isDirect()) {
+            // Already recorded by recordDirect on the recording thread.
+            continue;
+          }
+          if (projectedTags == null) {
+            TagProjection projection =
+                CheckerFrameworkUtils.castNonNull(shard.projections.get(measure.getName()));
+            shard.buffer = projection.ensureCapacity(shard.buffer);
+            projectedTags = projection.project(tags, shard.buffer);
+          }
+          if (measure instanceof MeasureLong) {
+            viewData.recordLong(
+                projectedTags, stats.getLongValue(i), timestampNanos, attachments);
+          } else {
+            viewData.record(projectedTags, stats.getValue(i), timestampNanos, attachments);
+          }
+        }
       }
     }
   }
 
-  synchronized List<Metric> getMetrics(Clock clock, State state) {
+  List<Metric> getMetrics(Clock clock, State state) {
+    return getMetricsChangedSince(0, clock, state).getMetrics();
+  }
+
+  /**
+   * Returns the metrics of the series that changed since the export that returned the given
+   * cursor, and of the series that were evicted since, with the cursor of this export. Views
+   * without changed series are omitted. The overflow and eviction counts are always included.
+   *
+   * <p>If the cursor is zero, or the removals since the cursor are no longer known, all the series
+   * are returned as complete instead.
+   *
+   * @param cursor the cursor of an earlier export, or zero to get all the series.
+   * @param clock the clock.
+   * @param state the current state of stats collection.
+   * @return the changed and removed metrics, and the cursor to pass to the next call.
+   */
+  ChangedMetrics getMetricsChangedSince(long cursor, Clock clock, State state) {
+    checkArgument(cursor >= 0, "Cursor must not be negative.");
+    synchronized (exportLock) {
+      long version = ++exportVersion;
+      if (seriesReset) {
+        seriesReset = false;
+        resetVersion = version;
+      }
+      if (cursor > 0 && cursor >= resetVersion) {
+        List<Metric> removedMetrics = new ArrayList<Metric>();
+        List<Metric> metrics = getMetrics(clock, state, version, cursor, removedMetrics);
+        if (metrics != null) {
+          return ChangedMetrics.create(metrics, removedMetrics, version, /* complete= */ false);
+        }
+      }
+      return ChangedMetrics.create(
+          CheckerFrameworkUtils.castNonNull(getMetrics(clock, state, version, 0, null)),
+          Collections.<Metric>emptyList(),
+          version,
+          /* complete= */ true);
+    }
+  }
+
+  // Returns the metrics of the series changed since the given version, and adds the series removed
+  // since to the given list, or returns null if some removals are no longer known. Removals are
+  // not reported if sinceVersion is zero.
+  @GuardedBy("exportLock")
+  @javax.annotation.Nullable
+  private List<Metric> getMetrics(
+      Clock clock,
+      State state,
+      long version,
+      long sinceVersion,
+      @javax.annotation.Nullable List<Metric> removedMetrics) {
     List<Metric> metrics = new ArrayList<Metric>();
+    List<TimeSeries> overflowRecords = new ArrayList<TimeSeries>();
+    List<TimeSeries> evictedSeries = new ArrayList<TimeSeries>();
     Timestamp now = clock.now();
-    for (Entry<String, MutableViewData> entry : mutableMap.entries()) {
-      Metric metric = entry.getValue().toMetric(now, state);
+    for (MutableViewData mutableViewData : getAllMutableViewData()) {
+      Metric metric = mutableViewData.toMetric(now, state, version, sinceVersion);
       if (metric != null) {
         metrics.add(metric);
       }
+      if (removedMetrics != null
+          && !mutableViewData.addRemovedSeriesTo(removedMetrics, version, sinceVersion)) {
+        return null;
+      }
+      // Read after toMetric, which evicts the idle series.
+      addCount(overflowRecords, mutableViewData, mutableViewData.getOverflowRecordCount(), now);
+      addCount(evictedSeries, mutableViewData, mutableViewData.getEvictedSeriesCount(), now);
+    }
+    if (!overflowRecords.isEmpty()) {
+      metrics.add(Metric.create(OVERFLOW_RECORDS_METRIC_DESCRIPTOR, overflowRecords));
+    }
+    if (!evictedSeries.isEmpty()) {
+      metrics.add(Metric.create(EVICTED_SERIES_METRIC_DESCRIPTOR, evictedSeries));
     }
     return metrics;
   }
 
+  // Adds a time series with the given count of the given view, unless the count is zero.
+  private static void addCount(
+      List<TimeSeries> timeSeriesList, MutableViewData mutableViewData, long count, Timestamp now) {
+    if (count == 0) {
+      return;
+    }
+    timeSeriesList.add(
+        TimeSeries.createWithOnePoint(
+            Collections.singletonList(
+                LabelValue.create(mutableViewData.getView().getName().asString())),
+            Point.create(Value.longValue(count), now),
+            mutableViewData.getCreationTime()));
+  }
+
   // Clear stats for all the current MutableViewData
-  synchronized void clearStats() {
-    for (Entry<String, Collection<MutableViewData>> entry : mutableMap.asMap().entrySet()) {
-      for (MutableViewData mutableViewData : entry.getValue()) {
-        mutableViewData.clearStats();
-      }
+  void clearStats() {
+    for (MutableViewData mutableViewData : getAllMutableViewData()) {
+      mutableViewData.clearStats();
     }
+    seriesReset = true;
   }
 
   // Resume stats collection for all MutableViewData.
-  synchronized void resumeStatsCollection(Timestamp now) {
-    for (Entry<String, Collection<MutableViewData>> entry : mutableMap.asMap().entrySet()) {
-      for (MutableViewData mutableViewData : entry.getValue()) {
-        mutableViewData.resumeStatsCollection(now);
+  void resumeStatsCollection(Timestamp now) {
+    for (MutableViewData mutableViewData : getAllMutableViewData()) {
+      mutableViewData.resumeStatsCollection(now);
+    }
+  }
+
+  // Returns all the current MutableViewData. The lock of each shard is only held to copy its
+  // MutableViewData, which take the lock themselves when they need it.
+  private List<MutableViewData> getAllMutableViewData() {
+    List<MutableViewData> mutableViewDataList = new ArrayList<MutableViewData>();
+    for (Shard shard : shards) {
+      synchronized (shard) {
+        mutableViewDataList.addAll(shard.mutableMap.values());
+      }
+    }
+    return mutableViewDataList;
+  }
+
+  // How to record the measurements of one registered measure.
+  private static final class RecordingInfo {
+
+    private final Measure measure;
+    private final int shardIndex;
+    private final TagProjection projection;
+    private final DirectMutableViewData[] directViews;
+    private final MutableViewData[] queuedViews;
+
+    private RecordingInfo(
+        Measure measure,
+        int shardIndex,
+        TagProjection projection,
+        DirectMutableViewData[] directViews,
+        MutableViewData[] queuedViews) {
+      this.measure = measure;
+      this.shardIndex = shardIndex;
+      this.projection = projection;
+      this.directViews = directViews;
+      this.queuedViews = queuedViews;
+    }
+
+    // Returns a RecordingInfo for a measure without views.
+    private static RecordingInfo create(Measure measure, int shardIndex) {
+      return new RecordingInfo(
+          measure, shardIndex, TagProjection.EMPTY, NO_DIRECT_VIEWS, NO_VIEWS);
+    }
+
+    private boolean hasQueuedViews() {
+      return queuedViews.length > 0;
+    }
+
+    // Returns a copy of this RecordingInfo that also records to the given view from the queue. The
+    // column slots of the view are in the given projection.
+    private RecordingInfo withQueuedView(
+        TagProjection projection, MutableViewData mutableViewData) {
+      return new RecordingInfo(
+          measure, shardIndex, projection, directViews, append(queuedViews, mutableViewData));
+    }
+
+    // Returns a copy of this RecordingInfo that also records to the given view directly. The
+    // column slots of the view are in the given projection.
+    private RecordingInfo withDirectView(
+        TagProjection projection, DirectMutableViewData mutableViewData) {
+      return new RecordingInfo(
+          measure, shardIndex, projection, append(directViews, mutableViewData), queuedViews);
+    }
+
+    // Returns a copy of this RecordingInfo that no longer records to the given view. The projection
+    // keeps the columns of the view, so that the slots of the other views do not change.
+    private RecordingInfo withoutView(MutableViewData mutableViewData) {
+      return new RecordingInfo(
+          measure,
+          shardIndex,
+          projection,
+          remove(directViews, mutableViewData),
+          remove(queuedViews, mutableViewData));
+    }
+
+    private static <T extends MutableViewData> T[] remove(T[] views, MutableViewData view) {
+      List<T> newViews = new ArrayList<T>(Arrays.asList(views));
+      return newViews.remove(view) ? newViews.toArray(Arrays.copyOf(views, 0)) : views;
+    }
+
+    private static <T extends MutableViewData> T[] append(T[] views, T view) {
+      T[] newViews = Arrays.copyOf(views, views.length + 1);
+      newViews[views.length] = view;
+      return newViews;
+    }
+  }
+
+  /**
+   * The views that a bound measure records to, with its tags projected for them, as of one set of
+   * registered views. The series of the direct views are resolved on first use.
+   */
+  static final class Binding {
+
+    // The recordingInfos this Binding was made from. It is current as long as no view is
+    // registered or unregistered.
+    private final Map<String, RecordingInfo> recordingInfos;
+    private final int shardIndex;
+    private final /*@Nullable*/ TagValue[] projectedTags;
+    private final DirectMutableViewData[] directViews;
+    // The resolved series of each direct view, if it exists. Recording threads may race to
+    // resolve a series, which is harmless since they find the same series.
+    private final /*@Nullable*/ BoundSeries[] directSeries;
+    private final MutableViewData[] queuedViews;
+
+    private Binding(
+        Map<String, RecordingInfo> recordingInfos,
+        int shardIndex,
+        /*@Nullable*/ TagValue[] projectedTags,
+        DirectMutableViewData[] directViews,
+        MutableViewData[] queuedViews) {
+      this.recordingInfos = recordingInfos;
+      this.shardIndex = shardIndex;
+      this.projectedTags = projectedTags;
+      this.directViews = directViews;
+      this.directSeries = new BoundSeries[directViews.length];
+      this.queuedViews = queuedViews;
+    }
+  }
+
+  // The MutableViewDatas of the measures whose names hash to one shard.
+  private static final class Shard {
+
+    /*
+     * The one-to-many mapping from Measures to MutableViewDatas of this shard.
+     */
+    @GuardedBy("this")
+    private final Multimap<String, MutableViewData> mutableMap =
+        HashMultimap.<String, MutableViewData>create();
+
+    // A copy of the registered measures of this shard, so that recording does not need the lock of
+    // the enclosing MeasureToViewMap.
+    @GuardedBy("this")
+    private final Map<String, Measure> registeredMeasures = Maps.newHashMap();
+
+    // The TagProjection of each measure of this shard.
+    @GuardedBy("this")
+    private final Map<String, TagProjection> projections = Maps.newHashMap();
+
+    // Reused for the projected tags of each record.
+    @GuardedBy("this")
+    @javax.annotation.Nullable
+    private /*@Nullable*/ TagValue[] buffer;
+
+    @GuardedBy("this")
+    private MutableViewData getMutableViewData(View view) {
+      MutableViewData mutableViewData = findMutableViewData(view);
+      if (mutableViewData != null) {
+        return mutableViewData;
       }
+      throw new AssertionError(
+          "Internal error: Not recording stats for view: \""
+              + view.getName()
+              + "\" mutableMap="
+              + mutableMap);
+    }
+
+    // Returns the MutableViewData of the given view, or null if the view is not registered.
+    @GuardedBy("this")
+    @javax.annotation.Nullable
+    private MutableViewData findMutableViewData(View view) {
+      Collection<MutableViewData> views = mutableMap.get(view.getMeasure().getName());
+      for (MutableViewData viewData : views) {
+        if (viewData.getView().equals(view)) {
+          return viewData;
+        }
+      }
+      return null;
     }
   }
 }
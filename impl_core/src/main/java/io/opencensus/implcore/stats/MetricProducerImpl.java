@@ -16,6 +16,7 @@
 
 package io.opencensus.implcore.stats;
 
+import io.opencensus.metrics.export.ChangedMetrics;
 import io.opencensus.metrics.export.Metric;
 import io.opencensus.metrics.export.MetricProducer;
 import java.util.Collection;
@@ -35,4 +36,9 @@ final class MetricProducerImpl extends MetricProducer {
   public Collection<Metric> getMetrics() {
     return statsManager.getMetrics();
   }
+
+  @Override
+  public ChangedMetrics getMetricsChangedSince(long cursor) {
+    return statsManager.getMetricsChangedSince(cursor);
+  }
 }
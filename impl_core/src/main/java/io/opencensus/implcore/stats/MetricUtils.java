@@ -110,6 +110,12 @@ final class MetricUtils {
           if (arg instanceof Aggregation.Mean) {
             return Type.CUMULATIVE_DOUBLE; // Mean
           }
+          if (arg instanceof Aggregation.ExponentialDistribution) {
+            return Type.CUMULATIVE_DISTRIBUTION;
+          }
+          if (arg instanceof Aggregation.Percentiles) {
+            return Type.SUMMARY;
+          }
           throw new AssertionError();
         }
       };
@@ -21,9 +21,13 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.annotations.VisibleForTesting;
 import io.opencensus.common.Timestamp;
+import io.opencensus.implcore.internal.TimestampConverter;
 import io.opencensus.metrics.export.Distribution;
 import io.opencensus.metrics.export.Distribution.BucketOptions;
 import io.opencensus.metrics.export.Point;
+import io.opencensus.metrics.export.Summary;
+import io.opencensus.metrics.export.Summary.Snapshot;
+import io.opencensus.metrics.export.Summary.Snapshot.ValueAtPercentile;
 import io.opencensus.metrics.export.Value;
 import io.opencensus.stats.Aggregation;
 import io.opencensus.stats.AggregationData;
@@ -31,6 +35,8 @@ import io.opencensus.stats.AggregationData.DistributionData;
 import io.opencensus.stats.AggregationData.DistributionData.Exemplar;
 import io.opencensus.stats.BucketBoundaries;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -47,9 +53,21 @@ abstract class MutableAggregation {
    *
    * @param value new value to be added to population
    * @param attachments the contextual information on an {@link Exemplar}
-   * @param timestamp the timestamp when the value is recorded
+   * @param timestampNanos when the value is recorded, in nanoseconds since the epoch
    */
-  abstract void add(double value, Map<String, String> attachments, Timestamp timestamp);
+  abstract void add(double value, Map<String, String> attachments, long timestampNanos);
+
+  /**
+   * Put a new value of a {@code MeasureLong} into the MutableAggregation. The aggregations of long
+   * sums and last values keep it exact; the others add it as a double.
+   *
+   * @param value new value to be added to population
+   * @param attachments the contextual information on an {@link Exemplar}
+   * @param timestampNanos when the value is recorded, in nanoseconds since the epoch
+   */
+  void addLong(long value, Map<String, String> attachments, long timestampNanos) {
+    add((double) value, attachments, timestampNanos);
+  }
 
   // TODO(songya): remove this method once interval stats is completely removed.
   /**
@@ -69,7 +87,7 @@ abstract class MutableAggregation {
   abstract Point toPoint(Timestamp timestamp);
 
   /** Calculate sum of doubles on aggregated {@code MeasureValue}s. */
-  static class MutableSumDouble extends MutableAggregation {
+  static final class MutableSumDouble extends MutableAggregation {
 
     private double sum = 0.0;
 
@@ -85,7 +103,7 @@ abstract class MutableAggregation {
     }
 
     @Override
-    void add(double value, Map<String, String> attachments, Timestamp timestamp) {
+    void add(double value, Map<String, String> attachments, long timestampNanos) {
       sum += value;
     }
 
@@ -111,11 +129,12 @@ abstract class MutableAggregation {
     }
   }
 
-  /** Calculate sum of longs on aggregated {@code MeasureValue}s. */
-  static final class MutableSumLong extends MutableSumDouble {
-    private MutableSumLong() {
-      super();
-    }
+  /** Calculate sum of longs on aggregated {@code MeasureValue}s, with exact long arithmetic. */
+  static final class MutableSumLong extends MutableAggregation {
+
+    private long sum = 0;
+
+    private MutableSumLong() {}
 
     /**
      * Construct a {@code MutableSumLong}.
@@ -126,14 +145,37 @@ abstract class MutableAggregation {
       return new MutableSumLong();
     }
 
+    @Override
+    void add(double value, Map<String, String> attachments, long timestampNanos) {
+      sum += Math.round(value);
+    }
+
+    @Override
+    void addLong(long value, Map<String, String> attachments, long timestampNanos) {
+      sum += value;
+    }
+
+    @Override
+    void combine(MutableAggregation other, double fraction) {
+      checkArgument(other instanceof MutableSumLong, "MutableSumLong expected.");
+      long otherSum = ((MutableSumLong) other).sum;
+      // Whole buckets are added exactly.
+      this.sum += fraction == 1.0 ? otherSum : Math.round(fraction * otherSum);
+    }
+
     @Override
     AggregationData toAggregationData() {
-      return AggregationData.SumDataLong.create(Math.round(getSum()));
+      return AggregationData.SumDataLong.create(sum);
     }
 
     @Override
     Point toPoint(Timestamp timestamp) {
-      return Point.create(Value.longValue(Math.round(getSum())), timestamp);
+      return Point.create(Value.longValue(sum), timestamp);
+    }
+
+    @VisibleForTesting
+    long getSum() {
+      return sum;
     }
   }
 
@@ -154,7 +196,7 @@ abstract class MutableAggregation {
     }
 
     @Override
-    void add(double value, Map<String, String> attachments, Timestamp timestamp) {
+    void add(double value, Map<String, String> attachments, long timestampNanos) {
       count++;
     }
 
@@ -202,7 +244,7 @@ abstract class MutableAggregation {
     }
 
     @Override
-    void add(double value, Map<String, String> attachments, Timestamp timestamp) {
+    void add(double value, Map<String, String> attachments, long timestampNanos) {
       count++;
       sum += value;
     }
@@ -263,35 +305,48 @@ abstract class MutableAggregation {
     private double max = Double.NEGATIVE_INFINITY;
 
     private final BucketBoundaries bucketBoundaries;
+    // Shared by all the MutableDistributions of the same BucketBoundaries.
+    private final BucketIndex bucketIndex;
     private final long[] bucketCounts;
 
     // If there's a histogram (i.e bucket boundaries are not empty) in this MutableDistribution,
-    // exemplars will have the same size to bucketCounts; otherwise exemplars are null.
-    // Only the newest exemplar will be kept at each index.
-    @javax.annotation.Nullable private final Exemplar[] exemplars;
+    // each bucket can have up to one exemplar, chosen by the ExemplarPolicy of the view; otherwise
+    // exemplars are null.
+    @javax.annotation.Nullable private final ExemplarReservoir exemplars;
 
-    private MutableDistribution(BucketBoundaries bucketBoundaries) {
+    private MutableDistribution(BucketBoundaries bucketBoundaries, ExemplarPolicy exemplarPolicy) {
       this.bucketBoundaries = bucketBoundaries;
-      int buckets = bucketBoundaries.getBoundaries().size() + 1;
+      this.bucketIndex = BucketIndex.of(bucketBoundaries);
+      int buckets = bucketIndex.getBucketCount();
       this.bucketCounts = new long[buckets];
-      // In the implementation, each histogram bucket can have up to one exemplar, and the exemplar
-      // array is guaranteed to be in ascending order.
       // If there's no histogram, don't record exemplars.
-      this.exemplars = bucketBoundaries.getBoundaries().isEmpty() ? null : new Exemplar[buckets];
+      this.exemplars = buckets == 1 ? null : exemplarPolicy.newReservoir(buckets);
     }
 
     /**
-     * Construct a {@code MutableDistribution}.
+     * Construct a {@code MutableDistribution} that keeps the latest exemplar of each bucket.
      *
      * @return an empty {@code MutableDistribution}.
      */
     static MutableDistribution create(BucketBoundaries bucketBoundaries) {
+      return create(bucketBoundaries, ExemplarPolicy.keepLatest());
+    }
+
+    /**
+     * Construct a {@code MutableDistribution} whose exemplars are chosen by the given {@code
+     * ExemplarPolicy}.
+     *
+     * @return an empty {@code MutableDistribution}.
+     */
+    static MutableDistribution create(
+        BucketBoundaries bucketBoundaries, ExemplarPolicy exemplarPolicy) {
       checkNotNull(bucketBoundaries, "bucketBoundaries should not be null.");
-      return new MutableDistribution(bucketBoundaries);
+      checkNotNull(exemplarPolicy, "exemplarPolicy should not be null.");
+      return new MutableDistribution(bucketBoundaries, exemplarPolicy);
     }
 
     @Override
-    void add(double value, Map<String, String> attachments, Timestamp timestamp) {
+    void add(double value, Map<String, String> attachments, long timestampNanos) {
       sum += value;
       count++;
 
@@ -315,18 +370,13 @@ abstract class MutableAggregation {
         max = value;
       }
 
-      int bucket = 0;
-      for (; bucket < bucketBoundaries.getBoundaries().size(); bucket++) {
-        if (value < bucketBoundaries.getBoundaries().get(bucket)) {
-          break;
-        }
-      }
+      int bucket = bucketIndex.getBucket(value);
       bucketCounts[bucket]++;
 
       // No implicit recording for exemplars - if there are no attachments (contextual information),
       // don't record exemplars.
       if (!attachments.isEmpty() && exemplars != null) {
-        exemplars[bucket] = Exemplar.create(value, timestamp, attachments);
+        exemplars.offer(bucket, value, timestampNanos, attachments);
       }
     }
 
@@ -339,8 +389,10 @@ abstract class MutableAggregation {
       }
 
       MutableDistribution mutableDistribution = (MutableDistribution) other;
+      // The aggregations of a view share their index, which saves comparing the boundaries.
       checkArgument(
-          this.bucketBoundaries.equals(mutableDistribution.bucketBoundaries),
+          this.bucketIndex == mutableDistribution.bucketIndex
+              || this.bucketBoundaries.equals(mutableDistribution.bucketBoundaries),
           "Bucket boundaries should match.");
 
       // Algorithm for calculating the combination of sum of squared deviations:
@@ -372,17 +424,11 @@ abstract class MutableAggregation {
         this.bucketCounts[i] += bucketCounts[i];
       }
 
-      Exemplar[] otherExemplars = mutableDistribution.getExemplars();
+      ExemplarReservoir otherExemplars = mutableDistribution.exemplars;
       if (exemplars != null && otherExemplars != null) {
-        for (int i = 0; i < otherExemplars.length; i++) {
-          Exemplar exemplar = otherExemplars[i];
-          // Assume other is always newer than this, because we combined interval buckets in time
-          // order.
-          // If there's a newer exemplar, overwrite current value.
-          if (exemplar != null) {
-            this.exemplars[i] = exemplar;
-          }
-        }
+        // Assume other is always newer than this, because we combined interval buckets in time
+        // order.
+        exemplars.combine(otherExemplars);
       }
     }
 
@@ -392,14 +438,8 @@ abstract class MutableAggregation {
       for (long bucketCount : bucketCounts) {
         boxedBucketCounts.add(bucketCount);
       }
-      List<Exemplar> exemplarList = new ArrayList<Exemplar>();
-      if (exemplars != null) {
-        for (Exemplar exemplar : exemplars) {
-          if (exemplar != null) {
-            exemplarList.add(exemplar);
-          }
-        }
-      }
+      List<Exemplar> exemplarList =
+          exemplars == null ? Collections.<Exemplar>emptyList() : exemplars.getExemplarList();
       return DistributionData.create(
           mean, count, min, max, sumOfSquaredDeviations, boxedBucketCounts, exemplarList);
     }
@@ -409,9 +449,9 @@ abstract class MutableAggregation {
       List<Distribution.Bucket> buckets = new ArrayList<Distribution.Bucket>();
       for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
         long bucketCount = bucketCounts[bucket];
-        @javax.annotation.Nullable AggregationData.DistributionData.Exemplar exemplar = null;
+        @javax.annotation.Nullable ExemplarReservoir.Slot exemplar = null;
         if (exemplars != null) {
-          exemplar = exemplars[bucket];
+          exemplar = exemplars.getSlotIfPresent(bucket);
         }
 
         Distribution.Bucket metricBucket;
@@ -421,7 +461,9 @@ abstract class MutableAggregation {
               Distribution.Bucket.create(
                   bucketCount,
                   Distribution.Exemplar.create(
-                      exemplar.getValue(), exemplar.getTimestamp(), exemplar.getAttachments()));
+                      exemplar.getValue(),
+                      TimestampConverter.fromEpochNanos(exemplar.getTimestampNanos()),
+                      exemplar.getAttachments()));
         } else {
           // Bucket with no Exemplar.
           metricBucket = Distribution.Bucket.create(bucketCount);
@@ -469,14 +511,445 @@ abstract class MutableAggregation {
       return bucketBoundaries;
     }
 
+    // Returns the exemplar of each bucket, or null if there's no histogram.
     @javax.annotation.Nullable
-    Exemplar[] getExemplars() {
-      return exemplars;
+    /*@Nullable*/ Exemplar[] getExemplars() {
+      return exemplars == null ? null : exemplars.getExemplars();
+    }
+  }
+
+  /**
+   * Calculate distribution stats on aggregated {@code MeasureValue}s, with an exponential histogram
+   * whose resolution decreases as the range of the values grows.
+   */
+  static final class MutableExponentialDistribution extends MutableAggregation {
+
+    private double sum = 0.0;
+    private double mean = 0.0;
+    private long count = 0;
+    private double sumOfSquaredDeviations = 0.0;
+
+    // Initial "impossible" values, that will get reset as soon as first value is added.
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    private final int maxBuckets;
+    private int scale;
+
+    // Number of values that are not positive.
+    private long zeroCount = 0;
+
+    // Counts of the positive buckets in [minIndex, maxIndex], stored in a ring: the count of bucket
+    // i is at positiveCounts[floorMod(i, maxBuckets)]. Allocated with the first positive value.
+    @javax.annotation.Nullable private long[] positiveCounts;
+    private int minIndex;
+    private int maxIndex;
+
+    private MutableExponentialDistribution(int maxScale, int maxBuckets) {
+      this.scale = maxScale;
+      this.maxBuckets = maxBuckets;
+    }
+
+    /**
+     * Construct a {@code MutableExponentialDistribution}.
+     *
+     * @return an empty {@code MutableExponentialDistribution}.
+     */
+    static MutableExponentialDistribution create(Aggregation.ExponentialDistribution aggregation) {
+      checkNotNull(aggregation, "aggregation should not be null.");
+      return new MutableExponentialDistribution(
+          aggregation.getMaxScale(), aggregation.getMaxBuckets());
+    }
+
+    @Override
+    void add(double value, Map<String, String> attachments, long timestampNanos) {
+      sum += value;
+      count++;
+
+      // Update the sum of squared deviations with Welford's method, as in MutableDistribution.
+      double deltaFromMean = value - mean;
+      mean += deltaFromMean / count;
+      double deltaFromMean2 = value - mean;
+      sumOfSquaredDeviations += deltaFromMean * deltaFromMean2;
+
+      if (value < min) {
+        min = value;
+      }
+      if (value > max) {
+        max = value;
+      }
+
+      if (value > 0) {
+        int index = ExponentialBuckets.getIndex(value, scale);
+        int downscale = getDownscale(index, index);
+        if (downscale > 0) {
+          decreaseScale(downscale);
+          index >>= downscale;
+        }
+        incrementBucket(index, 1);
+      } else {
+        zeroCount++;
+      }
+    }
+
+    // We don't compute fractional MutableExponentialDistribution, it's either whole or none.
+    @Override
+    void combine(MutableAggregation other, double fraction) {
+      checkArgument(
+          other instanceof MutableExponentialDistribution,
+          "MutableExponentialDistribution expected.");
+      if (Math.abs(1.0 - fraction) > TOLERANCE) {
+        return;
+      }
+
+      MutableExponentialDistribution distribution = (MutableExponentialDistribution) other;
+      if (this.count + distribution.count > 0) {
+        double delta = distribution.mean - this.mean;
+        this.sumOfSquaredDeviations =
+            this.sumOfSquaredDeviations
+                + distribution.sumOfSquaredDeviations
+                + Math.pow(delta, 2)
+                    * this.count
+                    * distribution.count
+                    / (this.count + distribution.count);
+      }
+      this.count += distribution.count;
+      this.sum += distribution.sum;
+      this.mean = this.sum / this.count;
+      if (distribution.min < this.min) {
+        this.min = distribution.min;
+      }
+      if (distribution.max > this.max) {
+        this.max = distribution.max;
+      }
+      this.zeroCount += distribution.zeroCount;
+
+      long[] otherCounts = distribution.positiveCounts;
+      if (otherCounts == null) {
+        return;
+      }
+      // Bring both histograms to a common scale that can hold the union of their ranges.
+      if (distribution.scale < this.scale) {
+        decreaseScale(this.scale - distribution.scale);
+      }
+      int otherShift = distribution.scale - this.scale;
+      int downscale =
+          getDownscale(distribution.minIndex >> otherShift, distribution.maxIndex >> otherShift);
+      if (downscale > 0) {
+        decreaseScale(downscale);
+        otherShift += downscale;
+      }
+      for (int i = distribution.minIndex; i <= distribution.maxIndex; i++) {
+        long bucketCount = otherCounts[floorMod(i, distribution.maxBuckets)];
+        if (bucketCount != 0) {
+          incrementBucket(i >> otherShift, bucketCount);
+        }
+      }
+    }
+
+    // Returns by how much the scale must decrease so that the positive buckets can also hold the
+    // indices in [newMinIndex, newMaxIndex] of the current scale.
+    private int getDownscale(int newMinIndex, int newMaxIndex) {
+      if (positiveCounts != null) {
+        newMinIndex = Math.min(newMinIndex, minIndex);
+        newMaxIndex = Math.max(newMaxIndex, maxIndex);
+      }
+      int downscale = 0;
+      while ((newMaxIndex >> downscale) - (newMinIndex >> downscale) >= maxBuckets) {
+        downscale++;
+      }
+      return downscale;
+    }
+
+    // Decreases the scale by the given amount, merging each 2^downscale buckets into one.
+    private void decreaseScale(int downscale) {
+      scale -= downscale;
+      long[] counts = positiveCounts;
+      if (counts == null) {
+        return;
+      }
+      long[] newCounts = new long[maxBuckets];
+      for (int i = minIndex; i <= maxIndex; i++) {
+        newCounts[floorMod(i >> downscale, maxBuckets)] += counts[floorMod(i, maxBuckets)];
+      }
+      positiveCounts = newCounts;
+      minIndex >>= downscale;
+      maxIndex >>= downscale;
+    }
+
+    // Adds to the count of the bucket with the given index, which must fit in the buckets.
+    private void incrementBucket(int index, long increment) {
+      long[] counts = positiveCounts;
+      if (counts == null) {
+        positiveCounts = counts = new long[maxBuckets];
+        minIndex = index;
+        maxIndex = index;
+      } else {
+        minIndex = Math.min(minIndex, index);
+        maxIndex = Math.max(maxIndex, index);
+      }
+      counts[floorMod(index, maxBuckets)] += increment;
+    }
+
+    private static int floorMod(int x, int y) {
+      int mod = x % y;
+      return mod < 0 ? mod + y : mod;
+    }
+
+    @Override
+    AggregationData toAggregationData() {
+      List<Long> boxedBucketCounts = new ArrayList<Long>();
+      for (long bucketCount : getBucketCounts()) {
+        boxedBucketCounts.add(bucketCount);
+      }
+      return DistributionData.create(
+          mean,
+          count,
+          min,
+          max,
+          sumOfSquaredDeviations,
+          boxedBucketCounts,
+          Collections.<Exemplar>emptyList());
+    }
+
+    @Override
+    Point toPoint(Timestamp timestamp) {
+      List<Distribution.Bucket> buckets = new ArrayList<Distribution.Bucket>();
+      for (long bucketCount : getBucketCounts()) {
+        buckets.add(Distribution.Bucket.create(bucketCount));
+      }
+      return Point.create(
+          Value.distributionValue(
+              Distribution.create(
+                  count,
+                  mean * count,
+                  sumOfSquaredDeviations,
+                  BucketOptions.explicitOptions(getBucketBoundaries()),
+                  buckets)),
+          timestamp);
+    }
+
+    /**
+     * Returns the explicit bucket boundaries that the exported histogram uses: the lower bounds of
+     * the positive buckets from the lowest to the highest recorded one. The first exported bucket
+     * counts the values that are not positive, and the last one is unbounded.
+     */
+    List<Double> getBucketBoundaries() {
+      List<Double> boundaries = new ArrayList<Double>();
+      if (positiveCounts != null) {
+        for (int i = minIndex; i <= maxIndex; i++) {
+          double lowerBound = ExponentialBuckets.getLowerBound(i, scale);
+          // Neighboring subnormal bounds can round to the same double, merge their buckets.
+          if (boundaries.isEmpty() || lowerBound > boundaries.get(boundaries.size() - 1)) {
+            boundaries.add(lowerBound);
+          }
+        }
+      }
+      return boundaries;
+    }
+
+    // Returns the bucket counts that match getBucketBoundaries().
+    long[] getBucketCounts() {
+      long[] counts = positiveCounts;
+      if (counts == null) {
+        return new long[] {zeroCount};
+      }
+      long[] bucketCounts = new long[maxIndex - minIndex + 2];
+      bucketCounts[0] = zeroCount;
+      int bucket = 0;
+      double previousBound = 0.0;
+      for (int i = minIndex; i <= maxIndex; i++) {
+        double lowerBound = ExponentialBuckets.getLowerBound(i, scale);
+        if (lowerBound > previousBound) {
+          bucket++;
+          previousBound = lowerBound;
+        }
+        bucketCounts[bucket] += counts[floorMod(i, maxBuckets)];
+      }
+      return bucket + 1 == bucketCounts.length
+          ? bucketCounts
+          : Arrays.copyOf(bucketCounts, bucket + 1);
+    }
+
+    int getScale() {
+      return scale;
+    }
+
+    long getZeroCount() {
+      return zeroCount;
+    }
+
+    double getMean() {
+      return mean;
+    }
+
+    long getCount() {
+      return count;
+    }
+
+    double getMin() {
+      return min;
+    }
+
+    double getMax() {
+      return max;
+    }
+
+    // Returns the aggregated sum of squared deviations.
+    double getSumOfSquaredDeviations() {
+      return sumOfSquaredDeviations;
+    }
+  }
+
+  /** Calculate percentiles on aggregated {@code MeasureValue}s with a {@link QuantileSketch}. */
+  static final class MutablePercentiles extends MutableAggregation {
+
+    private double sum = 0.0;
+    private double mean = 0.0;
+    private long count = 0;
+    private double sumOfSquaredDeviations = 0.0;
+
+    // Initial "impossible" values, that will get reset as soon as first value is added.
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    private final List<Double> percentiles;
+    private final QuantileSketch sketch;
+
+    private MutablePercentiles(List<Double> percentiles, QuantileSketch sketch) {
+      this.percentiles = percentiles;
+      this.sketch = sketch;
+    }
+
+    /**
+     * Construct a {@code MutablePercentiles}.
+     *
+     * @return an empty {@code MutablePercentiles}.
+     */
+    static MutablePercentiles create(Aggregation.Percentiles aggregation) {
+      checkNotNull(aggregation, "aggregation should not be null.");
+      return new MutablePercentiles(
+          aggregation.getPercentiles(),
+          new QuantileSketch(aggregation.getRelativeAccuracy(), aggregation.getMaxBuckets()));
+    }
+
+    @Override
+    void add(double value, Map<String, String> attachments, long timestampNanos) {
+      sum += value;
+      count++;
+
+      // Update the sum of squared deviations with Welford's method, as in MutableDistribution.
+      double deltaFromMean = value - mean;
+      mean += deltaFromMean / count;
+      double deltaFromMean2 = value - mean;
+      sumOfSquaredDeviations += deltaFromMean * deltaFromMean2;
+
+      if (value < min) {
+        min = value;
+      }
+      if (value > max) {
+        max = value;
+      }
+      sketch.add(value);
+    }
+
+    // We don't compute fractional MutablePercentiles, it's either whole or none.
+    @Override
+    void combine(MutableAggregation other, double fraction) {
+      checkArgument(other instanceof MutablePercentiles, "MutablePercentiles expected.");
+      if (Math.abs(1.0 - fraction) > TOLERANCE) {
+        return;
+      }
+
+      MutablePercentiles mutablePercentiles = (MutablePercentiles) other;
+      if (this.count + mutablePercentiles.count > 0) {
+        double delta = mutablePercentiles.mean - this.mean;
+        this.sumOfSquaredDeviations =
+            this.sumOfSquaredDeviations
+                + mutablePercentiles.sumOfSquaredDeviations
+                + Math.pow(delta, 2)
+                    * this.count
+                    * mutablePercentiles.count
+                    / (this.count + mutablePercentiles.count);
+      }
+      this.count += mutablePercentiles.count;
+      this.sum += mutablePercentiles.sum;
+      this.mean = this.sum / this.count;
+      if (mutablePercentiles.min < this.min) {
+        this.min = mutablePercentiles.min;
+      }
+      if (mutablePercentiles.max > this.max) {
+        this.max = mutablePercentiles.max;
+      }
+      sketch.merge(mutablePercentiles.sketch);
+    }
+
+    @Override
+    AggregationData toAggregationData() {
+      // The percentiles are only exported through the Metrics API, see Aggregation.Percentiles.
+      return DistributionData.create(
+          mean,
+          count,
+          min,
+          max,
+          sumOfSquaredDeviations,
+          Collections.<Long>emptyList(),
+          Collections.<Exemplar>emptyList());
+    }
+
+    @Override
+    Point toPoint(Timestamp timestamp) {
+      // Summary does not allow negative sums, report none in that case.
+      Double summarySum = sum >= 0 ? Double.valueOf(sum) : null;
+      return Point.create(
+          Value.summaryValue(
+              Summary.create(
+                  count,
+                  summarySum,
+                  Snapshot.create(count, summarySum, getValueAtPercentiles()))),
+          timestamp);
+    }
+
+    // Returns the estimated value of each percentile, or no values if nothing was recorded.
+    List<ValueAtPercentile> getValueAtPercentiles() {
+      if (count == 0) {
+        return Collections.<ValueAtPercentile>emptyList();
+      }
+      List<ValueAtPercentile> valueAtPercentiles =
+          new ArrayList<ValueAtPercentile>(percentiles.size());
+      for (double percentile : percentiles) {
+        double value = sketch.getValueAtQuantile(percentile / 100.0);
+        // The exact extremes are known, keep the estimates within them.
+        value = Math.max(Math.min(value, max), Math.max(min, 0.0));
+        valueAtPercentiles.add(ValueAtPercentile.create(percentile, value));
+      }
+      return valueAtPercentiles;
+    }
+
+    double getMean() {
+      return mean;
+    }
+
+    long getCount() {
+      return count;
+    }
+
+    double getMin() {
+      return min;
+    }
+
+    double getMax() {
+      return max;
+    }
+
+    // Returns the aggregated sum of squared deviations.
+    double getSumOfSquaredDeviations() {
+      return sumOfSquaredDeviations;
     }
   }
 
   /** Calculate double last value on aggregated {@code MeasureValue}s. */
-  static class MutableLastValueDouble extends MutableAggregation {
+  static final class MutableLastValueDouble extends MutableAggregation {
 
     // Initial value that will get reset as soon as first value is added.
     private double lastValue = Double.NaN;
@@ -495,7 +968,7 @@ abstract class MutableAggregation {
     }
 
     @Override
-    void add(double value, Map<String, String> attachments, Timestamp timestamp) {
+    void add(double value, Map<String, String> attachments, long timestampNanos) {
       lastValue = value;
       // TODO(songya): remove this once interval stats is completely removed.
       if (!initialized) {
@@ -528,11 +1001,15 @@ abstract class MutableAggregation {
     }
   }
 
-  /** Calculate last long value on aggregated {@code MeasureValue}s. */
-  static final class MutableLastValueLong extends MutableLastValueDouble {
-    private MutableLastValueLong() {
-      super();
-    }
+  /** Calculate last long value on aggregated {@code MeasureValue}s, without rounding. */
+  static final class MutableLastValueLong extends MutableAggregation {
+
+    // Reported as 0 until the first value is added.
+    private long lastValue = 0;
+    // TODO(songya): remove this once interval stats is completely removed.
+    private boolean initialized = false;
+
+    private MutableLastValueLong() {}
 
     /**
      * Construct a {@code MutableLastValueLong}.
@@ -543,14 +1020,42 @@ abstract class MutableAggregation {
       return new MutableLastValueLong();
     }
 
+    @Override
+    void add(double value, Map<String, String> attachments, long timestampNanos) {
+      addLong(Math.round(value), attachments, timestampNanos);
+    }
+
+    @Override
+    void addLong(long value, Map<String, String> attachments, long timestampNanos) {
+      lastValue = value;
+      initialized = true;
+    }
+
+    @Override
+    void combine(MutableAggregation other, double fraction) {
+      checkArgument(other instanceof MutableLastValueLong, "MutableLastValueLong expected.");
+      MutableLastValueLong otherValue = (MutableLastValueLong) other;
+      // Assume other is always newer than this, because we combined interval buckets in time order.
+      // If there's a newer value, overwrite current value.
+      if (otherValue.initialized) {
+        this.lastValue = otherValue.lastValue;
+        this.initialized = true;
+      }
+    }
+
     @Override
     AggregationData toAggregationData() {
-      return AggregationData.LastValueDataLong.create(Math.round(getLastValue()));
+      return AggregationData.LastValueDataLong.create(lastValue);
     }
 
     @Override
     Point toPoint(Timestamp timestamp) {
-      return Point.create(Value.longValue(Math.round(getLastValue())), timestamp);
+      return Point.create(Value.longValue(lastValue), timestamp);
+    }
+
+    @VisibleForTesting
+    long getLastValue() {
+      return lastValue;
     }
   }
 }
@@ -17,22 +17,19 @@
 package io.opencensus.implcore.stats;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static io.opencensus.implcore.stats.RecordUtils.createAggregationMap;
+import static io.opencensus.implcore.stats.RecordUtils.createDirectAggregation;
 import static io.opencensus.implcore.stats.RecordUtils.createMutableAggregation;
-import static io.opencensus.implcore.stats.RecordUtils.getTagMap;
-import static io.opencensus.implcore.stats.RecordUtils.getTagValues;
+import static io.opencensus.implcore.stats.RecordUtils.isDirectRecordingSupported;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
 import io.opencensus.common.Duration;
 import io.opencensus.common.Function;
 import io.opencensus.common.Functions;
 import io.opencensus.common.Timestamp;
 import io.opencensus.implcore.internal.CheckerFrameworkUtils;
 import io.opencensus.implcore.internal.CurrentState.State;
-import io.opencensus.metrics.LabelValue;
+import io.opencensus.implcore.internal.TimestampConverter;
 import io.opencensus.metrics.export.Metric;
 import io.opencensus.metrics.export.MetricDescriptor;
 import io.opencensus.metrics.export.MetricDescriptor.Type;
@@ -43,14 +40,18 @@ import io.opencensus.stats.AggregationData;
 import io.opencensus.stats.Measure;
 import io.opencensus.stats.View;
 import io.opencensus.stats.ViewData;
-import io.opencensus.tags.TagContext;
 import io.opencensus.tags.TagValue;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /*>>>
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -62,10 +63,29 @@ abstract class MutableViewData {
 
   @VisibleForTesting static final Timestamp ZERO_TIMESTAMP = Timestamp.create(0, 0);
 
+  // The tag value of every column of the overflow series of a view.
+  @VisibleForTesting
+  static final TagValue OVERFLOW_TAG_VALUE = TagValue.create("opencensus_overflow");
+
+  private static final Duration ZERO_DURATION = Duration.create(0, 0);
+  private static final long NANOS_PER_MILLI = 1000 * 1000;
+
+  // The maximum number of removed series that a view remembers for the exports of the series
+  // changed since a cursor.
+  @VisibleForTesting static final int MAX_REMOVED_SERIES = 1000;
+
   private final View view;
 
-  private MutableViewData(View view) {
+  // The slot of each column of the view in the TagProjection of its measure.
+  private final int[] columnSlots;
+
+  // When this MutableViewData was created. Not reset when stats are cleared.
+  private final Timestamp creationTime;
+
+  private MutableViewData(View view, Timestamp creationTime, int[] columnSlots) {
     this.view = view;
+    this.creationTime = creationTime;
+    this.columnSlots = columnSlots;
   }
 
   /**
@@ -73,29 +93,139 @@ abstract class MutableViewData {
    *
    * @param view the {@code View} linked with this {@code MutableViewData}.
    * @param start the start {@code Timestamp}.
+   * @param columnSlots the slots of the columns of the view in the {@link TagProjection} of its
+   *     measure.
+   * @param configuration the configuration of the series limit and eviction of cumulative views.
+   * @param recordLock the lock held by the callers of {@link #record}. Readers only hold it
+   *     briefly, and must not call the {@code MutableViewData} while holding it.
    * @return a {@code MutableViewData}.
    */
-  static MutableViewData create(final View view, final Timestamp start) {
+  static MutableViewData create(
+      final View view,
+      final Timestamp start,
+      int[] columnSlots,
+      StatsConfiguration configuration,
+      Object recordLock) {
     return view.getWindow()
         .match(
-            new CreateCumulative(view, start),
-            new CreateInterval(view, start),
+            new CreateCumulative(view, start, columnSlots, configuration, recordLock),
+            new CreateInterval(view, start, columnSlots, configuration, recordLock),
             Functions.<MutableViewData>throwAssertionError());
   }
 
+  /**
+   * Constructs a new {@link MutableViewData} that is recorded directly on the caller thread.
+   *
+   * @param view the {@code View} linked with this {@code MutableViewData}. Must be a cumulative
+   *     view with a {@code Count}, {@code Sum} or {@code LastValue} aggregation.
+   * @param start the start {@code Timestamp}.
+   * @param columnSlots the slots of the columns of the view in the {@link TagProjection} of its
+   *     measure.
+   * @param configuration the configuration of the series limit and eviction of the view.
+   * @return a {@code DirectMutableViewData}.
+   */
+  static DirectMutableViewData createDirect(
+      View view, Timestamp start, int[] columnSlots, StatsConfiguration configuration) {
+    checkArgument(isDirectRecordingSupported(view), "View does not support direct recording.");
+    return new DirectCumulativeMutableViewData(view, start, columnSlots, configuration);
+  }
+
   /** The {@link View} associated with this {@link ViewData}. */
   View getView() {
     return view;
   }
 
+  /** Returns the slots of the columns of the view in the {@link TagProjection} of its measure. */
+  int[] getColumnSlots() {
+    return columnSlots;
+  }
+
+  /** Returns when this {@link MutableViewData} was created. */
+  Timestamp getCreationTime() {
+    return creationTime;
+  }
+
+  /**
+   * Returns how many records were aggregated in the overflow series because the view had the
+   * maximum number of series.
+   */
+  long getOverflowRecordCount() {
+    return 0;
+  }
+
+  /** Returns how many idle series were evicted from the view. */
+  long getEvictedSeriesCount() {
+    return 0;
+  }
+
+  /**
+   * Converts this {@link MutableViewData} to a {@link Metric}, or returns {@code null} if it is not
+   * exported.
+   *
+   * <p>The {@code TimeSeries} of each series is cached until the series is recorded to again. The
+   * {@code Point} of an unchanged series reuses the cached value, but is stamped with {@code now}
+   * like the rebuilt ones. A rebuilt {@code TimeSeries} is tagged with the given version.
+   *
+   * @param now the current time.
+   * @param state the current state of stats collection.
+   * @param version the version of this export, greater than the version of any earlier export.
+   * @param sinceVersion only the series whose {@code TimeSeries} was rebuilt after this version are
+   *     included. Zero includes all the series.
+   * @return the {@code Metric}, or {@code null} if the view is not exported or, when {@code
+   *     sinceVersion} is positive, if no series changed.
+   */
   @javax.annotation.Nullable
-  abstract Metric toMetric(Timestamp now, State state);
+  abstract Metric toMetric(Timestamp now, State state, long version, long sinceVersion);
+
+  /**
+   * Adds a {@link Metric} with the {@code TimeSeries} of the series that were removed from the view
+   * after the given version, as they were last exported, unless there are none. Removals not
+   * reported by an export yet are assigned the version of this one.
+   *
+   * @param metrics the list to add the {@code Metric} to.
+   * @param version the version of this export.
+   * @param sinceVersion the version of the earlier export to report the removals since.
+   * @return {@code false} if the view forgot some of the series removed after {@code
+   *     sinceVersion}, in which case nothing is added.
+   */
+  boolean addRemovedSeriesTo(List<Metric> metrics, long version, long sinceVersion) {
+    return true;
+  }
 
-  /** Record stats with the given tags. */
+  /**
+   * Record stats with the given tags, as projected by the {@link TagProjection} of the measure of
+   * this view, at the given time in nanoseconds since the epoch. Called with the record lock held.
+   */
   abstract void record(
-      TagContext context, double value, Timestamp timestamp, Map<String, String> attachments);
+      /*@Nullable*/ TagValue[] projectedTags,
+      double value,
+      long timestampNanos,
+      Map<String, String> attachments);
+
+  /**
+   * Record the value of a {@code MeasureLong}, which the long aggregations keep exact. Called with
+   * the record lock held.
+   *
+   * @see #record
+   */
+  abstract void recordLong(
+      /*@Nullable*/ TagValue[] projectedTags,
+      long value,
+      long timestampNanos,
+      Map<String, String> attachments);
+
+  /**
+   * Returns whether this {@link MutableViewData} is a {@link DirectMutableViewData}, recorded
+   * without the lock of its shard instead of with {@link #record} from the {@code EventQueue}.
+   */
+  boolean isDirect() {
+    return false;
+  }
 
-  /** Convert this {@link MutableViewData} to {@link ViewData}. */
+  /**
+   * Convert this {@link MutableViewData} to {@link ViewData}. Like {@link #toMetric}, {@link
+   * #clearStats} and {@link #resumeStatsCollection}, it is called without the record lock.
+   */
   abstract ViewData toViewData(Timestamp now, State state);
 
   // Clear recorded stats.
@@ -105,17 +235,59 @@ abstract class MutableViewData {
   // bucket list (for InternalMutableViewData).
   abstract void resumeStatsCollection(Timestamp now);
 
+  /*
+   * A cumulative view that is recorded from the EventQueue, under the lock of its shard, and read
+   * without blocking recording for longer than a swap of buffers.
+   *
+   * Each series accumulates its records in a delta aggregation, in one of two buffers selected by
+   * the parity of the current epoch. A reader swaps the buffers by incrementing the epoch under the
+   * record lock, which also hands over the list of series recorded to in the finished epoch. Then,
+   * holding only the monitor of this view, it combines their deltas into the cumulative
+   * aggregations, which only readers access, and builds the ViewData or Metric from those, while
+   * recording goes on in the buffer of the new epoch.
+   */
   private static final class CumulativeMutableViewData extends MutableViewData {
 
-    private Timestamp start;
-    private final Map<List</*@Nullable*/ TagValue>, MutableAggregation> tagValueAggregationMap =
-        Maps.newHashMap();
+    // The lock held by the callers of record, which is the lock of the shard.
+    private final Object recordLock;
     // Cache a MetricDescriptor to avoid converting View to MetricDescriptor in the future.
     private final MetricDescriptor metricDescriptor;
+    private final int maxSeries;
+    private final Duration seriesTtl;
+    private final ExemplarPolicy exemplarPolicy;
+    private final TagValues overflowTagValues;
+
+    // The fields below are guarded by recordLock.
+    private final Map<List</*@Nullable*/ TagValue>, BufferedSeries> seriesMap = Maps.newHashMap();
+    // Reused to look up the tag values of each record.
+    private final TagValues.Scratch scratch;
+    private long epoch = 0;
+    // The series recorded to in the current epoch.
+    private List<BufferedSeries> recordedSeries = new ArrayList<BufferedSeries>();
+    // Number of series in seriesMap, not counting the overflow series.
+    private int seriesCount = 0;
+    private long overflowRecordCount = 0;
+
+    // The fields below are guarded by the monitor of this view.
+    private Timestamp start;
+    // The series whose deltas were combined at least once.
+    private final Map<List</*@Nullable*/ TagValue>, BufferedSeries> snapshotMap =
+        Maps.newHashMap();
+    // The list that replaces recordedSeries at the next swap. Handed back empty after each swap.
+    private List<BufferedSeries> spareRecordedSeries = new ArrayList<BufferedSeries>();
+    private long evictedSeriesCount = 0;
+    private final RemovedSeries removedSeries = new RemovedSeries();
 
-    private CumulativeMutableViewData(View view, Timestamp start) {
-      super(view);
+    private CumulativeMutableViewData(
+        View view,
+        Timestamp start,
+        int[] columnSlots,
+        StatsConfiguration configuration,
+        Object recordLock) {
+      super(view, start, columnSlots);
       this.start = start;
+      this.recordLock = recordLock;
+      this.scratch = new TagValues.Scratch(view.getColumns().size());
       MetricDescriptor metricDescriptor = MetricUtils.viewToMetricDescriptor(view);
       if (metricDescriptor == null) {
         throw new AssertionError(
@@ -123,47 +295,115 @@ abstract class MutableViewData {
       } else {
         this.metricDescriptor = metricDescriptor;
       }
+      this.maxSeries = configuration.getMaxSeriesPerView();
+      this.seriesTtl = configuration.getSeriesTtl();
+      this.exemplarPolicy = configuration.getExemplarPolicy();
+      this.overflowTagValues = createOverflowTagValues(view);
     }
 
     @javax.annotation.Nullable
     @Override
-    Metric toMetric(Timestamp now, State state) {
+    synchronized Metric toMetric(Timestamp now, State state, long version, long sinceVersion) {
       if (state == State.DISABLED) {
         return null;
       }
-      Type type = metricDescriptor.getType();
-      @javax.annotation.Nullable
-      Timestamp startTime = type == Type.GAUGE_INT64 || type == Type.GAUGE_DOUBLE ? null : start;
+      combineRecordedDeltas();
+      evictIdleSeries(now);
       List<TimeSeries> timeSeriesList = new ArrayList<TimeSeries>();
-      for (Entry<List</*@Nullable*/ TagValue>, MutableAggregation> entry :
-          tagValueAggregationMap.entrySet()) {
-        List<LabelValue> labelValues = MetricUtils.tagValuesToLabelValues(entry.getKey());
-        Point point = entry.getValue().toPoint(now);
-        timeSeriesList.add(TimeSeries.createWithOnePoint(labelValues, point, startTime));
+      for (BufferedSeries series : snapshotMap.values()) {
+        if (series.isStale()) {
+          series.cache(
+              createTimeSeries(
+                  series.tagValues,
+                  series,
+                  series.aggregation.toPoint(now),
+                  metricDescriptor,
+                  start,
+                  seriesTtl),
+              version);
+        }
+        series.addTo(timeSeriesList, sinceVersion, now);
       }
-      return Metric.create(metricDescriptor, timeSeriesList);
+      return createMetric(metricDescriptor, timeSeriesList, sinceVersion);
     }
 
     @Override
     void record(
-        TagContext context, double value, Timestamp timestamp, Map<String, String> attachments) {
-      List</*@Nullable*/ TagValue> tagValues =
-          getTagValues(getTagMap(context), super.view.getColumns());
-      if (!tagValueAggregationMap.containsKey(tagValues)) {
-        tagValueAggregationMap.put(
-            tagValues,
-            createMutableAggregation(super.view.getAggregation(), super.getView().getMeasure()));
+        /*@Nullable*/ TagValue[] projectedTags,
+        double value,
+        long timestampNanos,
+        Map<String, String> attachments) {
+      getDelta(projectedTags, timestampNanos).add(value, attachments, timestampNanos);
+    }
+
+    @Override
+    void recordLong(
+        /*@Nullable*/ TagValue[] projectedTags,
+        long value,
+        long timestampNanos,
+        Map<String, String> attachments) {
+      getDelta(projectedTags, timestampNanos).addLong(value, attachments, timestampNanos);
+    }
+
+    // Returns the delta of the current epoch of the series of the given tags, creating the series
+    // or the delta if needed.
+    private MutableAggregation getDelta(
+        /*@Nullable*/ TagValue[] projectedTags, long timestampNanos) {
+      List</*@Nullable*/ TagValue> tagValues = scratch.fill(projectedTags, super.columnSlots);
+      BufferedSeries series = seriesMap.get(tagValues);
+      if (series == null) {
+        series = createSeries(tagValues, timestampNanos);
+      }
+      int buffer = (int) (epoch & 1);
+      if (series.recordedEpoch == epoch) {
+        return CheckerFrameworkUtils.castNonNull(series.deltas[buffer]);
       }
-      tagValueAggregationMap.get(tagValues).add(value, attachments, timestamp);
+      MutableAggregation delta =
+          createMutableAggregation(
+              super.view.getAggregation(), super.view.getMeasure(), exemplarPolicy);
+      series.deltas[buffer] = delta;
+      series.recordedEpoch = epoch;
+      recordedSeries.add(series);
+      return delta;
+    }
+
+    // Creates the series of the given tag values, or returns the overflow series if this view
+    // already has the maximum number of series.
+    private BufferedSeries createSeries(
+        List</*@Nullable*/ TagValue> tagValues, long timestampNanos) {
+      List</*@Nullable*/ TagValue> key;
+      if (seriesCount < maxSeries) {
+        key = TagValues.copyOf(tagValues);
+        seriesCount++;
+      } else {
+        overflowRecordCount++;
+        BufferedSeries overflowSeries = seriesMap.get(overflowTagValues);
+        if (overflowSeries != null) {
+          return overflowSeries;
+        }
+        key = overflowTagValues;
+      }
+      BufferedSeries series =
+          new BufferedSeries(
+              key,
+              createMutableAggregation(
+                  super.view.getAggregation(), super.view.getMeasure(), exemplarPolicy),
+              timestampNanos);
+      seriesMap.put(key, series);
+      return series;
     }
 
     @Override
-    ViewData toViewData(Timestamp now, State state) {
+    synchronized ViewData toViewData(Timestamp now, State state) {
       if (state == State.ENABLED) {
+        combineRecordedDeltas();
+        evictIdleSeries(now);
+        Map<List</*@Nullable*/ TagValue>, AggregationData> map = Maps.newHashMap();
+        for (Entry<List</*@Nullable*/ TagValue>, BufferedSeries> entry : snapshotMap.entrySet()) {
+          map.put(entry.getKey(), entry.getValue().aggregation.toAggregationData());
+        }
         return ViewData.create(
-            super.view,
-            createAggregationMap(tagValueAggregationMap, super.view.getMeasure()),
-            ViewData.AggregationWindowData.CumulativeData.create(start, now));
+            super.view, map, ViewData.AggregationWindowData.CumulativeData.create(start, now));
       } else {
         // If Stats state is DISABLED, return an empty ViewData.
         return ViewData.create(
@@ -173,260 +413,904 @@ abstract class MutableViewData {
       }
     }
 
+    // Swaps the buffers, and combines the deltas of the finished epoch into the cumulative
+    // aggregations.
+    private void combineRecordedDeltas() {
+      List<BufferedSeries> recorded;
+      int buffer;
+      synchronized (recordLock) {
+        recorded = recordedSeries;
+        recordedSeries = spareRecordedSeries;
+        buffer = (int) (epoch & 1);
+        epoch++;
+      }
+      for (BufferedSeries series : recorded) {
+        MutableAggregation delta = CheckerFrameworkUtils.castNonNull(series.deltas[buffer]);
+        series.deltas[buffer] = null;
+        series.aggregation.combine(delta, 1.0);
+        series.markRecorded();
+        if (!series.inSnapshot) {
+          series.inSnapshot = true;
+          snapshotMap.put(series.tagValues, series);
+        }
+      }
+      recorded.clear();
+      spareRecordedSeries = recorded;
+    }
+
+    // Evicts the series that have not been recorded to for the TTL. They are removed from
+    // seriesMap under the record lock, unless they were recorded to since the last swap.
+    private void evictIdleSeries(Timestamp now) {
+      if (seriesTtl.compareTo(ZERO_DURATION) <= 0) {
+        return;
+      }
+      List<BufferedSeries> idleSeries = new ArrayList<BufferedSeries>();
+      for (BufferedSeries series : snapshotMap.values()) {
+        if (isIdle(series, series.tagValues == overflowTagValues, now, seriesTtl)) {
+          idleSeries.add(series);
+        }
+      }
+      if (idleSeries.isEmpty()) {
+        return;
+      }
+      int evicted = 0;
+      synchronized (recordLock) {
+        for (BufferedSeries series : idleSeries) {
+          if (series.recordedEpoch != epoch) {
+            seriesMap.remove(series.tagValues);
+            seriesCount--;
+            series.inSnapshot = false;
+            evicted++;
+          }
+        }
+      }
+      for (BufferedSeries series : idleSeries) {
+        if (!series.inSnapshot) {
+          snapshotMap.remove(series.tagValues);
+          removedSeries.add(series);
+        }
+      }
+      evictedSeriesCount += evicted;
+    }
+
     @Override
-    void clearStats() {
-      tagValueAggregationMap.clear();
+    synchronized boolean addRemovedSeriesTo(
+        List<Metric> metrics, long version, long sinceVersion) {
+      return removedSeries.addTo(metrics, metricDescriptor, version, sinceVersion);
     }
 
     @Override
-    void resumeStatsCollection(Timestamp now) {
+    long getOverflowRecordCount() {
+      synchronized (recordLock) {
+        return overflowRecordCount;
+      }
+    }
+
+    @Override
+    synchronized long getEvictedSeriesCount() {
+      return evictedSeriesCount;
+    }
+
+    @Override
+    synchronized void clearStats() {
+      synchronized (recordLock) {
+        seriesMap.clear();
+        recordedSeries.clear();
+        seriesCount = 0;
+        overflowRecordCount = 0;
+      }
+      snapshotMap.clear();
+      evictedSeriesCount = 0;
+      removedSeries.clear();
+    }
+
+    @Override
+    synchronized void resumeStatsCollection(Timestamp now) {
       start = now;
+      // The cached TimeSeries have the old start time.
+      for (Series<?> series : snapshotMap.values()) {
+        series.invalidate();
+      }
+    }
+  }
+
+  /** A {@link MutableViewData} that is recorded directly on the recording thread. */
+  abstract static class DirectMutableViewData extends MutableViewData {
+
+    private DirectMutableViewData(View view, Timestamp creationTime, int[] columnSlots) {
+      super(view, creationTime, columnSlots);
     }
+
+    @Override
+    final boolean isDirect() {
+      return true;
+    }
+
+    /**
+     * Record stats with the given projected tags. May be called concurrently from any thread.
+     *
+     * @see #record
+     */
+    abstract void recordDirect(/*@Nullable*/ TagValue[] projectedTags, double value);
+
+    /**
+     * Record the value of a {@code MeasureLong} with the given projected tags. May be called
+     * concurrently from any thread.
+     *
+     * @see #recordLong
+     */
+    abstract void recordDirectLong(/*@Nullable*/ TagValue[] projectedTags, long value);
+
+    /**
+     * Returns the series of the given projected tags, for a bound measure to record to without
+     * looking it up again, or {@code null} if the series does not exist yet. May be called
+     * concurrently from any thread.
+     */
+    @javax.annotation.Nullable
+    abstract BoundSeries bindSeries(/*@Nullable*/ TagValue[] projectedTags);
   }
 
   /*
-   * For each IntervalView, we always keep a queue of N + 1 buckets (by default N is 4).
-   * Each bucket has a duration which is interval duration / N.
-   * Ideally:
-   * 1. the buckets should always be up-to-date,
-   * 2. current time should always be within the latest bucket, currently recorded stats should fall
-   *    into the latest bucket,
-   * 3. there are always N buckets before the current one, which holds the stats in the past
-   *    interval duration.
-   *
-   * When getView() is called, we will extract and combine the stats from the current and past
-   * buckets (part of the stats from the oldest bucket could have expired).
-   *
-   * However, in reality, we couldn't track the status of buckets all the time (keep monitoring and
-   * updating the bucket queue will be expensive). When we call record() or getView(), some or all
-   * of the buckets might be outdated, and we will need to "pad" new buckets to the queue and remove
-   * outdated ones. After refreshing buckets, the bucket queue will able to maintain the three
-   * invariants in the ideal situation.
+   * A cumulative view whose aggregations are updated on the recording thread. Series are created
+   * with putIfAbsent, and each DirectAggregation is safe for concurrent updates, so recording takes
+   * no lock. Readers see each series at some point between concurrent updates.
    *
-   * For example:
-   * 1. We have an IntervalView which has a duration of 8 seconds, we register this view at 10s.
-   * 2. Initially there will be 5 buckets: [2.0, 4.0), [4.0, 6.0), ..., [10.0, 12.0).
-   * 3. If users don't call record() or getView(), bucket queue will remain as it is, and some
-   *    buckets could expire.
-   * 4. Suppose record() is called at 15s, now we need to refresh the bucket queue. We need to add
-   *    two new buckets [12.0, 14.0) and [14.0, 16.0), and remove two expired buckets [2.0, 4.0)
-   *    and [4.0, 6.0)
-   * 5. Suppose record() is called again at 30s, all the current buckets should have expired. We add
-   *    5 new buckets [22.0, 24.0) ... [30.0, 32.0) and remove all the previous buckets.
-   * 6. Suppose users call getView() at 35s, again we need to add two new buckets and remove two
-   *    expired one, so that bucket queue is up-to-date. Now we combine stats from all buckets and
-   *    return the combined IntervalViewData.
+   * Readers are serialized by the monitor of the view. Idle series are evicted by readers,
+   * concurrently with recording. A record that races with the eviction of its series may be lost,
+   * which is only possible for series that were idle for the whole TTL.
    */
-  private static final class IntervalMutableViewData extends MutableViewData {
+  private static final class DirectCumulativeMutableViewData extends DirectMutableViewData {
+
+    private volatile Timestamp start;
+    private final ConcurrentMap<List</*@Nullable*/ TagValue>, Series<DirectAggregation>>
+        seriesMap =
+            new ConcurrentHashMap<List</*@Nullable*/ TagValue>, Series<DirectAggregation>>();
+    // Reused to look up the tag values of each record. Recording threads each have their own.
+    private final ThreadLocal<TagValues.Scratch> scratch;
+    // Cache a MetricDescriptor to avoid converting View to MetricDescriptor in the future.
+    private final MetricDescriptor metricDescriptor;
+
+    private final int maxSeries;
+    private final Duration seriesTtl;
+    private final TagValues overflowTagValues;
+    // Number of series in seriesMap, not counting the overflow series.
+    private final AtomicInteger seriesCount = new AtomicInteger();
+    private final AtomicLong overflowRecordCount = new AtomicLong();
+    // Only accessed by readers, under the monitor of this view.
+    private long evictedSeriesCount = 0;
+    private final RemovedSeries removedSeries = new RemovedSeries();
+    // The time of the last look for idle series, in nanoseconds since the epoch. New series did not
+    // exist before it, so it is used as their start time.
+    private volatile long lastEvictionNanos;
 
-    // TODO(songya): allow customizable bucket size in the future.
-    private static final int N = 4; // IntervalView has N + 1 buckets
+    private DirectCumulativeMutableViewData(
+        View view, Timestamp start, int[] columnSlots, StatsConfiguration configuration) {
+      super(view, start, columnSlots);
+      this.start = start;
+      this.lastEvictionNanos = TimestampConverter.toEpochNanos(start);
+      final int numColumns = view.getColumns().size();
+      this.scratch =
+          new ThreadLocal<TagValues.Scratch>() {
+            @Override
+            protected TagValues.Scratch initialValue() {
+              return new TagValues.Scratch(numColumns);
+            }
+          };
+      MetricDescriptor metricDescriptor = MetricUtils.viewToMetricDescriptor(view);
+      if (metricDescriptor == null) {
+        throw new AssertionError(
+            "Cumulative view should be converted to a non-null MetricDescriptor.");
+      } else {
+        this.metricDescriptor = metricDescriptor;
+      }
+      this.maxSeries = configuration.getMaxSeriesPerView();
+      this.seriesTtl = configuration.getSeriesTtl();
+      this.overflowTagValues = createOverflowTagValues(view);
+    }
 
-    private final ArrayDeque<IntervalBucket> buckets = new ArrayDeque<IntervalBucket>();
+    @javax.annotation.Nullable
+    @Override
+    synchronized Metric toMetric(Timestamp now, State state, long version, long sinceVersion) {
+      if (state == State.DISABLED) {
+        return null;
+      }
+      evictIdleSeries(now);
+      List<TimeSeries> timeSeriesList = new ArrayList<TimeSeries>();
+      for (Entry<List</*@Nullable*/ TagValue>, Series<DirectAggregation>> entry :
+          seriesMap.entrySet()) {
+        Series<DirectAggregation> series = entry.getValue();
+        // The dirty flag is cleared before the aggregation is read, so a concurrent record is
+        // either included now or marks the series dirty again.
+        if (series.isStale()) {
+          series.cache(
+              createTimeSeries(
+                  entry.getKey(),
+                  series,
+                  series.aggregation.toPoint(now),
+                  metricDescriptor,
+                  start,
+                  seriesTtl),
+              version);
+        }
+        series.addTo(timeSeriesList, sinceVersion, now);
+      }
+      return createMetric(metricDescriptor, timeSeriesList, sinceVersion);
+    }
 
-    private final Duration totalDuration; // Duration of the whole interval.
-    private final Duration bucketDuration; // Duration of a single bucket (totalDuration / N)
+    @Override
+    void recordDirect(/*@Nullable*/ TagValue[] projectedTags, double value) {
+      getSeriesToRecord(projectedTags).aggregation.add(value);
+    }
 
-    private IntervalMutableViewData(View view, Timestamp start) {
-      super(view);
-      Duration totalDuration = ((View.AggregationWindow.Interval) view.getWindow()).getDuration();
-      this.totalDuration = totalDuration;
-      this.bucketDuration = Duration.fromMillis(totalDuration.toMillis() / N);
+    @Override
+    void recordDirectLong(/*@Nullable*/ TagValue[] projectedTags, long value) {
+      getSeriesToRecord(projectedTags).aggregation.addLong(value);
+    }
 
-      // When initializing. add N empty buckets prior to the start timestamp of this
-      // IntervalMutableViewData, so that the last bucket will be the current one in effect.
-      shiftBucketList(N + 1, start);
+    // Returns the series of the given tags, creating it if needed, and marks it recorded.
+    private Series<DirectAggregation> getSeriesToRecord(/*@Nullable*/ TagValue[] projectedTags) {
+      List</*@Nullable*/ TagValue> tagValues =
+          scratch.get().fill(projectedTags, getColumnSlots());
+      Series<DirectAggregation> series = seriesMap.get(tagValues);
+      if (series == null) {
+        series = createSeries(tagValues);
+      }
+      series.markRecorded();
+      return series;
     }
 
     @javax.annotation.Nullable
     @Override
-    Metric toMetric(Timestamp now, State state) {
-      return null;
+    BoundSeries bindSeries(/*@Nullable*/ TagValue[] projectedTags) {
+      // Records to tag values beyond the series limit are not bound, so that they keep being
+      // counted as overflow records.
+      Series<DirectAggregation> series =
+          seriesMap.get(scratch.get().fill(projectedTags, getColumnSlots()));
+      return series == null ? null : new BoundSeries(series);
+    }
+
+    // Creates the series of the given tag values, or returns the overflow series if this view
+    // already has the maximum number of series.
+    private Series<DirectAggregation> createSeries(List</*@Nullable*/ TagValue> tagValues) {
+      List</*@Nullable*/ TagValue> key;
+      if (seriesCount.incrementAndGet() <= maxSeries) {
+        key = TagValues.copyOf(tagValues);
+      } else {
+        seriesCount.decrementAndGet();
+        overflowRecordCount.incrementAndGet();
+        Series<DirectAggregation> overflowSeries = seriesMap.get(overflowTagValues);
+        if (overflowSeries != null) {
+          return overflowSeries;
+        }
+        key = overflowTagValues;
+      }
+      Series<DirectAggregation> newSeries =
+          new Series<DirectAggregation>(
+              createDirectAggregation(getView().getAggregation(), getView().getMeasure()),
+              lastEvictionNanos);
+      Series<DirectAggregation> series = seriesMap.putIfAbsent(key, newSeries);
+      if (series == null) {
+        return newSeries;
+      }
+      // Another thread created the series first.
+      if (key != overflowTagValues) {
+        seriesCount.decrementAndGet();
+      }
+      return series;
     }
 
     @Override
     void record(
-        TagContext context, double value, Timestamp timestamp, Map<String, String> attachments) {
-      List</*@Nullable*/ TagValue> tagValues =
-          getTagValues(getTagMap(context), super.view.getColumns());
-      refreshBucketList(timestamp);
-      // It is always the last bucket that does the recording.
-      CheckerFrameworkUtils.castNonNull(buckets.peekLast())
-          .record(tagValues, value, attachments, timestamp);
+        /*@Nullable*/ TagValue[] projectedTags,
+        double value,
+        long timestampNanos,
+        Map<String, String> attachments) {
+      // Attachments are only kept by Distribution aggregations, which are never direct.
+      recordDirect(projectedTags, value);
     }
 
     @Override
-    ViewData toViewData(Timestamp now, State state) {
-      refreshBucketList(now);
+    void recordLong(
+        /*@Nullable*/ TagValue[] projectedTags,
+        long value,
+        long timestampNanos,
+        Map<String, String> attachments) {
+      recordDirectLong(projectedTags, value);
+    }
+
+    @Override
+    synchronized ViewData toViewData(Timestamp now, State state) {
       if (state == State.ENABLED) {
+        evictIdleSeries(now);
+        Map<List</*@Nullable*/ TagValue>, AggregationData> map = Maps.newHashMap();
+        for (Entry<List</*@Nullable*/ TagValue>, Series<DirectAggregation>> entry :
+            seriesMap.entrySet()) {
+          map.put(entry.getKey(), entry.getValue().aggregation.toAggregationData());
+        }
         return ViewData.create(
-            super.view,
-            combineBucketsAndGetAggregationMap(now),
-            ViewData.AggregationWindowData.IntervalData.create(now));
+            getView(), map, ViewData.AggregationWindowData.CumulativeData.create(start, now));
       } else {
         // If Stats state is DISABLED, return an empty ViewData.
         return ViewData.create(
-            super.view,
+            getView(),
             Collections.<List</*@Nullable*/ TagValue>, AggregationData>emptyMap(),
-            ViewData.AggregationWindowData.IntervalData.create(ZERO_TIMESTAMP));
+            ViewData.AggregationWindowData.CumulativeData.create(ZERO_TIMESTAMP, ZERO_TIMESTAMP));
+      }
+    }
+
+    private void evictIdleSeries(Timestamp now) {
+      if (seriesTtl.compareTo(ZERO_DURATION) > 0) {
+        lastEvictionNanos = TimestampConverter.toEpochNanos(now);
+        int evicted =
+            MutableViewData.evictIdleSeries(
+                seriesMap, overflowTagValues, now, seriesTtl, removedSeries);
+        seriesCount.addAndGet(-evicted);
+        evictedSeriesCount += evicted;
       }
     }
 
     @Override
-    void clearStats() {
-      for (IntervalBucket bucket : buckets) {
-        bucket.clearStats();
+    synchronized boolean addRemovedSeriesTo(
+        List<Metric> metrics, long version, long sinceVersion) {
+      return removedSeries.addTo(metrics, metricDescriptor, version, sinceVersion);
+    }
+
+    @Override
+    long getOverflowRecordCount() {
+      return overflowRecordCount.get();
+    }
+
+    @Override
+    synchronized long getEvictedSeriesCount() {
+      return evictedSeriesCount;
+    }
+
+    @Override
+    synchronized void clearStats() {
+      for (Series<?> series : seriesMap.values()) {
+        series.detached = true;
       }
+      seriesMap.clear();
+      seriesCount.set(0);
+      overflowRecordCount.set(0);
+      evictedSeriesCount = 0;
+      removedSeries.clear();
     }
 
     @Override
-    void resumeStatsCollection(Timestamp now) {
-      // Refresh bucket list to be ready for stats recording, so that if record() is called right
-      // after stats state is turned back on, record() will be faster.
-      refreshBucketList(now);
+    synchronized void resumeStatsCollection(Timestamp now) {
+      start = now;
+      // The cached TimeSeries have the old start time.
+      for (Series<?> series : seriesMap.values()) {
+        series.invalidate();
+      }
+    }
+  }
+
+  /**
+   * A series of a direct view, resolved once by a bound measure. It can be recorded to from any
+   * thread until it is evicted or cleared from its view.
+   */
+  static final class BoundSeries {
+
+    private final Series<DirectAggregation> series;
+
+    private BoundSeries(Series<DirectAggregation> series) {
+      this.series = series;
     }
 
-    // Add new buckets and remove expired buckets by comparing the current timestamp with
-    // timestamp of the last bucket.
-    private void refreshBucketList(Timestamp now) {
-      if (buckets.size() != N + 1) {
-        throw new AssertionError("Bucket list must have exactly " + (N + 1) + " buckets.");
+    /**
+     * Records a value to this series.
+     *
+     * @return {@code false} if the series was removed from its view, in which case the value was
+     *     not recorded and the series has to be resolved again.
+     */
+    boolean record(double value) {
+      if (series.detached) {
+        return false;
       }
-      Timestamp startOfLastBucket =
-          CheckerFrameworkUtils.castNonNull(buckets.peekLast()).getStart();
-      // TODO(songya): decide what to do when time goes backwards
-      checkArgument(
-          now.compareTo(startOfLastBucket) >= 0,
-          "Current time must be within or after the last bucket.");
-      long elapsedTimeMillis = now.subtractTimestamp(startOfLastBucket).toMillis();
-      long numOfPadBuckets = elapsedTimeMillis / bucketDuration.toMillis();
+      series.markRecorded();
+      series.aggregation.add(value);
+      return true;
+    }
 
-      shiftBucketList(numOfPadBuckets, now);
+    /**
+     * Records the value of a {@code MeasureLong} to this series.
+     *
+     * @return {@code false} if the series was removed from its view.
+     * @see #record
+     */
+    boolean recordLong(long value) {
+      if (series.detached) {
+        return false;
+      }
+      series.markRecorded();
+      series.aggregation.addLong(value);
+      return true;
     }
+  }
 
-    // Add specified number of new buckets, and remove expired buckets
-    private void shiftBucketList(long numOfPadBuckets, Timestamp now) {
-      Timestamp startOfNewBucket;
+  // A series of a cumulative view: the aggregation of one tag value combination.
+  private static class Series<A> {
 
-      if (!buckets.isEmpty()) {
-        startOfNewBucket =
-            CheckerFrameworkUtils.castNonNull(buckets.peekLast())
-                .getStart()
-                .addDuration(bucketDuration);
-      } else {
-        // Initialize bucket list. Should only enter this block once.
-        startOfNewBucket = subtractDuration(now, totalDuration);
+    final A aggregation;
+    // When the series was created, in nanoseconds since the epoch. Only reported when idle series
+    // are evicted, since otherwise all the series of a view share its start time.
+    private final long startNanos;
+    // Whether the series was recorded to since the last look for idle series.
+    private volatile boolean recorded = true;
+    // Whether the series was recorded to since its TimeSeries was cached.
+    private volatile boolean dirty = true;
+    // Whether the series was removed from its view, so that bound measures must not record to it.
+    private volatile boolean detached = false;
+    // When a look for idle series last found that the series had been recorded to. Only accessed
+    // by readers, under the monitor of the view, like the cached TimeSeries below.
+    @javax.annotation.Nullable private Timestamp lastSeen;
+    // The TimeSeries built by the last export that found the series dirty, and the version of that
+    // export.
+    @javax.annotation.Nullable private TimeSeries timeSeries;
+    private long version;
+
+    private Series(A aggregation, long startNanos) {
+      this.aggregation = aggregation;
+      this.startNanos = startNanos;
+    }
+
+    void markRecorded() {
+      // Avoid writing to the volatile fields on every record.
+      if (!recorded) {
+        recorded = true;
       }
+      if (!dirty) {
+        dirty = true;
+      }
+    }
+
+    // Returns whether the cached TimeSeries has to be rebuilt, and clears the dirty flag if so.
+    boolean isStale() {
+      if (timeSeries == null || dirty) {
+        dirty = false;
+        return true;
+      }
+      return false;
+    }
 
-      if (numOfPadBuckets > N + 1) {
-        // All current buckets expired, need to add N + 1 new buckets. The start time of the latest
-        // bucket will be current time.
-        startOfNewBucket = subtractDuration(now, totalDuration);
-        numOfPadBuckets = N + 1;
+    void cache(TimeSeries timeSeries, long version) {
+      this.timeSeries = timeSeries;
+      this.version = version;
+    }
+
+    private void invalidate() {
+      timeSeries = null;
+    }
+
+    // Adds the cached TimeSeries to the list if it was rebuilt after the given version. The cached
+    // TimeSeries was built by an earlier export if the series was not recorded to since, so it is
+    // copied with a Point of the same value at the given time. Only the series that are added are
+    // restamped, and the copy replaces the cached TimeSeries, so that the exports at the same time
+    // share it.
+    void addTo(List<TimeSeries> timeSeriesList, long sinceVersion, Timestamp now) {
+      TimeSeries timeSeries = this.timeSeries;
+      if (timeSeries == null || version <= sinceVersion) {
+        return;
+      }
+      Point point = timeSeries.getPoints().get(0);
+      if (!point.getTimestamp().equals(now)) {
+        timeSeries =
+            TimeSeries.createWithOnePoint(
+                timeSeries.getLabelValues(),
+                Point.create(point.getValue(), now),
+                timeSeries.getStartTimestamp());
+        this.timeSeries = timeSeries;
       }
+      timeSeriesList.add(timeSeries);
+    }
+  }
+
+  // A series of a CumulativeMutableViewData, with the delta aggregations of its two buffers.
+  private static final class BufferedSeries extends Series<MutableAggregation> {
+
+    private final List</*@Nullable*/ TagValue> tagValues;
+    // The deltas of the current and the previous epoch, indexed by the parity of the epoch. The
+    // delta of the current epoch is guarded by the record lock, and the reader that finished the
+    // previous epoch owns its delta.
+    private final /*@Nullable*/ MutableAggregation[] deltas = new MutableAggregation[2];
+    // The last epoch in which the series was recorded to. Guarded by the record lock.
+    private long recordedEpoch = -1;
+    // Whether the series is in the snapshot map of the readers. Guarded by the monitor of the view.
+    private boolean inSnapshot = false;
+
+    private BufferedSeries(
+        List</*@Nullable*/ TagValue> tagValues, MutableAggregation aggregation, long startNanos) {
+      super(aggregation, startNanos);
+      this.tagValues = tagValues;
+    }
+  }
+
+  /*
+   * The series removed from a cumulative view, with the TimeSeries they were last exported with, so
+   * that the exports of the series changed since a cursor also report the series removed since.
+   * Series that were never exported are not kept. Guarded by the monitor of the view.
+   *
+   * A removal gets the version of the first export that reports it, which is the version of the
+   * export that evicted the series, or of the next one if the series was evicted by a read of the
+   * ViewData. Only the last MAX_REMOVED_SERIES removals are kept, and the exports since a version
+   * older than the forgotten ones have to report all the series instead.
+   */
+  private static final class RemovedSeries {
+
+    // The version of a forgotten removal that had no version yet.
+    private static final long UNREPORTED = Long.MAX_VALUE;
+
+    private final ArrayDeque<Removal> removals = new ArrayDeque<Removal>();
+    // The greatest version of a forgotten removal.
+    private long forgottenVersion = 0;
 
-      for (int i = 0; i < numOfPadBuckets; i++) {
-        buckets.add(
-            new IntervalBucket(
-                startOfNewBucket,
-                bucketDuration,
-                super.view.getAggregation(),
-                super.view.getMeasure()));
-        startOfNewBucket = startOfNewBucket.addDuration(bucketDuration);
+    void add(Series<?> series) {
+      TimeSeries timeSeries = series.timeSeries;
+      if (timeSeries == null) {
+        return;
       }
+      removals.addLast(new Removal(timeSeries));
+      if (removals.size() > MAX_REMOVED_SERIES) {
+        long version = removals.removeFirst().version;
+        forgottenVersion = Math.max(forgottenVersion, version == 0 ? UNREPORTED : version);
+      }
+    }
 
-      // removed expired buckets
-      while (buckets.size() > N + 1) {
-        buckets.pollFirst();
+    boolean addTo(
+        List<Metric> metrics, MetricDescriptor metricDescriptor, long version, long sinceVersion) {
+      // The removals without a version are the last ones.
+      for (Iterator<Removal> i = removals.descendingIterator(); i.hasNext(); ) {
+        Removal removal = i.next();
+        if (removal.version != 0) {
+          break;
+        }
+        removal.version = version;
+      }
+      if (forgottenVersion == UNREPORTED) {
+        forgottenVersion = version;
+      }
+      if (sinceVersion < forgottenVersion) {
+        return false;
+      }
+      List<TimeSeries> timeSeriesList = new ArrayList<TimeSeries>();
+      for (Removal removal : removals) {
+        if (removal.version > sinceVersion) {
+          timeSeriesList.add(removal.timeSeries);
+        }
+      }
+      if (!timeSeriesList.isEmpty()) {
+        metrics.add(Metric.create(metricDescriptor, timeSeriesList));
       }
+      return true;
     }
 
-    // Combine stats within each bucket, aggregate stats by tag values, and return the mapping from
-    // tag values to aggregation data.
-    private Map<List</*@Nullable*/ TagValue>, AggregationData> combineBucketsAndGetAggregationMap(
-        Timestamp now) {
-      // Need to maintain the order of inserted MutableAggregations (inserted based on time order).
-      Multimap<List</*@Nullable*/ TagValue>, MutableAggregation> multimap =
-          LinkedHashMultimap.create();
+    void clear() {
+      removals.clear();
+      forgottenVersion = 0;
+    }
+  }
 
-      ArrayDeque<IntervalBucket> shallowCopy = new ArrayDeque<IntervalBucket>(buckets);
+  private static final class Removal {
 
-      Aggregation aggregation = super.view.getAggregation();
-      Measure measure = super.view.getMeasure();
-      putBucketsIntoMultiMap(shallowCopy, multimap, aggregation, measure, now);
-      Map<List</*@Nullable*/ TagValue>, MutableAggregation> singleMap =
-          aggregateOnEachTagValueList(multimap, aggregation, measure);
-      return createAggregationMap(singleMap, super.getView().getMeasure());
-    }
-
-    // Put stats within each bucket to a multimap. Each tag value list (map key) could have multiple
-    // mutable aggregations (map value) from different buckets.
-    private static void putBucketsIntoMultiMap(
-        ArrayDeque<IntervalBucket> buckets,
-        Multimap<List</*@Nullable*/ TagValue>, MutableAggregation> multimap,
-        Aggregation aggregation,
-        Measure measure,
-        Timestamp now) {
-      // Put fractional stats of the head (oldest) bucket.
-      IntervalBucket head = CheckerFrameworkUtils.castNonNull(buckets.peekFirst());
-      IntervalBucket tail = CheckerFrameworkUtils.castNonNull(buckets.peekLast());
-      double fractionTail = tail.getFraction(now);
-      // TODO(songya): decide what to do when time goes backwards
-      checkArgument(
-          0.0 <= fractionTail && fractionTail <= 1.0,
-          "Fraction " + fractionTail + " should be within [0.0, 1.0].");
-      double fractionHead = 1.0 - fractionTail;
-      putFractionalMutableAggregationsToMultiMap(
-          head.getTagValueAggregationMap(), multimap, aggregation, measure, fractionHead);
-
-      // Put whole data of other buckets.
-      boolean shouldSkipFirst = true;
-      for (IntervalBucket bucket : buckets) {
-        if (shouldSkipFirst) {
-          shouldSkipFirst = false;
-          continue; // skip the first bucket
+    private final TimeSeries timeSeries;
+    // The version of the first export that reported the removal, or zero.
+    private long version = 0;
+
+    private Removal(TimeSeries timeSeries) {
+      this.timeSeries = timeSeries;
+    }
+  }
+
+  // Creates the TimeSeries of a series of a cumulative view with the given start time.
+  private static TimeSeries createTimeSeries(
+      List</*@Nullable*/ TagValue> tagValues,
+      Series<?> series,
+      Point point,
+      MetricDescriptor metricDescriptor,
+      Timestamp viewStart,
+      Duration seriesTtl) {
+    Type type = metricDescriptor.getType();
+    boolean isGauge = type == Type.GAUGE_INT64 || type == Type.GAUGE_DOUBLE;
+    return TimeSeries.createWithOnePoint(
+        MetricUtils.tagValuesToLabelValues(tagValues),
+        point,
+        isGauge ? null : getStartTime(series, viewStart, seriesTtl));
+  }
+
+  // Returns the Metric of the given TimeSeries, or null if only changed series were asked for and
+  // there are none.
+  @javax.annotation.Nullable
+  private static Metric createMetric(
+      MetricDescriptor metricDescriptor, List<TimeSeries> timeSeriesList, long sinceVersion) {
+    if (sinceVersion > 0 && timeSeriesList.isEmpty()) {
+      return null;
+    }
+    return Metric.create(metricDescriptor, timeSeriesList);
+  }
+
+  // Returns the start time of a series of a cumulative view with the given start time.
+  private static Timestamp getStartTime(Series<?> series, Timestamp viewStart, Duration seriesTtl) {
+    if (seriesTtl.compareTo(ZERO_DURATION) > 0
+        && series.startNanos > TimestampConverter.toEpochNanos(viewStart)) {
+      // The series may have been evicted before, so it starts over from its creation.
+      return TimestampConverter.fromEpochNanos(series.startNanos);
+    }
+    return viewStart;
+  }
+
+  // Removes the series that have not been recorded to for at least the given TTL, except for the
+  // overflow series, adds them to the removed series, and returns how many were removed. Whether a
+  // series was recorded to is only checked here, so a series is evicted when it has been idle for
+  // one TTL after the last check that saw it recorded to.
+  private static <A> int evictIdleSeries(
+      Map<List</*@Nullable*/ TagValue>, Series<A>> seriesMap,
+      TagValues overflowTagValues,
+      Timestamp now,
+      Duration seriesTtl,
+      RemovedSeries removedSeries) {
+    int evicted = 0;
+    for (Iterator<Entry<List</*@Nullable*/ TagValue>, Series<A>>> i =
+            seriesMap.entrySet().iterator();
+        i.hasNext(); ) {
+      Entry<List</*@Nullable*/ TagValue>, Series<A>> entry = i.next();
+      if (isIdle(entry.getValue(), entry.getKey() == overflowTagValues, now, seriesTtl)) {
+        i.remove();
+        entry.getValue().detached = true;
+        removedSeries.add(entry.getValue());
+        evicted++;
+      }
+    }
+    return evicted;
+  }
+
+  // Returns whether the series has not been recorded to for at least the given TTL and is not the
+  // overflow series. Clears the recorded flag of the series.
+  private static boolean isIdle(
+      Series<?> series, boolean isOverflow, Timestamp now, Duration seriesTtl) {
+    Timestamp lastSeen = series.lastSeen;
+    if (series.recorded || lastSeen == null) {
+      series.recorded = false;
+      series.lastSeen = now;
+      return false;
+    }
+    return !isOverflow && now.subtractTimestamp(lastSeen).compareTo(seriesTtl) >= 0;
+  }
+
+  // Returns the tag values of the overflow series of the given view.
+  private static TagValues createOverflowTagValues(View view) {
+    return TagValues.copyOf(Collections.nCopies(view.getColumns().size(), OVERFLOW_TAG_VALUE));
+  }
+
+  /*
+   * For each IntervalView, every series keeps a ring of N + 1 buckets (by default N is 4, see
+   * StatsConfiguration#getIntervalBuckets()). Each bucket has a duration which is interval duration
+   * / N, and the buckets are aligned to the time the view was registered: a timestamp t falls into
+   * the bucket of generation (t - start) / bucket duration, and generation g is kept in slot
+   * g % (N + 1) of the ring. Each slot remembers the generation of the stats it holds, so the
+   * buckets never need to be shifted or padded: a slot that holds an expired generation is simply
+   * started over the next time it is recorded to, and ignored until then.
+   *
+   * When getView() is called, the current generation is (now - start) / bucket duration, and we
+   * combine the stats of the current generation and the N generations before it. Part of the stats
+   * of the oldest (head) generation could have expired, so they are weighted by the fraction of the
+   * head bucket that is still within the interval.
+   *
+   * For example:
+   * 1. We have an IntervalView which has a duration of 8 seconds, we register this view at 10s.
+   * 2. The bucket of generation g is [10 + 2g, 12 + 2g), and is kept in slot g % 5.
+   * 3. Suppose record() is called at 15s, the value is recorded to generation 2, in slot 2.
+   * 4. Suppose record() is called again at 30s, the value is recorded to generation 10, in slot 0.
+   *    Slot 0 could only hold generation 0 or 5 before, which expired, so it is started over.
+   * 5. Suppose users call getView() at 31s, the current generation is 10. We combine 50% of the
+   *    stats of generation 6 ([22.0, 24.0)) and all the stats of generations 7 to 10.
+   */
+  private static final class IntervalMutableViewData extends MutableViewData {
+
+    // The series of this view by tag values. Only accessed under the record lock.
+    private final Map<List</*@Nullable*/ TagValue>, IntervalSeries> seriesMap = Maps.newHashMap();
+
+    // Reused to look up the tag values of each record. Only used under the record lock.
+    private final TagValues.Scratch scratch;
+
+    // Readers also hold the record lock, since the buckets are recorded to in place.
+    private final Object recordLock;
+
+    private final int numBuckets; // N, the number of buckets of the whole interval.
+    private final ExemplarPolicy exemplarPolicy;
+    private final long bucketMillis; // Duration of a single bucket (interval duration / N).
+    // The creation time of the view in nanoseconds since the epoch, the start of generation 0.
+    private final long creationNanos;
+
+    private IntervalMutableViewData(
+        View view,
+        Timestamp start,
+        int[] columnSlots,
+        StatsConfiguration configuration,
+        Object recordLock) {
+      super(view, start, columnSlots);
+      this.recordLock = recordLock;
+      this.numBuckets = configuration.getIntervalBuckets();
+      this.exemplarPolicy = configuration.getExemplarPolicy();
+      Duration totalDuration = ((View.AggregationWindow.Interval) view.getWindow()).getDuration();
+      long totalMillis = totalDuration.toMillis();
+      // Buckets are at least one millisecond long, even if the interval is shorter than N millis.
+      this.bucketMillis = Math.max(totalMillis / numBuckets, 1);
+      this.creationNanos = TimestampConverter.toEpochNanos(start);
+      this.scratch = new TagValues.Scratch(view.getColumns().size());
+    }
+
+    @javax.annotation.Nullable
+    @Override
+    Metric toMetric(Timestamp now, State state, long version, long sinceVersion) {
+      return null;
+    }
+
+    @Override
+    void record(
+        /*@Nullable*/ TagValue[] projectedTags,
+        double value,
+        long timestampNanos,
+        Map<String, String> attachments) {
+      MutableAggregation bucket = getBucketToRecord(projectedTags, timestampNanos);
+      if (bucket != null) {
+        bucket.add(value, attachments, timestampNanos);
+      }
+    }
+
+    @Override
+    void recordLong(
+        /*@Nullable*/ TagValue[] projectedTags,
+        long value,
+        long timestampNanos,
+        Map<String, String> attachments) {
+      MutableAggregation bucket = getBucketToRecord(projectedTags, timestampNanos);
+      if (bucket != null) {
+        bucket.addLong(value, attachments, timestampNanos);
+      }
+    }
+
+    // Returns the bucket of the series of the given tags that a value recorded at the given time
+    // goes to, creating them if needed, or null if the value is not within any bucket.
+    @javax.annotation.Nullable
+    private MutableAggregation getBucketToRecord(
+        /*@Nullable*/ TagValue[] projectedTags, long timestampNanos) {
+      long elapsedMillis = (timestampNanos - creationNanos) / NANOS_PER_MILLI;
+      if (elapsedMillis < 0) {
+        // Recorded before the view was registered, the value is not within any bucket.
+        return null;
+      }
+      long generation = elapsedMillis / bucketMillis;
+      List</*@Nullable*/ TagValue> tagValues = scratch.fill(projectedTags, super.columnSlots);
+      IntervalSeries series = seriesMap.get(tagValues);
+      if (series == null) {
+        series = new IntervalSeries(numBuckets + 1);
+        // The given list is reused for every record, so store an immutable copy.
+        seriesMap.put(TagValues.copyOf(tagValues), series);
+      }
+      MutableAggregation bucket = series.getBucket(generation);
+      if (bucket == null) {
+        if (series.generations[series.getSlot(generation)] > generation) {
+          // The slot already holds a newer generation, so the value expired.
+          return null;
         }
-        for (Entry<List</*@Nullable*/ TagValue>, MutableAggregation> entry :
-            bucket.getTagValueAggregationMap().entrySet()) {
-          multimap.put(entry.getKey(), entry.getValue());
+        bucket =
+            createMutableAggregation(
+                super.view.getAggregation(), super.view.getMeasure(), exemplarPolicy);
+        series.startBucket(generation, bucket);
+      }
+      return bucket;
+    }
+
+    @Override
+    ViewData toViewData(Timestamp now, State state) {
+      synchronized (recordLock) {
+        if (state == State.ENABLED) {
+          return ViewData.create(
+              super.view,
+              combineBucketsAndGetAggregationMap(now),
+              ViewData.AggregationWindowData.IntervalData.create(now));
+        } else {
+          // If Stats state is DISABLED, return an empty ViewData.
+          return ViewData.create(
+              super.view,
+              Collections.<List</*@Nullable*/ TagValue>, AggregationData>emptyMap(),
+              ViewData.AggregationWindowData.IntervalData.create(ZERO_TIMESTAMP));
         }
       }
     }
 
-    // Put stats within one bucket into multimap, multiplied by a given fraction.
-    private static <T> void putFractionalMutableAggregationsToMultiMap(
-        Map<T, MutableAggregation> mutableAggrMap,
-        Multimap<T, MutableAggregation> multimap,
-        Aggregation aggregation,
-        Measure measure,
-        double fraction) {
-      for (Entry<T, MutableAggregation> entry : mutableAggrMap.entrySet()) {
-        // Initially empty MutableAggregations.
-        MutableAggregation fractionalMutableAgg = createMutableAggregation(aggregation, measure);
-        fractionalMutableAgg.combine(entry.getValue(), fraction);
-        multimap.put(entry.getKey(), fractionalMutableAgg);
-      }
-    }
-
-    // For each tag value list (key of AggregationMap), combine mutable aggregations into one
-    // mutable aggregation, thus convert the multimap into a single map.
-    private static <T> Map<T, MutableAggregation> aggregateOnEachTagValueList(
-        Multimap<T, MutableAggregation> multimap, Aggregation aggregation, Measure measure) {
-      Map<T, MutableAggregation> map = Maps.newHashMap();
-      for (T tagValues : multimap.keySet()) {
-        // Initially empty MutableAggregations.
-        MutableAggregation combinedAggregation = createMutableAggregation(aggregation, measure);
-        for (MutableAggregation mutableAggregation : multimap.get(tagValues)) {
-          combinedAggregation.combine(mutableAggregation, 1.0);
+    @Override
+    void clearStats() {
+      synchronized (recordLock) {
+        seriesMap.clear();
+      }
+    }
+
+    @Override
+    void resumeStatsCollection(Timestamp now) {
+      // Expired buckets are started over when they are recorded to, nothing needs to be refreshed.
+    }
+
+    // Combine the buckets of each series that are within the interval that ends now, and return
+    // the mapping from tag values to aggregation data. Series that have no bucket left within the
+    // interval are removed.
+    private Map<List</*@Nullable*/ TagValue>, AggregationData> combineBucketsAndGetAggregationMap(
+        Timestamp now) {
+      // TODO(songya): decide what to do when time goes backwards
+      long elapsedMillis =
+          Math.max((TimestampConverter.toEpochNanos(now) - creationNanos) / NANOS_PER_MILLI, 0);
+      long currentGeneration = elapsedMillis / bucketMillis;
+      long headGeneration = currentGeneration - numBuckets;
+      double fractionTail =
+          (double) (elapsedMillis - currentGeneration * bucketMillis) / bucketMillis;
+      double fractionHead = 1.0 - fractionTail;
+
+      Aggregation aggregation = super.view.getAggregation();
+      Measure measure = super.view.getMeasure();
+      Map<List</*@Nullable*/ TagValue>, AggregationData> map = Maps.newHashMap();
+      Iterator<Entry<List</*@Nullable*/ TagValue>, IntervalSeries>> iterator =
+          seriesMap.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Entry<List</*@Nullable*/ TagValue>, IntervalSeries> entry = iterator.next();
+        IntervalSeries series = entry.getValue();
+        MutableAggregation combinedAggregation = null;
+        // Combine the buckets from the oldest to the newest, so that the latest LastValue wins.
+        for (long generation = Math.max(headGeneration, 0);
+            generation <= currentGeneration;
+            generation++) {
+          MutableAggregation bucket = series.getBucket(generation);
+          if (bucket == null) {
+            continue;
+          }
+          if (combinedAggregation == null) {
+            // Initially empty MutableAggregation.
+            combinedAggregation = createMutableAggregation(aggregation, measure, exemplarPolicy);
+          }
+          combinedAggregation.combine(bucket, generation == headGeneration ? fractionHead : 1.0);
+        }
+        if (combinedAggregation != null) {
+          map.put(entry.getKey(), combinedAggregation.toAggregationData());
+        } else if (series.maxGeneration < headGeneration) {
+          iterator.remove();
         }
-        map.put(tagValues, combinedAggregation);
       }
       return map;
     }
 
-    // Subtract a Duration from a Timestamp, and return a new Timestamp.
-    private static Timestamp subtractDuration(Timestamp timestamp, Duration duration) {
-      return timestamp.addDuration(Duration.create(-duration.getSeconds(), -duration.getNanos()));
+    // The ring of buckets of one series. Slot i holds the bucket of generation generations[i], if
+    // slots[i] is not null.
+    private static final class IntervalSeries {
+
+      private final /*@Nullable*/ MutableAggregation[] slots;
+      private final long[] generations;
+      // The newest generation that was recorded to.
+      private long maxGeneration = -1;
+
+      private IntervalSeries(int numSlots) {
+        this.slots = new MutableAggregation[numSlots];
+        this.generations = new long[numSlots];
+      }
+
+      private int getSlot(long generation) {
+        return (int) (generation % slots.length);
+      }
+
+      // Returns the bucket of the given generation, or null if the slot holds another generation.
+      @javax.annotation.Nullable
+      private MutableAggregation getBucket(long generation) {
+        int slot = getSlot(generation);
+        return generations[slot] == generation ? slots[slot] : null;
+      }
+
+      // Replaces the expired bucket in the slot of the given generation.
+      private void startBucket(long generation, MutableAggregation bucket) {
+        int slot = getSlot(generation);
+        slots[slot] = bucket;
+        generations[slot] = generation;
+        maxGeneration = Math.max(maxGeneration, generation);
+      }
     }
   }
 
@@ -434,15 +1318,26 @@ abstract class MutableViewData {
       implements Function<View.AggregationWindow.Cumulative, MutableViewData> {
     @Override
     public MutableViewData apply(View.AggregationWindow.Cumulative arg) {
-      return new CumulativeMutableViewData(view, start);
+      return new CumulativeMutableViewData(view, start, columnSlots, configuration, recordLock);
     }
 
     private final View view;
     private final Timestamp start;
+    private final int[] columnSlots;
+    private final StatsConfiguration configuration;
+    private final Object recordLock;
 
-    private CreateCumulative(View view, Timestamp start) {
+    private CreateCumulative(
+        View view,
+        Timestamp start,
+        int[] columnSlots,
+        StatsConfiguration configuration,
+        Object recordLock) {
       this.view = view;
       this.start = start;
+      this.columnSlots = columnSlots;
+      this.configuration = configuration;
+      this.recordLock = recordLock;
     }
   }
 
@@ -450,15 +1345,26 @@ abstract class MutableViewData {
       implements Function<View.AggregationWindow.Interval, MutableViewData> {
     @Override
     public MutableViewData apply(View.AggregationWindow.Interval arg) {
-      return new IntervalMutableViewData(view, start);
+      return new IntervalMutableViewData(view, start, columnSlots, configuration, recordLock);
     }
 
     private final View view;
     private final Timestamp start;
+    private final int[] columnSlots;
+    private final StatsConfiguration configuration;
+    private final Object recordLock;
 
-    private CreateInterval(View view, Timestamp start) {
+    private CreateInterval(
+        View view,
+        Timestamp start,
+        int[] columnSlots,
+        StatsConfiguration configuration,
+        Object recordLock) {
       this.view = view;
       this.start = start;
+      this.columnSlots = columnSlots;
+      this.configuration = configuration;
+      this.recordLock = recordLock;
     }
   }
 }
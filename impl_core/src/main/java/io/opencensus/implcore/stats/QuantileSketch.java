@@ -0,0 +1,219 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A mergeable quantile sketch with a bounded relative error, in the style of DDSketch.
+ *
+ * <p>Positive values are counted in logarithmic buckets {@code (gamma^(i-1), gamma^i]}, and values
+ * that are not positive are counted together as zeros. The counts are kept in a {@code long[]}
+ * that covers the range of recorded indices and grows on demand up to the maximum number of
+ * buckets; beyond that, the lowest buckets are merged into the lowest remaining one.
+ *
+ * <p>Infinity is counted with {@link Double#MAX_VALUE}, and NaN is ignored since it has no rank.
+ * Bucket indices are bounded so that index arithmetic cannot overflow; with an extremely small
+ * relative accuracy, values beyond the bounds are counted in the lowest or highest bucket.
+ */
+@NotThreadSafe
+final class QuantileSketch {
+
+  private static final int INITIAL_BUCKETS = 32;
+
+  // Bounds of the bucket indices, so that the differences and sums of indices cannot overflow.
+  private static final int MAX_INDEX = Integer.MAX_VALUE / 4;
+  private static final int MIN_INDEX = -MAX_INDEX;
+
+  private final double gamma;
+  private final double multiplier;
+  private final int maxBuckets;
+
+  private long zeroCount = 0;
+  private long positiveCount = 0;
+
+  // Counts of the buckets in [minIndex, maxIndex]; the count of bucket i is at counts[i - offset].
+  // Allocated with the first positive value.
+  @javax.annotation.Nullable private long[] counts;
+  private int offset;
+  private int minIndex;
+  private int maxIndex;
+
+  QuantileSketch(double relativeAccuracy, int maxBuckets) {
+    checkArgument(
+        relativeAccuracy > 0 && relativeAccuracy < 1, "relativeAccuracy should be in (0, 1).");
+    checkArgument(maxBuckets > 0, "maxBuckets should be positive.");
+    this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+    this.multiplier = 1 / Math.log(gamma);
+    this.maxBuckets = maxBuckets;
+  }
+
+  /**
+   * Adds a value to this sketch.
+   *
+   * @param value the value to add.
+   */
+  void add(double value) {
+    if (value > 0) {
+      add(getIndex(value), 1);
+    } else if (value <= 0) {
+      zeroCount++;
+    }
+    // NaN is neither, and is not counted.
+  }
+
+  /**
+   * Adds all the values of another sketch, which must have the same parameters, to this sketch.
+   *
+   * @param other the sketch to merge into this one.
+   */
+  void merge(QuantileSketch other) {
+    checkArgument(
+        gamma == other.gamma && maxBuckets == other.maxBuckets,
+        "Sketches with different parameters cannot be merged.");
+    zeroCount += other.zeroCount;
+    long[] otherCounts = other.counts;
+    if (otherCounts == null) {
+      return;
+    }
+    if (counts == null) {
+      counts = otherCounts.clone();
+      offset = other.offset;
+      minIndex = other.minIndex;
+      maxIndex = other.maxIndex;
+      positiveCount = other.positiveCount;
+      return;
+    }
+    extendRange(Math.min(minIndex, other.minIndex), Math.max(maxIndex, other.maxIndex));
+    for (int i = other.minIndex; i <= other.maxIndex; i++) {
+      long bucketCount = otherCounts[i - other.offset];
+      if (bucketCount != 0) {
+        add(i, bucketCount);
+      }
+    }
+  }
+
+  /**
+   * Returns the estimated value at the given quantile, or zero if the sketch is empty.
+   *
+   * @param quantile the quantile, in [0, 1].
+   * @return the estimated value.
+   */
+  double getValueAtQuantile(double quantile) {
+    long count = zeroCount + positiveCount;
+    if (count == 0) {
+      return 0;
+    }
+    // The 0-based rank of the value at the quantile.
+    double rank = quantile * (count - 1);
+    if (rank < zeroCount) {
+      return 0;
+    }
+    long[] counts = this.counts;
+    long cumulativeCount = zeroCount;
+    if (counts != null) {
+      for (int i = minIndex; i < maxIndex; i++) {
+        cumulativeCount += counts[i - offset];
+        if (cumulativeCount > rank) {
+          return getValue(i);
+        }
+      }
+    }
+    return getValue(maxIndex);
+  }
+
+  /** Returns the number of values that are not positive. */
+  long getZeroCount() {
+    return zeroCount;
+  }
+
+  /** Returns the number of values in this sketch. */
+  long getCount() {
+    return zeroCount + positiveCount;
+  }
+
+  // Returns the index of the bucket (gamma^(i-1), gamma^i] that holds the given positive value.
+  // Infinity is counted with Double.MAX_VALUE, and indices beyond the bounds with the bound.
+  int getIndex(double value) {
+    if (value > Double.MAX_VALUE) {
+      value = Double.MAX_VALUE;
+    }
+    double index = Math.ceil(Math.log(value) * multiplier);
+    if (index > MAX_INDEX) {
+      return MAX_INDEX;
+    }
+    if (index < MIN_INDEX) {
+      return MIN_INDEX;
+    }
+    return (int) index;
+  }
+
+  // Returns the value that is within the relative accuracy of every value of the bucket. Computed
+  // from the lower bound of the bucket, so that the bucket of Double.MAX_VALUE does not overflow.
+  double getValue(int index) {
+    return Math.min(Math.pow(gamma, index - 1) * (2 * gamma / (gamma + 1)), Double.MAX_VALUE);
+  }
+
+  private void add(int index, long increment) {
+    long[] counts = this.counts;
+    if (counts == null) {
+      counts = this.counts = new long[Math.min(INITIAL_BUCKETS, maxBuckets)];
+      offset = index - counts.length / 2;
+      minIndex = index;
+      maxIndex = index;
+    } else if (index < minIndex || index > maxIndex) {
+      extendRange(Math.min(index, minIndex), Math.max(index, maxIndex));
+      counts = this.counts;
+    }
+    // Indices below minIndex were merged into it.
+    counts[Math.max(index, minIndex) - offset] += increment;
+    positiveCount += increment;
+  }
+
+  // Makes the counts cover [newMinIndex, newMaxIndex], merging the lowest buckets if the range is
+  // larger than maxBuckets.
+  private void extendRange(int newMinIndex, int newMaxIndex) {
+    long[] counts = this.counts;
+    if (counts == null) {
+      return;
+    }
+    if (newMaxIndex - newMinIndex >= maxBuckets) {
+      newMinIndex = newMaxIndex - maxBuckets + 1;
+    }
+    if (newMinIndex >= offset && newMaxIndex < offset + counts.length) {
+      // Already covered, only merge the buckets below the new minimum.
+      for (int i = minIndex; i < newMinIndex && i <= maxIndex; i++) {
+        counts[newMinIndex - offset] += counts[i - offset];
+        counts[i - offset] = 0;
+      }
+    } else {
+      int range = newMaxIndex - newMinIndex + 1;
+      long[] newCounts = new long[Math.min(maxBuckets, Math.max(range, 2 * counts.length))];
+      // Center the range so that the counts can grow both ways before the next copy.
+      int newOffset = newMinIndex - (newCounts.length - range) / 2;
+      for (int i = minIndex; i <= maxIndex; i++) {
+        newCounts[Math.max(i, newMinIndex) - newOffset] += counts[i - offset];
+      }
+      this.counts = newCounts;
+      offset = newOffset;
+    }
+    minIndex = newMinIndex;
+    maxIndex = newMaxIndex;
+  }
+}
@@ -20,11 +20,18 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Maps;
 import io.opencensus.common.Function;
 import io.opencensus.common.Functions;
+import io.opencensus.implcore.stats.DirectAggregation.DirectCount;
+import io.opencensus.implcore.stats.DirectAggregation.DirectLastValueDouble;
+import io.opencensus.implcore.stats.DirectAggregation.DirectLastValueLong;
+import io.opencensus.implcore.stats.DirectAggregation.DirectSumDouble;
+import io.opencensus.implcore.stats.DirectAggregation.DirectSumLong;
 import io.opencensus.implcore.stats.MutableAggregation.MutableCount;
 import io.opencensus.implcore.stats.MutableAggregation.MutableDistribution;
+import io.opencensus.implcore.stats.MutableAggregation.MutableExponentialDistribution;
 import io.opencensus.implcore.stats.MutableAggregation.MutableLastValueDouble;
 import io.opencensus.implcore.stats.MutableAggregation.MutableLastValueLong;
 import io.opencensus.implcore.stats.MutableAggregation.MutableMean;
+import io.opencensus.implcore.stats.MutableAggregation.MutablePercentiles;
 import io.opencensus.implcore.stats.MutableAggregation.MutableSumDouble;
 import io.opencensus.implcore.stats.MutableAggregation.MutableSumLong;
 import io.opencensus.implcore.tags.TagContextImpl;
@@ -33,13 +40,10 @@ import io.opencensus.stats.Aggregation.Count;
 import io.opencensus.stats.Aggregation.Distribution;
 import io.opencensus.stats.Aggregation.LastValue;
 import io.opencensus.stats.Aggregation.Sum;
-import io.opencensus.stats.AggregationData;
 import io.opencensus.stats.Measure;
 import io.opencensus.stats.Measure.MeasureDouble;
 import io.opencensus.stats.Measure.MeasureLong;
-import io.opencensus.stats.Measurement;
-import io.opencensus.stats.Measurement.MeasurementDouble;
-import io.opencensus.stats.Measurement.MeasurementLong;
+import io.opencensus.stats.View;
 import io.opencensus.tags.InternalUtils;
 import io.opencensus.tags.Tag;
 import io.opencensus.tags.TagContext;
@@ -49,7 +53,6 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 /*>>>
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -93,14 +96,26 @@ final class RecordUtils {
   }
 
   /**
-   * Create an empty {@link MutableAggregation} based on the given {@link Aggregation}.
+   * Create an empty {@link MutableAggregation} based on the given {@link Aggregation}, which keeps
+   * the latest exemplars.
    *
    * @param aggregation {@code Aggregation}.
    * @return an empty {@code MutableAggregation}.
    */
   @VisibleForTesting
+  static MutableAggregation createMutableAggregation(Aggregation aggregation, Measure measure) {
+    return createMutableAggregation(aggregation, measure, ExemplarPolicy.keepLatest());
+  }
+
+  /**
+   * Create an empty {@link MutableAggregation} based on the given {@link Aggregation}.
+   *
+   * @param aggregation {@code Aggregation}.
+   * @param exemplarPolicy the policy that chooses the exemplars of a {@code Distribution}.
+   * @return an empty {@code MutableAggregation}.
+   */
   static MutableAggregation createMutableAggregation(
-      Aggregation aggregation, final Measure measure) {
+      Aggregation aggregation, final Measure measure, final ExemplarPolicy exemplarPolicy) {
     return aggregation.match(
         new Function<Sum, MutableAggregation>() {
           @Override
@@ -112,7 +127,12 @@ final class RecordUtils {
           }
         },
         CreateMutableCount.INSTANCE,
-        CreateMutableDistribution.INSTANCE,
+        new Function<Distribution, MutableAggregation>() {
+          @Override
+          public MutableAggregation apply(Distribution arg) {
+            return MutableDistribution.create(arg.getBucketBoundaries(), exemplarPolicy);
+          }
+        },
         new Function<LastValue, MutableAggregation>() {
           @Override
           public MutableAggregation apply(LastValue arg) {
@@ -125,43 +145,51 @@ final class RecordUtils {
         AggregationDefaultFunction.INSTANCE);
   }
 
-  // Covert a mapping from TagValues to MutableAggregation, to a mapping from TagValues to
-  // AggregationData.
-  static <T> Map<T, AggregationData> createAggregationMap(
-      Map<T, MutableAggregation> tagValueAggregationMap, Measure measure) {
-    Map<T, AggregationData> map = Maps.newHashMap();
-    for (Entry<T, MutableAggregation> entry : tagValueAggregationMap.entrySet()) {
-      map.put(entry.getKey(), entry.getValue().toAggregationData());
+  // Returns whether the given View can be recorded on the caller thread with a DirectAggregation.
+  // Only cumulative views with aggregations whose updates are commutative qualify.
+  static boolean isDirectRecordingSupported(View view) {
+    if (!(view.getWindow() instanceof View.AggregationWindow.Cumulative)) {
+      return false;
     }
-    return map;
+    Aggregation aggregation = view.getAggregation();
+    return aggregation instanceof Sum
+        || aggregation instanceof Count
+        || aggregation instanceof LastValue;
   }
 
-  static double getDoubleValueFromMeasurement(Measurement measurement) {
-    return measurement.match(
-        GET_VALUE_FROM_MEASUREMENT_DOUBLE,
-        GET_VALUE_FROM_MEASUREMENT_LONG,
-        Functions.<Double>throwAssertionError());
+  /**
+   * Create an empty {@link DirectAggregation} based on the given {@link Aggregation}.
+   *
+   * @param aggregation {@code Aggregation}, one of {@code Sum}, {@code Count} or {@code
+   *     LastValue}.
+   * @return an empty {@code DirectAggregation}.
+   */
+  static DirectAggregation createDirectAggregation(
+      Aggregation aggregation, final Measure measure) {
+    return aggregation.match(
+        new Function<Sum, DirectAggregation>() {
+          @Override
+          public DirectAggregation apply(Sum arg) {
+            return measure.match(
+                CreateDirectSumDouble.INSTANCE,
+                CreateDirectSumLong.INSTANCE,
+                Functions.<DirectAggregation>throwAssertionError());
+          }
+        },
+        CreateDirectCount.INSTANCE,
+        Functions.<DirectAggregation>throwIllegalArgumentException(),
+        new Function<LastValue, DirectAggregation>() {
+          @Override
+          public DirectAggregation apply(LastValue arg) {
+            return measure.match(
+                CreateDirectLastValueDouble.INSTANCE,
+                CreateDirectLastValueLong.INSTANCE,
+                Functions.<DirectAggregation>throwAssertionError());
+          }
+        },
+        Functions.<DirectAggregation>throwIllegalArgumentException());
   }
 
-  // static inner Function classes
-
-  private static final Function<MeasurementDouble, Double> GET_VALUE_FROM_MEASUREMENT_DOUBLE =
-      new Function<MeasurementDouble, Double>() {
-        @Override
-        public Double apply(MeasurementDouble arg) {
-          return arg.getValue();
-        }
-      };
-
-  private static final Function<MeasurementLong, Double> GET_VALUE_FROM_MEASUREMENT_LONG =
-      new Function<MeasurementLong, Double>() {
-        @Override
-        public Double apply(MeasurementLong arg) {
-          // TODO: consider checking truncation here.
-          return (double) arg.getValue();
-        }
-      };
-
   private static final class CreateMutableSumDouble
       implements Function<MeasureDouble, MutableAggregation> {
     @Override
@@ -191,7 +219,8 @@ final class RecordUtils {
     private static final CreateMutableCount INSTANCE = new CreateMutableCount();
   }
 
-  // TODO(songya): remove this once Mean aggregation is completely removed. Before that
+  // Creates the aggregations that do not have their own function in Aggregation.match.
+  // TODO(songya): remove Mean from here once Mean aggregation is completely removed. Before that
   // we need to continue supporting Mean, since it could still be used by users and some
   // deprecated RPC views.
   private static final class AggregationDefaultFunction
@@ -201,22 +230,18 @@ final class RecordUtils {
       if (arg instanceof Aggregation.Mean) {
         return MutableMean.create();
       }
+      if (arg instanceof Aggregation.ExponentialDistribution) {
+        return MutableExponentialDistribution.create((Aggregation.ExponentialDistribution) arg);
+      }
+      if (arg instanceof Aggregation.Percentiles) {
+        return MutablePercentiles.create((Aggregation.Percentiles) arg);
+      }
       throw new IllegalArgumentException("Unknown Aggregation.");
     }
 
     private static final AggregationDefaultFunction INSTANCE = new AggregationDefaultFunction();
   }
 
-  private static final class CreateMutableDistribution
-      implements Function<Distribution, MutableAggregation> {
-    @Override
-    public MutableAggregation apply(Distribution arg) {
-      return MutableDistribution.create(arg.getBucketBoundaries());
-    }
-
-    private static final CreateMutableDistribution INSTANCE = new CreateMutableDistribution();
-  }
-
   private static final class CreateMutableLastValueDouble
       implements Function<MeasureDouble, MutableAggregation> {
     @Override
@@ -237,5 +262,54 @@ final class RecordUtils {
     private static final CreateMutableLastValueLong INSTANCE = new CreateMutableLastValueLong();
   }
 
+  private static final class CreateDirectSumDouble
+      implements Function<MeasureDouble, DirectAggregation> {
+    @Override
+    public DirectAggregation apply(MeasureDouble arg) {
+      return DirectSumDouble.create();
+    }
+
+    private static final CreateDirectSumDouble INSTANCE = new CreateDirectSumDouble();
+  }
+
+  private static final class CreateDirectSumLong
+      implements Function<MeasureLong, DirectAggregation> {
+    @Override
+    public DirectAggregation apply(MeasureLong arg) {
+      return DirectSumLong.create();
+    }
+
+    private static final CreateDirectSumLong INSTANCE = new CreateDirectSumLong();
+  }
+
+  private static final class CreateDirectCount implements Function<Count, DirectAggregation> {
+    @Override
+    public DirectAggregation apply(Count arg) {
+      return DirectCount.create();
+    }
+
+    private static final CreateDirectCount INSTANCE = new CreateDirectCount();
+  }
+
+  private static final class CreateDirectLastValueDouble
+      implements Function<MeasureDouble, DirectAggregation> {
+    @Override
+    public DirectAggregation apply(MeasureDouble arg) {
+      return DirectLastValueDouble.create();
+    }
+
+    private static final CreateDirectLastValueDouble INSTANCE = new CreateDirectLastValueDouble();
+  }
+
+  private static final class CreateDirectLastValueLong
+      implements Function<MeasureLong, DirectAggregation> {
+    @Override
+    public DirectAggregation apply(MeasureLong arg) {
+      return DirectLastValueLong.create();
+    }
+
+    private static final CreateDirectLastValueLong INSTANCE = new CreateDirectLastValueLong();
+  }
+
   private RecordUtils() {}
 }
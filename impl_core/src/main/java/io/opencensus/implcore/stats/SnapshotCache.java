@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import io.opencensus.common.Clock;
+import io.opencensus.common.Duration;
+import io.opencensus.implcore.internal.CurrentState;
+import io.opencensus.metrics.export.Metric;
+import io.opencensus.stats.View;
+import io.opencensus.stats.ViewData;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Shares the {@link ViewData}s and {@link Metric}s read from a {@link MeasureToViewMap} between
+ * the exporters that read them within a staleness window, so that each view is converted once per
+ * window however many exporters there are.
+ *
+ * <p>Exporters that read an entry that is missing or older than the window wait for the first of
+ * them to convert it, and then share the result. A zero window disables sharing.
+ *
+ * <p>All entries are dropped when a view is registered or unregistered, and when stats collection
+ * is cleared or resumed, so that shared snapshots never outlive the views they were read from.
+ */
+@ThreadSafe
+final class SnapshotCache {
+
+  private final MeasureToViewMap measureToViewMap;
+  private final Clock clock;
+  private final CurrentState state;
+  private final long stalenessNanos;
+
+  // Incremented by invalidate(). Entries of an older generation are never returned, even if they
+  // were stored after the invalidation by a reader that started before it.
+  private final AtomicLong generation = new AtomicLong();
+
+  private final ConcurrentMap<View.Name, Entry<ViewData>> views =
+      new ConcurrentHashMap<View.Name, Entry<ViewData>>();
+  @Nullable private volatile Entry<List<Metric>> metrics;
+
+  SnapshotCache(
+      MeasureToViewMap measureToViewMap, Clock clock, CurrentState state, Duration staleness) {
+    this.measureToViewMap = measureToViewMap;
+    this.clock = clock;
+    this.state = state;
+    this.stalenessNanos = staleness.getSeconds() * 1000000000L + staleness.getNanos();
+  }
+
+  @Nullable
+  ViewData getView(View.Name viewName) {
+    if (stalenessNanos == 0) {
+      return measureToViewMap.getView(viewName, clock, state.getInternal());
+    }
+    Entry<ViewData> entry = views.get(viewName);
+    if (entry != null && isFresh(entry)) {
+      return entry.value;
+    }
+    // Exporters are few and read rarely, so a single lock is enough to make them share the read.
+    synchronized (this) {
+      entry = views.get(viewName);
+      if (entry != null && isFresh(entry)) {
+        return entry.value;
+      }
+      long entryGeneration = generation.get();
+      long readNanos = clock.nowNanos();
+      ViewData viewData = measureToViewMap.getView(viewName, clock, state.getInternal());
+      if (viewData == null) {
+        views.remove(viewName);
+        return null;
+      }
+      views.put(viewName, new Entry<ViewData>(viewData, readNanos, entryGeneration));
+      return viewData;
+    }
+  }
+
+  List<Metric> getMetrics() {
+    if (stalenessNanos == 0) {
+      return measureToViewMap.getMetrics(clock, state.getInternal());
+    }
+    Entry<List<Metric>> entry = metrics;
+    if (entry != null && isFresh(entry)) {
+      return entry.value;
+    }
+    synchronized (this) {
+      entry = metrics;
+      if (entry != null && isFresh(entry)) {
+        return entry.value;
+      }
+      long entryGeneration = generation.get();
+      long readNanos = clock.nowNanos();
+      // Shared by all the exporters, so it must not be modified by any of them.
+      List<Metric> metricList =
+          Collections.unmodifiableList(measureToViewMap.getMetrics(clock, state.getInternal()));
+      metrics = new Entry<List<Metric>>(metricList, readNanos, entryGeneration);
+      return metricList;
+    }
+  }
+
+  // Drops all the entries.
+  void invalidate() {
+    generation.incrementAndGet();
+    views.clear();
+    metrics = null;
+  }
+
+  private boolean isFresh(Entry<?> entry) {
+    return entry.generation == generation.get()
+        && clock.nowNanos() - entry.readNanos < stalenessNanos;
+  }
+
+  private static final class Entry<T> {
+    private final T value;
+    private final long readNanos;
+    private final long generation;
+
+    private Entry(T value, long readNanos, long generation) {
+      this.value = value;
+      this.readNanos = readNanos;
+      this.generation = generation;
+    }
+  }
+}
@@ -25,6 +25,8 @@ import io.opencensus.metrics.Metrics;
 import io.opencensus.metrics.export.MetricProducer;
 import io.opencensus.stats.StatsCollectionState;
 import io.opencensus.stats.StatsComponent;
+import java.util.Collections;
+import java.util.List;
 
 /** Base implementation of {@link StatsComponent}. */
 public class StatsComponentImplBase extends StatsComponent {
@@ -43,7 +45,31 @@ public class StatsComponentImplBase extends StatsComponent {
    * @param clock the clock to use when recording stats.
    */
   public StatsComponentImplBase(EventQueue queue, Clock clock) {
-    StatsManager statsManager = new StatsManager(queue, clock, currentState);
+    this(Collections.singletonList(queue), clock);
+  }
+
+  /**
+   * Creates a new {@code StatsComponentImplBase} that partitions the stats pipeline into one shard
+   * per queue. Measures are assigned to shards by name, and the views of a measure are only ever
+   * aggregated by the consumer of its shard's queue.
+   *
+   * @param queues the queues of the shards, in shard order.
+   * @param clock the clock to use when recording stats.
+   */
+  public StatsComponentImplBase(List<? extends EventQueue> queues, Clock clock) {
+    this(queues, clock, StatsConfiguration.getDefault());
+  }
+
+  /**
+   * Creates a new {@code StatsComponentImplBase} with the given {@link StatsConfiguration}.
+   *
+   * @param queues the queues of the shards, in shard order.
+   * @param clock the clock to use when recording stats.
+   * @param configuration the {@code StatsConfiguration}.
+   */
+  public StatsComponentImplBase(
+      List<? extends EventQueue> queues, Clock clock, StatsConfiguration configuration) {
+    StatsManager statsManager = new StatsManager(queues, clock, currentState, configuration);
     this.viewManager = new ViewManagerImpl(statsManager);
     this.statsRecorder = new StatsRecorderImpl(statsManager);
 
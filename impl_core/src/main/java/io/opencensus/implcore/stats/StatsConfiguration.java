@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.auto.value.AutoValue;
+import io.opencensus.common.Duration;
+import javax.annotation.concurrent.Immutable;
+
+/** Configurations for {@link StatsComponentImplBase}. */
+@AutoValue
+@Immutable
+public abstract class StatsConfiguration {
+
+  private static final Duration ZERO = Duration.create(0, 0);
+
+  private static final StatsConfiguration DEFAULT = builder().build();
+
+  StatsConfiguration() {}
+
+  /**
+   * Returns whether cumulative views with {@code Count}, {@code Sum} or {@code LastValue}
+   * aggregations are recorded directly on the caller thread, instead of through the {@code
+   * EventQueue}.
+   *
+   * @return whether direct recording is enabled.
+   */
+  public abstract boolean isDirectRecordingEnabled();
+
+  /**
+   * Returns the maximum number of tag value combinations that a cumulative view keeps. The records
+   * of further combinations are aggregated in a single overflow series.
+   *
+   * @return the maximum number of series per view.
+   */
+  public abstract int getMaxSeriesPerView();
+
+  /**
+   * Returns how long a series of a cumulative view can go without records before it is evicted,
+   * or zero if series are never evicted.
+   *
+   * @return the time to live of idle series.
+   */
+  public abstract Duration getSeriesTtl();
+
+  /**
+   * Returns the number of buckets that the window of an interval view is divided into. Records
+   * expire one bucket at a time, so more buckets make the window slide more smoothly.
+   *
+   * @return the number of buckets of interval views.
+   */
+  public abstract int getIntervalBuckets();
+
+  /**
+   * Returns the policy that chooses the exemplars of {@code Distribution} views among the values
+   * recorded with attachments.
+   *
+   * @return the {@code ExemplarPolicy} of distribution views.
+   */
+  public abstract ExemplarPolicy getExemplarPolicy();
+
+  /**
+   * Returns how long the {@code ViewData}s and {@code Metric}s read by exporters are shared with
+   * the exporters that read them next, or zero if each read converts the views again.
+   *
+   * @return the staleness window of the shared snapshots.
+   */
+  public abstract Duration getSnapshotStaleness();
+
+  /**
+   * Returns the default {@code StatsConfiguration}.
+   *
+   * @return the default {@code StatsConfiguration}.
+   */
+  public static StatsConfiguration getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Returns a new {@link Builder} with the default values.
+   *
+   * @return a {@code Builder}.
+   */
+  public static Builder builder() {
+    return new AutoValue_StatsConfiguration.Builder()
+        .setDirectRecordingEnabled(false)
+        .setMaxSeriesPerView(Integer.MAX_VALUE)
+        .setSeriesTtl(ZERO)
+        .setIntervalBuckets(4)
+        .setExemplarPolicy(ExemplarPolicy.keepLatest())
+        .setSnapshotStaleness(ZERO);
+  }
+
+  /** Builder for {@link StatsConfiguration}. */
+  @AutoValue.Builder
+  public abstract static class Builder {
+
+    Builder() {}
+
+    /**
+     * Sets whether cumulative views with {@code Count}, {@code Sum} or {@code LastValue}
+     * aggregations are recorded directly on the caller thread. Views with other aggregations or
+     * windows are always recorded through the {@code EventQueue}.
+     *
+     * @param directRecordingEnabled whether direct recording is enabled.
+     * @return this.
+     */
+    public abstract Builder setDirectRecordingEnabled(boolean directRecordingEnabled);
+
+    /**
+     * Sets the maximum number of tag value combinations that a cumulative view keeps. Once a view
+     * has that many series, the records of new combinations are aggregated in an overflow series
+     * whose tag values are all {@code "opencensus_overflow"}. Unlimited by default.
+     *
+     * @param maxSeriesPerView the maximum number of series per view, must be positive.
+     * @return this.
+     */
+    public abstract Builder setMaxSeriesPerView(int maxSeriesPerView);
+
+    /**
+     * Sets how long a series of a cumulative view can go without records before it is evicted.
+     * Idle series are looked for whenever the view is read or exported, so a series may live up to
+     * one export interval longer. An evicted series starts over from zero if it is recorded again.
+     * Zero, the default, disables eviction.
+     *
+     * @param seriesTtl the time to live of idle series, must not be negative.
+     * @return this.
+     */
+    public abstract Builder setSeriesTtl(Duration seriesTtl);
+
+    /**
+     * Sets the number of buckets that the window of an interval view is divided into. Each series
+     * of an interval view keeps one more bucket than that, for the part of the oldest bucket that
+     * is still within the window. The default is 4.
+     *
+     * @param intervalBuckets the number of buckets of interval views, must be positive.
+     * @return this.
+     */
+    public abstract Builder setIntervalBuckets(int intervalBuckets);
+
+    /**
+     * Sets the policy that chooses the exemplars of {@code Distribution} views. Each histogram
+     * bucket keeps at most one exemplar, and values that the policy does not keep are dropped
+     * without being copied. The default keeps the latest value of each bucket.
+     *
+     * @param exemplarPolicy the {@code ExemplarPolicy} of distribution views.
+     * @return this.
+     */
+    public abstract Builder setExemplarPolicy(ExemplarPolicy exemplarPolicy);
+
+    /**
+     * Sets how long the {@code ViewData} of a view, and the {@code Metric}s of all views, are
+     * shared between the exporters that read them. Within the window, exporters get the snapshot
+     * read by the first of them instead of converting the views again, so that the cost of exports
+     * does not grow with the number of exporters. Set it a little below the export interval, so
+     * that each interval reads fresh data. Zero, the default, disables sharing.
+     *
+     * @param snapshotStaleness the staleness window of the shared snapshots, must not be negative.
+     * @return this.
+     */
+    public abstract Builder setSnapshotStaleness(Duration snapshotStaleness);
+
+    abstract StatsConfiguration autoBuild();
+
+    /**
+     * Builds a new {@link StatsConfiguration} with current settings.
+     *
+     * @return a {@code StatsConfiguration}.
+     */
+    public StatsConfiguration build() {
+      StatsConfiguration configuration = autoBuild();
+      checkArgument(
+          configuration.getMaxSeriesPerView() > 0, "maxSeriesPerView must be positive.");
+      checkArgument(
+          configuration.getSeriesTtl().compareTo(ZERO) >= 0, "seriesTtl must not be negative.");
+      checkArgument(configuration.getIntervalBuckets() > 0, "intervalBuckets must be positive.");
+      checkArgument(
+          configuration.getSnapshotStaleness().compareTo(ZERO) >= 0,
+          "snapshotStaleness must not be negative.");
+      return configuration;
+    }
+  }
+}
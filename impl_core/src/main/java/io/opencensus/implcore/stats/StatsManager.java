@@ -16,89 +16,295 @@
 
 package io.opencensus.implcore.stats;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.annotations.VisibleForTesting;
 import io.opencensus.common.Clock;
+import io.opencensus.implcore.internal.CheckerFrameworkUtils;
 import io.opencensus.implcore.internal.CurrentState;
 import io.opencensus.implcore.internal.CurrentState.State;
 import io.opencensus.implcore.internal.EventQueue;
+import io.opencensus.implcore.internal.TimestampConverter;
+import io.opencensus.implcore.internal.Utils;
+import io.opencensus.metrics.export.ChangedMetrics;
 import io.opencensus.metrics.export.Metric;
+import io.opencensus.stats.Measure;
 import io.opencensus.stats.View;
 import io.opencensus.stats.ViewData;
 import io.opencensus.tags.TagContext;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import javax.annotation.Nullable;
 
 /** Object that stores all views and stats. */
 final class StatsManager {
 
-  private final EventQueue queue;
+  // Number of reusable events per recording thread. If all of them are still queued, records
+  // allocate new events until the queue catches up.
+  @VisibleForTesting static final int EVENTS_PER_THREAD = 16;
+
+  // How often the timestampConverter is re-anchored to the wall clock. The nanoTime of the clock
+  // and its wall time drift apart, for example when the wall time is adjusted by NTP. Records are
+  // timestamped from the nanoTime, while interval views are read with the wall time, so both are
+  // kept within the drift of one period.
+  @VisibleForTesting static final long TIMESTAMP_CONVERTER_PERIOD_NANOS = 1000 * 1000 * 1000;
+
+  // One queue per shard of the measureToViewMap. The consumer of each queue records the
+  // measurements of the measures owned by its shard.
+  private final List<EventQueue> queues;
 
   // clock used throughout the stats implementation
   private final Clock clock;
+  // Converts the nanoTime of the clock to the epoch nanos that records are timestamped with, so
+  // that recording does not allocate a Timestamp. Replaced every
+  // TIMESTAMP_CONVERTER_PERIOD_NANOS, by whichever recording thread notices it first.
+  private volatile TimestampConverter timestampConverter;
 
   private final CurrentState state;
-  private final MeasureToViewMap measureToViewMap = new MeasureToViewMap();
+  private final MeasureToViewMap measureToViewMap;
+  // Shares the views and metrics read by exporters.
+  private final SnapshotCache snapshotCache;
+
+  // The reusable events of each recording thread. Idle events do not reference this StatsManager,
+  // so the pools do not keep it alive.
+  private final ThreadLocal<EventPool> eventPool =
+      new ThreadLocal<EventPool>() {
+        @Override
+        protected EventPool initialValue() {
+          return new EventPool();
+        }
+      };
 
   StatsManager(EventQueue queue, Clock clock, CurrentState state) {
-    checkNotNull(queue, "EventQueue");
+    this(Collections.singletonList(checkNotNull(queue, "EventQueue")), clock, state);
+  }
+
+  StatsManager(List<? extends EventQueue> queues, Clock clock, CurrentState state) {
+    this(queues, clock, state, StatsConfiguration.getDefault());
+  }
+
+  StatsManager(
+      List<? extends EventQueue> queues,
+      Clock clock,
+      CurrentState state,
+      StatsConfiguration configuration) {
+    checkNotNull(queues, "queues");
+    Utils.checkListElementNotNull(queues, "EventQueue");
+    checkArgument(!queues.isEmpty(), "At least one EventQueue is required.");
     checkNotNull(clock, "Clock");
     checkNotNull(state, "state");
-    this.queue = queue;
+    checkNotNull(configuration, "configuration");
+    this.queues = Collections.unmodifiableList(new ArrayList<EventQueue>(queues));
     this.clock = clock;
+    this.timestampConverter = TimestampConverter.now(clock);
     this.state = state;
+    this.measureToViewMap = new MeasureToViewMap(queues.size(), configuration);
+    this.snapshotCache =
+        new SnapshotCache(measureToViewMap, clock, state, configuration.getSnapshotStaleness());
   }
 
   void registerView(View view) {
     measureToViewMap.registerView(view, clock);
+    snapshotCache.invalidate();
+  }
+
+  void unregisterView(View.Name viewName) {
+    measureToViewMap.unregisterView(viewName);
+    snapshotCache.invalidate();
   }
 
   @Nullable
   ViewData getView(View.Name viewName) {
-    return measureToViewMap.getView(viewName, clock, state.getInternal());
+    return snapshotCache.getView(viewName);
   }
 
   Set<View> getExportedViews() {
     return measureToViewMap.getExportedViews();
   }
 
+  // Records the measurements with the given tags. The measurements are copied, so the caller can
+  // keep using them.
   void record(TagContext tags, MeasureMapInternal measurementValues) {
     // TODO(songya): consider exposing No-op MeasureMap and use it when stats state is DISABLED, so
     // that we don't need to create actual MeasureMapImpl.
-    if (state.getInternal() == State.ENABLED) {
-      queue.enqueue(new StatsEvent(this, tags, measurementValues));
+    if (state.getInternal() != State.ENABLED) {
+      return;
+    }
+    boolean direct = measureToViewMap.isDirectRecordingEnabled();
+    if (!direct && queues.size() == 1) {
+      enqueue(0, tags, measurementValues);
+      return;
+    }
+    // Record the views that support it right away, then hand the measurements to the queue of
+    // every shard that still has views to record. Bit i is set once shard i has been enqueued.
+    long enqueuedShards = 0L;
+    for (int i = 0; i < measurementValues.size(); i++) {
+      int shard =
+          direct
+              ? measureToViewMap.recordDirect(tags, measurementValues, i)
+              : measureToViewMap.getShardIndex(measurementValues.getMeasure(i).getName());
+      if (shard >= 0 && (enqueuedShards & (1L << shard)) == 0) {
+        enqueuedShards |= 1L << shard;
+        enqueue(shard, tags, measurementValues);
+      }
+    }
+  }
+
+  // Records a value of a bound measure, with the views and tags resolved by the given binding.
+  void record(MeasureToViewMap.Binding binding, double value) {
+    if (state.getInternal() != State.ENABLED) {
+      return;
+    }
+    int shard = measureToViewMap.recordDirect(binding, value);
+    if (shard >= 0) {
+      StatsEvent event = obtainEvent();
+      event.statsManager = this;
+      event.shard = shard;
+      event.binding = binding;
+      event.value = value;
+      queues.get(shard).enqueue(event);
+    }
+  }
+
+  // Records a value of a bound MeasureLong, which the long aggregations keep exact.
+  void recordLong(MeasureToViewMap.Binding binding, long value) {
+    if (state.getInternal() != State.ENABLED) {
+      return;
     }
+    int shard = measureToViewMap.recordDirectLong(binding, value);
+    if (shard >= 0) {
+      StatsEvent event = obtainEvent();
+      event.statsManager = this;
+      event.shard = shard;
+      event.binding = binding;
+      event.longValue = value;
+      event.isLong = true;
+      queues.get(shard).enqueue(event);
+    }
+  }
+
+  // Returns the binding of the given measure and tags if it is still current, or a new one.
+  MeasureToViewMap.Binding bind(
+      @Nullable MeasureToViewMap.Binding binding, Measure measure, TagContext tags) {
+    return binding != null && measureToViewMap.isCurrent(binding)
+        ? binding
+        : measureToViewMap.bind(measure, tags);
+  }
+
+  // Enqueues a copy of the measurements to the queue of the given shard, in a reused event if the
+  // oldest event of the current thread was processed already.
+  private void enqueue(int shard, TagContext tags, MeasureMapInternal measurementValues) {
+    StatsEvent event = obtainEvent();
+    event.statsManager = this;
+    event.shard = shard;
+    event.tags = tags;
+    event.stats.copyFrom(measurementValues);
+    queues.get(shard).enqueue(event);
+  }
+
+  // Returns the oldest event of the current thread if it was processed already, or a new event
+  // that replaces it in the pool.
+  private StatsEvent obtainEvent() {
+    EventPool pool = eventPool.get();
+    StatsEvent event = pool.events[pool.next];
+    if (event.inUse) {
+      // The queue is behind, do not wait for it. The event may also have been dropped by a queue
+      // that sheds load, in which case it is never processed and must leave the pool.
+      event = new StatsEvent();
+      pool.events[pool.next] = event;
+    }
+    pool.next = (pool.next + 1) % pool.events.length;
+    event.inUse = true;
+    return event;
+  }
+
+  // Returns the current time in nanoseconds since the epoch.
+  private long nowEpochNanos() {
+    long nanoTime = clock.nowNanos();
+    TimestampConverter converter = timestampConverter;
+    if (nanoTime - converter.getNanoTime() >= TIMESTAMP_CONVERTER_PERIOD_NANOS) {
+      converter = TimestampConverter.now(clock);
+      timestampConverter = converter;
+      nanoTime = converter.getNanoTime();
+    }
+    return converter.convertNanoTimeToEpochNanos(nanoTime);
   }
 
   Collection<Metric> getMetrics() {
-    return measureToViewMap.getMetrics(clock, state.getInternal());
+    return snapshotCache.getMetrics();
+  }
+
+  ChangedMetrics getMetricsChangedSince(long cursor) {
+    return measureToViewMap.getMetricsChangedSince(cursor, clock, state.getInternal());
   }
 
   void clearStats() {
     measureToViewMap.clearStats();
+    snapshotCache.invalidate();
   }
 
   void resumeStatsCollection() {
     measureToViewMap.resumeStatsCollection(clock.now());
+    snapshotCache.invalidate();
   }
 
-  // An EventQueue entry that records the stats from one call to StatsManager.record(...).
-  private static final class StatsEvent implements EventQueue.Entry {
-    private final TagContext tags;
-    private final MeasureMapInternal stats;
-    private final StatsManager statsManager;
-
-    StatsEvent(StatsManager statsManager, TagContext tags, MeasureMapInternal stats) {
-      this.statsManager = statsManager;
-      this.tags = tags;
-      this.stats = stats;
+  // The events of one recording thread, reused in turn. Events are processed in order, so the next
+  // event to reuse is the oldest one.
+  private static final class EventPool {
+    private final StatsEvent[] events = new StatsEvent[EVENTS_PER_THREAD];
+    private int next = 0;
+
+    private EventPool() {
+      for (int i = 0; i < events.length; i++) {
+        events[i] = new StatsEvent();
+      }
     }
+  }
+
+  // An EventQueue entry that records the stats from one call to StatsManager.record(...) to one
+  // shard, either the measurements of a MeasureMap with tags, or one value of a bound measure with
+  // its binding. The fields are set by the recording thread before the event is enqueued, and
+  // cleared by the queue consumer before it marks the event as reusable.
+  private static final class StatsEvent implements EventQueue.Entry {
+    private final MeasureMapInternal stats = new MeasureMapInternal();
+    @Nullable private StatsManager statsManager;
+    @Nullable private TagContext tags;
+    @Nullable private MeasureToViewMap.Binding binding;
+    private double value;
+    // Whether the bound value is the one of a MeasureLong, in longValue.
+    private boolean isLong;
+    private long longValue;
+    private int shard;
+    private volatile boolean inUse = false;
 
     @Override
     public void process() {
-      // Add Timestamp to value after it went through the DisruptorQueue.
-      statsManager.measureToViewMap.record(tags, stats, statsManager.clock.now());
+      StatsManager statsManager = CheckerFrameworkUtils.castNonNull(this.statsManager);
+      MeasureToViewMap.Binding binding = this.binding;
+      try {
+        // Add the timestamp to the value after it went through the DisruptorQueue.
+        long nowNanos = statsManager.nowEpochNanos();
+        if (binding != null && isLong) {
+          statsManager.measureToViewMap.recordLong(binding, longValue, nowNanos);
+        } else if (binding != null) {
+          statsManager.measureToViewMap.record(binding, value, nowNanos);
+        } else {
+          statsManager.measureToViewMap.record(
+              shard, CheckerFrameworkUtils.castNonNull(tags), stats, nowNanos);
+        }
+      } finally {
+        // Drop the references, so that an idle event does not keep them alive.
+        this.statsManager = null;
+        this.binding = null;
+        isLong = false;
+        tags = null;
+        stats.clear();
+        inUse = false;
+      }
     }
   }
 }
@@ -18,7 +18,12 @@ package io.opencensus.implcore.stats;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import io.opencensus.stats.BoundMeasureDouble;
+import io.opencensus.stats.BoundMeasureLong;
+import io.opencensus.stats.Measure.MeasureDouble;
+import io.opencensus.stats.Measure.MeasureLong;
 import io.opencensus.stats.StatsRecorder;
+import io.opencensus.tags.TagContext;
 
 /** Implementation of {@link StatsRecorder}. */
 public final class StatsRecorderImpl extends StatsRecorder {
@@ -33,4 +38,18 @@ public final class StatsRecorderImpl extends StatsRecorder {
   public MeasureMapImpl newMeasureMap() {
     return MeasureMapImpl.create(statsManager);
   }
+
+  @Override
+  public BoundMeasureDouble bind(MeasureDouble measure, TagContext tags) {
+    checkNotNull(measure, "measure");
+    checkNotNull(tags, "tags");
+    return BoundMeasureImpl.createDouble(statsManager, measure, tags);
+  }
+
+  @Override
+  public BoundMeasureLong bind(MeasureLong measure, TagContext tags) {
+    checkNotNull(measure, "measure");
+    checkNotNull(tags, "tags");
+    return BoundMeasureImpl.createLong(statsManager, measure, tags);
+  }
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import io.opencensus.implcore.tags.TagContextImpl;
+import io.opencensus.tags.InternalUtils;
+import io.opencensus.tags.Tag;
+import io.opencensus.tags.TagContext;
+import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagValue;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import javax.annotation.concurrent.Immutable;
+
+/*>>>
+import org.checkerframework.checker.nullness.qual.Nullable;
+*/
+
+/**
+ * The compiled projection of a {@link TagContext} on the union of the columns of all the views of
+ * one measure.
+ *
+ * <p>Each column of the union has a fixed slot. {@link #project} reads the tags once per record
+ * and writes the value of every column to its slot, and each view then picks its own columns by
+ * slot index (see {@link TagValues.Scratch#fill(TagValue[], int[])}), instead of probing the tags
+ * once per column per view.
+ *
+ * <p>Registering a view only ever appends columns, so the slots of the existing views stay valid
+ * when the projection of their measure grows.
+ */
+@Immutable
+final class TagProjection {
+
+  static final TagProjection EMPTY =
+      new TagProjection(new TagKey[0], Collections.<TagKey, Integer>emptyMap());
+
+  private final TagKey[] keys;
+  private final Map<TagKey, Integer> slots;
+
+  private TagProjection(TagKey[] keys, Map<TagKey, Integer> slots) {
+    this.keys = keys;
+    this.slots = slots;
+  }
+
+  /**
+   * Returns a {@code TagProjection} that also projects the given columns. Returns this projection
+   * if it already has all of them.
+   *
+   * @param columns the columns of a view.
+   * @return a {@code TagProjection} that has all the columns.
+   */
+  TagProjection withColumns(List<TagKey> columns) {
+    TagKey[] newKeys = keys;
+    Map<TagKey, Integer> newSlots = slots;
+    for (TagKey column : columns) {
+      if (!newSlots.containsKey(column)) {
+        if (newKeys == keys) {
+          newSlots = new HashMap<TagKey, Integer>(slots);
+        }
+        newKeys = Arrays.copyOf(newKeys, newKeys.length + 1);
+        newKeys[newKeys.length - 1] = column;
+        newSlots.put(column, newKeys.length - 1);
+      }
+    }
+    return newKeys == keys
+        ? this
+        : new TagProjection(newKeys, Collections.unmodifiableMap(newSlots));
+  }
+
+  /**
+   * Returns the slots of the given columns. All of them must be projected by this {@code
+   * TagProjection}.
+   *
+   * @param columns the columns of a view.
+   * @return the slot of each column.
+   */
+  int[] getSlots(List<TagKey> columns) {
+    int[] columnSlots = new int[columns.size()];
+    for (int i = 0; i < columnSlots.length; i++) {
+      Integer slot = slots.get(columns.get(i));
+      if (slot == null) {
+        throw new IllegalArgumentException("Column is not projected: " + columns.get(i));
+      }
+      columnSlots[i] = slot;
+    }
+    return columnSlots;
+  }
+
+  /** Returns the number of slots of this {@code TagProjection}. */
+  int size() {
+    return keys.length;
+  }
+
+  /**
+   * Writes the value of each projected column of the given tags to its slot, or {@link
+   * RecordUtils#UNKNOWN_TAG_VALUE} if the tags do not have the column.
+   *
+   * @param ctx the tags of a record.
+   * @param buffer the array to write to, at least {@link #size()} long.
+   * @return the given buffer.
+   */
+  /*@Nullable*/ TagValue[] project(TagContext ctx, /*@Nullable*/ TagValue[] buffer) {
+    if (ctx instanceof TagContextImpl) {
+      Map<TagKey, TagValue> tags = ((TagContextImpl) ctx).getTags();
+      if (tags.size() >= keys.length) {
+        for (int i = 0; i < keys.length; i++) {
+          TagValue value = tags.get(keys[i]);
+          buffer[i] = value == null ? RecordUtils.UNKNOWN_TAG_VALUE : value;
+        }
+      } else {
+        // Fewer tags than columns: visit each tag once instead.
+        Arrays.fill(buffer, 0, keys.length, RecordUtils.UNKNOWN_TAG_VALUE);
+        for (Entry<TagKey, TagValue> entry : tags.entrySet()) {
+          Integer slot = slots.get(entry.getKey());
+          if (slot != null) {
+            buffer[slot] = entry.getValue();
+          }
+        }
+      }
+    } else {
+      Arrays.fill(buffer, 0, keys.length, RecordUtils.UNKNOWN_TAG_VALUE);
+      for (Iterator<Tag> i = InternalUtils.getTags(ctx); i.hasNext(); ) {
+        Tag tag = i.next();
+        Integer slot = slots.get(tag.getKey());
+        if (slot != null) {
+          buffer[slot] = tag.getValue();
+        }
+      }
+    }
+    return buffer;
+  }
+
+  /**
+   * Returns the given buffer if it can hold this projection, or a new buffer that can.
+   *
+   * @param buffer the current buffer, may be {@code null}.
+   * @return a buffer that is at least {@link #size()} long.
+   */
+  /*@Nullable*/ TagValue[] ensureCapacity(
+      @javax.annotation.Nullable /*@Nullable*/ TagValue[] buffer) {
+    return buffer != null && buffer.length >= keys.length ? buffer : new TagValue[keys.length];
+  }
+}
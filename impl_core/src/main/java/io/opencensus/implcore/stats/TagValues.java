@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagValue;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/*>>>
+import org.checkerframework.checker.nullness.qual.Nullable;
+*/
+
+/**
+ * An immutable list of {@link TagValue}s with a precomputed hash code, used as the key of the
+ * aggregation maps of a view.
+ *
+ * <p>Lookups are done with a reusable {@link Scratch} list, which is only copied to a new {@code
+ * TagValues} when a new tag combination is stored. Both classes follow the {@link List} contract
+ * for {@code equals} and {@code hashCode}, so they can be mixed with other lists.
+ */
+@Immutable
+final class TagValues extends AbstractList</*@Nullable*/ TagValue> implements RandomAccess {
+
+  private final /*@Nullable*/ TagValue[] values;
+  private final int hashCode;
+
+  private TagValues(/*@Nullable*/ TagValue[] values, int hashCode) {
+    this.values = values;
+    this.hashCode = hashCode;
+  }
+
+  /**
+   * Returns a {@code TagValues} with the same elements as the given list, or the list itself if it
+   * already is a {@code TagValues}.
+   *
+   * @param tagValues the tag values.
+   * @return a {@code TagValues}.
+   */
+  static TagValues copyOf(List<? extends /*@Nullable*/ TagValue> tagValues) {
+    if (tagValues instanceof TagValues) {
+      return (TagValues) tagValues;
+    }
+    if (tagValues instanceof Scratch) {
+      Scratch scratch = (Scratch) tagValues;
+      return new TagValues(scratch.values.clone(), scratch.hashCode);
+    }
+    /*@Nullable*/ TagValue[] values = tagValues.toArray(new TagValue[tagValues.size()]);
+    return new TagValues(values, Arrays.hashCode(values));
+  }
+
+  @Override
+  /*@Nullable*/
+  public TagValue get(int index) {
+    return values[index];
+  }
+
+  @Override
+  public int size() {
+    return values.length;
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public boolean equals(/*@Nullable*/ Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if (obj instanceof TagValues) {
+      TagValues that = (TagValues) obj;
+      return hashCode == that.hashCode && Arrays.equals(values, that.values);
+    }
+    if (obj instanceof Scratch) {
+      return obj.equals(this);
+    }
+    return super.equals(obj);
+  }
+
+  /**
+   * A mutable list of {@link TagValue}s, refilled for every record and used to look up the {@link
+   * TagValues} of a tag combination without allocating.
+   */
+  @NotThreadSafe
+  static final class Scratch extends AbstractList</*@Nullable*/ TagValue> implements RandomAccess {
+
+    private final /*@Nullable*/ TagValue[] values;
+    private int hashCode = 1;
+
+    Scratch(int size) {
+      values = new TagValue[size];
+    }
+
+    /**
+     * Fills this {@code Scratch} with the values of the given columns, using {@link
+     * RecordUtils#UNKNOWN_TAG_VALUE} for the columns that are not in the tags.
+     *
+     * @param tags the tags to read the values from.
+     * @param columns the columns, which must have the size of this {@code Scratch}.
+     * @return this.
+     */
+    Scratch fill(Map<? extends TagKey, ? extends TagValue> tags, List<? extends TagKey> columns) {
+      int hashCode = 1;
+      for (int i = 0; i < values.length; i++) {
+        /*@Nullable*/ TagValue value = tags.get(columns.get(i));
+        if (value == null) {
+          // replace not found key values by null.
+          value = RecordUtils.UNKNOWN_TAG_VALUE;
+        }
+        values[i] = value;
+        hashCode = 31 * hashCode + (value == null ? 0 : value.hashCode());
+      }
+      this.hashCode = hashCode;
+      return this;
+    }
+
+    /**
+     * Fills this {@code Scratch} with the values at the given slots of a {@link TagProjection}.
+     *
+     * @param projectedTags the tags projected by a {@code TagProjection}.
+     * @param slots the slots of the columns, with the size of this {@code Scratch}.
+     * @return this.
+     */
+    Scratch fill(/*@Nullable*/ TagValue[] projectedTags, int[] slots) {
+      int hashCode = 1;
+      for (int i = 0; i < values.length; i++) {
+        /*@Nullable*/ TagValue value = projectedTags[slots[i]];
+        values[i] = value;
+        hashCode = 31 * hashCode + (value == null ? 0 : value.hashCode());
+      }
+      this.hashCode = hashCode;
+      return this;
+    }
+
+    @Override
+    /*@Nullable*/
+    public TagValue get(int index) {
+      return values[index];
+    }
+
+    @Override
+    public int size() {
+      return values.length;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(/*@Nullable*/ Object obj) {
+      if (obj instanceof TagValues) {
+        TagValues that = (TagValues) obj;
+        return hashCode == that.hashCode && Arrays.equals(values, that.values);
+      }
+      return super.equals(obj);
+    }
+  }
+}
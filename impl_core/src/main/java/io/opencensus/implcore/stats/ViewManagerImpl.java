@@ -35,6 +35,11 @@ public final class ViewManagerImpl extends ViewManager {
     statsManager.registerView(view);
   }
 
+  @Override
+  public void unregisterView(View.Name viewName) {
+    statsManager.unregisterView(viewName);
+  }
+
   @Override
   @Nullable
   public ViewData getView(View.Name viewName) {
@@ -18,7 +18,6 @@ package io.opencensus.implcore.trace;
 
 import io.opencensus.common.Clock;
 import io.opencensus.implcore.internal.EventQueue;
-import io.opencensus.implcore.internal.SimpleEventQueue;
 import io.opencensus.implcore.trace.RecordEventsSpanImpl.StartEndHandler;
 import io.opencensus.implcore.trace.config.TraceConfigImpl;
 import io.opencensus.implcore.trace.export.ExportComponentImpl;
@@ -49,16 +48,21 @@ public final class TraceComponentImplBase {
    *
    * @param clock the clock to use throughout tracing.
    * @param randomHandler the random number generator for generating trace and span IDs.
-   * @param eventQueue the queue implementation.
+   * @param eventQueue the queue implementation. It must not drop entries, since the span stores
+   *     expect the end event of each span to follow its start event.
+   * @param supportInProcessStores {@code true} to instantiate the in-process {@code
+   *     RunningSpanStore} and {@code SampledSpanStore}.
    */
-  public TraceComponentImplBase(Clock clock, RandomHandler randomHandler, EventQueue eventQueue) {
+  public TraceComponentImplBase(
+      Clock clock,
+      RandomHandler randomHandler,
+      EventQueue eventQueue,
+      boolean supportInProcessStores) {
     this.clock = clock;
-    // TODO(bdrutu): Add a config/argument for supportInProcessStores.
-    if (eventQueue instanceof SimpleEventQueue) {
-      exportComponent = ExportComponentImpl.createWithoutInProcessStores(eventQueue);
-    } else {
-      exportComponent = ExportComponentImpl.createWithInProcessStores(eventQueue);
-    }
+    exportComponent =
+        supportInProcessStores
+            ? ExportComponentImpl.createWithInProcessStores(eventQueue)
+            : ExportComponentImpl.createWithoutInProcessStores(eventQueue);
     StartEndHandler startEndHandler =
         new StartEndHandlerImpl(
             exportComponent.getSpanExporter(),
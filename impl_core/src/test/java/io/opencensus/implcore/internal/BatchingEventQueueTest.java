@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link BatchingEventQueue}. */
+@RunWith(JUnit4.class)
+public class BatchingEventQueueTest {
+
+  // The entries enqueued to the other queue, which are batches.
+  private final List<EventQueue.Entry> batches =
+      Collections.synchronizedList(new ArrayList<EventQueue.Entry>());
+  // The values of the processed entries.
+  private final List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+  private boolean delegateShutdown = false;
+
+  private final EventQueue delegate =
+      new EventQueue() {
+        @Override
+        public void enqueue(Entry entry) {
+          batches.add(entry);
+        }
+
+        @Override
+        public void shutdown() {
+          delegateShutdown = true;
+        }
+      };
+
+  private final BatchingEventQueue queue =
+      BatchingEventQueue.create(delegate, 4, 1, TimeUnit.HOURS, "OpenCensus.Batching.Test");
+
+  @After
+  public void tearDown() {
+    queue.shutdown();
+  }
+
+  private final class ValueEntry implements EventQueue.Entry {
+    private final int value;
+
+    ValueEntry(int value) {
+      this.value = value;
+    }
+
+    @Override
+    public void process() {
+      processed.add(value);
+    }
+  }
+
+  private void processBatches() {
+    for (EventQueue.Entry batch : batches) {
+      batch.process();
+    }
+    batches.clear();
+  }
+
+  @Test
+  public void enqueueFullBatches() {
+    for (int i = 0; i < 9; i++) {
+      queue.enqueue(new ValueEntry(i));
+    }
+    assertThat(batches).hasSize(2);
+    processBatches();
+    assertThat(processed).containsExactly(0, 1, 2, 3, 4, 5, 6, 7).inOrder();
+  }
+
+  @Test
+  public void flush() {
+    queue.enqueue(new ValueEntry(0));
+    queue.enqueue(new ValueEntry(1));
+    assertThat(batches).isEmpty();
+    queue.flush();
+    assertThat(batches).hasSize(1);
+    queue.flush();
+    assertThat(batches).hasSize(1);
+    processBatches();
+    assertThat(processed).containsExactly(0, 1).inOrder();
+  }
+
+  @Test
+  public void flushAll_EnqueuesEntriesOfOtherThreads() throws InterruptedException {
+    Thread thread =
+        new Thread() {
+          @Override
+          public void run() {
+            queue.enqueue(new ValueEntry(0));
+          }
+        };
+    thread.start();
+    thread.join();
+    assertThat(batches).isEmpty();
+    queue.flushAll();
+    processBatches();
+    assertThat(processed).containsExactly(0);
+  }
+
+  @Test
+  public void flushAfterMaxDelay() throws InterruptedException {
+    BatchingEventQueue fastQueue =
+        BatchingEventQueue.create(
+            delegate, 4, 10, TimeUnit.MILLISECONDS, "OpenCensus.Batching.Test");
+    try {
+      fastQueue.enqueue(new ValueEntry(0));
+      for (int i = 0; i < 100 && batches.isEmpty(); i++) {
+        Thread.sleep(10);
+      }
+      processBatches();
+      assertThat(processed).containsExactly(0);
+    } finally {
+      fastQueue.shutdown();
+    }
+  }
+
+  @Test
+  public void flushAll_DoesNotBlockEnqueueWhileOtherQueueIsFull() throws InterruptedException {
+    final CountDownLatch enqueueStarted = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    EventQueue fullDelegate =
+        new EventQueue() {
+          @Override
+          public void enqueue(Entry entry) {
+            enqueueStarted.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            batches.add(entry);
+          }
+
+          @Override
+          public void shutdown() {}
+        };
+    final BatchingEventQueue blockingQueue =
+        BatchingEventQueue.create(fullDelegate, 4, 1, TimeUnit.HOURS, "OpenCensus.Batching.Test");
+    blockingQueue.enqueue(new ValueEntry(0));
+    Thread flusher =
+        new Thread() {
+          @Override
+          public void run() {
+            blockingQueue.flushAll();
+          }
+        };
+    flusher.start();
+    try {
+      assertThat(enqueueStarted.await(10, TimeUnit.SECONDS)).isTrue();
+      // The flusher waits for the other queue, but entries can still be buffered.
+      blockingQueue.enqueue(new ValueEntry(1));
+    } finally {
+      release.countDown();
+    }
+    flusher.join();
+    blockingQueue.flush();
+    blockingQueue.shutdown();
+    processBatches();
+    assertThat(processed).containsExactly(0, 1).inOrder();
+  }
+
+  @Test
+  public void shutdown_FlushesAndShutsDownOtherQueue() {
+    queue.enqueue(new ValueEntry(0));
+    queue.shutdown();
+    assertThat(delegateShutdown).isTrue();
+    processBatches();
+    assertThat(processed).containsExactly(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void create_DisallowNonPositiveBatchSize() {
+    BatchingEventQueue.create(delegate, 0, 1, TimeUnit.SECONDS, "OpenCensus.Batching.Test");
+  }
+}
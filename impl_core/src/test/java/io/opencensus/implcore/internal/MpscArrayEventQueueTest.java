@@ -0,0 +1,204 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link MpscArrayEventQueue}. */
+@RunWith(JUnit4.class)
+public class MpscArrayEventQueueTest {
+
+  // The values of the processed entries, in processing order.
+  private final List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+
+  private final class ValueEntry implements EventQueue.Entry {
+    private final int value;
+
+    ValueEntry(int value) {
+      this.value = value;
+    }
+
+    @Override
+    public void process() {
+      processed.add(value);
+    }
+  }
+
+  // Entry that blocks the consumer thread until it is released.
+  private static final class BlockingEntry implements EventQueue.Entry {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @Override
+    public void process() {
+      started.countDown();
+      try {
+        released.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Test
+  public void processEntriesInOrder() {
+    MpscArrayEventQueue queue = MpscArrayEventQueue.create("OpenCensus.Mpsc.Test", 4, false);
+    for (int i = 0; i < 100; i++) {
+      queue.enqueue(new ValueEntry(i));
+    }
+    queue.shutdown();
+    assertThat(processed).hasSize(100);
+    for (int i = 0; i < 100; i++) {
+      assertThat(processed.get(i)).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void processEntriesOfManyProducers() throws InterruptedException {
+    final MpscArrayEventQueue queue = MpscArrayEventQueue.create("OpenCensus.Mpsc.Test", 16, false);
+    List<Thread> producers = new ArrayList<Thread>();
+    for (int i = 0; i < 8; i++) {
+      final int producer = i;
+      Thread thread =
+          new Thread() {
+            @Override
+            public void run() {
+              for (int j = 0; j < 1000; j++) {
+                queue.enqueue(new ValueEntry(producer * 1000 + j));
+              }
+            }
+          };
+      producers.add(thread);
+      thread.start();
+    }
+    for (Thread thread : producers) {
+      thread.join();
+    }
+    queue.shutdown();
+    assertThat(processed).hasSize(8000);
+    // The entries of each producer are processed in order.
+    int[] last = new int[8];
+    for (int i = 0; i < 8; i++) {
+      last[i] = i * 1000 - 1;
+    }
+    for (int value : processed) {
+      assertThat(value).isEqualTo(last[value / 1000] + 1);
+      last[value / 1000] = value;
+    }
+  }
+
+  @Test
+  public void dropWhenFull() throws InterruptedException {
+    MpscArrayEventQueue queue = MpscArrayEventQueue.create("OpenCensus.Mpsc.Test", 4, true);
+    BlockingEntry blocking = new BlockingEntry();
+    queue.enqueue(blocking);
+    assertThat(blocking.started.await(10, TimeUnit.SECONDS)).isTrue();
+    for (int i = 0; i < 10; i++) {
+      queue.enqueue(new ValueEntry(i));
+    }
+    blocking.released.countDown();
+    queue.shutdown();
+    assertThat(processed).containsExactly(0, 1, 2, 3).inOrder();
+  }
+
+  @Test
+  public void waitWhenFull() throws InterruptedException {
+    final MpscArrayEventQueue queue = MpscArrayEventQueue.create("OpenCensus.Mpsc.Test", 4, false);
+    BlockingEntry blocking = new BlockingEntry();
+    queue.enqueue(blocking);
+    assertThat(blocking.started.await(10, TimeUnit.SECONDS)).isTrue();
+    Thread producer =
+        new Thread() {
+          @Override
+          public void run() {
+            for (int i = 0; i < 10; i++) {
+              queue.enqueue(new ValueEntry(i));
+            }
+          }
+        };
+    producer.start();
+    producer.join(100);
+    assertThat(producer.isAlive()).isTrue();
+    blocking.released.countDown();
+    producer.join();
+    queue.shutdown();
+    assertThat(processed).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9).inOrder();
+  }
+
+  @Test
+  public void enqueueAfterShutdown() {
+    MpscArrayEventQueue queue = MpscArrayEventQueue.create("OpenCensus.Mpsc.Test", 4, false);
+    queue.shutdown();
+    queue.enqueue(new ValueEntry(0));
+    assertThat(processed).isEmpty();
+    assertThat(queue.getDiscardedAfterShutdown()).isEqualTo(1);
+  }
+
+  @Test
+  public void enqueueDuringShutdown_NoEntryIsLost() throws InterruptedException {
+    final MpscArrayEventQueue queue = MpscArrayEventQueue.create("OpenCensus.Mpsc.Test", 4, false);
+    List<Thread> producers = new ArrayList<Thread>();
+    for (int i = 0; i < 4; i++) {
+      Thread thread =
+          new Thread() {
+            @Override
+            public void run() {
+              for (int j = 0; j < 10000; j++) {
+                queue.enqueue(new ValueEntry(j));
+              }
+            }
+          };
+      producers.add(thread);
+      thread.start();
+    }
+    queue.shutdown();
+    for (Thread thread : producers) {
+      thread.join();
+    }
+    // Every entry was either processed or discarded and logged.
+    assertThat(processed.size() + queue.getDiscardedAfterShutdown()).isEqualTo(40000);
+  }
+
+  @Test
+  public void processingExceptionDoesNotStopConsumer() {
+    MpscArrayEventQueue queue = MpscArrayEventQueue.create("OpenCensus.Mpsc.Test", 4, false);
+    queue.enqueue(
+        new EventQueue.Entry() {
+          @Override
+          public void process() {
+            throw new IllegalStateException("test");
+          }
+        });
+    queue.enqueue(new ValueEntry(0));
+    queue.shutdown();
+    assertThat(processed).containsExactly(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void create_DisallowCapacityNotPowerOfTwo() {
+    MpscArrayEventQueue.create("OpenCensus.Mpsc.Test", 1000, false);
+  }
+}
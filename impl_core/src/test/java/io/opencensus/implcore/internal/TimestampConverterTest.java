@@ -48,4 +48,29 @@ public class TimestampConverterTest {
     assertThat(timeConverter.convertNanoTime(1000)).isEqualTo(Timestamp.create(1234, 5444));
     assertThat(timeConverter.convertNanoTime(999995556)).isEqualTo(Timestamp.create(1235, 0));
   }
+
+  @Test
+  public void convertNanoTimeToEpochNanos() {
+    when(mockClock.now()).thenReturn(timestamp);
+    when(mockClock.nowNanos()).thenReturn(1234L);
+    TimestampConverter timeConverter = TimestampConverter.now(mockClock);
+    assertThat(timeConverter.convertNanoTimeToEpochNanos(6234)).isEqualTo(1234000010678L);
+    assertThat(timeConverter.convertNanoTimeToEpochNanos(1000)).isEqualTo(1234000005444L);
+  }
+
+  @Test
+  public void getNanoTime() {
+    when(mockClock.now()).thenReturn(timestamp);
+    when(mockClock.nowNanos()).thenReturn(1234L);
+    assertThat(TimestampConverter.now(mockClock).getNanoTime()).isEqualTo(1234L);
+  }
+
+  @Test
+  public void epochNanos() {
+    assertThat(TimestampConverter.toEpochNanos(timestamp)).isEqualTo(1234000005678L);
+    assertThat(TimestampConverter.fromEpochNanos(1234000005678L)).isEqualTo(timestamp);
+    assertThat(TimestampConverter.fromEpochNanos(0)).isEqualTo(Timestamp.create(0, 0));
+    assertThat(TimestampConverter.fromEpochNanos(-1)).isEqualTo(Timestamp.create(-1, 999999999));
+    assertThat(TimestampConverter.toEpochNanos(Timestamp.create(-1, 999999999))).isEqualTo(-1);
+  }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.stats.BucketBoundaries;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link BucketIndex}. */
+@RunWith(JUnit4.class)
+public class BucketIndexTest {
+
+  @Test
+  public void getBucket_NoBoundaries() {
+    BucketIndex index = BucketIndex.create(Collections.<Double>emptyList());
+    assertThat(index.getBucketCount()).isEqualTo(1);
+    assertThat(index.getBucket(-1.0)).isEqualTo(0);
+    assertThat(index.getBucket(1.0)).isEqualTo(0);
+  }
+
+  @Test
+  public void getBucket() {
+    BucketIndex index = BucketIndex.create(Arrays.asList(-10.0, 0.0, 10.0));
+    assertThat(index.getBucketCount()).isEqualTo(4);
+    assertThat(index.getBucket(Double.NEGATIVE_INFINITY)).isEqualTo(0);
+    assertThat(index.getBucket(-10.5)).isEqualTo(0);
+    // The lower boundary of a bucket is inclusive.
+    assertThat(index.getBucket(-10.0)).isEqualTo(1);
+    assertThat(index.getBucket(-0.5)).isEqualTo(1);
+    assertThat(index.getBucket(0.0)).isEqualTo(2);
+    assertThat(index.getBucket(10.0)).isEqualTo(3);
+    assertThat(index.getBucket(Double.POSITIVE_INFINITY)).isEqualTo(3);
+    assertThat(index.getBucket(Double.NaN)).isEqualTo(3);
+  }
+
+  @Test
+  public void getBucket_MatchesLinearScan() {
+    Random random = new Random(1234);
+    for (int size = 1; size <= 33; size++) {
+      List<Double> boundaries = new ArrayList<Double>();
+      for (int i = 0; i < size; i++) {
+        boundaries.add(i * 2.0);
+      }
+      BucketIndex index = BucketIndex.create(boundaries);
+      for (int i = 0; i < 100; i++) {
+        double value = random.nextInt(size * 2 + 2) - 1.0;
+        assertThat(index.getBucket(value)).isEqualTo(linearScan(boundaries, value));
+      }
+    }
+  }
+
+  @Test
+  public void of_SharedPerBucketBoundaries() {
+    BucketBoundaries bucketBoundaries = BucketBoundaries.create(Arrays.asList(1.0, 2.0));
+    assertThat(BucketIndex.of(bucketBoundaries)).isSameAs(BucketIndex.of(bucketBoundaries));
+    assertThat(BucketIndex.of(bucketBoundaries).getBucket(1.5)).isEqualTo(1);
+  }
+
+  private static int linearScan(List<Double> boundaries, double value) {
+    int bucket = 0;
+    while (bucket < boundaries.size() && !(value < boundaries.get(bucket))) {
+      bucket++;
+    }
+    return bucket;
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.common.Timestamp;
+import io.opencensus.implcore.stats.DirectAggregation.DirectCount;
+import io.opencensus.implcore.stats.DirectAggregation.DirectLastValueDouble;
+import io.opencensus.implcore.stats.DirectAggregation.DirectLastValueLong;
+import io.opencensus.implcore.stats.DirectAggregation.DirectSumDouble;
+import io.opencensus.implcore.stats.DirectAggregation.DirectSumLong;
+import io.opencensus.implcore.stats.DirectAggregation.StripedCells;
+import io.opencensus.metrics.export.Point;
+import io.opencensus.metrics.export.Value;
+import io.opencensus.stats.AggregationData.CountData;
+import io.opencensus.stats.AggregationData.LastValueDataDouble;
+import io.opencensus.stats.AggregationData.LastValueDataLong;
+import io.opencensus.stats.AggregationData.SumDataDouble;
+import io.opencensus.stats.AggregationData.SumDataLong;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link io.opencensus.implcore.stats.DirectAggregation}. */
+@RunWith(JUnit4.class)
+public class DirectAggregationTest {
+
+  private static final double TOLERANCE = 1e-6;
+  private static final Timestamp TIMESTAMP = Timestamp.create(60, 0);
+
+  @Test
+  public void testCreateEmpty() {
+    assertThat(DirectSumDouble.create().getSum()).isWithin(TOLERANCE).of(0);
+    assertThat(DirectSumLong.create().getSum()).isEqualTo(0);
+    assertThat(DirectCount.create().getCount()).isEqualTo(0);
+    assertThat(DirectLastValueDouble.create().getLastValue()).isNaN();
+    assertThat(DirectLastValueLong.create().getLastValue()).isEqualTo(0);
+  }
+
+  @Test
+  public void testAdd() {
+    DirectSumDouble sum = DirectSumDouble.create();
+    DirectCount count = DirectCount.create();
+    DirectLastValueDouble lastValue = DirectLastValueDouble.create();
+    for (double value : new double[] {-1.0, 2.5, 10.0}) {
+      sum.add(value);
+      count.add(value);
+      lastValue.add(value);
+    }
+    assertThat(sum.getSum()).isWithin(TOLERANCE).of(11.5);
+    assertThat(count.getCount()).isEqualTo(3);
+    assertThat(lastValue.getLastValue()).isWithin(TOLERANCE).of(10.0);
+  }
+
+  @Test
+  public void testAddLong_ExactBeyondDoublePrecision() {
+    // 2^53 + 1 is the smallest positive long that a double cannot represent.
+    long value = (1L << 53) + 1;
+    DirectSumLong sum = DirectSumLong.create();
+    DirectLastValueLong lastValue = DirectLastValueLong.create();
+    sum.addLong(value);
+    sum.addLong(2);
+    lastValue.addLong(value);
+    assertThat(sum.getSum()).isEqualTo(value + 2);
+    assertThat(sum.toAggregationData()).isEqualTo(SumDataLong.create(value + 2));
+    assertThat(lastValue.getLastValue()).isEqualTo(value);
+    assertThat(lastValue.toAggregationData()).isEqualTo(LastValueDataLong.create(value));
+  }
+
+  @Test
+  public void testToAggregationData() {
+    DirectSumDouble sumDouble = DirectSumDouble.create();
+    DirectSumLong sumLong = DirectSumLong.create();
+    DirectCount count = DirectCount.create();
+    DirectLastValueDouble lastValueDouble = DirectLastValueDouble.create();
+    DirectLastValueLong lastValueLong = DirectLastValueLong.create();
+    for (DirectAggregation aggregation :
+        new DirectAggregation[] {sumDouble, sumLong, count, lastValueDouble, lastValueLong}) {
+      aggregation.add(2.0);
+      aggregation.add(3.0);
+    }
+    assertThat(sumDouble.toAggregationData()).isEqualTo(SumDataDouble.create(5.0));
+    assertThat(sumLong.toAggregationData()).isEqualTo(SumDataLong.create(5));
+    assertThat(count.toAggregationData()).isEqualTo(CountData.create(2));
+    assertThat(lastValueDouble.toAggregationData()).isEqualTo(LastValueDataDouble.create(3.0));
+    assertThat(lastValueLong.toAggregationData()).isEqualTo(LastValueDataLong.create(3));
+  }
+
+  @Test
+  public void testToPoint() {
+    DirectSumDouble sumDouble = DirectSumDouble.create();
+    sumDouble.add(1.5);
+    assertThat(sumDouble.toPoint(TIMESTAMP))
+        .isEqualTo(Point.create(Value.doubleValue(1.5), TIMESTAMP));
+
+    DirectSumLong sumLong = DirectSumLong.create();
+    sumLong.add(7);
+    assertThat(sumLong.toPoint(TIMESTAMP)).isEqualTo(Point.create(Value.longValue(7), TIMESTAMP));
+
+    DirectCount count = DirectCount.create();
+    count.add(1.5);
+    assertThat(count.toPoint(TIMESTAMP)).isEqualTo(Point.create(Value.longValue(1), TIMESTAMP));
+
+    DirectLastValueDouble lastValueDouble = DirectLastValueDouble.create();
+    lastValueDouble.add(4.5);
+    assertThat(lastValueDouble.toPoint(TIMESTAMP))
+        .isEqualTo(Point.create(Value.doubleValue(4.5), TIMESTAMP));
+
+    DirectLastValueLong lastValueLong = DirectLastValueLong.create();
+    lastValueLong.add(4);
+    assertThat(lastValueLong.toPoint(TIMESTAMP))
+        .isEqualTo(Point.create(Value.longValue(4), TIMESTAMP));
+  }
+
+  @Test
+  public void testClear() {
+    DirectSumDouble sum = DirectSumDouble.create();
+    DirectCount count = DirectCount.create();
+    DirectLastValueDouble lastValue = DirectLastValueDouble.create();
+    sum.add(1.0);
+    count.add(1.0);
+    lastValue.add(1.0);
+    sum.clear();
+    count.clear();
+    lastValue.clear();
+    assertThat(sum.getSum()).isWithin(TOLERANCE).of(0);
+    assertThat(count.getCount()).isEqualTo(0);
+    assertThat(lastValue.getLastValue()).isNaN();
+  }
+
+  @Test
+  public void stripedCells_ConcurrentAdds() throws InterruptedException {
+    final StripedCells longCells = new StripedCells();
+    final StripedCells doubleCells = new StripedCells();
+    final int numThreads = 8;
+    final int numAdds = 10000;
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < numThreads; i++) {
+      Thread thread =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  try {
+                    start.await();
+                  } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                  }
+                  for (int j = 0; j < numAdds; j++) {
+                    longCells.addLong(1L);
+                    doubleCells.addDouble(0.5);
+                  }
+                }
+              });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertThat(longCells.sumLong()).isEqualTo((long) numThreads * numAdds);
+    assertThat(doubleCells.sumDouble()).isWithin(TOLERANCE).of(0.5 * numThreads * numAdds);
+  }
+}
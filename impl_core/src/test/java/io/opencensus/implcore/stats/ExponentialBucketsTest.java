@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.stats.Aggregation.ExponentialDistribution;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ExponentialBuckets}. */
+@RunWith(JUnit4.class)
+public class ExponentialBucketsTest {
+
+  private static final double TOLERANCE = 1e-12;
+
+  @Test
+  public void getIndex_PowersOfTwoAreExact() {
+    for (int scale = ExponentialDistribution.MIN_SCALE;
+        scale <= ExponentialDistribution.MAX_SCALE;
+        scale++) {
+      for (int exponent = -20; exponent <= 20; exponent++) {
+        int index = ExponentialBuckets.getIndex(Math.scalb(1.0, exponent), scale);
+        assertThat(ExponentialBuckets.getLowerBound(index, scale))
+            .isAtMost(Math.scalb(1.0, exponent));
+        if (scale >= 0) {
+          assertThat(index).isEqualTo(exponent << scale);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void getIndex_PositiveScale() {
+    // Base is sqrt(2).
+    assertThat(ExponentialBuckets.getIndex(1.0, 1)).isEqualTo(0);
+    assertThat(ExponentialBuckets.getIndex(1.4, 1)).isEqualTo(0);
+    assertThat(ExponentialBuckets.getIndex(1.5, 1)).isEqualTo(1);
+    assertThat(ExponentialBuckets.getIndex(2.0, 1)).isEqualTo(2);
+    assertThat(ExponentialBuckets.getIndex(3.0, 1)).isEqualTo(3);
+    assertThat(ExponentialBuckets.getIndex(0.75, 1)).isEqualTo(-1);
+  }
+
+  @Test
+  public void getIndex_NonPositiveScale() {
+    assertThat(ExponentialBuckets.getIndex(1.0, 0)).isEqualTo(0);
+    assertThat(ExponentialBuckets.getIndex(3.0, 0)).isEqualTo(1);
+    assertThat(ExponentialBuckets.getIndex(0.5, 0)).isEqualTo(-1);
+    // Base is 4.
+    assertThat(ExponentialBuckets.getIndex(0.25, -1)).isEqualTo(-1);
+    assertThat(ExponentialBuckets.getIndex(3.0, -1)).isEqualTo(0);
+    assertThat(ExponentialBuckets.getIndex(8.0, -1)).isEqualTo(1);
+  }
+
+  @Test
+  public void getIndex_ExtremeValues() {
+    assertThat(ExponentialBuckets.getIndex(Double.MIN_VALUE, 0)).isEqualTo(-1074);
+    assertThat(ExponentialBuckets.getIndex(3 * Double.MIN_VALUE, 1)).isEqualTo(-2145);
+    assertThat(ExponentialBuckets.getIndex(Double.MIN_NORMAL, 0)).isEqualTo(-1022);
+    assertThat(ExponentialBuckets.getIndex(Double.MAX_VALUE, 0)).isEqualTo(1023);
+    assertThat(ExponentialBuckets.getIndex(Double.POSITIVE_INFINITY, 0)).isEqualTo(1023);
+    // All doubles fit in three buckets at the lowest scale.
+    assertThat(ExponentialBuckets.getIndex(Double.MIN_VALUE, ExponentialDistribution.MIN_SCALE))
+        .isEqualTo(-2);
+    assertThat(ExponentialBuckets.getIndex(Double.MAX_VALUE, ExponentialDistribution.MIN_SCALE))
+        .isEqualTo(0);
+  }
+
+  @Test
+  public void getLowerBound() {
+    assertThat(ExponentialBuckets.getLowerBound(0, 5)).isEqualTo(1.0);
+    assertThat(ExponentialBuckets.getLowerBound(3, 0)).isEqualTo(8.0);
+    assertThat(ExponentialBuckets.getLowerBound(-1, -1)).isEqualTo(0.25);
+    assertThat(ExponentialBuckets.getLowerBound(1, 1)).isWithin(TOLERANCE).of(Math.sqrt(2));
+    assertThat(ExponentialBuckets.getLowerBound(3, 2))
+        .isWithin(TOLERANCE)
+        .of(Math.pow(2, 0.75));
+    // Bounds below the smallest double are clamped.
+    assertThat(ExponentialBuckets.getLowerBound(-2, ExponentialDistribution.MIN_SCALE))
+        .isEqualTo(Double.MIN_VALUE);
+  }
+
+  @Test
+  public void valuesAreWithinTheBoundsOfTheirBucket() {
+    Random random = new Random(1234);
+    for (int scale = ExponentialDistribution.MIN_SCALE;
+        scale <= ExponentialDistribution.MAX_SCALE;
+        scale++) {
+      for (int i = 0; i < 1000; i++) {
+        double value = Math.exp((random.nextDouble() - 0.5) * 1400);
+        int index = ExponentialBuckets.getIndex(value, scale);
+        assertThat(value)
+            .isAtLeast(ExponentialBuckets.getLowerBound(index, scale) * (1 - TOLERANCE));
+        assertThat(value)
+            .isLessThan(ExponentialBuckets.getLowerBound(index + 1, scale) * (1 + TOLERANCE));
+      }
+    }
+  }
+}
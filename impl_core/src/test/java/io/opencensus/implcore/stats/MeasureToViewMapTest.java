@@ -18,18 +18,43 @@ package io.opencensus.implcore.stats;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import com.google.common.collect.ImmutableMap;
+import io.opencensus.common.Duration;
 import io.opencensus.common.Timestamp;
 import io.opencensus.implcore.internal.CurrentState.State;
+import io.opencensus.implcore.internal.TimestampConverter;
+import io.opencensus.implcore.tags.TagContextImpl;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.export.ChangedMetrics;
+import io.opencensus.metrics.export.Metric;
+import io.opencensus.metrics.export.MetricDescriptor;
+import io.opencensus.metrics.export.Point;
+import io.opencensus.metrics.export.TimeSeries;
+import io.opencensus.metrics.export.Value;
+import io.opencensus.stats.Aggregation.LastValue;
 import io.opencensus.stats.Aggregation.Mean;
+import io.opencensus.stats.Aggregation.Sum;
 import io.opencensus.stats.Measure;
+import io.opencensus.stats.AggregationData;
+import io.opencensus.stats.AggregationData.LastValueDataDouble;
+import io.opencensus.stats.AggregationData.SumDataDouble;
+import io.opencensus.stats.Measure.MeasureDouble;
 import io.opencensus.stats.View;
 import io.opencensus.stats.View.AggregationWindow.Cumulative;
+import io.opencensus.stats.View.AggregationWindow.Interval;
 import io.opencensus.stats.View.Name;
 import io.opencensus.stats.ViewData;
 import io.opencensus.stats.ViewData.AggregationWindowData.CumulativeData;
 import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagValue;
 import io.opencensus.testing.common.TestClock;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -43,6 +68,10 @@ public class MeasureToViewMapTest {
 
   private static final Name VIEW_NAME = View.Name.create("my view");
 
+  private static final TagKey KEY = TagKey.create("my key");
+
+  private static final double EPSILON = 1e-7;
+
   private static final Cumulative CUMULATIVE = Cumulative.create();
 
   private static final View VIEW =
@@ -66,4 +95,578 @@ public class MeasureToViewMapTest {
         .isEqualTo(CumulativeData.create(Timestamp.create(10, 20), Timestamp.create(30, 40)));
     assertThat(viewData.getAggregationMap()).isEmpty();
   }
+
+  @Test
+  public void testRecordToOwningShardOnly() {
+    MeasureToViewMap measureToViewMap = new MeasureToViewMap(4);
+    TestClock clock = TestClock.create(Timestamp.create(10, 20));
+    MeasureDouble measure1 = MeasureDouble.create("measure 1", "description", "By");
+    // Find a second measure that lives in a different shard.
+    MeasureDouble measure2 = measure1;
+    int i = 2;
+    while (measureToViewMap.getShardIndex(measure2.getName())
+        == measureToViewMap.getShardIndex(measure1.getName())) {
+      measure2 = MeasureDouble.create("measure " + i++, "description", "By");
+    }
+    View view1 = createSumView("view 1", measure1);
+    View view2 = createSumView("view 2", measure2);
+    measureToViewMap.registerView(view1, clock);
+    measureToViewMap.registerView(view2, clock);
+    MeasureMapInternal stats =
+        MeasureMapInternal.builder().put(measure1, 1.0).put(measure2, 2.0).build();
+    measureToViewMap.record(
+        measureToViewMap.getShardIndex(measure1.getName()),
+        TagContextImpl.EMPTY,
+        stats,
+        TimestampConverter.toEpochNanos(clock.now()));
+    assertThat(
+            measureToViewMap
+                .getView(view1.getName(), clock, State.ENABLED)
+                .getAggregationMap()
+                .keySet())
+        .containsExactly(Collections.<TagValue>emptyList());
+    assertThat(
+            measureToViewMap.getView(view2.getName(), clock, State.ENABLED).getAggregationMap())
+        .isEmpty();
+  }
+
+  @Test
+  public void testRecordsAreCombinedAcrossReads() {
+    MeasureToViewMap measureToViewMap = new MeasureToViewMap();
+    TestClock clock = TestClock.create(Timestamp.create(10, 0));
+    MeasureDouble measure = MeasureDouble.create("measure", "description", "By");
+    View sumView = createSumView("sum", measure, KEY);
+    View lastValueView =
+        View.create(
+            View.Name.create("last value"),
+            "description",
+            measure,
+            LastValue.create(),
+            Arrays.asList(KEY),
+            CUMULATIVE);
+    measureToViewMap.registerView(sumView, clock);
+    measureToViewMap.registerView(lastValueView, clock);
+    record(measureToViewMap, clock, measure, "a", 1.0, false);
+    record(measureToViewMap, clock, measure, "a", 2.0, false);
+    assertThat(getAggregationMap(measureToViewMap, sumView, clock))
+        .containsExactly(Arrays.asList(TagValue.create("a")), SumDataDouble.create(3.0));
+    record(measureToViewMap, clock, measure, "a", 4.0, false);
+    record(measureToViewMap, clock, measure, "b", 5.0, false);
+    for (int i = 0; i < 2; i++) {
+      // Reading again without records changes nothing.
+      assertThat(getAggregationMap(measureToViewMap, sumView, clock))
+          .containsExactly(
+              Arrays.asList(TagValue.create("a")),
+              SumDataDouble.create(7.0),
+              Arrays.asList(TagValue.create("b")),
+              SumDataDouble.create(5.0));
+      assertThat(getAggregationMap(measureToViewMap, lastValueView, clock))
+          .containsExactly(
+              Arrays.asList(TagValue.create("a")),
+              LastValueDataDouble.create(4.0),
+              Arrays.asList(TagValue.create("b")),
+              LastValueDataDouble.create(5.0));
+    }
+    measureToViewMap.clearStats();
+    record(measureToViewMap, clock, measure, "b", 6.0, false);
+    assertThat(getAggregationMap(measureToViewMap, sumView, clock))
+        .containsExactly(Arrays.asList(TagValue.create("b")), SumDataDouble.create(6.0));
+  }
+
+  @Test
+  public void testMaxSeriesPerView() {
+    MeasureToViewMap measureToViewMap =
+        new MeasureToViewMap(1, StatsConfiguration.builder().setMaxSeriesPerView(2).build());
+    testMaxSeriesPerView(measureToViewMap, false);
+  }
+
+  @Test
+  public void testMaxSeriesPerView_Direct() {
+    MeasureToViewMap measureToViewMap =
+        new MeasureToViewMap(
+            1,
+            StatsConfiguration.builder()
+                .setDirectRecordingEnabled(true)
+                .setMaxSeriesPerView(2)
+                .build());
+    testMaxSeriesPerView(measureToViewMap, true);
+  }
+
+  private static void testMaxSeriesPerView(MeasureToViewMap measureToViewMap, boolean direct) {
+    TestClock clock = TestClock.create(Timestamp.create(10, 20));
+    MeasureDouble measure = MeasureDouble.create("measure", "description", "By");
+    View view = createSumView("view", measure, KEY);
+    measureToViewMap.registerView(view, clock);
+    record(measureToViewMap, clock, measure, "a", 1.0, direct);
+    record(measureToViewMap, clock, measure, "b", 2.0, direct);
+    record(measureToViewMap, clock, measure, "c", 3.0, direct);
+    record(measureToViewMap, clock, measure, "a", 4.0, direct);
+    record(measureToViewMap, clock, measure, "d", 5.0, direct);
+    clock.setTime(Timestamp.create(30, 40));
+    StatsTestUtil.assertAggregationMapEquals(
+        measureToViewMap.getView(view.getName(), clock, State.ENABLED).getAggregationMap(),
+        ImmutableMap.of(
+            Arrays.asList(TagValue.create("a")),
+            SumDataDouble.create(5.0),
+            Arrays.asList(TagValue.create("b")),
+            SumDataDouble.create(2.0),
+            Arrays.asList(MutableViewData.OVERFLOW_TAG_VALUE),
+            SumDataDouble.create(8.0)),
+        EPSILON);
+    assertThat(
+            getMetric(
+                measureToViewMap.getMetrics(clock, State.ENABLED),
+                MeasureToViewMap.OVERFLOW_RECORDS_METRIC_DESCRIPTOR))
+        .isEqualTo(
+            Metric.create(
+                MeasureToViewMap.OVERFLOW_RECORDS_METRIC_DESCRIPTOR,
+                Collections.singletonList(
+                    TimeSeries.createWithOnePoint(
+                        Collections.singletonList(LabelValue.create("view")),
+                        Point.create(Value.longValue(2), Timestamp.create(30, 40)),
+                        Timestamp.create(10, 20)))));
+
+    // Clearing stats starts the overflow count over.
+    measureToViewMap.clearStats();
+    assertThat(getMetricDescriptors(measureToViewMap.getMetrics(clock, State.ENABLED)))
+        .doesNotContain(MeasureToViewMap.OVERFLOW_RECORDS_METRIC_DESCRIPTOR);
+    record(measureToViewMap, clock, measure, "e", 6.0, direct);
+    record(measureToViewMap, clock, measure, "f", 7.0, direct);
+    record(measureToViewMap, clock, measure, "g", 8.0, direct);
+    Metric overflowRecords =
+        getMetric(
+            measureToViewMap.getMetrics(clock, State.ENABLED),
+            MeasureToViewMap.OVERFLOW_RECORDS_METRIC_DESCRIPTOR);
+    assertThat(overflowRecords.getTimeSeriesList().get(0).getPoints().get(0).getValue())
+        .isEqualTo(Value.longValue(1));
+  }
+
+  @Test
+  public void testEvictIdleSeries() {
+    MeasureToViewMap measureToViewMap =
+        new MeasureToViewMap(
+            1, StatsConfiguration.builder().setSeriesTtl(Duration.create(10, 0)).build());
+    testEvictIdleSeries(measureToViewMap, false);
+  }
+
+  @Test
+  public void testEvictIdleSeries_Direct() {
+    MeasureToViewMap measureToViewMap =
+        new MeasureToViewMap(
+            1,
+            StatsConfiguration.builder()
+                .setDirectRecordingEnabled(true)
+                .setSeriesTtl(Duration.create(10, 0))
+                .build());
+    testEvictIdleSeries(measureToViewMap, true);
+  }
+
+  private static void testEvictIdleSeries(MeasureToViewMap measureToViewMap, boolean direct) {
+    TestClock clock = TestClock.create(Timestamp.create(10, 0));
+    MeasureDouble measure = MeasureDouble.create("measure", "description", "By");
+    View view = createSumView("view", measure, KEY);
+    measureToViewMap.registerView(view, clock);
+    record(measureToViewMap, clock, measure, "a", 1.0, direct);
+    record(measureToViewMap, clock, measure, "b", 2.0, direct);
+    clock.setTime(Timestamp.create(15, 0));
+    assertThat(getAggregationMap(measureToViewMap, view, clock)).hasSize(2);
+    record(measureToViewMap, clock, measure, "b", 3.0, direct);
+    clock.setTime(Timestamp.create(24, 0));
+    assertThat(getAggregationMap(measureToViewMap, view, clock)).hasSize(2);
+    // "a" was last seen recorded at 15 seconds, "b" at 24 seconds.
+    clock.setTime(Timestamp.create(25, 0));
+    assertThat(getAggregationMap(measureToViewMap, view, clock).keySet())
+        .containsExactly(Arrays.asList(TagValue.create("b")));
+
+    // An evicted series starts over.
+    record(measureToViewMap, clock, measure, "a", 4.0, direct);
+    clock.setTime(Timestamp.create(30, 0));
+    List<Metric> metrics = measureToViewMap.getMetrics(clock, State.ENABLED);
+    Metric viewMetric = getMetric(metrics, view);
+    assertThat(viewMetric.getTimeSeriesList())
+        .containsExactly(
+            TimeSeries.createWithOnePoint(
+                Collections.singletonList(LabelValue.create("a")),
+                Point.create(Value.doubleValue(4.0), Timestamp.create(30, 0)),
+                Timestamp.create(25, 0)),
+            TimeSeries.createWithOnePoint(
+                Collections.singletonList(LabelValue.create("b")),
+                Point.create(Value.doubleValue(5.0), Timestamp.create(30, 0)),
+                Timestamp.create(10, 0)));
+    assertThat(
+            getMetric(metrics, MeasureToViewMap.EVICTED_SERIES_METRIC_DESCRIPTOR)
+                .getTimeSeriesList())
+        .containsExactly(
+            TimeSeries.createWithOnePoint(
+                Collections.singletonList(LabelValue.create("view")),
+                Point.create(Value.longValue(1), Timestamp.create(30, 0)),
+                Timestamp.create(10, 0)));
+
+    // Clearing stats starts the eviction count over.
+    measureToViewMap.clearStats();
+    assertThat(getMetricDescriptors(measureToViewMap.getMetrics(clock, State.ENABLED)))
+        .doesNotContain(MeasureToViewMap.EVICTED_SERIES_METRIC_DESCRIPTOR);
+  }
+
+  @Test
+  public void testIntervalBuckets() {
+    MeasureToViewMap measureToViewMap =
+        new MeasureToViewMap(1, StatsConfiguration.builder().setIntervalBuckets(2).build());
+    TestClock clock = TestClock.create(Timestamp.create(10, 0));
+    MeasureDouble measure = MeasureDouble.create("measure", "description", "By");
+    // Two buckets of 5 seconds each, aligned to 10 seconds.
+    View view =
+        View.create(
+            View.Name.create("view"),
+            "description",
+            measure,
+            Sum.create(),
+            Arrays.asList(KEY),
+            Interval.create(Duration.create(10, 0)));
+    measureToViewMap.registerView(view, clock);
+    record(measureToViewMap, clock, measure, "a", 1.0, false);
+    clock.setTime(Timestamp.create(16, 0));
+    record(measureToViewMap, clock, measure, "a", 2.0, false);
+    record(measureToViewMap, clock, measure, "b", 4.0, false);
+
+    // 22s, 40% of the bucket [10, 15) has expired.
+    clock.setTime(Timestamp.create(22, 0));
+    StatsTestUtil.assertAggregationMapEquals(
+        getAggregationMap(measureToViewMap, view, clock),
+        ImmutableMap.of(
+            Arrays.asList(TagValue.create("a")),
+            SumDataDouble.create(0.6 * 1.0 + 2.0),
+            Arrays.asList(TagValue.create("b")),
+            SumDataDouble.create(4.0)),
+        EPSILON);
+
+    // 26s, the bucket [25, 30) reuses the slot of the bucket [10, 15), and 20% of the bucket
+    // [15, 20) has expired.
+    clock.setTime(Timestamp.create(26, 0));
+    record(measureToViewMap, clock, measure, "a", 8.0, false);
+    StatsTestUtil.assertAggregationMapEquals(
+        getAggregationMap(measureToViewMap, view, clock),
+        ImmutableMap.of(
+            Arrays.asList(TagValue.create("a")),
+            SumDataDouble.create(0.8 * 2.0 + 8.0),
+            Arrays.asList(TagValue.create("b")),
+            SumDataDouble.create(0.8 * 4.0)),
+        EPSILON);
+
+    // 40s, all the values have expired.
+    clock.setTime(Timestamp.create(40, 0));
+    assertThat(getAggregationMap(measureToViewMap, view, clock)).isEmpty();
+  }
+
+  @Test
+  public void testOverflowAndEvictionMetricsAreOmittedWhenZero() {
+    MeasureToViewMap measureToViewMap = new MeasureToViewMap();
+    TestClock clock = TestClock.create(Timestamp.create(10, 20));
+    measureToViewMap.registerView(VIEW, clock);
+    List<Metric> metrics = measureToViewMap.getMetrics(clock, State.ENABLED);
+    assertThat(metrics).hasSize(1);
+    assertThat(metrics.get(0).getMetricDescriptor())
+        .isEqualTo(MetricUtils.viewToMetricDescriptor(VIEW));
+  }
+
+  @Test
+  public void testUnchangedSeriesAreCached() {
+    MeasureToViewMap measureToViewMap = new MeasureToViewMap();
+    TestClock clock = TestClock.create(Timestamp.create(10, 0));
+    MeasureDouble measure = MeasureDouble.create("measure", "description", "By");
+    View view = createSumView("view", measure, KEY);
+    measureToViewMap.registerView(view, clock);
+    record(measureToViewMap, clock, measure, "a", 1.0, false);
+    record(measureToViewMap, clock, measure, "b", 2.0, false);
+    clock.setTime(Timestamp.create(20, 0));
+    Metric metric1 = getMetric(measureToViewMap.getMetrics(clock, State.ENABLED), view);
+    record(measureToViewMap, clock, measure, "b", 3.0, false);
+    clock.setTime(Timestamp.create(30, 0));
+    Metric metric2 = getMetric(measureToViewMap.getMetrics(clock, State.ENABLED), view);
+    assertThat(metric2.getTimeSeriesList()).hasSize(2);
+    TimeSeries a1 = getTimeSeries(metric1, "a");
+    TimeSeries b1 = getTimeSeries(metric1, "b");
+    TimeSeries a2 = getTimeSeries(metric2, "a");
+    TimeSeries b2 = getTimeSeries(metric2, "b");
+    // The value of the unchanged series is reused, at the time of the new export.
+    assertThat(a2.getPoints().get(0).getValue()).isSameAs(a1.getPoints().get(0).getValue());
+    assertThat(a2)
+        .isEqualTo(
+            TimeSeries.createWithOnePoint(
+                Collections.singletonList(LabelValue.create("a")),
+                Point.create(Value.doubleValue(1.0), Timestamp.create(30, 0)),
+                Timestamp.create(10, 0)));
+    assertThat(b2).isNotSameAs(b1);
+    assertThat(b2)
+        .isEqualTo(
+            TimeSeries.createWithOnePoint(
+                Collections.singletonList(LabelValue.create("b")),
+                Point.create(Value.doubleValue(5.0), Timestamp.create(30, 0)),
+                Timestamp.create(10, 0)));
+  }
+
+  @Test
+  public void testGetMetricsChangedSince() {
+    MeasureToViewMap measureToViewMap = new MeasureToViewMap();
+    TestClock clock = TestClock.create(Timestamp.create(10, 0));
+    MeasureDouble measure = MeasureDouble.create("measure", "description", "By");
+    View view1 = createSumView("view 1", measure, KEY);
+    View view2 = createSumView("view 2", measure);
+    measureToViewMap.registerView(view1, clock);
+    measureToViewMap.registerView(view2, clock);
+    record(measureToViewMap, clock, measure, "a", 1.0, false);
+    record(measureToViewMap, clock, measure, "b", 2.0, false);
+    ChangedMetrics changed1 = measureToViewMap.getMetricsChangedSince(0, clock, State.ENABLED);
+    assertThat(changed1.isComplete()).isTrue();
+    assertThat(changed1.getMetrics()).hasSize(2);
+    assertThat(getMetric(changed1.getMetrics(), view1).getTimeSeriesList()).hasSize(2);
+
+    // Nothing changed.
+    ChangedMetrics changed2 =
+        measureToViewMap.getMetricsChangedSince(changed1.getCursor(), clock, State.ENABLED);
+    assertThat(changed2.getCursor()).isGreaterThan(changed1.getCursor());
+    assertThat(changed2.isComplete()).isFalse();
+    assertThat(changed2.getMetrics()).isEmpty();
+    assertThat(changed2.getRemovedMetrics()).isEmpty();
+
+    record(measureToViewMap, clock, measure, "b", 3.0, false);
+    record(measureToViewMap, clock, measure, "c", 4.0, false);
+    // A full export in between does not hide the changes from the cursor.
+    measureToViewMap.getMetrics(clock, State.ENABLED);
+    ChangedMetrics changed3 =
+        measureToViewMap.getMetricsChangedSince(changed2.getCursor(), clock, State.ENABLED);
+    assertThat(changed3.getMetrics()).hasSize(2);
+    Metric metric1 = getMetric(changed3.getMetrics(), view1);
+    assertThat(metric1.getTimeSeriesList()).hasSize(2);
+    assertThat(getTimeSeries(metric1, "b").getPoints().get(0).getValue())
+        .isEqualTo(Value.doubleValue(5.0));
+    assertThat(getTimeSeries(metric1, "c").getPoints().get(0).getValue())
+        .isEqualTo(Value.doubleValue(4.0));
+    assertThat(getMetric(changed3.getMetrics(), view2).getTimeSeriesList()).hasSize(1);
+  }
+
+  @Test
+  public void testGetMetricsChangedSince_EvictedSeries() {
+    testGetMetricsChangedSince_EvictedSeries(
+        new MeasureToViewMap(
+            1, StatsConfiguration.builder().setSeriesTtl(Duration.create(10, 0)).build()),
+        false);
+  }
+
+  @Test
+  public void testGetMetricsChangedSince_EvictedSeries_Direct() {
+    testGetMetricsChangedSince_EvictedSeries(
+        new MeasureToViewMap(
+            1,
+            StatsConfiguration.builder()
+                .setDirectRecordingEnabled(true)
+                .setSeriesTtl(Duration.create(10, 0))
+                .build()),
+        true);
+  }
+
+  private static void testGetMetricsChangedSince_EvictedSeries(
+      MeasureToViewMap measureToViewMap, boolean direct) {
+    TestClock clock = TestClock.create(Timestamp.create(10, 0));
+    MeasureDouble measure = MeasureDouble.create("measure", "description", "By");
+    View view = createSumView("view", measure, KEY);
+    measureToViewMap.registerView(view, clock);
+    record(measureToViewMap, clock, measure, "a", 1.0, direct);
+    record(measureToViewMap, clock, measure, "b", 2.0, direct);
+    clock.setTime(Timestamp.create(15, 0));
+    ChangedMetrics changed1 = measureToViewMap.getMetricsChangedSince(0, clock, State.ENABLED);
+    record(measureToViewMap, clock, measure, "b", 3.0, direct);
+    clock.setTime(Timestamp.create(25, 0));
+    // "a" is evicted by a read of the view, and reported by the next export.
+    assertThat(getAggregationMap(measureToViewMap, view, clock)).hasSize(1);
+    ChangedMetrics changed2 =
+        measureToViewMap.getMetricsChangedSince(changed1.getCursor(), clock, State.ENABLED);
+    assertThat(changed2.isComplete()).isFalse();
+    assertThat(getMetric(changed2.getMetrics(), view).getTimeSeriesList())
+        .containsExactly(
+            TimeSeries.createWithOnePoint(
+                Collections.singletonList(LabelValue.create("b")),
+                Point.create(Value.doubleValue(5.0), Timestamp.create(25, 0)),
+                Timestamp.create(10, 0)));
+    assertThat(getMetric(changed2.getRemovedMetrics(), view).getTimeSeriesList())
+        .containsExactly(
+            TimeSeries.createWithOnePoint(
+                Collections.singletonList(LabelValue.create("a")),
+                Point.create(Value.doubleValue(1.0), Timestamp.create(15, 0)),
+                Timestamp.create(10, 0)));
+
+    // Removals are reported to every cursor older than them, but only once to each.
+    clock.setTime(Timestamp.create(40, 0));
+    ChangedMetrics changed3 =
+        measureToViewMap.getMetricsChangedSince(changed2.getCursor(), clock, State.ENABLED);
+    assertThat(getMetric(changed3.getRemovedMetrics(), view).getTimeSeriesList()).hasSize(1);
+    assertThat(getMetric(changed3.getRemovedMetrics(), view).getTimeSeriesList().get(0))
+        .isEqualTo(getTimeSeries(getMetric(changed2.getMetrics(), view), "b"));
+    assertThat(
+            getMetric(
+                    measureToViewMap
+                        .getMetricsChangedSince(changed1.getCursor(), clock, State.ENABLED)
+                        .getRemovedMetrics(),
+                    view)
+                .getTimeSeriesList())
+        .hasSize(2);
+    assertThat(
+            measureToViewMap
+                .getMetricsChangedSince(changed3.getCursor(), clock, State.ENABLED)
+                .getRemovedMetrics())
+        .isEmpty();
+  }
+
+  @Test
+  public void testGetMetricsChangedSince_TooManyEvictedSeries() {
+    MeasureToViewMap measureToViewMap =
+        new MeasureToViewMap(
+            1, StatsConfiguration.builder().setSeriesTtl(Duration.create(10, 0)).build());
+    TestClock clock = TestClock.create(Timestamp.create(10, 0));
+    MeasureDouble measure = MeasureDouble.create("measure", "description", "By");
+    View view = createSumView("view", measure, KEY);
+    measureToViewMap.registerView(view, clock);
+    ChangedMetrics changed1 = measureToViewMap.getMetricsChangedSince(0, clock, State.ENABLED);
+    for (int i = 0; i <= MutableViewData.MAX_REMOVED_SERIES; i++) {
+      record(measureToViewMap, clock, measure, "a" + i, 1.0, false);
+    }
+    ChangedMetrics changed2 =
+        measureToViewMap.getMetricsChangedSince(changed1.getCursor(), clock, State.ENABLED);
+    clock.setTime(Timestamp.create(20, 0));
+    measureToViewMap.getMetricsChangedSince(changed2.getCursor(), clock, State.ENABLED);
+    clock.setTime(Timestamp.create(30, 0));
+    record(measureToViewMap, clock, measure, "b", 1.0, false);
+    // The oldest removal was forgotten, so all the series are returned.
+    ChangedMetrics changed3 =
+        measureToViewMap.getMetricsChangedSince(changed2.getCursor(), clock, State.ENABLED);
+    assertThat(changed3.isComplete()).isTrue();
+    assertThat(changed3.getRemovedMetrics()).isEmpty();
+    assertThat(getMetric(changed3.getMetrics(), view).getTimeSeriesList()).hasSize(1);
+  }
+
+  @Test
+  public void testGetMetricsChangedSince_ClearStats() {
+    MeasureToViewMap measureToViewMap = new MeasureToViewMap();
+    TestClock clock = TestClock.create(Timestamp.create(10, 0));
+    MeasureDouble measure = MeasureDouble.create("measure", "description", "By");
+    View view = createSumView("view", measure, KEY);
+    measureToViewMap.registerView(view, clock);
+    record(measureToViewMap, clock, measure, "a", 1.0, false);
+    ChangedMetrics changed1 = measureToViewMap.getMetricsChangedSince(0, clock, State.ENABLED);
+    measureToViewMap.clearStats();
+    record(measureToViewMap, clock, measure, "b", 2.0, false);
+    ChangedMetrics changed2 =
+        measureToViewMap.getMetricsChangedSince(changed1.getCursor(), clock, State.ENABLED);
+    assertThat(changed2.isComplete()).isTrue();
+    assertThat(getMetric(changed2.getMetrics(), view).getTimeSeriesList()).hasSize(1);
+    assertThat(
+            measureToViewMap
+                .getMetricsChangedSince(changed2.getCursor(), clock, State.ENABLED)
+                .isComplete())
+        .isFalse();
+  }
+
+  @Test
+  public void testGetViewWhileUnregistering() throws Throwable {
+    final MeasureToViewMap measureToViewMap = new MeasureToViewMap();
+    final TestClock clock = TestClock.create(Timestamp.create(10, 0));
+    // Two different views with the same name, registered in turn.
+    final View view1 = createSumView("view", MEASURE);
+    final View view2 = createSumView("view", MEASURE, KEY);
+    final AtomicBoolean done = new AtomicBoolean(false);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread reader =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  while (!done.get()) {
+                    ViewData viewData =
+                        measureToViewMap.getView(view1.getName(), clock, State.ENABLED);
+                    if (viewData != null) {
+                      assertThat(viewData.getView()).isAnyOf(view1, view2);
+                    }
+                  }
+                } catch (Throwable t) {
+                  failure.set(t);
+                }
+              }
+            });
+    reader.start();
+    try {
+      for (int i = 0; i < 10000 && failure.get() == null; i++) {
+        measureToViewMap.registerView(i % 2 == 0 ? view1 : view2, clock);
+        measureToViewMap.unregisterView(view1.getName());
+      }
+    } finally {
+      done.set(true);
+      reader.join();
+    }
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+  }
+
+  private static void record(
+      MeasureToViewMap measureToViewMap,
+      TestClock clock,
+      MeasureDouble measure,
+      String tagValue,
+      double value,
+      boolean direct) {
+    TagContextImpl tags = new TagContextImpl(ImmutableMap.of(KEY, TagValue.create(tagValue)));
+    MeasureMapInternal stats = MeasureMapInternal.builder().put(measure, value).build();
+    if (direct) {
+      measureToViewMap.recordDirect(tags, stats, 0);
+    } else {
+      measureToViewMap.record(0, tags, stats, TimestampConverter.toEpochNanos(clock.now()));
+    }
+  }
+
+  private static Map<List<TagValue>, AggregationData> getAggregationMap(
+      MeasureToViewMap measureToViewMap, View view, TestClock clock) {
+    return measureToViewMap.getView(view.getName(), clock, State.ENABLED).getAggregationMap();
+  }
+
+  private static Metric getMetric(
+      List<Metric> metrics, MetricDescriptor metricDescriptor) {
+    for (Metric metric : metrics) {
+      if (metric.getMetricDescriptor().equals(metricDescriptor)) {
+        return metric;
+      }
+    }
+    throw new AssertionError("No metric for " + metricDescriptor);
+  }
+
+  private static List<MetricDescriptor> getMetricDescriptors(List<Metric> metrics) {
+    List<MetricDescriptor> metricDescriptors = new ArrayList<MetricDescriptor>();
+    for (Metric metric : metrics) {
+      metricDescriptors.add(metric.getMetricDescriptor());
+    }
+    return metricDescriptors;
+  }
+
+  private static Metric getMetric(List<Metric> metrics, View view) {
+    return getMetric(metrics, MetricUtils.viewToMetricDescriptor(view));
+  }
+
+  private static TimeSeries getTimeSeries(Metric metric, String labelValue) {
+    for (TimeSeries timeSeries : metric.getTimeSeriesList()) {
+      if (timeSeries.getLabelValues().equals(Arrays.asList(LabelValue.create(labelValue)))) {
+        return timeSeries;
+      }
+    }
+    throw new AssertionError("No time series for " + labelValue);
+  }
+
+  private static View createSumView(String name, Measure measure, TagKey... keys) {
+    return View.create(
+        View.Name.create(name),
+        "description",
+        measure,
+        Sum.create(),
+        Arrays.asList(keys),
+        CUMULATIVE);
+  }
 }
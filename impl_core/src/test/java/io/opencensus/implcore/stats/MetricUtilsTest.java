@@ -26,8 +26,10 @@ import io.opencensus.metrics.export.MetricDescriptor;
 import io.opencensus.metrics.export.MetricDescriptor.Type;
 import io.opencensus.stats.Aggregation.Count;
 import io.opencensus.stats.Aggregation.Distribution;
+import io.opencensus.stats.Aggregation.ExponentialDistribution;
 import io.opencensus.stats.Aggregation.LastValue;
 import io.opencensus.stats.Aggregation.Mean;
+import io.opencensus.stats.Aggregation.Percentiles;
 import io.opencensus.stats.Aggregation.Sum;
 import io.opencensus.stats.BucketBoundaries;
 import io.opencensus.stats.Measure.MeasureDouble;
@@ -115,6 +117,10 @@ public class MetricUtilsTest {
         .isEqualTo(Type.CUMULATIVE_DISTRIBUTION);
     assertThat(MetricUtils.getType(MEASURE_LONG, DISTRIBUTION))
         .isEqualTo(Type.CUMULATIVE_DISTRIBUTION);
+    assertThat(MetricUtils.getType(MEASURE_DOUBLE, ExponentialDistribution.create()))
+        .isEqualTo(Type.CUMULATIVE_DISTRIBUTION);
+    assertThat(MetricUtils.getType(MEASURE_LONG, Percentiles.create(Arrays.asList(50.0))))
+        .isEqualTo(Type.SUMMARY);
   }
 
   @Test
@@ -20,19 +20,27 @@ import static com.google.common.truth.Truth.assertThat;
 import static io.opencensus.implcore.stats.StatsTestUtil.assertAggregationDataEquals;
 
 import com.google.common.collect.ImmutableList;
+import io.opencensus.common.Duration;
 import io.opencensus.common.Timestamp;
+import io.opencensus.implcore.internal.TimestampConverter;
 import io.opencensus.implcore.stats.MutableAggregation.MutableCount;
 import io.opencensus.implcore.stats.MutableAggregation.MutableDistribution;
+import io.opencensus.implcore.stats.MutableAggregation.MutableExponentialDistribution;
 import io.opencensus.implcore.stats.MutableAggregation.MutableLastValueDouble;
 import io.opencensus.implcore.stats.MutableAggregation.MutableLastValueLong;
 import io.opencensus.implcore.stats.MutableAggregation.MutableMean;
+import io.opencensus.implcore.stats.MutableAggregation.MutablePercentiles;
 import io.opencensus.implcore.stats.MutableAggregation.MutableSumDouble;
 import io.opencensus.implcore.stats.MutableAggregation.MutableSumLong;
 import io.opencensus.metrics.export.Distribution;
 import io.opencensus.metrics.export.Distribution.Bucket;
 import io.opencensus.metrics.export.Distribution.BucketOptions;
 import io.opencensus.metrics.export.Point;
+import io.opencensus.metrics.export.Summary;
+import io.opencensus.metrics.export.Summary.Snapshot;
+import io.opencensus.metrics.export.Summary.Snapshot.ValueAtPercentile;
 import io.opencensus.metrics.export.Value;
+import io.opencensus.stats.Aggregation;
 import io.opencensus.stats.AggregationData;
 import io.opencensus.stats.AggregationData.CountData;
 import io.opencensus.stats.AggregationData.DistributionData;
@@ -65,15 +73,16 @@ public class MutableAggregationTest {
   private static final BucketBoundaries BUCKET_BOUNDARIES_EMPTY =
       BucketBoundaries.create(Collections.<Double>emptyList());
   private static final Timestamp TIMESTAMP = Timestamp.create(60, 0);
+  private static final long TIMESTAMP_NANOS = TimestampConverter.toEpochNanos(TIMESTAMP);
 
   @Test
   public void testCreateEmpty() {
     assertThat(MutableSumDouble.create().getSum()).isWithin(TOLERANCE).of(0);
-    assertThat(MutableSumLong.create().getSum()).isWithin(TOLERANCE).of(0);
+    assertThat(MutableSumLong.create().getSum()).isEqualTo(0);
     assertThat(MutableCount.create().getCount()).isEqualTo(0);
     assertThat(MutableMean.create().getMean()).isWithin(TOLERANCE).of(0);
     assertThat(MutableLastValueDouble.create().getLastValue()).isNaN();
-    assertThat(MutableLastValueLong.create().getLastValue()).isNaN();
+    assertThat(MutableLastValueLong.create().getLastValue()).isEqualTo(0);
 
     BucketBoundaries bucketBoundaries = BucketBoundaries.create(Arrays.asList(0.1, 2.2, 33.3));
     MutableDistribution mutableDistribution = MutableDistribution.create(bucketBoundaries);
@@ -121,7 +130,7 @@ public class MutableAggregationTest {
 
     for (double value : values) {
       for (MutableAggregation aggregation : aggregations) {
-        aggregation.add(value, Collections.<String, String>emptyMap(), TIMESTAMP);
+        aggregation.add(value, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
       }
     }
 
@@ -173,8 +182,9 @@ public class MutableAggregationTest {
             Timestamp.fromMillis(3000),
             Timestamp.fromMillis(4000));
     for (int i = 0; i < values.size(); i++) {
-      mutableDistribution.add(values.get(i), attachmentsList.get(i), timestamps.get(i));
-      mutableDistributionNoHistogram.add(values.get(i), attachmentsList.get(i), timestamps.get(i));
+      long timestampNanos = TimestampConverter.toEpochNanos(timestamps.get(i));
+      mutableDistribution.add(values.get(i), attachmentsList.get(i), timestampNanos);
+      mutableDistributionNoHistogram.add(values.get(i), attachmentsList.get(i), timestampNanos);
     }
 
     // Each bucket can only have up to one exemplar. If there are more than one exemplars in a
@@ -192,6 +202,100 @@ public class MutableAggregationTest {
     assertThat(mutableDistributionNoHistogram.getExemplars()).isNull();
   }
 
+  @Test
+  public void testAdd_DistributionWithExemplars_TracedOnly() {
+    MutableDistribution mutableDistribution =
+        MutableDistribution.create(BUCKET_BOUNDARIES, ExemplarPolicy.tracedOnly());
+    Map<String, String> traced = Collections.singletonMap("TraceId", "1234");
+    Map<String, String> untraced = Collections.singletonMap("k1", "v1");
+    mutableDistribution.add(5.0, traced, TIMESTAMP_NANOS);
+    mutableDistribution.add(6.0, untraced, TIMESTAMP_NANOS + 1);
+    mutableDistribution.add(-5.0, untraced, TIMESTAMP_NANOS + 2);
+    assertThat(mutableDistribution.getExemplars())
+        .asList()
+        .containsExactly(null, null, Exemplar.create(5.0, TIMESTAMP, traced), null)
+        .inOrder();
+  }
+
+  @Test
+  public void testAdd_DistributionWithExemplars_RateLimited() {
+    MutableDistribution mutableDistribution =
+        MutableDistribution.create(
+            BUCKET_BOUNDARIES, ExemplarPolicy.rateLimited(Duration.create(1, 0)));
+    Map<String, String> attachments = Collections.singletonMap("k1", "v1");
+    mutableDistribution.add(1.0, attachments, TIMESTAMP_NANOS);
+    // Within the interval, the exemplar is not replaced.
+    mutableDistribution.add(2.0, attachments, TIMESTAMP_NANOS + 999999999);
+    assertThat(mutableDistribution.getExemplars()[2])
+        .isEqualTo(Exemplar.create(1.0, TIMESTAMP, attachments));
+    mutableDistribution.add(3.0, attachments, TIMESTAMP_NANOS + 1000000000);
+    assertThat(mutableDistribution.getExemplars()[2])
+        .isEqualTo(Exemplar.create(3.0, Timestamp.create(61, 0), attachments));
+  }
+
+  @Test
+  public void testAdd_DistributionWithExemplars_ReservoirSampling() {
+    // With a uniform sample, each of the 10 values of a bucket is kept in about one tenth of the
+    // distributions, instead of the last one always.
+    boolean[] kept = new boolean[10];
+    for (int i = 0; i < 1000; i++) {
+      MutableDistribution mutableDistribution =
+          MutableDistribution.create(BUCKET_BOUNDARIES, ExemplarPolicy.reservoirSampling());
+      for (int value = 0; value < kept.length; value++) {
+        mutableDistribution.add(
+            value, Collections.singletonMap("k1", "v1"), TIMESTAMP_NANOS + value);
+      }
+      // Values without attachments are not sampled.
+      mutableDistribution.add(9.5, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
+      Exemplar exemplar = mutableDistribution.getExemplars()[2];
+      kept[(int) exemplar.getValue()] = true;
+    }
+    for (boolean k : kept) {
+      assertThat(k).isTrue();
+    }
+  }
+
+  @Test
+  public void testCombine_DistributionWithExemplars_ReservoirSampling() {
+    Map<String, String> attachments = Collections.singletonMap("k1", "v1");
+    MutableDistribution empty =
+        MutableDistribution.create(BUCKET_BOUNDARIES, ExemplarPolicy.reservoirSampling());
+    MutableDistribution other =
+        MutableDistribution.create(BUCKET_BOUNDARIES, ExemplarPolicy.reservoirSampling());
+    other.add(5.0, attachments, TIMESTAMP_NANOS);
+    empty.combine(other, 1.0);
+    assertThat(empty.getExemplars())
+        .asList()
+        .containsExactly(null, null, Exemplar.create(5.0, TIMESTAMP, attachments), null)
+        .inOrder();
+  }
+
+  @Test
+  public void rateLimitedExemplarPolicy_DisallowZeroInterval() {
+    thrown.expect(IllegalArgumentException.class);
+    ExemplarPolicy.rateLimited(Duration.create(0, 0));
+  }
+
+  @Test
+  public void testAddLong_ExactBeyondDoublePrecision() {
+    // 2^53 + 1 is the smallest positive long that a double cannot represent.
+    long value = (1L << 53) + 1;
+    MutableSumLong sum = MutableSumLong.create();
+    MutableLastValueLong lastValue = MutableLastValueLong.create();
+    sum.addLong(value, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
+    sum.addLong(2, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
+    lastValue.addLong(value, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
+    assertThat(sum.getSum()).isEqualTo(value + 2);
+    assertThat(sum.toAggregationData()).isEqualTo(SumDataLong.create(value + 2));
+    assertThat(lastValue.getLastValue()).isEqualTo(value);
+    assertThat(lastValue.toPoint(TIMESTAMP))
+        .isEqualTo(Point.create(Value.longValue(value), TIMESTAMP));
+
+    MutableSumLong combined = MutableSumLong.create();
+    combined.combine(sum, 1.0);
+    assertThat(combined.getSum()).isEqualTo(value + 2);
+  }
+
   @Test
   public void testCombine_SumCountMean() {
     // combine() for Mutable Sum, Count and Mean will pick up fractional stats
@@ -210,12 +314,12 @@ public class MutableAggregationTest {
 
     for (double val : Arrays.asList(-1.0, -5.0)) {
       for (MutableAggregation aggregation : aggregations1) {
-        aggregation.add(val, Collections.<String, String>emptyMap(), TIMESTAMP);
+        aggregation.add(val, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
       }
     }
     for (double val : Arrays.asList(10.0, 50.0)) {
       for (MutableAggregation aggregation : aggregations2) {
-        aggregation.add(val, Collections.<String, String>emptyMap(), TIMESTAMP);
+        aggregation.add(val, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
       }
     }
 
@@ -233,7 +337,7 @@ public class MutableAggregationTest {
     }
 
     assertThat(((MutableSumDouble) combined.get(0)).getSum()).isWithin(TOLERANCE).of(30);
-    assertThat(((MutableSumLong) combined.get(1)).getSum()).isWithin(TOLERANCE).of(30);
+    assertThat(((MutableSumLong) combined.get(1)).getSum()).isEqualTo(30);
     assertThat(((MutableCount) combined.get(2)).getCount()).isEqualTo(3);
     assertThat(((MutableMean) combined.get(3)).getMean()).isWithin(TOLERANCE).of(10);
   }
@@ -246,13 +350,13 @@ public class MutableAggregationTest {
     MutableDistribution distribution3 = MutableDistribution.create(BUCKET_BOUNDARIES);
 
     for (double val : Arrays.asList(5.0, -5.0)) {
-      distribution1.add(val, Collections.<String, String>emptyMap(), TIMESTAMP);
+      distribution1.add(val, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
     }
     for (double val : Arrays.asList(10.0, 20.0)) {
-      distribution2.add(val, Collections.<String, String>emptyMap(), TIMESTAMP);
+      distribution2.add(val, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
     }
     for (double val : Arrays.asList(-10.0, 15.0, -15.0, -20.0)) {
-      distribution3.add(val, Collections.<String, String>emptyMap(), TIMESTAMP);
+      distribution3.add(val, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
     }
 
     MutableDistribution combined = MutableDistribution.create(BUCKET_BOUNDARIES);
@@ -267,6 +371,222 @@ public class MutableAggregationTest {
     verifyMutableDistribution(combined, 0, 8, -20, 20, 1500.0, new long[] {2, 2, 1, 3}, TOLERANCE);
   }
 
+  @Test
+  public void testAdd_ExponentialDistribution() {
+    MutableExponentialDistribution distribution =
+        MutableExponentialDistribution.create(Aggregation.ExponentialDistribution.create(20, 4));
+    for (double val : Arrays.asList(1.0, 2.0, 4.0, 0.0, -1.0)) {
+      distribution.add(val, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
+    }
+    // Buckets were merged until 1, 2 and 4 fit in 4 buckets.
+    assertThat(distribution.getScale()).isEqualTo(0);
+    assertThat(distribution.getZeroCount()).isEqualTo(2);
+    verifyMutableExponentialDistribution(
+        distribution,
+        1.2,
+        5,
+        -1,
+        4,
+        14.8,
+        Arrays.asList(1.0, 2.0, 4.0),
+        new long[] {2, 1, 1, 1},
+        TOLERANCE);
+  }
+
+  @Test
+  public void testAdd_ExponentialDistributionSubnormalBoundsAreMerged() {
+    MutableExponentialDistribution distribution =
+        MutableExponentialDistribution.create(Aggregation.ExponentialDistribution.create(1, 10));
+    for (double val : Arrays.asList(1.0, 2.0, 3.0)) {
+      distribution.add(
+          val * Double.MIN_VALUE, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
+    }
+    // The lower bounds of the two lowest buckets both round to Double.MIN_VALUE.
+    assertThat(distribution.getBucketBoundaries())
+        .containsExactly(Double.MIN_VALUE, 2 * Double.MIN_VALUE, 3 * Double.MIN_VALUE)
+        .inOrder();
+    assertThat(distribution.getBucketCounts()).isEqualTo(new long[] {0, 1, 1, 1});
+  }
+
+  @Test
+  public void testCombine_ExponentialDistribution() {
+    Aggregation.ExponentialDistribution aggregation =
+        Aggregation.ExponentialDistribution.create(20, 4);
+    MutableExponentialDistribution distribution1 =
+        MutableExponentialDistribution.create(aggregation);
+    MutableExponentialDistribution distribution2 =
+        MutableExponentialDistribution.create(aggregation);
+    for (double val : Arrays.asList(1.0, 2.0)) {
+      distribution1.add(val, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
+    }
+    for (double val : Arrays.asList(4.0, 5.0)) {
+      distribution2.add(val, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
+    }
+    assertThat(distribution1.getScale()).isEqualTo(1);
+    assertThat(distribution2.getScale()).isEqualTo(3);
+
+    MutableExponentialDistribution combined = MutableExponentialDistribution.create(aggregation);
+    combined.combine(distribution1, 1.0); // distribution1 will be combined
+    combined.combine(distribution2, 0.6); // distribution2 will be ignored
+    verifyMutableExponentialDistribution(
+        combined,
+        1.5,
+        2,
+        1,
+        2,
+        0.5,
+        Arrays.asList(1.0, Math.sqrt(2), 2.0),
+        new long[] {0, 1, 0, 1},
+        TOLERANCE);
+
+    combined.combine(distribution2, 1.0); // distribution2 will be combined
+    assertThat(combined.getScale()).isEqualTo(0);
+    verifyMutableExponentialDistribution(
+        combined,
+        3,
+        4,
+        1,
+        5,
+        10.0,
+        Arrays.asList(1.0, 2.0, 4.0),
+        new long[] {0, 1, 1, 2},
+        TOLERANCE);
+  }
+
+  @Test
+  public void exponentialDistribution_ToAggregationDataAndToPoint() {
+    MutableExponentialDistribution distribution =
+        MutableExponentialDistribution.create(Aggregation.ExponentialDistribution.create(0, 4));
+    assertThat(distribution.toPoint(TIMESTAMP))
+        .isEqualTo(
+            Point.create(
+                Value.distributionValue(
+                    Distribution.create(
+                        0,
+                        0,
+                        0,
+                        BucketOptions.explicitOptions(Collections.<Double>emptyList()),
+                        Arrays.asList(Bucket.create(0)))),
+                TIMESTAMP));
+
+    for (double val : Arrays.asList(1.0, 2.0, 4.0, 4.0)) {
+      distribution.add(val, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
+    }
+    assertAggregationDataEquals(
+        DistributionData.create(
+            2.75, 4, 1, 4, 6.75, Arrays.asList(0L, 1L, 1L, 2L), Collections.<Exemplar>emptyList()),
+        distribution.toAggregationData(),
+        TOLERANCE);
+    assertThat(distribution.toPoint(TIMESTAMP))
+        .isEqualTo(
+            Point.create(
+                Value.distributionValue(
+                    Distribution.create(
+                        4,
+                        11,
+                        6.75,
+                        BucketOptions.explicitOptions(Arrays.asList(1.0, 2.0, 4.0)),
+                        Arrays.asList(
+                            Bucket.create(0),
+                            Bucket.create(1),
+                            Bucket.create(1),
+                            Bucket.create(2)))),
+                TIMESTAMP));
+  }
+
+  @Test
+  public void testAdd_Percentiles() {
+    MutablePercentiles percentiles =
+        MutablePercentiles.create(Aggregation.Percentiles.create(Arrays.asList(50.0, 100.0)));
+    for (double val : Arrays.asList(-10.0, 1.0, 2.0, 3.0, 10.0)) {
+      percentiles.add(val, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
+    }
+    assertThat(percentiles.getCount()).isEqualTo(5);
+    assertThat(percentiles.getMean()).isWithin(TOLERANCE).of(1.2);
+    assertThat(percentiles.getMin()).isWithin(TOLERANCE).of(-10);
+    assertThat(percentiles.getMax()).isWithin(TOLERANCE).of(10);
+    assertThat(percentiles.getSumOfSquaredDeviations()).isWithin(TOLERANCE).of(206.8);
+    List<ValueAtPercentile> valueAtPercentiles = percentiles.getValueAtPercentiles();
+    assertThat(valueAtPercentiles).hasSize(2);
+    assertThat(valueAtPercentiles.get(0).getPercentile()).isWithin(TOLERANCE).of(50.0);
+    assertThat(valueAtPercentiles.get(0).getValue()).isWithin(2.0 * 0.01).of(2.0);
+    assertThat(valueAtPercentiles.get(1).getValue()).isWithin(10.0 * 0.01).of(10.0);
+  }
+
+  @Test
+  public void testCombine_Percentiles() {
+    Aggregation.Percentiles aggregation = Aggregation.Percentiles.create(Arrays.asList(50.0));
+    MutablePercentiles percentiles1 = MutablePercentiles.create(aggregation);
+    MutablePercentiles percentiles2 = MutablePercentiles.create(aggregation);
+    for (double val : Arrays.asList(1.0, 2.0, 3.0)) {
+      percentiles1.add(val, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
+    }
+    for (double val : Arrays.asList(100.0, 200.0, 300.0, 400.0)) {
+      percentiles2.add(val, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
+    }
+
+    MutablePercentiles combined = MutablePercentiles.create(aggregation);
+    combined.combine(percentiles1, 1.0); // percentiles1 will be combined
+    combined.combine(percentiles2, 0.6); // percentiles2 will be ignored
+    assertThat(combined.getCount()).isEqualTo(3);
+    assertThat(combined.getValueAtPercentiles().get(0).getValue()).isWithin(0.02).of(2.0);
+
+    combined.combine(percentiles2, 1.0); // percentiles2 will be combined
+    assertThat(combined.getCount()).isEqualTo(7);
+    assertThat(combined.getMin()).isWithin(TOLERANCE).of(1);
+    assertThat(combined.getMax()).isWithin(TOLERANCE).of(400);
+    assertThat(combined.getValueAtPercentiles().get(0).getValue()).isWithin(1.0).of(100.0);
+  }
+
+  @Test
+  public void percentiles_ToAggregationDataAndToPoint() {
+    MutablePercentiles percentiles =
+        MutablePercentiles.create(Aggregation.Percentiles.create(Arrays.asList(50.0)));
+    assertThat(percentiles.toPoint(TIMESTAMP))
+        .isEqualTo(
+            Point.create(
+                Value.summaryValue(
+                    Summary.create(
+                        0L,
+                        0.0,
+                        Snapshot.create(0L, 0.0, Collections.<ValueAtPercentile>emptyList()))),
+                TIMESTAMP));
+
+    for (double val : Arrays.asList(4.0, 4.0, 4.0)) {
+      percentiles.add(val, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
+    }
+    assertThat(percentiles.toAggregationData())
+        .isEqualTo(
+            DistributionData.create(
+                4.0,
+                3,
+                4.0,
+                4.0,
+                0.0,
+                Collections.<Long>emptyList(),
+                Collections.<Exemplar>emptyList()));
+    assertThat(percentiles.toPoint(TIMESTAMP))
+        .isEqualTo(
+            Point.create(
+                Value.summaryValue(
+                    Summary.create(
+                        3L,
+                        12.0,
+                        Snapshot.create(
+                            3L, 12.0, Arrays.asList(ValueAtPercentile.create(50.0, 4.0))))),
+                TIMESTAMP));
+
+    // Summary does not allow negative sums.
+    percentiles.add(-20.0, Collections.<String, String>emptyMap(), TIMESTAMP_NANOS);
+    assertThat(percentiles.toPoint(TIMESTAMP))
+        .isEqualTo(
+            Point.create(
+                Value.summaryValue(
+                    Summary.create(
+                        4L, null, Snapshot.create(4L, null, percentiles.getValueAtPercentiles()))),
+                TIMESTAMP));
+  }
+
   @Test
   public void mutableAggregation_ToAggregationData() {
     assertThat(MutableSumDouble.create().toAggregationData()).isEqualTo(SumDataDouble.create(0));
@@ -336,4 +656,25 @@ public class MutableAggregationTest {
         .of(sumOfSquaredDeviations);
     assertThat(mutableDistribution.getBucketCounts()).isEqualTo(bucketCounts);
   }
+
+  private static void verifyMutableExponentialDistribution(
+      MutableExponentialDistribution mutableDistribution,
+      double mean,
+      long count,
+      double min,
+      double max,
+      double sumOfSquaredDeviations,
+      List<Double> bucketBoundaries,
+      long[] bucketCounts,
+      double tolerance) {
+    assertThat(mutableDistribution.getMean()).isWithin(tolerance).of(mean);
+    assertThat(mutableDistribution.getCount()).isEqualTo(count);
+    assertThat(mutableDistribution.getMin()).isWithin(tolerance).of(min);
+    assertThat(mutableDistribution.getMax()).isWithin(tolerance).of(max);
+    assertThat(mutableDistribution.getSumOfSquaredDeviations())
+        .isWithin(tolerance)
+        .of(sumOfSquaredDeviations);
+    assertThat(mutableDistribution.getBucketBoundaries()).isEqualTo(bucketBoundaries);
+    assertThat(mutableDistribution.getBucketCounts()).isEqualTo(bucketCounts);
+  }
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link QuantileSketch}. */
+@RunWith(JUnit4.class)
+public class QuantileSketchTest {
+
+  private static final double RELATIVE_ACCURACY = 0.01;
+  private static final double[] QUANTILES = {0.0, 0.1, 0.5, 0.9, 0.99, 0.999, 1.0};
+
+  @Test
+  public void emptySketch() {
+    QuantileSketch sketch = new QuantileSketch(RELATIVE_ACCURACY, 2048);
+    assertThat(sketch.getCount()).isEqualTo(0);
+    assertThat(sketch.getValueAtQuantile(0.5)).isEqualTo(0.0);
+  }
+
+  @Test
+  public void bucketValueIsWithinRelativeAccuracy() {
+    QuantileSketch sketch = new QuantileSketch(RELATIVE_ACCURACY, 2048);
+    for (double value : new double[] {1e-300, 1e-9, 0.5, 1.0, 3.0, 1e9, 1e300}) {
+      assertThat(sketch.getValue(sketch.getIndex(value)))
+          .isWithin(value * RELATIVE_ACCURACY)
+          .of(value);
+    }
+  }
+
+  @Test
+  public void nonPositiveValuesAreZeros() {
+    QuantileSketch sketch = new QuantileSketch(RELATIVE_ACCURACY, 2048);
+    for (double value : Arrays.asList(-5.0, 0.0, 0.0, 10.0)) {
+      sketch.add(value);
+    }
+    assertThat(sketch.getCount()).isEqualTo(4);
+    assertThat(sketch.getZeroCount()).isEqualTo(3);
+    assertThat(sketch.getValueAtQuantile(0.5)).isEqualTo(0.0);
+    assertThat(sketch.getValueAtQuantile(1.0)).isWithin(10.0 * RELATIVE_ACCURACY).of(10.0);
+  }
+
+  @Test
+  public void infinityIsCountedWithMaxValue() {
+    QuantileSketch sketch = new QuantileSketch(RELATIVE_ACCURACY, 2048);
+    sketch.add(1.0);
+    sketch.add(Double.POSITIVE_INFINITY);
+    sketch.add(0.5);
+    assertThat(sketch.getCount()).isEqualTo(3);
+    assertThat(sketch.getValueAtQuantile(1.0))
+        .isWithin(Double.MAX_VALUE * RELATIVE_ACCURACY)
+        .of(Double.MAX_VALUE);
+    // The smaller values were merged with higher ones, since the range exceeds maxBuckets.
+    assertThat(sketch.getValueAtQuantile(0.0)).isGreaterThan(0.0);
+  }
+
+  @Test
+  public void maxValueFollowedBySmallValues() {
+    QuantileSketch sketch = new QuantileSketch(RELATIVE_ACCURACY, 64);
+    sketch.add(Double.MAX_VALUE);
+    sketch.add(Double.MIN_VALUE);
+    sketch.add(1e-300);
+    sketch.add(1.0);
+    assertThat(sketch.getCount()).isEqualTo(4);
+    assertThat(sketch.getValueAtQuantile(1.0))
+        .isWithin(Double.MAX_VALUE * RELATIVE_ACCURACY)
+        .of(Double.MAX_VALUE);
+  }
+
+  @Test
+  public void extremeIndicesDoNotOverflow() {
+    // With a tiny accuracy, the indices of extreme values exceed the range of an int.
+    QuantileSketch sketch = new QuantileSketch(1e-12, 64);
+    sketch.add(Double.MAX_VALUE);
+    sketch.add(Double.MIN_VALUE);
+    sketch.add(1.0);
+    QuantileSketch other = new QuantileSketch(1e-12, 64);
+    other.add(Double.MIN_VALUE);
+    other.merge(sketch);
+    assertThat(other.getCount()).isEqualTo(4);
+  }
+
+  @Test
+  public void nanIsIgnored() {
+    QuantileSketch sketch = new QuantileSketch(RELATIVE_ACCURACY, 2048);
+    sketch.add(Double.NaN);
+    sketch.add(2.0);
+    assertThat(sketch.getCount()).isEqualTo(1);
+    assertThat(sketch.getZeroCount()).isEqualTo(0);
+    assertThat(sketch.getValueAtQuantile(0.0)).isWithin(2.0 * RELATIVE_ACCURACY).of(2.0);
+  }
+
+  @Test
+  public void quantilesAreWithinRelativeAccuracy() {
+    QuantileSketch sketch = new QuantileSketch(RELATIVE_ACCURACY, 2048);
+    double[] values = randomValues(10001);
+    for (double value : values) {
+      sketch.add(value);
+    }
+    assertQuantiles(sketch, values);
+  }
+
+  @Test
+  public void merge() {
+    QuantileSketch sketch1 = new QuantileSketch(RELATIVE_ACCURACY, 2048);
+    QuantileSketch sketch2 = new QuantileSketch(RELATIVE_ACCURACY, 2048);
+    QuantileSketch empty = new QuantileSketch(RELATIVE_ACCURACY, 2048);
+    double[] values = randomValues(10001);
+    for (int i = 0; i < values.length; i++) {
+      // Different ranges, so that the merge has to grow the counts of both sketches.
+      (values[i] < 1.0 ? sketch1 : sketch2).add(values[i]);
+    }
+    empty.merge(sketch2);
+    empty.merge(sketch1);
+    sketch1.merge(sketch2);
+    assertThat(sketch1.getCount()).isEqualTo(values.length);
+    assertQuantiles(sketch1, values);
+    assertQuantiles(empty, values);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void merge_DisallowDifferentParameters() {
+    new QuantileSketch(RELATIVE_ACCURACY, 2048).merge(new QuantileSketch(0.02, 2048));
+  }
+
+  @Test
+  public void lowestBucketsAreMergedBeyondMaxBuckets() {
+    QuantileSketch sketch = new QuantileSketch(RELATIVE_ACCURACY, 64);
+    double[] values = randomValues(10001);
+    for (double value : values) {
+      sketch.add(value);
+    }
+    Arrays.sort(values);
+    // The highest value is still accurate.
+    assertThat(sketch.getValueAtQuantile(1.0))
+        .isWithin(values[values.length - 1] * RELATIVE_ACCURACY)
+        .of(values[values.length - 1]);
+    // The lowest values were merged with higher ones.
+    assertThat(sketch.getValueAtQuantile(0.0)).isGreaterThan(values[0]);
+  }
+
+  private static double[] randomValues(int count) {
+    Random random = new Random(1234);
+    double[] values = new double[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = Math.exp(random.nextGaussian() * 3);
+    }
+    return values;
+  }
+
+  private static void assertQuantiles(QuantileSketch sketch, double[] values) {
+    double[] sortedValues = values.clone();
+    Arrays.sort(sortedValues);
+    for (double quantile : QUANTILES) {
+      double expected = sortedValues[(int) (quantile * (sortedValues.length - 1))];
+      assertThat(sketch.getValueAtQuantile(quantile))
+          .isWithin(expected * RELATIVE_ACCURACY)
+          .of(expected);
+    }
+  }
+}
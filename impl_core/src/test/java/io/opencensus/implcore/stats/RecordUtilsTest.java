@@ -19,13 +19,17 @@ package io.opencensus.implcore.stats;
 import static com.google.common.truth.Truth.assertThat;
 
 import com.google.common.collect.ImmutableMap;
+import io.opencensus.common.Duration;
 import io.opencensus.implcore.stats.MutableAggregation.MutableDistribution;
+import io.opencensus.implcore.stats.MutableAggregation.MutableExponentialDistribution;
+import io.opencensus.stats.Aggregation;
 import io.opencensus.stats.Aggregation.Count;
 import io.opencensus.stats.Aggregation.Distribution;
 import io.opencensus.stats.Aggregation.LastValue;
 import io.opencensus.stats.Aggregation.Mean;
 import io.opencensus.stats.Aggregation.Sum;
 import io.opencensus.stats.AggregationData.CountData;
+import io.opencensus.stats.AggregationData.DistributionData;
 import io.opencensus.stats.AggregationData.LastValueDataDouble;
 import io.opencensus.stats.AggregationData.LastValueDataLong;
 import io.opencensus.stats.AggregationData.MeanData;
@@ -34,12 +38,18 @@ import io.opencensus.stats.AggregationData.SumDataLong;
 import io.opencensus.stats.BucketBoundaries;
 import io.opencensus.stats.Measure.MeasureDouble;
 import io.opencensus.stats.Measure.MeasureLong;
+import io.opencensus.stats.View;
+import io.opencensus.stats.View.AggregationWindow.Cumulative;
+import io.opencensus.stats.View.AggregationWindow.Interval;
 import io.opencensus.tags.TagKey;
 import io.opencensus.tags.TagValue;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
@@ -47,6 +57,8 @@ import org.junit.runners.JUnit4;
 @RunWith(JUnit4.class)
 public class RecordUtilsTest {
 
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
   private static final double EPSILON = 1e-7;
   private static final MeasureDouble MEASURE_DOUBLE =
       MeasureDouble.create("measure1", "description", "1");
@@ -112,5 +124,88 @@ public class RecordUtilsTest {
     assertThat(mutableDistribution.getMax()).isNegativeInfinity();
     assertThat(mutableDistribution.getSumOfSquaredDeviations()).isWithin(EPSILON).of(0);
     assertThat(mutableDistribution.getBucketCounts()).isEqualTo(new long[4]);
+
+    MutableExponentialDistribution mutableExponentialDistribution =
+        (MutableExponentialDistribution)
+            RecordUtils.createMutableAggregation(
+                Aggregation.ExponentialDistribution.create(), MEASURE_DOUBLE);
+    assertThat(mutableExponentialDistribution.getScale())
+        .isEqualTo(Aggregation.ExponentialDistribution.MAX_SCALE);
+    assertThat(mutableExponentialDistribution.getBucketCounts()).isEqualTo(new long[1]);
+
+    assertThat(
+            RecordUtils.createMutableAggregation(
+                    Aggregation.Percentiles.create(Arrays.asList(50.0)), MEASURE_DOUBLE)
+                .toAggregationData())
+        .isEqualTo(
+            DistributionData.create(
+                0,
+                0,
+                Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY,
+                0,
+                Collections.<Long>emptyList()));
+  }
+
+  @Test
+  public void createDirectAggregation() {
+    assertThat(
+            RecordUtils.createDirectAggregation(Sum.create(), MEASURE_DOUBLE).toAggregationData())
+        .isEqualTo(SumDataDouble.create(0));
+    assertThat(RecordUtils.createDirectAggregation(Sum.create(), MEASURE_LONG).toAggregationData())
+        .isEqualTo(SumDataLong.create(0));
+    assertThat(
+            RecordUtils.createDirectAggregation(Count.create(), MEASURE_DOUBLE)
+                .toAggregationData())
+        .isEqualTo(CountData.create(0));
+    assertThat(
+            RecordUtils.createDirectAggregation(LastValue.create(), MEASURE_DOUBLE)
+                .toAggregationData())
+        .isEqualTo(LastValueDataDouble.create(Double.NaN));
+    assertThat(
+            RecordUtils.createDirectAggregation(LastValue.create(), MEASURE_LONG)
+                .toAggregationData())
+        .isEqualTo(LastValueDataLong.create(0));
+  }
+
+  @Test
+  public void createDirectAggregation_DisallowMean() {
+    thrown.expect(IllegalArgumentException.class);
+    RecordUtils.createDirectAggregation(Mean.create(), MEASURE_DOUBLE);
+  }
+
+  @Test
+  public void isDirectRecordingSupported() {
+    assertThat(
+            RecordUtils.isDirectRecordingSupported(createView(Sum.create(), Cumulative.create())))
+        .isTrue();
+    assertThat(
+            RecordUtils.isDirectRecordingSupported(createView(Count.create(), Cumulative.create())))
+        .isTrue();
+    assertThat(
+            RecordUtils.isDirectRecordingSupported(
+                createView(LastValue.create(), Cumulative.create())))
+        .isTrue();
+    assertThat(
+            RecordUtils.isDirectRecordingSupported(
+                createView(
+                    Distribution.create(BucketBoundaries.create(Arrays.asList(0.0))),
+                    Cumulative.create())))
+        .isFalse();
+    assertThat(
+            RecordUtils.isDirectRecordingSupported(
+                createView(Sum.create(), Interval.create(Duration.create(60, 0)))))
+        .isFalse();
+  }
+
+  private static View createView(
+      Aggregation aggregation, View.AggregationWindow window) {
+    return View.create(
+        View.Name.create("view"),
+        "description",
+        MEASURE_DOUBLE,
+        aggregation,
+        Arrays.asList(CALLER),
+        window);
   }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.common.Duration;
+import io.opencensus.common.Timestamp;
+import io.opencensus.implcore.internal.CurrentState;
+import io.opencensus.implcore.internal.CurrentState.State;
+import io.opencensus.implcore.internal.TimestampConverter;
+import io.opencensus.implcore.tags.TagContextImpl;
+import io.opencensus.metrics.export.Metric;
+import io.opencensus.stats.Aggregation.Sum;
+import io.opencensus.stats.Measure.MeasureDouble;
+import io.opencensus.stats.View;
+import io.opencensus.stats.ViewData;
+import io.opencensus.tags.TagKey;
+import io.opencensus.testing.common.TestClock;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link SnapshotCache}. */
+@RunWith(JUnit4.class)
+public class SnapshotCacheTest {
+
+  private static final MeasureDouble MEASURE =
+      MeasureDouble.create("my measurement", "measurement description", "By");
+  private static final View VIEW =
+      View.create(
+          View.Name.create("my view"),
+          "view description",
+          MEASURE,
+          Sum.create(),
+          Collections.<TagKey>emptyList(),
+          View.AggregationWindow.Cumulative.create());
+
+  private final TestClock clock = TestClock.create(Timestamp.create(10, 0));
+  private final CurrentState state = new CurrentState(State.ENABLED);
+  private final MeasureToViewMap measureToViewMap = new MeasureToViewMap();
+
+  @Test
+  public void zeroStaleness_ReadsEveryTime() {
+    SnapshotCache cache = createCache(Duration.create(0, 0));
+    assertThat(cache.getView(VIEW.getName())).isNotSameAs(cache.getView(VIEW.getName()));
+    assertThat(cache.getMetrics()).isNotSameAs(cache.getMetrics());
+  }
+
+  @Test
+  public void sharesSnapshotsWithinStaleness() {
+    SnapshotCache cache = createCache(Duration.create(10, 0));
+    ViewData viewData = cache.getView(VIEW.getName());
+    List<Metric> metrics = cache.getMetrics();
+    // Records within the window are only visible in the next snapshot.
+    record(1.0);
+    clock.advanceTime(Duration.create(9, 999999999));
+    assertThat(cache.getView(VIEW.getName())).isSameAs(viewData);
+    assertThat(cache.getMetrics()).isSameAs(metrics);
+
+    clock.advanceTime(Duration.create(0, 1));
+    ViewData newViewData = cache.getView(VIEW.getName());
+    assertThat(newViewData).isNotSameAs(viewData);
+    assertThat(newViewData.getAggregationMap()).hasSize(1);
+    assertThat(cache.getMetrics()).isNotSameAs(metrics);
+  }
+
+  @Test
+  public void invalidate_DropsSnapshots() {
+    SnapshotCache cache = createCache(Duration.create(10, 0));
+    ViewData viewData = cache.getView(VIEW.getName());
+    List<Metric> metrics = cache.getMetrics();
+    cache.invalidate();
+    assertThat(cache.getView(VIEW.getName())).isNotSameAs(viewData);
+    assertThat(cache.getMetrics()).isNotSameAs(metrics);
+  }
+
+  @Test
+  public void getView_UnregisteredView() {
+    SnapshotCache cache = createCache(Duration.create(10, 0));
+    assertThat(cache.getView(View.Name.create("other view"))).isNull();
+  }
+
+  private SnapshotCache createCache(Duration staleness) {
+    measureToViewMap.registerView(VIEW, clock);
+    return new SnapshotCache(measureToViewMap, clock, state, staleness);
+  }
+
+  private void record(double value) {
+    measureToViewMap.record(
+        0,
+        TagContextImpl.EMPTY,
+        MeasureMapInternal.builder().put(MEASURE, value).build(),
+        TimestampConverter.toEpochNanos(clock.now()));
+  }
+}
@@ -22,8 +22,10 @@ import static io.opencensus.implcore.stats.StatsTestUtil.createEmptyViewData;
 
 import com.google.common.collect.ImmutableMap;
 import io.grpc.Context;
+import io.opencensus.common.Clock;
 import io.opencensus.common.Duration;
 import io.opencensus.common.Timestamp;
+import io.opencensus.implcore.internal.EventQueue;
 import io.opencensus.implcore.internal.SimpleEventQueue;
 import io.opencensus.implcore.stats.StatsTestUtil.SimpleTagContext;
 import io.opencensus.stats.Aggregation.Count;
@@ -32,14 +34,19 @@ import io.opencensus.stats.Aggregation.Sum;
 import io.opencensus.stats.AggregationData.CountData;
 import io.opencensus.stats.AggregationData.DistributionData;
 import io.opencensus.stats.AggregationData.DistributionData.Exemplar;
+import io.opencensus.stats.AggregationData.SumDataLong;
+import io.opencensus.stats.BoundMeasureDouble;
+import io.opencensus.stats.BoundMeasureLong;
 import io.opencensus.stats.BucketBoundaries;
 import io.opencensus.stats.Measure.MeasureDouble;
+import io.opencensus.stats.Measure.MeasureLong;
 import io.opencensus.stats.MeasureMap;
 import io.opencensus.stats.StatsCollectionState;
 import io.opencensus.stats.StatsComponent;
 import io.opencensus.stats.StatsRecorder;
 import io.opencensus.stats.View;
 import io.opencensus.stats.View.AggregationWindow.Cumulative;
+import io.opencensus.stats.View.AggregationWindow.Interval;
 import io.opencensus.stats.ViewData;
 import io.opencensus.stats.ViewData.AggregationWindowData.CumulativeData;
 import io.opencensus.stats.ViewManager;
@@ -49,9 +56,11 @@ import io.opencensus.tags.TagKey;
 import io.opencensus.tags.TagValue;
 import io.opencensus.tags.unsafe.ContextUtils;
 import io.opencensus.testing.common.TestClock;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -263,6 +272,118 @@ public final class StatsRecorderImplTest {
     statsRecorder.newMeasureMap().put(MEASURE_DOUBLE, -3.0).record(context);
   }
 
+  @Test
+  public void record_ShardedPipeline() {
+    List<SimpleEventQueue> queues =
+        Arrays.asList(
+            new SimpleEventQueue(),
+            new SimpleEventQueue(),
+            new SimpleEventQueue(),
+            new SimpleEventQueue());
+    StatsComponent shardedComponent = new StatsComponentImplBase(queues, testClock);
+    MeasureMap measureMap = shardedComponent.getStatsRecorder().newMeasureMap();
+    for (int i = 0; i < 8; i++) {
+      MeasureDouble measure = MeasureDouble.create("measure " + i, "description", "us");
+      shardedComponent
+          .getViewManager()
+          .registerView(
+              View.create(
+                  View.Name.create("view " + i),
+                  "description",
+                  measure,
+                  Sum.create(),
+                  Arrays.asList(KEY),
+                  Cumulative.create()));
+      measureMap.put(measure, i);
+    }
+    measureMap.record(new SimpleTagContext(Tag.create(KEY, VALUE)));
+
+    // Every view is recorded exactly once, by the shard that owns its measure.
+    for (int i = 0; i < 8; i++) {
+      ViewData viewData = shardedComponent.getViewManager().getView(View.Name.create("view " + i));
+      StatsTestUtil.assertAggregationMapEquals(
+          viewData.getAggregationMap(),
+          ImmutableMap.of(
+              Arrays.asList(VALUE),
+              StatsTestUtil.createAggregationData(Sum.create(), MEASURE_DOUBLE, i)),
+          1e-6);
+    }
+  }
+
+  @Test
+  public void record_DirectRecording() {
+    final List<EventQueue.Entry> entries = new ArrayList<EventQueue.Entry>();
+    EventQueue pendingQueue =
+        new EventQueue() {
+          @Override
+          public void enqueue(Entry entry) {
+            entries.add(entry);
+          }
+
+          @Override
+          public void shutdown() {}
+        };
+    StatsComponent directComponent =
+        new StatsComponentImplBase(
+            Collections.singletonList(pendingQueue),
+            testClock,
+            StatsConfiguration.builder().setDirectRecordingEnabled(true).build());
+    ViewManager directViewManager = directComponent.getViewManager();
+    View sumView =
+        View.create(
+            VIEW_NAME,
+            "description",
+            MEASURE_DOUBLE,
+            Sum.create(),
+            Arrays.asList(KEY),
+            Cumulative.create());
+    View.Name distributionViewName = View.Name.create("my distribution view");
+    View distributionView =
+        View.create(
+            distributionViewName,
+            "description",
+            MEASURE_DOUBLE_NO_VIEW_1,
+            DISTRIBUTION,
+            Arrays.asList(KEY),
+            Cumulative.create());
+    directViewManager.registerView(sumView);
+    directViewManager.registerView(distributionView);
+    TagContext tags = new SimpleTagContext(Tag.create(KEY, VALUE));
+
+    // Only Sum views: recorded on the calling thread, nothing is enqueued.
+    directComponent.getStatsRecorder().newMeasureMap().put(MEASURE_DOUBLE, 2.0).record(tags);
+    assertThat(entries).isEmpty();
+    StatsTestUtil.assertAggregationMapEquals(
+        directViewManager.getView(VIEW_NAME).getAggregationMap(),
+        ImmutableMap.of(
+            Arrays.asList(VALUE),
+            StatsTestUtil.createAggregationData(Sum.create(), MEASURE_DOUBLE, 2.0)),
+        1e-6);
+
+    // Distribution views still go through the queue, and the Sum view is not recorded twice.
+    directComponent
+        .getStatsRecorder()
+        .newMeasureMap()
+        .put(MEASURE_DOUBLE, 3.0)
+        .put(MEASURE_DOUBLE_NO_VIEW_1, 5.0)
+        .record(tags);
+    assertThat(entries).hasSize(1);
+    assertThat(directViewManager.getView(distributionViewName).getAggregationMap()).isEmpty();
+    entries.get(0).process();
+    StatsTestUtil.assertAggregationMapEquals(
+        directViewManager.getView(VIEW_NAME).getAggregationMap(),
+        ImmutableMap.of(
+            Arrays.asList(VALUE),
+            StatsTestUtil.createAggregationData(Sum.create(), MEASURE_DOUBLE, 2.0, 3.0)),
+        1e-6);
+    StatsTestUtil.assertAggregationMapEquals(
+        directViewManager.getView(distributionViewName).getAggregationMap(),
+        ImmutableMap.of(
+            Arrays.asList(VALUE),
+            StatsTestUtil.createAggregationData(DISTRIBUTION, MEASURE_DOUBLE_NO_VIEW_1, 5.0)),
+        1e-6);
+  }
+
   @Test
   public void recordTwice() {
     View view =
@@ -290,6 +411,104 @@ public final class StatsRecorderImplTest {
         1e-6);
   }
 
+  @Test
+  public void record_EventsAreCopiedAndReusedOnceProcessed() {
+    final List<EventQueue.Entry> entries = new ArrayList<EventQueue.Entry>();
+    EventQueue pendingQueue =
+        new EventQueue() {
+          @Override
+          public void enqueue(Entry entry) {
+            entries.add(entry);
+          }
+
+          @Override
+          public void shutdown() {}
+        };
+    StatsComponent pendingComponent =
+        new StatsComponentImplBase(
+            Collections.singletonList(pendingQueue), testClock, StatsConfiguration.getDefault());
+    View view =
+        View.create(
+            VIEW_NAME,
+            "description",
+            MEASURE_DOUBLE,
+            Sum.create(),
+            Arrays.asList(KEY),
+            Cumulative.create());
+    pendingComponent.getViewManager().registerView(view);
+    TagContext tags = new SimpleTagContext(Tag.create(KEY, VALUE));
+
+    // The measurements are copied when recorded, so changing the MeasureMap afterwards does not
+    // change the pending events.
+    MeasureMap measureMap = pendingComponent.getStatsRecorder().newMeasureMap();
+    measureMap.put(MEASURE_DOUBLE, 1.0).record(tags);
+    measureMap.put(MEASURE_DOUBLE, 2.0).record(tags);
+    assertThat(entries).hasSize(2);
+    assertThat(entries.get(1)).isNotSameAs(entries.get(0));
+    for (EventQueue.Entry entry : entries) {
+      entry.process();
+    }
+    StatsTestUtil.assertAggregationMapEquals(
+        pendingComponent.getViewManager().getView(VIEW_NAME).getAggregationMap(),
+        ImmutableMap.of(
+            Arrays.asList(VALUE),
+            StatsTestUtil.createAggregationData(Sum.create(), MEASURE_DOUBLE, 1.0, 2.0)),
+        1e-6);
+
+    // Processed events are handed out again once the other events of the thread were used.
+    entries.clear();
+    for (int i = 0; i < StatsManager.EVENTS_PER_THREAD; i++) {
+      measureMap.record(tags);
+      entries.get(i).process();
+    }
+    assertThat(entries).containsNoDuplicates();
+    measureMap.record(tags);
+    assertThat(entries.get(StatsManager.EVENTS_PER_THREAD)).isSameAs(entries.get(0));
+  }
+
+  @Test
+  public void record_DroppedEventsAreReplacedInThePool() {
+    final List<EventQueue.Entry> entries = new ArrayList<EventQueue.Entry>();
+    EventQueue pendingQueue =
+        new EventQueue() {
+          @Override
+          public void enqueue(Entry entry) {
+            entries.add(entry);
+          }
+
+          @Override
+          public void shutdown() {}
+        };
+    StatsComponent pendingComponent =
+        new StatsComponentImplBase(
+            Collections.singletonList(pendingQueue), testClock, StatsConfiguration.getDefault());
+    View view =
+        View.create(
+            VIEW_NAME,
+            "description",
+            MEASURE_DOUBLE,
+            Sum.create(),
+            Arrays.asList(KEY),
+            Cumulative.create());
+    pendingComponent.getViewManager().registerView(view);
+    TagContext tags = new SimpleTagContext(Tag.create(KEY, VALUE));
+    MeasureMap measureMap = pendingComponent.getStatsRecorder().newMeasureMap();
+    measureMap.put(MEASURE_DOUBLE, 1.0);
+
+    // The first events are never processed, as if the queue had dropped them.
+    for (int i = 0; i < StatsManager.EVENTS_PER_THREAD; i++) {
+      measureMap.record(tags);
+    }
+    entries.clear();
+    // They are replaced by new events, which are reused once processed.
+    for (int i = 0; i < StatsManager.EVENTS_PER_THREAD; i++) {
+      measureMap.record(tags);
+      entries.get(i).process();
+    }
+    measureMap.record(tags);
+    assertThat(entries.get(StatsManager.EVENTS_PER_THREAD)).isSameAs(entries.get(0));
+  }
+
   @Test
   @SuppressWarnings("deprecation")
   public void record_StatsDisabled() {
@@ -346,4 +565,238 @@ public final class StatsRecorderImplTest {
             StatsTestUtil.createAggregationData(Sum.create(), MEASURE_DOUBLE, 4.0)),
         1e-6);
   }
+
+  @Test
+  public void recordBoundMeasure_ViewUnregisteredAfterBinding() {
+    View sumView =
+        View.create(
+            VIEW_NAME,
+            "description",
+            MEASURE_DOUBLE,
+            Sum.create(),
+            Arrays.asList(KEY),
+            Cumulative.create());
+    View.Name distributionViewName = View.Name.create("my distribution view");
+    viewManager.registerView(sumView);
+    viewManager.registerView(
+        View.create(
+            distributionViewName,
+            "description",
+            MEASURE_DOUBLE,
+            DISTRIBUTION,
+            Arrays.asList(KEY),
+            Cumulative.create()));
+    BoundMeasureDouble boundMeasure =
+        statsRecorder.bind(MEASURE_DOUBLE, new SimpleTagContext(Tag.create(KEY, VALUE)));
+    boundMeasure.record(1.0);
+    viewManager.unregisterView(distributionViewName);
+    boundMeasure.record(2.0);
+    viewManager.unregisterView(VIEW_NAME);
+    // The measure has no views left, so it is ignored until a view is registered again.
+    boundMeasure.record(3.0);
+    viewManager.registerView(sumView);
+    boundMeasure.record(4.0);
+    assertThat(viewManager.getView(distributionViewName)).isNull();
+    StatsTestUtil.assertAggregationMapEquals(
+        viewManager.getView(VIEW_NAME).getAggregationMap(),
+        ImmutableMap.of(
+            Arrays.asList(VALUE),
+            StatsTestUtil.createAggregationData(Sum.create(), MEASURE_DOUBLE, 4.0)),
+        1e-6);
+  }
+
+  @Test
+  public void recordBoundMeasure_ViewRegisteredAfterBinding() {
+    BoundMeasureDouble boundMeasure =
+        statsRecorder.bind(MEASURE_DOUBLE, new SimpleTagContext(Tag.create(KEY, VALUE)));
+    // Unregistered measures are ignored.
+    boundMeasure.record(1.0);
+    viewManager.registerView(
+        View.create(
+            VIEW_NAME,
+            "description",
+            MEASURE_DOUBLE,
+            Sum.create(),
+            Arrays.asList(KEY),
+            Cumulative.create()));
+    boundMeasure.record(2.0);
+    boundMeasure.record(3.0);
+    View.Name distributionViewName = View.Name.create("my distribution view");
+    viewManager.registerView(
+        View.create(
+            distributionViewName,
+            "description",
+            MEASURE_DOUBLE,
+            DISTRIBUTION,
+            Arrays.asList(KEY),
+            Cumulative.create()));
+    boundMeasure.record(4.0);
+    StatsTestUtil.assertAggregationMapEquals(
+        viewManager.getView(VIEW_NAME).getAggregationMap(),
+        ImmutableMap.of(
+            Arrays.asList(VALUE),
+            StatsTestUtil.createAggregationData(Sum.create(), MEASURE_DOUBLE, 2.0, 3.0, 4.0)),
+        1e-6);
+    StatsTestUtil.assertAggregationMapEquals(
+        viewManager.getView(distributionViewName).getAggregationMap(),
+        ImmutableMap.of(
+            Arrays.asList(VALUE),
+            StatsTestUtil.createAggregationData(DISTRIBUTION, MEASURE_DOUBLE, 4.0)),
+        1e-6);
+  }
+
+  @Test
+  public void recordBoundMeasure_Long() {
+    MeasureLong measure = MeasureLong.create("my long measurement", "description", "By");
+    View view =
+        View.create(
+            VIEW_NAME,
+            "description",
+            measure,
+            Sum.create(),
+            Arrays.asList(KEY),
+            Cumulative.create());
+    viewManager.registerView(view);
+    BoundMeasureLong boundMeasure =
+        statsRecorder.bind(measure, new SimpleTagContext(Tag.create(KEY, VALUE)));
+    boundMeasure.record(10);
+    boundMeasure.record(20);
+    StatsTestUtil.assertAggregationMapEquals(
+        viewManager.getView(VIEW_NAME).getAggregationMap(),
+        ImmutableMap.of(
+            Arrays.asList(VALUE), StatsTestUtil.createAggregationData(Sum.create(), measure, 30)),
+        1e-6);
+  }
+
+  @Test
+  public void record_LongMeasure_ExactBeyondDoublePrecision() {
+    recordLongMeasureBeyondDoublePrecision(statsComponent);
+  }
+
+  @Test
+  public void record_LongMeasure_ExactBeyondDoublePrecision_DirectRecording() {
+    recordLongMeasureBeyondDoublePrecision(
+        new StatsComponentImplBase(
+            Collections.singletonList(new SimpleEventQueue()),
+            testClock,
+            StatsConfiguration.builder().setDirectRecordingEnabled(true).build()));
+  }
+
+  private static void recordLongMeasureBeyondDoublePrecision(StatsComponent component) {
+    MeasureLong measure = MeasureLong.create("my long measurement", "description", "By");
+    component
+        .getViewManager()
+        .registerView(
+            View.create(
+                VIEW_NAME,
+                "description",
+                measure,
+                Sum.create(),
+                Arrays.asList(KEY),
+                Cumulative.create()));
+    TagContext tags = new SimpleTagContext(Tag.create(KEY, VALUE));
+    // 2^53 + 1 is the smallest positive long that a double cannot represent.
+    long value = (1L << 53) + 1;
+    component.getStatsRecorder().newMeasureMap().put(measure, value).record(tags);
+    component.getStatsRecorder().bind(measure, tags).record(2);
+    assertThat(component.getViewManager().getView(VIEW_NAME).getAggregationMap())
+        .containsExactly(Arrays.asList(VALUE), SumDataLong.create(value + 2));
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void recordBoundMeasure_DirectRecording() {
+    StatsComponent directComponent =
+        new StatsComponentImplBase(
+            Collections.singletonList(new SimpleEventQueue()),
+            testClock,
+            StatsConfiguration.builder().setDirectRecordingEnabled(true).build());
+    ViewManager directViewManager = directComponent.getViewManager();
+    directViewManager.registerView(
+        View.create(
+            VIEW_NAME,
+            "description",
+            MEASURE_DOUBLE,
+            Sum.create(),
+            Arrays.asList(KEY),
+            Cumulative.create()));
+    BoundMeasureDouble boundMeasure =
+        directComponent
+            .getStatsRecorder()
+            .bind(MEASURE_DOUBLE, new SimpleTagContext(Tag.create(KEY, VALUE)));
+    boundMeasure.record(1.0);
+    boundMeasure.record(2.0);
+    StatsTestUtil.assertAggregationMapEquals(
+        directViewManager.getView(VIEW_NAME).getAggregationMap(),
+        ImmutableMap.of(
+            Arrays.asList(VALUE),
+            StatsTestUtil.createAggregationData(Sum.create(), MEASURE_DOUBLE, 1.0, 2.0)),
+        1e-6);
+
+    // Clearing the stats removes the bound series, which is then resolved again.
+    directComponent.setState(StatsCollectionState.DISABLED);
+    boundMeasure.record(4.0);
+    directComponent.setState(StatsCollectionState.ENABLED);
+    boundMeasure.record(8.0);
+    boundMeasure.record(16.0);
+    StatsTestUtil.assertAggregationMapEquals(
+        directViewManager.getView(VIEW_NAME).getAggregationMap(),
+        ImmutableMap.of(
+            Arrays.asList(VALUE),
+            StatsTestUtil.createAggregationData(Sum.create(), MEASURE_DOUBLE, 8.0, 16.0)),
+        1e-6);
+  }
+
+  @Test
+  public void record_IntervalViewFollowsWallClockAdjustments() {
+    AdjustableClock clock = new AdjustableClock();
+    StatsComponent component = new StatsComponentImplBase(new SimpleEventQueue(), clock);
+    View view =
+        View.create(
+            VIEW_NAME,
+            "description",
+            MEASURE_DOUBLE,
+            Sum.create(),
+            Arrays.asList(KEY),
+            Interval.create(Duration.create(60, 0)));
+    component.getViewManager().registerView(view);
+    // The wall time is stepped forward, as NTP may do, while the nanoTime keeps its pace.
+    clock.adjustWallTime(Duration.create(600, 0));
+    clock.advanceTime(
+        Duration.fromMillis(
+            TimeUnit.NANOSECONDS.toMillis(StatsManager.TIMESTAMP_CONVERTER_PERIOD_NANOS)));
+    component.getStatsRecorder().newMeasureMap().put(MEASURE_DOUBLE, 1.0).record();
+    // The record is timestamped with the adjusted wall time, so it is within the interval.
+    StatsTestUtil.assertAggregationMapEquals(
+        component.getViewManager().getView(VIEW_NAME).getAggregationMap(),
+        ImmutableMap.of(
+            Arrays.asList((TagValue) null),
+            StatsTestUtil.createAggregationData(Sum.create(), MEASURE_DOUBLE, 1.0)),
+        1e-6);
+  }
+
+  // A clock whose wall time can be adjusted without changing its nanoTime.
+  private static final class AdjustableClock extends Clock {
+    private Timestamp wallTime = Timestamp.create(1493419949, 223123456);
+    private long nanoTime = 0;
+
+    private void adjustWallTime(Duration duration) {
+      wallTime = wallTime.addDuration(duration);
+    }
+
+    private void advanceTime(Duration duration) {
+      wallTime = wallTime.addDuration(duration);
+      nanoTime += TimeUnit.MILLISECONDS.toNanos(duration.toMillis());
+    }
+
+    @Override
+    public Timestamp now() {
+      return wallTime;
+    }
+
+    @Override
+    public long nowNanos() {
+      return nanoTime;
+    }
+  }
 }
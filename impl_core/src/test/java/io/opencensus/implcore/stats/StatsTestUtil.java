@@ -23,7 +23,6 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import io.opencensus.common.Function;
 import io.opencensus.common.Functions;
-import io.opencensus.common.Timestamp;
 import io.opencensus.stats.Aggregation;
 import io.opencensus.stats.AggregationData;
 import io.opencensus.stats.AggregationData.CountData;
@@ -53,8 +52,6 @@ import javax.annotation.Nullable;
 /** Stats test utilities. */
 final class StatsTestUtil {
 
-  private static final Timestamp EMPTY = Timestamp.create(0, 0);
-
   private StatsTestUtil() {}
 
   /**
@@ -70,7 +67,7 @@ final class StatsTestUtil {
     MutableAggregation mutableAggregation =
         RecordUtils.createMutableAggregation(aggregation, measure);
     for (double value : values) {
-      mutableAggregation.add(value, Collections.<String, String>emptyMap(), EMPTY);
+      mutableAggregation.add(value, Collections.<String, String>emptyMap(), 0L);
     }
     return mutableAggregation.toAggregationData();
   }
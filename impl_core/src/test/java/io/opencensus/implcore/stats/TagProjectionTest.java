@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import io.opencensus.implcore.stats.StatsTestUtil.SimpleTagContext;
+import io.opencensus.implcore.tags.TagContextImpl;
+import io.opencensus.tags.Tag;
+import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagValue;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link TagProjection}. */
+@RunWith(JUnit4.class)
+public class TagProjectionTest {
+
+  private static final TagKey CALLER = TagKey.create("caller");
+  private static final TagKey METHOD = TagKey.create("method");
+  private static final TagKey ORIGINATOR = TagKey.create("originator");
+  private static final TagKey OTHER = TagKey.create("other");
+  private static final TagValue CALLER_V = TagValue.create("some caller");
+  private static final TagValue METHOD_V = TagValue.create("some method");
+  private static final TagValue OTHER_V = TagValue.create("other value");
+
+  @Test
+  public void withColumns_AppendsNewColumnsOnly() {
+    TagProjection projection = TagProjection.EMPTY.withColumns(Arrays.asList(CALLER, METHOD));
+    assertThat(projection.size()).isEqualTo(2);
+    assertThat(projection.withColumns(Arrays.asList(METHOD))).isSameAs(projection);
+
+    TagProjection grown = projection.withColumns(Arrays.asList(ORIGINATOR, CALLER));
+    assertThat(grown.size()).isEqualTo(3);
+    // Slots of existing columns do not change.
+    assertThat(grown.getSlots(Arrays.asList(CALLER, METHOD))).isEqualTo(new int[] {0, 1});
+    assertThat(grown.getSlots(Arrays.asList(ORIGINATOR, CALLER))).isEqualTo(new int[] {2, 0});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void getSlots_DisallowUnknownColumn() {
+    TagProjection.EMPTY.withColumns(Arrays.asList(CALLER)).getSlots(Arrays.asList(METHOD));
+  }
+
+  @Test
+  public void project_TagContextImpl() {
+    TagProjection projection =
+        TagProjection.EMPTY.withColumns(Arrays.asList(CALLER, METHOD, ORIGINATOR));
+    TagValue[] buffer = projection.ensureCapacity(null);
+    assertThat(
+            Arrays.asList(
+                projection.project(
+                    new TagContextImpl(ImmutableMap.of(CALLER, CALLER_V, METHOD, METHOD_V)),
+                    buffer)))
+        .containsExactly(CALLER_V, METHOD_V, RecordUtils.UNKNOWN_TAG_VALUE)
+        .inOrder();
+    // More tags than columns.
+    assertThat(
+            Arrays.asList(
+                projection.project(
+                    new TagContextImpl(
+                        ImmutableMap.of(
+                            CALLER, CALLER_V, ORIGINATOR, METHOD_V, OTHER, OTHER_V, METHOD,
+                            OTHER_V)),
+                    buffer)))
+        .containsExactly(CALLER_V, OTHER_V, METHOD_V)
+        .inOrder();
+  }
+
+  @Test
+  public void project_OtherTagContext() {
+    TagProjection projection = TagProjection.EMPTY.withColumns(Arrays.asList(CALLER, METHOD));
+    assertThat(
+            Arrays.asList(
+                projection.project(
+                    new SimpleTagContext(Tag.create(METHOD, METHOD_V), Tag.create(OTHER, OTHER_V)),
+                    projection.ensureCapacity(null))))
+        .containsExactly(RecordUtils.UNKNOWN_TAG_VALUE, METHOD_V)
+        .inOrder();
+  }
+
+  @Test
+  public void projectionMatchesGetTagValues() {
+    List<TagKey> columns = Arrays.asList(METHOD, CALLER);
+    TagProjection projection =
+        TagProjection.EMPTY.withColumns(Arrays.asList(ORIGINATOR)).withColumns(columns);
+    ImmutableMap<TagKey, TagValue> tags = ImmutableMap.of(CALLER, CALLER_V, METHOD, METHOD_V);
+    TagValue[] projectedTags =
+        projection.project(new TagContextImpl(tags), projection.ensureCapacity(null));
+    assertThat(
+            new TagValues.Scratch(columns.size())
+                .fill(projectedTags, projection.getSlots(columns)))
+        .isEqualTo(RecordUtils.getTagValues(tags, columns));
+  }
+
+  @Test
+  public void ensureCapacity() {
+    TagProjection projection = TagProjection.EMPTY.withColumns(Arrays.asList(CALLER, METHOD));
+    TagValue[] buffer = new TagValue[4];
+    assertThat(projection.ensureCapacity(buffer)).isSameAs(buffer);
+    assertThat(projection.ensureCapacity(new TagValue[1]).length).isEqualTo(2);
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.testing.EqualsTester;
+import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagValue;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link TagValues}. */
+@RunWith(JUnit4.class)
+public class TagValuesTest {
+
+  private static final TagKey CALLER = TagKey.create("caller");
+  private static final TagKey METHOD = TagKey.create("method");
+  private static final TagKey ORIGINATOR = TagKey.create("originator");
+  private static final TagValue CALLER_V = TagValue.create("some caller");
+  private static final TagValue METHOD_V = TagValue.create("some method");
+  private static final List<TagKey> COLUMNS = Arrays.asList(CALLER, METHOD, ORIGINATOR);
+  private static final List<TagKey> TWO_COLUMNS = Arrays.asList(CALLER, METHOD);
+
+  @Test
+  public void scratch_Fill() {
+    Map<TagKey, TagValue> tags = ImmutableMap.of(CALLER, CALLER_V, METHOD, METHOD_V);
+    TagValues.Scratch scratch = new TagValues.Scratch(COLUMNS.size()).fill(tags, COLUMNS);
+    assertThat(scratch)
+        .containsExactly(CALLER_V, METHOD_V, RecordUtils.UNKNOWN_TAG_VALUE)
+        .inOrder();
+    assertThat(scratch).isEqualTo(RecordUtils.getTagValues(tags, COLUMNS));
+  }
+
+  @Test
+  public void copyOf() {
+    List<TagValue> list = Arrays.asList(CALLER_V, null, METHOD_V);
+    TagValues tagValues = TagValues.copyOf(list);
+    assertThat(tagValues).containsExactly(CALLER_V, null, METHOD_V).inOrder();
+    assertThat(TagValues.copyOf(tagValues)).isSameAs(tagValues);
+  }
+
+  @Test
+  public void copyOf_ScratchIsCopied() {
+    TagValues.Scratch scratch =
+        new TagValues.Scratch(COLUMNS.size())
+            .fill(ImmutableMap.of(CALLER, CALLER_V, METHOD, METHOD_V), COLUMNS);
+    TagValues tagValues = TagValues.copyOf(scratch);
+    scratch.fill(ImmutableMap.<TagKey, TagValue>of(), COLUMNS);
+    assertThat(tagValues)
+        .containsExactly(CALLER_V, METHOD_V, RecordUtils.UNKNOWN_TAG_VALUE)
+        .inOrder();
+  }
+
+  @Test
+  public void testEquals() {
+    new EqualsTester()
+        .addEqualityGroup(
+            TagValues.copyOf(Arrays.asList(CALLER_V, METHOD_V)),
+            TagValues.copyOf(Arrays.asList(CALLER_V, METHOD_V)),
+            Arrays.asList(CALLER_V, METHOD_V),
+            new TagValues.Scratch(2)
+                .fill(ImmutableMap.of(CALLER, CALLER_V, METHOD, METHOD_V), TWO_COLUMNS))
+        .addEqualityGroup(
+            TagValues.copyOf(Arrays.asList(CALLER_V, null)),
+            new TagValues.Scratch(2).fill(ImmutableMap.of(CALLER, CALLER_V), TWO_COLUMNS))
+        .addEqualityGroup(TagValues.copyOf(Arrays.<TagValue>asList()))
+        .testEquals();
+  }
+
+  @Test
+  public void lookUpWithScratch() {
+    Map<List<TagValue>, String> map = new HashMap<List<TagValue>, String>();
+    map.put(TagValues.copyOf(Arrays.asList(CALLER_V, METHOD_V, null)), "value");
+    TagValues.Scratch scratch = new TagValues.Scratch(COLUMNS.size());
+    assertThat(map.get(scratch.fill(ImmutableMap.of(CALLER, CALLER_V, METHOD, METHOD_V), COLUMNS)))
+        .isEqualTo("value");
+    assertThat(map.get(scratch.fill(ImmutableMap.of(CALLER, CALLER_V), COLUMNS))).isNull();
+  }
+}
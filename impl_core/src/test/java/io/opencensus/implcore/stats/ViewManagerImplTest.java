@@ -779,6 +779,77 @@ public class ViewManagerImplTest {
         EPSILON);
   }
 
+  @Test
+  public void unregisterView() {
+    View view = createCumulativeView();
+    viewManager.registerView(view);
+    statsRecorder
+        .newMeasureMap()
+        .put(MEASURE_DOUBLE, 5.0)
+        .record(tagger.emptyBuilder().put(KEY, VALUE).build());
+    viewManager.unregisterView(VIEW_NAME);
+    assertThat(viewManager.getView(VIEW_NAME)).isNull();
+    assertThat(viewManager.getAllExportedViews()).isEmpty();
+    // Recording to the measure of the unregistered view is ignored.
+    statsRecorder
+        .newMeasureMap()
+        .put(MEASURE_DOUBLE, 5.0)
+        .record(tagger.emptyBuilder().put(KEY, VALUE).build());
+    // Unregistering a view that is not registered does nothing.
+    viewManager.unregisterView(VIEW_NAME);
+  }
+
+  @Test
+  public void unregisterView_RegisterAgainStartsWithoutData() {
+    View view = createCumulativeView();
+    viewManager.registerView(view);
+    statsRecorder
+        .newMeasureMap()
+        .put(MEASURE_DOUBLE, 5.0)
+        .record(tagger.emptyBuilder().put(KEY, VALUE).build());
+    viewManager.unregisterView(VIEW_NAME);
+    viewManager.registerView(view);
+    assertThat(viewManager.getView(VIEW_NAME).getAggregationMap()).isEmpty();
+  }
+
+  @Test
+  public void unregisterView_AllowRegisteringDifferentMeasureWithSameName() {
+    viewManager.registerView(createCumulativeView());
+    viewManager.unregisterView(VIEW_NAME);
+    MeasureLong measure = MeasureLong.create(MEASURE_NAME, MEASURE_DESCRIPTION, MEASURE_UNIT);
+    View view = createCumulativeView(VIEW_NAME, measure, SUM, Arrays.asList(KEY));
+    viewManager.registerView(view);
+    statsRecorder
+        .newMeasureMap()
+        .put(measure, 3)
+        .record(tagger.emptyBuilder().put(KEY, VALUE).build());
+    StatsTestUtil.assertAggregationMapEquals(
+        viewManager.getView(VIEW_NAME).getAggregationMap(),
+        ImmutableMap.of(
+            Arrays.asList(VALUE), StatsTestUtil.createAggregationData(SUM, measure, 3)),
+        EPSILON);
+  }
+
+  @Test
+  public void unregisterView_KeepsOtherViewsOfMeasure() {
+    View view1 = createCumulativeView(VIEW_NAME, MEASURE_DOUBLE, SUM, Arrays.asList(KEY));
+    View view2 = createCumulativeView(VIEW_NAME_2, MEASURE_DOUBLE, SUM, Arrays.asList(KEY));
+    viewManager.registerView(view1);
+    viewManager.registerView(view2);
+    viewManager.unregisterView(VIEW_NAME);
+    statsRecorder
+        .newMeasureMap()
+        .put(MEASURE_DOUBLE, 5.0)
+        .record(tagger.emptyBuilder().put(KEY, VALUE).build());
+    assertThat(viewManager.getView(VIEW_NAME)).isNull();
+    assertThat(viewManager.getAllExportedViews()).containsExactly(view2);
+    StatsTestUtil.assertAggregationMapEquals(
+        viewManager.getView(VIEW_NAME_2).getAggregationMap(),
+        ImmutableMap.of(
+            Arrays.asList(VALUE), StatsTestUtil.createAggregationData(SUM, MEASURE_DOUBLE, 5.0)),
+        EPSILON);
+  }
+
   @Test
   public void testMultipleViews_DifferentMeasureNames() {
     testMultipleViews_DifferentMeasures(
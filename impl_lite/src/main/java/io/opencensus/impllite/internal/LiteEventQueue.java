@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.impllite.internal;
+
+import io.opencensus.implcore.internal.EventQueue;
+import io.opencensus.implcore.internal.MpscArrayEventQueue;
+
+/**
+ * The {@link EventQueue}s of the Android-compatible components. Entries are processed by a
+ * background thread, so that recording stats and ending spans only hand the work off, instead of
+ * aggregating under a lock on the calling thread, which is often the UI thread.
+ *
+ * <p>The queues are bounded. The stats queue drops entries instead of blocking the calling thread
+ * when it is full, and the dropped entries are counted in the queue metrics. The trace queue never
+ * drops entries, since the span stores expect the end event of each span to follow its start
+ * event; when it is full, the calling thread waits for the consumer.
+ */
+public final class LiteEventQueue {
+
+  // Small enough for constrained devices, and large enough to absorb the bursts of a UI thread.
+  static final int CAPACITY = 1024;
+
+  private LiteEventQueue() {}
+
+  /**
+   * Returns the {@code EventQueue} of stats, starting its background thread on first use.
+   *
+   * @return the {@code EventQueue} of stats.
+   */
+  public static EventQueue getInstance() {
+    return SingletonHolder.INSTANCE;
+  }
+
+  /**
+   * Returns the {@code EventQueue} of trace, starting its background thread on first use.
+   *
+   * @return the {@code EventQueue} of trace.
+   */
+  public static EventQueue getTraceInstance() {
+    return TraceSingletonHolder.INSTANCE;
+  }
+
+  private static final class SingletonHolder {
+    private static final EventQueue INSTANCE =
+        MpscArrayEventQueue.create("OpenCensus.Lite", CAPACITY, true);
+  }
+
+  private static final class TraceSingletonHolder {
+    private static final EventQueue INSTANCE =
+        MpscArrayEventQueue.create("OpenCensus.Lite.Trace", CAPACITY, false);
+  }
+}
@@ -16,16 +16,47 @@
 
 package io.opencensus.impllite.stats;
 
+import io.opencensus.common.Duration;
 import io.opencensus.implcore.common.MillisClock;
-import io.opencensus.implcore.internal.SimpleEventQueue;
 import io.opencensus.implcore.stats.StatsComponentImplBase;
+import io.opencensus.implcore.stats.StatsConfiguration;
+import io.opencensus.impllite.internal.LiteEventQueue;
 import io.opencensus.stats.StatsComponent;
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /** Android-compatible implementation of {@link StatsComponent}. */
 public final class StatsComponentImplLite extends StatsComponentImplBase {
 
+  private static final Logger logger = Logger.getLogger(StatsComponentImplLite.class.getName());
+
+  // System property for how many milliseconds the views and metrics read by an exporter are shared
+  // with the exporters that read them next. Not shared by default.
+  static final String SNAPSHOT_STALENESS_MILLIS_PROPERTY =
+      "io.opencensus.stats.snapshotStalenessMillis";
+
   public StatsComponentImplLite() {
-    // TODO(sebright): Use a more efficient queue implementation.
-    super(new SimpleEventQueue(), MillisClock.getInstance());
+    super(
+        Collections.singletonList(LiteEventQueue.getInstance()),
+        MillisClock.getInstance(),
+        createConfiguration());
+  }
+
+  static StatsConfiguration createConfiguration() {
+    long snapshotStalenessMillis = Long.getLong(SNAPSHOT_STALENESS_MILLIS_PROPERTY, 0L);
+    if (snapshotStalenessMillis < 0) {
+      logger.log(
+          Level.WARNING,
+          "Ignoring "
+              + SNAPSHOT_STALENESS_MILLIS_PROPERTY
+              + "="
+              + snapshotStalenessMillis
+              + ", must not be negative.");
+      snapshotStalenessMillis = 0;
+    }
+    return StatsConfiguration.builder()
+        .setSnapshotStaleness(Duration.fromMillis(snapshotStalenessMillis))
+        .build();
   }
 }
@@ -18,9 +18,9 @@ package io.opencensus.trace;
 
 import io.opencensus.common.Clock;
 import io.opencensus.implcore.common.MillisClock;
-import io.opencensus.implcore.internal.SimpleEventQueue;
 import io.opencensus.implcore.trace.TraceComponentImplBase;
 import io.opencensus.implcore.trace.internal.RandomHandler.SecureRandomHandler;
+import io.opencensus.impllite.internal.LiteEventQueue;
 import io.opencensus.trace.config.TraceConfig;
 import io.opencensus.trace.export.ExportComponent;
 import io.opencensus.trace.propagation.PropagationComponent;
@@ -36,7 +36,10 @@ public final class TraceComponentImplLite extends TraceComponent {
   public TraceComponentImplLite() {
     traceComponentImplBase =
         new TraceComponentImplBase(
-            MillisClock.getInstance(), new SecureRandomHandler(), new SimpleEventQueue());
+            MillisClock.getInstance(),
+            new SecureRandomHandler(),
+            LiteEventQueue.getTraceInstance(),
+            /* supportInProcessStores= */ false);
   }
 
   @Override
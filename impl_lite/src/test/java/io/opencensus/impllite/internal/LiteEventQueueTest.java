@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.impllite.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.implcore.internal.EventQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link LiteEventQueue}. */
+@RunWith(JUnit4.class)
+public class LiteEventQueueTest {
+
+  @Test
+  public void getInstance_ReturnsSameQueue() {
+    assertThat(LiteEventQueue.getInstance()).isSameAs(LiteEventQueue.getInstance());
+    assertThat(LiteEventQueue.getTraceInstance()).isSameAs(LiteEventQueue.getTraceInstance());
+    assertThat(LiteEventQueue.getTraceInstance()).isNotSameAs(LiteEventQueue.getInstance());
+  }
+
+  @Test
+  public void traceQueueWaitsInsteadOfDroppingWhenFull() throws InterruptedException {
+    final EventQueue queue = LiteEventQueue.getTraceInstance();
+    final CountDownLatch consumerBlocked = new CountDownLatch(1);
+    final CountDownLatch releaseConsumer = new CountDownLatch(1);
+    queue.enqueue(
+        new EventQueue.Entry() {
+          @Override
+          public void process() {
+            consumerBlocked.countDown();
+            try {
+              releaseConsumer.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        });
+    assertThat(consumerBlocked.await(10, TimeUnit.SECONDS)).isTrue();
+    // One more entry than the queue holds, so that the producer has to wait for the consumer.
+    final int numEntries = LiteEventQueue.CAPACITY + 1;
+    final AtomicInteger processed = new AtomicInteger();
+    final CountDownLatch allProcessed = new CountDownLatch(numEntries);
+    Thread producer =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                for (int i = 0; i < numEntries; i++) {
+                  queue.enqueue(
+                      new EventQueue.Entry() {
+                        @Override
+                        public void process() {
+                          processed.incrementAndGet();
+                          allProcessed.countDown();
+                        }
+                      });
+                }
+              }
+            });
+    producer.start();
+    producer.join(200);
+    assertThat(producer.isAlive()).isTrue();
+    releaseConsumer.countDown();
+    producer.join(10000);
+    assertThat(producer.isAlive()).isFalse();
+    assertThat(allProcessed.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(processed.get()).isEqualTo(numEntries);
+  }
+
+  @Test
+  public void processEntriesInBackgroundThread() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicReference<Thread> processingThread = new AtomicReference<Thread>();
+    LiteEventQueue.getInstance()
+        .enqueue(
+            new EventQueue.Entry() {
+              @Override
+              public void process() {
+                processingThread.set(Thread.currentThread());
+                latch.countDown();
+              }
+            });
+    assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(processingThread.get()).isNotSameAs(Thread.currentThread());
+  }
+}
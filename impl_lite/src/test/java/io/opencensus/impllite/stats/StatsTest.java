@@ -18,6 +18,7 @@ package io.opencensus.impllite.stats;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import io.opencensus.common.Duration;
 import io.opencensus.implcore.stats.StatsRecorderImpl;
 import io.opencensus.implcore.stats.ViewManagerImpl;
 import io.opencensus.stats.Stats;
@@ -38,4 +39,17 @@ public final class StatsTest {
   public void getViewManager() {
     assertThat(Stats.getViewManager()).isInstanceOf(ViewManagerImpl.class);
   }
+
+  @Test
+  public void createConfiguration_SnapshotStaleness() {
+    assertThat(StatsComponentImplLite.createConfiguration().getSnapshotStaleness())
+        .isEqualTo(Duration.create(0, 0));
+    System.setProperty(StatsComponentImplLite.SNAPSHOT_STALENESS_MILLIS_PROPERTY, "4500");
+    try {
+      assertThat(StatsComponentImplLite.createConfiguration().getSnapshotStaleness())
+          .isEqualTo(Duration.fromMillis(4500));
+    } finally {
+      System.clearProperty(StatsComponentImplLite.SNAPSHOT_STALENESS_MILLIS_PROPERTY);
+    }
+  }
 }
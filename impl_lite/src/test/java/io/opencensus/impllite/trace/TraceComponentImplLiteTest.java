@@ -21,6 +21,8 @@ import static com.google.common.truth.Truth.assertThat;
 import io.opencensus.implcore.common.MillisClock;
 import io.opencensus.implcore.trace.TracerImpl;
 import io.opencensus.implcore.trace.export.ExportComponentImpl;
+import io.opencensus.implcore.trace.export.InProcessRunningSpanStoreImpl;
+import io.opencensus.implcore.trace.export.SampledSpanStoreImpl;
 import io.opencensus.implcore.trace.propagation.PropagationComponentImpl;
 import io.opencensus.trace.Tracing;
 import org.junit.Test;
@@ -49,4 +51,12 @@ public class TraceComponentImplLiteTest {
   public void implementationOfTraceExporter() {
     assertThat(Tracing.getExportComponent()).isInstanceOf(ExportComponentImpl.class);
   }
+
+  @Test
+  public void noInProcessStores() {
+    assertThat(Tracing.getExportComponent().getRunningSpanStore())
+        .isNotInstanceOf(InProcessRunningSpanStoreImpl.class);
+    assertThat(Tracing.getExportComponent().getSampledSpanStore())
+        .isSameAs(SampledSpanStoreImpl.getNoopSampledSpanStoreImpl());
+  }
 }